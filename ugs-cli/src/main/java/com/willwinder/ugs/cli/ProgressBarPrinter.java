@@ -24,19 +24,23 @@ import com.willwinder.universalgcodesender.model.BackendAPI;
 import com.willwinder.universalgcodesender.model.UGSEvent;
 import com.willwinder.universalgcodesender.model.events.CommandEvent;
 import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
+import com.willwinder.universalgcodesender.model.events.FileProgressEvent;
 import com.willwinder.universalgcodesender.model.events.FileState;
 import com.willwinder.universalgcodesender.model.events.FileStateEvent;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 import me.tongfei.progressbar.ProgressBarStyle;
 
+import java.io.File;
+
 /**
- * Displays the file send progress as a progress bar
+ * Displays the file loading and send progress as a progress bar
  *
  * @author Joacim Breiler
  */
 public class ProgressBarPrinter implements UGSEventListener {
     private ProgressBar pb;
+    private ProgressBar loadingProgressBar;
     private final BackendAPI backend;
 
     public ProgressBarPrinter(BackendAPI backend) {
@@ -47,7 +51,17 @@ public class ProgressBarPrinter implements UGSEventListener {
     public void UGSEvent(UGSEvent event) {
         if (event instanceof FileStateEvent) {
             FileStateEvent fileStateEvent = (FileStateEvent) event;
-            if(fileStateEvent.getFileState() == FileState.FILE_LOADED) {
+            if (fileStateEvent.getFileState() == FileState.FILE_LOADING) {
+                closeLoadingProgressBar();
+                File file = new File(fileStateEvent.getFile());
+                loadingProgressBar = new ProgressBarBuilder()
+                        .setStyle(ProgressBarStyle.UNICODE_BLOCK)
+                        .setInitialMax(file.length())
+                        .setTaskName("Loading " + file.getName())
+                        .setPrintStream(System.out)
+                        .build();
+            } else if(fileStateEvent.getFileState() == FileState.FILE_LOADED) {
+                closeLoadingProgressBar();
                 pb = new ProgressBarBuilder()
                         .setStyle(ProgressBarStyle.UNICODE_BLOCK)
                         .setInitialMax(100)
@@ -62,6 +76,10 @@ public class ProgressBarPrinter implements UGSEventListener {
                     pb = null;
                 }
             }
+        } else if (event instanceof FileProgressEvent && loadingProgressBar != null) {
+            FileProgressEvent fileProgressEvent = (FileProgressEvent) event;
+            loadingProgressBar.maxHint(fileProgressEvent.getTotalBytes());
+            loadingProgressBar.stepTo(fileProgressEvent.getBytesRead());
         } else if (event instanceof ControllerStateEvent && pb != null) {
             ControllerStateEvent controllerStateEvent = (ControllerStateEvent) event;
             if (controllerStateEvent.getState() == ControllerState.HOLD) {
@@ -76,4 +94,12 @@ public class ProgressBarPrinter implements UGSEventListener {
             }
         }
     }
+
+    private void closeLoadingProgressBar() {
+        if (loadingProgressBar != null) {
+            loadingProgressBar.stepTo(loadingProgressBar.getMax());
+            loadingProgressBar.close();
+            loadingProgressBar = null;
+        }
+    }
 }
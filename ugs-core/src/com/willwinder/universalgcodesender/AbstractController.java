@@ -420,6 +420,7 @@ public abstract class AbstractController implements CommunicatorListener, IContr
      * @return
      */
     public int getRowStat(RowStat stat) {
+        updateNumCommandsWhileStreaming();
         switch (stat) {
             case TOTAL_ROWS:
                 return this.numCommands;
@@ -651,6 +652,16 @@ public abstract class AbstractController implements CommunicatorListener, IContr
         numCommandsSent = 0;
     }
 
+    /**
+     * A stream that processes the commands while they are sent may produce more or fewer
+     * commands than it had rows when the stream was started.
+     */
+    private void updateNumCommandsWhileStreaming() {
+        if (isStreaming() && streamCommands != null) {
+            numCommands = streamCommands.getNumRows();
+        }
+    }
+
     // No longer a listener event
     protected void fileStreamComplete(String filename, boolean success) {
 
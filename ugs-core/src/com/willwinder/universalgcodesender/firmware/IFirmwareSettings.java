@@ -218,4 +218,12 @@ public interface IFirmwareSettings {
      * @return the maximum rate in mm/min
      */
     double getMaximumRate(Axis axis) throws FirmwareSettingsException;
+
+    /**
+     * Returns the acceleration of each axis in mm/sec^2.
+     *
+     * @param axis the axis to fetch the setting for
+     * @return the acceleration in mm/sec^2, or 0 if unknown
+     */
+    double getAcceleration(Axis axis) throws FirmwareSettingsException;
 }
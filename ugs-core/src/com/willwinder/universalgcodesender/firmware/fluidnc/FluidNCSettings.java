@@ -211,4 +211,9 @@ public class FluidNCSettings implements IFirmwareSettings {
     public double getMaximumRate(Axis axis) throws FirmwareSettingsException {
         return 0;
     }
+
+    @Override
+    public double getAcceleration(Axis axis) throws FirmwareSettingsException {
+        return 0;
+    }
 }
@@ -69,6 +69,9 @@ public class GrblFirmwareSettings implements CommunicatorListener, IFirmwareSett
     private static final String KEY_MAXIMUM_RATE_X = "$110";
     private static final String KEY_MAXIMUM_RATE_Y = "$111";
     private static final String KEY_MAXIMUM_RATE_Z = "$112";
+    private static final String KEY_ACCELERATION_X = "$120";
+    private static final String KEY_ACCELERATION_Y = "$121";
+    private static final String KEY_ACCELERATION_Z = "$122";
 
     /**
      * A GRBL settings description lookups
@@ -369,6 +372,20 @@ public class GrblFirmwareSettings implements CommunicatorListener, IFirmwareSett
         }
     }
 
+    @Override
+    public double getAcceleration(Axis axis) throws FirmwareSettingsException {
+        switch (axis) {
+            case X:
+                return getValueAsDouble(KEY_ACCELERATION_X);
+            case Y:
+                return getValueAsDouble(KEY_ACCELERATION_Y);
+            case Z:
+                return getValueAsDouble(KEY_ACCELERATION_Z);
+            default:
+                throw new FirmwareSettingsException("Couldn't get acceleration setting for axis " + axis + ", it's not supported by the controller");
+        }
+    }
+
     private int getInvertDirectionMask() {
         return getSetting(KEY_INVERT_DIRECTION)
                 .map(FirmwareSetting::getValue)
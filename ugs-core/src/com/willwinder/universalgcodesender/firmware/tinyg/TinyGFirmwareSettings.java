@@ -191,6 +191,11 @@ public class TinyGFirmwareSettings implements CommunicatorListener, IFirmwareSet
         return 0;
     }
 
+    @Override
+    public double getAcceleration(Axis axis) throws FirmwareSettingsException {
+        return 0;
+    }
+
     /*
      * IFirmwareSettingsListener
      */
@@ -75,6 +75,20 @@ public class GcodeParser implements IGcodeParser {
         public PointSegment point;
     }
     
+    /**
+     * A saved state of the parser which can be restored for continuing
+     * parsing a program from where the checkpoint was created.
+     */
+    public static class Checkpoint {
+        private final GcodeState state;
+        private final Stats stats;
+
+        private Checkpoint(GcodeState state, Stats stats) {
+            this.state = state;
+            this.stats = stats;
+        }
+    }
+
     /**
      * Constructor.
      */
@@ -122,6 +136,46 @@ public class GcodeParser implements IGcodeParser {
         this.state.commandNumber = -1;
     }
     
+    /**
+     * Returns true if the parser can be restored from a checkpoint, which
+     * requires that none of the command processors keep any information
+     * between commands.
+     */
+    public boolean canCreateCheckpoint() {
+        return processors.isStateless();
+    }
+
+    /**
+     * Returns a key identifying the command processors and their order, or
+     * null if the result of any of the processors can't be reused.
+     */
+    public String getCacheKey() {
+        return processors.getCacheKey();
+    }
+
+    /**
+     * Saves the current state and statistics of the parser.
+     */
+    public Checkpoint createCheckpoint() {
+        return new Checkpoint(state.copy(), statsProcessor.copy());
+    }
+
+    /**
+     * Restores the state and statistics of the parser from a checkpoint.
+     */
+    public void restoreCheckpoint(Checkpoint checkpoint) {
+        this.state = checkpoint.state.copy();
+        this.statsProcessor = checkpoint.stats.copy();
+    }
+
+    /**
+     * Restores the statistics of the parser, for instance when reusing the
+     * result of a previously processed file.
+     */
+    public void restoreStats(Stats stats) {
+        this.statsProcessor = stats.copy();
+    }
+
     /**
      * Add a command to be processed with no line number association.
      */
@@ -136,11 +190,14 @@ public class GcodeParser implements IGcodeParser {
      */
     @Override
     public List<GcodeMeta> addCommand(String command, int line) throws GcodeParserException {
-        statsProcessor.processCommand(command, state);
         List<GcodeMeta> results = new ArrayList<>();
         // Add command get meta doesn't update the state, so we need to do that
         // manually.
         Collection<GcodeMeta> metaObjects = GcodeParserUtils.processCommand(command, line, state, true);
+
+        // Process stats.
+        statsProcessor.addCommand(command, state, metaObjects);
+
         if (metaObjects != null) {
             for (GcodeMeta c : metaObjects) {
                 if(c.point != null) {
@@ -148,8 +205,6 @@ public class GcodeParser implements IGcodeParser {
                 }
                 if (c.state != null) {
                     this.state = c.state;
-                    // Process stats.
-                    statsProcessor.processCommand(command, state);
                 }
             }
         }
@@ -166,7 +221,7 @@ public class GcodeParser implements IGcodeParser {
     }
 
     @Override
-    public GcodeStats getCurrentStats() {
+    public Stats getCurrentStats() {
         return statsProcessor;
     }
 
@@ -180,4 +235,16 @@ public class GcodeParser implements IGcodeParser {
     public List<String> preprocessCommand(String command, final GcodeState initialState) throws GcodeParserException {
         return processors.processCommand(command, initialState);
     }
+
+    @Override
+    public List<String> flushCommandProcessors() throws GcodeParserException {
+        return processors.flush(state);
+    }
+
+    /**
+     * @return the number of commands held back by the processors until the following commands or a flush.
+     */
+    public int getHeldBackCommandCount() {
+        return processors.getHeldBackCommandCount();
+    }
 }
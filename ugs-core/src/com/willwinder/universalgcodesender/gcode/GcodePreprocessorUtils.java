@@ -20,12 +20,11 @@ package com.willwinder.universalgcodesender.gcode;
 
 import com.google.common.base.Preconditions;
 import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
-import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
 
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -45,9 +44,8 @@ public class GcodePreprocessorUtils {
     private static final String EMPTY = "";
     private static final Pattern COMMENTPARSE = Pattern.compile("(?<=\\()[^()]*|(?<=;).*|%");
 
-    private static int decimalLength = -1;
-    private static Pattern decimalPattern;
-    private static DecimalFormat decimalFormatter;
+    private static final DecimalFormatter DEFAULT_FORMATTER = new DecimalFormatter(4);
+    private static volatile DecimalFormatter truncateFormatter;
 
     /**
      * Searches the command string for an 'f' and replaces the speed value 
@@ -96,51 +94,64 @@ public class GcodePreprocessorUtils {
         return comment;
     }
     
+    /**
+     * Rounds any number in the command with more than the given number of
+     * decimals.
+     */
     static public String truncateDecimals(int length, String command) {
-        if (length != decimalLength) {
-            //Only build the decimal formatter if the truncation length has changed.
-            updateDecimalFormatter(length);
-
-        }
-        Matcher matcher = decimalPattern.matcher(command);
-
-        // Build up the truncated command.
-        double d;
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            d = Double.parseDouble(matcher.group());
-            matcher.appendReplacement(sb, decimalFormatter.format(d));
-        }
-        matcher.appendTail(sb);
-        
-        // Return new command.
-        return sb.toString();
-    }
+        DecimalFormatter formatter = getTruncateFormatter(length);
+
+        // Build up the truncated command, only if any number needs to be changed.
+        StringBuilder sb = null;
+        int copied = 0;
+        int i = 0;
+        int n = command.length();
+        while (i < n) {
+            if (!isDigit(command.charAt(i))) {
+                i++;
+                continue;
+            }
 
-    private static void updateDecimalFormatter(int length) {
-        StringBuilder df = new StringBuilder();
+            int start = i;
+            while (i < n && isDigit(command.charAt(i))) {
+                i++;
+            }
 
-        // Build up the decimal formatter.
-        df.append("#");
+            if (i < n && command.charAt(i) == '.') {
+                int decimalStart = ++i;
+                while (i < n && isDigit(command.charAt(i))) {
+                    i++;
+                }
 
-        if (length != 0) {
-            df.append(".");
+                if (i - decimalStart > length) {
+                    if (sb == null) {
+                        sb = new StringBuilder(n);
+                    }
+                    sb.append(command, copied, start);
+                    formatter.format(Double.parseDouble(command.substring(start, i)), sb);
+                    copied = i;
+                }
+            }
         }
-        for (int i = 0; i < length; i++) {
-            df.append('#');
+
+        if (sb == null) {
+            return command;
         }
+        return sb.append(command, copied, n).toString();
+    }
 
-        decimalFormatter = new DecimalFormat(df.toString(), Localization.dfs);
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
 
-        // Build up the regular expression.
-        df = new StringBuilder();
-        df.append("\\d+\\.\\d");
-        for (int i = 0; i < length; i++) {
-            df.append("\\d");
+    private static DecimalFormatter getTruncateFormatter(int length) {
+        //Only build the decimal formatter if the truncation length has changed.
+        DecimalFormatter formatter = truncateFormatter;
+        if (formatter == null || formatter.getDecimals() != length) {
+            formatter = new DecimalFormatter(length);
+            truncateFormatter = formatter;
         }
-        df.append('+');
-        decimalPattern = Pattern.compile(df.toString());
-        decimalLength = length;
+        return formatter;
     }
 
     static public List<String> parseCodes(List<String> args, char code) {
@@ -248,40 +259,34 @@ public class GcodePreprocessorUtils {
 
     }
 
-    static public String generateLineFromPoints(final Code command, final Position start, final Position end, final boolean absoluteMode, DecimalFormat formatter) {
-        DecimalFormat df = formatter;
+    static public String generateLineFromPoints(final Code command, final Position start, final Position end, final boolean absoluteMode, DecimalFormatter formatter) {
+        DecimalFormatter df = formatter;
         if (df == null) {
-            df = new DecimalFormat("0.####", Localization.dfs);
+            df = DEFAULT_FORMATTER;
         }
-        
+
         StringBuilder sb = new StringBuilder();
         sb.append(command);
 
         if (absoluteMode) {
             if (!Double.isNaN(end.x)) {
-                sb.append("X");
-                sb.append(df.format(end.x));
+                df.format(end.x, sb.append("X"));
             }
             if (!Double.isNaN(end.y)) {
-                sb.append("Y");
-                sb.append(df.format(end.y));
+                df.format(end.y, sb.append("Y"));
             }
             if (!Double.isNaN(end.z)) {
-                sb.append("Z");
-                sb.append(df.format(end.z));
+                df.format(end.z, sb.append("Z"));
             }
         } else { // calculate offsets.
             if (!Double.isNaN(end.x)) {
-                sb.append("X");
-                sb.append(df.format(end.x-start.x));
+                df.format(end.x - start.x, sb.append("X"));
             }
             if (!Double.isNaN(end.y)) {
-                sb.append("Y");
-                sb.append(df.format(end.y-start.x));
+                df.format(end.y - start.y, sb.append("Y"));
             }
             if (!Double.isNaN(end.z)) {
-                sb.append("Z");
-                sb.append(df.format(end.z-start.x));
+                df.format(end.z - start.z, sb.append("Z"));
             }
         }
         
@@ -495,7 +500,6 @@ public class GcodePreprocessorUtils {
 
         Position nextPoint = new Position(p1);
         List<Position> segments = new ArrayList<>();
-        double angle;
 
         // Calculate radius if necessary.
         if (radius == 0) {
@@ -510,20 +514,7 @@ public class GcodePreprocessorUtils {
 
         for(int i=0; i<numPoints; i++)
         {
-            if (isCw) {
-                angle = (startAngle - i * sweep/numPoints);
-            } else {
-                angle = (startAngle + i * sweep/numPoints);
-            }
-
-            if (angle >= Math.PI * 2) {
-                angle = angle - Math.PI * 2;
-            }
-
-            //lineStart.x = Math.cos(angle) * radius + center.x;
-            plane.setAxis0(nextPoint, Math.cos(angle) * radius + plane.axis0(center));
-            //lineStart.y = Math.sin(angle) * radius + center.y;
-            plane.setAxis1(nextPoint, Math.sin(angle) * radius + plane.axis1(center));
+            setPointAlongArc(nextPoint, center, isCw, radius, startAngle, sweep, numPoints, i, plane);
 
             // Increment (optional) linear motions.
             plane.setLinear(nextPoint, linearPos);
@@ -540,6 +531,118 @@ public class GcodePreprocessorUtils {
         return segments;
     }
 
+    /**
+     * Generates the points along an arc into a buffer with the x, y and z value
+     * of each point after each other. The start point is excluded, but the end
+     * point is included, giving numPoints points. It generates the same points as
+     * {@link #generatePointsAlongArcBDring(Position, Position, Position, boolean, double, double, double, int, PlaneFormatter)}
+     * without creating an object for each point.
+     *
+     * @param p1 start position XYZ
+     * @param p2 end position XYZ
+     * @param center center of rotation
+     * @param isCw flag indicating clockwise or counter-clockwise
+     * @param radius radius of the arc
+     * @param startAngle beginning angle of arc
+     * @param sweep sweep length in radians
+     * @param numPoints number of points to generate
+     * @param plane helper to select values for arcs across different planes
+     * @param buffer a buffer to reuse for the points, may be null
+     * @return the given buffer or a new one if it wasn't large enough
+     */
+    public static double[] generatePointsAlongArc(
+            final Position p1,
+            final Position p2,
+            final Position center,
+            boolean isCw,
+            double radius,
+            double startAngle,
+            double sweep,
+            int numPoints,
+            PlaneFormatter plane,
+            double[] buffer) {
+
+        Preconditions.checkArgument(numPoints > 0, "Arcs must have at least 1 segment.");
+
+        double[] points = buffer;
+        if (points == null || points.length < numPoints * 3) {
+            points = new double[numPoints * 3];
+        }
+
+        Position nextPoint = new Position(p1);
+        double linearIncrement = (plane.linear(p2) - plane.linear(p1)) / numPoints;
+        double linearPos = plane.linear(nextPoint);
+
+        for (int i = 1; i < numPoints; i++) {
+            setPointAlongArc(nextPoint, center, isCw, radius, startAngle, sweep, numPoints, i, plane);
+
+            // Increment (optional) linear motions.
+            linearPos += linearIncrement;
+            plane.setLinear(nextPoint, linearPos);
+
+            points[(i - 1) * 3] = nextPoint.x;
+            points[(i - 1) * 3 + 1] = nextPoint.y;
+            points[(i - 1) * 3 + 2] = nextPoint.z;
+        }
+
+        points[(numPoints - 1) * 3] = p2.x;
+        points[(numPoints - 1) * 3 + 1] = p2.y;
+        points[(numPoints - 1) * 3 + 2] = p2.z;
+        return points;
+    }
+
+    /**
+     * Moves the point in the arc plane to the i:th of numPoints points along the arc.
+     */
+    private static void setPointAlongArc(
+            Position point,
+            final Position center,
+            boolean isCw,
+            double radius,
+            double startAngle,
+            double sweep,
+            int numPoints,
+            int i,
+            PlaneFormatter plane) {
+        double angle;
+        if (isCw) {
+            angle = (startAngle - i * sweep/numPoints);
+        } else {
+            angle = (startAngle + i * sweep/numPoints);
+        }
+
+        if (angle >= Math.PI * 2) {
+            angle = angle - Math.PI * 2;
+        }
+
+        plane.setAxis0(point, Math.cos(angle) * radius + plane.axis0(center));
+        plane.setAxis1(point, Math.sin(angle) * radius + plane.axis1(center));
+    }
+
+    /**
+     * Calculates how many line segments an arc needs to be split into so that
+     * the segments never deviate more than the given tolerance from the arc.
+     * This is the same approach as the arc tolerance setting ($12) in GRBL.
+     *
+     * @param radius the radius of the arc
+     * @param sweep the sweep of the arc in radians
+     * @param tolerance the maximum distance between a segment and the arc
+     * @return the number of segments, at least one
+     */
+    public static int getArcSegmentCount(double radius, double sweep, double tolerance) {
+        Preconditions.checkArgument(tolerance > 0, "The arc tolerance must be larger than zero.");
+
+        // The segments can never be further away from the arc than the radius
+        // but we still need two segments to not cut through the center
+        if (tolerance >= radius) {
+            return (int) Math.max(1, Math.ceil(sweep / Math.PI));
+        }
+
+        // The largest angle a segment can span without its middle being too far from the arc
+        double maxSegmentAngle = 2 * Math.acos(1 - tolerance / radius);
+        return (int) Math.max(1, Math.ceil(sweep / maxSegmentAngle));
+    }
+
     /**
      * Helper method for to convert IJK syntax to center point.
      *
@@ -627,7 +730,7 @@ public class GcodePreprocessorUtils {
      * Helper method for arc calculation to calculate sweep from two angles.
      * @return sweep in radians.
      */
-    static private double calculateSweep(double startAngle, double endAngle, boolean isCw) {
+    static public double calculateSweep(double startAngle, double endAngle, boolean isCw) {
         double sweep;
 
         // Full circle
@@ -24,6 +24,8 @@ import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 
+import java.util.Objects;
+
 import static com.willwinder.universalgcodesender.gcode.util.Code.*;
 
 /**
@@ -67,10 +69,19 @@ public class GcodeState {
 
     // Misc
     public double spindleSpeed = 0;
+
+    // Shared between copies of the state, replace it instead of modifying it
     public Position currentPoint = null;
     public int commandNumber = 0;
 
     public GcodeState() {
+        this(new Position(0, 0, 0, Units.MM));
+    }
+
+    /**
+     * Creates a state with the initial modes at the given point.
+     */
+    private GcodeState(Position currentPoint) {
         // GRBL initial state: [G0 G54 G17 G21 G90 G94 M0 M5 M9 T0 F0. S0.]
         this.currentMotionMode = G0;
         // TODO: Add WCS
@@ -80,11 +91,24 @@ public class GcodeState {
         this.speed = 0;
         this.spindleSpeed = 0;
 
-        this.currentPoint = new Position(0, 0, 0, Units.MM);
+        this.currentPoint = currentPoint;
     }
 
+    /**
+     * Creates a copy of the state. The current point is shared with the copy
+     * unless it needs to be converted to the units of the state.
+     *
+     * @return a copy of the state
+     */
     public GcodeState copy() {
-        GcodeState ret = new GcodeState();
+        Units stateUnits = getUnits();
+        GcodeState ret;
+        if (currentPoint == null || currentPoint.getUnits() == stateUnits) {
+            ret = new GcodeState(currentPoint);
+        } else {
+            ret = new GcodeState(new Position(currentPoint.x, currentPoint.y, currentPoint.z, currentPoint.a, currentPoint.b, currentPoint.c, stateUnits));
+        }
+
         ret.currentMotionMode = currentMotionMode;
         ret.plane = plane;
 
@@ -108,13 +132,40 @@ public class GcodeState {
 
         ret.coolant = coolant;
 
-        if (currentPoint != null) {
-            ret.currentPoint = new Position(currentPoint.x, currentPoint.y, currentPoint.z, currentPoint.a, currentPoint.b, currentPoint.c, getUnits());
-        }
         ret.commandNumber = commandNumber;
         return ret;
     }
 
+    /**
+     * Checks if a command would be parsed the same way in this and the other
+     * state, that is if everything except the command number is the same.
+     *
+     * @param other the state to compare with
+     * @return true if the states are equivalent
+     */
+    public boolean isEquivalent(GcodeState other) {
+        if (this == other) {
+            return true;
+        }
+
+        return other != null &&
+                currentMotionMode == other.currentMotionMode &&
+                plane == other.plane &&
+                inAbsoluteMode == other.inAbsoluteMode &&
+                distanceMode == other.distanceMode &&
+                inAbsoluteIJKMode == other.inAbsoluteIJKMode &&
+                arcDistanceMode == other.arcDistanceMode &&
+                feedMode == other.feedMode &&
+                Double.compare(speed, other.speed) == 0 &&
+                isMetric == other.isMetric &&
+                units == other.units &&
+                offset == other.offset &&
+                spindle == other.spindle &&
+                coolant == other.coolant &&
+                Double.compare(spindleSpeed, other.spindleSpeed) == 0 &&
+                Objects.equals(currentPoint, other.currentPoint);
+    }
+
     /**
      * Generate gcode to initialize spindle, coolant, and speeds.
      * @return a string of valid gcode like "F300.0S10000.0M3"
@@ -20,12 +20,59 @@ package com.willwinder.universalgcodesender.gcode;
 
 import com.willwinder.universalgcodesender.model.Position;
 
+import java.util.Map;
+import java.util.SortedMap;
+
 /**
+ * Statistics about a gcode program, all distances are in millimeters.
  *
  * @author wwinder
  */
 public interface GcodeStats {
+    /**
+     * @return the smallest coordinate of each axis, rotation axes that aren't used are NaN.
+     */
     Position getMin();
+
+    /**
+     * @return the largest coordinate of each axis, rotation axes that aren't used are NaN.
+     */
     Position getMax();
+
     long getCommandCount();
+
+    /**
+     * @return the total distance of the feed rate moves
+     */
+    double getCuttingDistance();
+
+    /**
+     * @return the total distance of the rapid moves
+     */
+    double getRapidDistance();
+
+    /**
+     * @return the cutting distance for each feed rate in millimeters per minute
+     */
+    SortedMap<Double, Double> getFeedRateDistances();
+
+    /**
+     * @return an estimate of the time in seconds of the feed rate moves, not including acceleration
+     */
+    default double getCuttingTime() {
+        double time = 0;
+        for (Map.Entry<Double, Double> entry : getFeedRateDistances().entrySet()) {
+            if (entry.getKey() > 0) {
+                time += entry.getValue() / entry.getKey() * 60;
+            }
+        }
+        return time;
+    }
+
+    int getToolChangeCount();
+
+    /**
+     * @return an estimate of the time in seconds the spindle is on while cutting
+     */
+    double getSpindleOnTime();
 }
@@ -71,4 +71,12 @@ public interface IGcodeParser {
      * @throws GcodeParserException 
      */
     List<String> preprocessCommand(String command, GcodeState initial) throws GcodeParserException;
+
+    /**
+     * Returns any commands the processors has held back, should be called after
+     * the last command of a program has been preprocessed.
+     * @return a collection of postprocessed commands
+     * @throws GcodeParserException
+     */
+    List<String> flushCommandProcessors() throws GcodeParserException;
 }
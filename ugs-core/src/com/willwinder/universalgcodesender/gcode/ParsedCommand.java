@@ -0,0 +1,206 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A command together with the result of parsing it in a given state: the words
+ * of the command, the meta objects with the resulting motions and the state
+ * after the command. This allows the parse results to be shared between the
+ * command processors instead of each of them parsing the command again.
+ *
+ * The command is parsed the first time any of the parse results are needed.
+ * A command created after another command, see {@link #fromCommands(List, GcodeState)},
+ * uses the state after the previous command which is also resolved when needed.
+ *
+ * The parse results and states are shared and must not be modified.
+ *
+ * @author wwinder
+ */
+public class ParsedCommand {
+    private final String command;
+
+    // The state the command is parsed in, or null until the previous command has been parsed.
+    private GcodeState startState;
+    private ParsedCommand previous;
+
+    private List<String> words;
+    private List<GcodeParser.GcodeMeta> meta;
+    private GcodeState state;
+
+    /**
+     * @param command    the command
+     * @param startState the state of the program before the command, a copy is made of it.
+     */
+    public ParsedCommand(String command, GcodeState startState) {
+        this.command = command;
+        this.startState = startState.copy();
+    }
+
+    private ParsedCommand(String command, ParsedCommand previous) {
+        this.command = command;
+        this.previous = previous;
+    }
+
+    /**
+     * Creates parsed commands for a sequence of commands where each command
+     * starts in the state after the previous one.
+     *
+     * @param commands   the commands
+     * @param startState the state before the first command
+     * @return a list with the parsed commands
+     */
+    public static List<ParsedCommand> fromCommands(List<String> commands, GcodeState startState) {
+        if (commands.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ParsedCommand> result = new ArrayList<>(commands.size());
+        ParsedCommand previous = new ParsedCommand(commands.get(0), startState);
+        result.add(previous);
+        for (int i = 1; i < commands.size(); i++) {
+            previous = new ParsedCommand(commands.get(i), previous);
+            result.add(previous);
+        }
+        return result;
+    }
+
+    /**
+     * Creates parsed commands for the result of processing the given command,
+     * if the command was returned unchanged its parse results are reused.
+     *
+     * @param original   the command which was processed
+     * @param commands   the resulting commands
+     * @param startState the state before the processed command
+     * @return a list with the parsed commands
+     * @throws GcodeParserException if the command before the processed command could not be parsed
+     */
+    public static List<ParsedCommand> fromCommands(ParsedCommand original, List<String> commands, GcodeState startState)
+            throws GcodeParserException {
+        if (commands.size() == 1 && commands.get(0).equals(original.getCommand()) && original.isParsedIn(startState)) {
+            return Collections.singletonList(original);
+        }
+        return fromCommands(commands, startState);
+    }
+
+    /**
+     * Serializes a list of parsed commands to text.
+     *
+     * @param commands the parsed commands
+     * @return a list with the text of each command
+     */
+    public static List<String> toCommands(List<ParsedCommand> commands) {
+        if (commands.size() == 1) {
+            return Collections.singletonList(commands.get(0).getCommand());
+        }
+
+        List<String> result = new ArrayList<>(commands.size());
+        for (ParsedCommand command : commands) {
+            result.add(command.getCommand());
+        }
+        return result;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the words of the command including any comments.
+     */
+    public List<String> getWords() {
+        if (words == null) {
+            words = Collections.unmodifiableList(GcodePreprocessorUtils.splitCommand(command));
+        }
+        return words;
+    }
+
+    /**
+     * Returns the meta objects of the gcodes in the command, the same as
+     * {@link GcodeParserUtils#processCommand(String, int, GcodeState)} would
+     * return for the command in the start state.
+     *
+     * @return the meta objects, empty if the command has no gcodes
+     * @throws GcodeParserException if the command could not be parsed
+     */
+    public List<GcodeParser.GcodeMeta> getMeta() throws GcodeParserException {
+        parse();
+        return meta;
+    }
+
+    /**
+     * @return the state of the program before the command
+     * @throws GcodeParserException if the previous command could not be parsed
+     */
+    public GcodeState getStartState() throws GcodeParserException {
+        if (startState == null) {
+            startState = previous.getState();
+            previous = null;
+        }
+        return startState;
+    }
+
+    /**
+     * @return the state of the program after the command
+     * @throws GcodeParserException if the command could not be parsed
+     */
+    public GcodeState getState() throws GcodeParserException {
+        parse();
+        return state;
+    }
+
+    /**
+     * Checks if the command was parsed in a state equivalent with the given
+     * state, if not the parse results can't be used for the given state.
+     *
+     * @param state the state to check
+     * @return true if the parse results are valid for the given state
+     * @throws GcodeParserException if the previous command could not be parsed
+     */
+    public boolean isParsedIn(GcodeState state) throws GcodeParserException {
+        return getStartState().isEquivalent(state);
+    }
+
+    private void parse() throws GcodeParserException {
+        if (state != null) {
+            return;
+        }
+
+        GcodeState start = getStartState();
+        if (getWords().isEmpty()) {
+            meta = Collections.emptyList();
+            state = start;
+        } else {
+            GcodeState next = start.copy();
+            meta = Collections.unmodifiableList(GcodeParserUtils.applyCommand(command, getWords(), 0, next));
+            state = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return command;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+/**
+ * A command processor which only moves the coordinates of the program in a way
+ * that can be described as an affine transformation. Adjacent processors of this
+ * type are combined by the {@link CommandProcessorList} so that each command only
+ * needs to be parsed once.
+ *
+ * @author wwinder
+ */
+public interface AffineCommandProcessor extends CommandProcessor {
+    /**
+     * Returns a processor which applies the same transformation as this processor.
+     * The same instance should be returned as long as the transformation is
+     * unchanged, the combined transformation is created again when a different
+     * instance is returned.
+     *
+     * @return the transformation of this processor
+     */
+    AffineTransformProcessor toAffineTransform();
+}
@@ -0,0 +1,467 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
+import com.willwinder.universalgcodesender.model.Axis;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.types.PointSegment;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.willwinder.universalgcodesender.gcode.util.Code.G1;
+import static com.willwinder.universalgcodesender.gcode.util.Code.G2;
+import static com.willwinder.universalgcodesender.gcode.util.Code.G3;
+import static com.willwinder.universalgcodesender.gcode.util.Code.G53;
+
+/**
+ * A processor which applies an affine transformation to the coordinates of the
+ * motion commands. Any number of translations, rotations, mirroring and scaling
+ * can be composed into one 4x4 matrix which is then applied with a single parse
+ * of each command.
+ *
+ * Arcs are kept as arcs as long as the transformation keeps their shape in the arc
+ * plane, if the plane is mirrored the arc direction is swapped. Otherwise the arc
+ * is expanded to line segments. Relative moves (G91) are transformed without the
+ * translation.
+ *
+ * The processor is immutable, all transformation methods returns a new processor.
+ *
+ * @author wwinder
+ */
+public class AffineTransformProcessor implements AffineCommandProcessor {
+    private static final double EPSILON = 0.000000001;
+    private static final double ARC_SEGMENT_LENGTH = 0.1;
+    private static final String AXES = "XYZ";
+    private static final String ARC_AXES = "IJK";
+    private static final DecimalFormatter FORMATTER = new DecimalFormatter(4);
+
+    /**
+     * A 4x4 matrix in row major order, the translation is in millimeters.
+     */
+    private final double[] matrix;
+
+    /**
+     * Creates an identity transformation.
+     */
+    public AffineTransformProcessor() {
+        this(identity());
+    }
+
+    private AffineTransformProcessor(double[] matrix) {
+        this.matrix = matrix;
+    }
+
+    /**
+     * Returns a transformation that first applies this transformation and then the given one.
+     *
+     * @param other the transformation to apply after this one
+     * @return a new composed transformation
+     */
+    public AffineTransformProcessor then(AffineTransformProcessor other) {
+        return then(other.matrix);
+    }
+
+    /**
+     * Adds a translation.
+     *
+     * @param offset the offset to move the coordinates
+     * @return a new transformation
+     */
+    public AffineTransformProcessor translate(Position offset) {
+        Position offsetMM = offset.getPositionIn(Units.MM);
+        return then(new double[]{
+                1, 0, 0, offsetMM.x,
+                0, 1, 0, offsetMM.y,
+                0, 0, 1, offsetMM.z,
+                0, 0, 0, 1});
+    }
+
+    /**
+     * Adds a rotation in the XY plane, clockwise for positive angles just like {@link Position#rotate(Position, double)}.
+     *
+     * @param center  the center of the rotation
+     * @param radians the rotation in radians
+     * @return a new transformation
+     */
+    public AffineTransformProcessor rotate(Position center, double radians) {
+        Position centerMM = center.getPositionIn(Units.MM);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        return then(new double[]{
+                cos, sin, 0, centerMM.x - cos * centerMM.x - sin * centerMM.y,
+                -sin, cos, 0, centerMM.y + sin * centerMM.x - cos * centerMM.y,
+                0, 0, 1, 0,
+                0, 0, 0, 1});
+    }
+
+    /**
+     * Adds a mirroring of the given axis.
+     *
+     * @param axis   the axis to mirror, must be X, Y or Z
+     * @param center the position to mirror around
+     * @return a new transformation
+     */
+    public AffineTransformProcessor mirror(Axis axis, PartialPosition center) {
+        if (!axis.isLinear()) {
+            throw new IllegalArgumentException("Only linear axes can be mirrored: " + axis);
+        }
+
+        int index = axis.ordinal();
+        double centerMM = center.getPositionIn(Units.MM).getAxis(axis);
+        double[] mirror = identity();
+        mirror[index * 4 + index] = -1;
+        mirror[index * 4 + 3] = 2 * centerMM;
+        return then(mirror);
+    }
+
+    /**
+     * Adds a scaling around origo.
+     *
+     * @param x the scale factor along the X axis
+     * @param y the scale factor along the Y axis
+     * @param z the scale factor along the Z axis
+     * @return a new transformation
+     */
+    public AffineTransformProcessor scale(double x, double y, double z) {
+        return then(new double[]{
+                x, 0, 0, 0,
+                0, y, 0, 0,
+                0, 0, z, 0,
+                0, 0, 0, 1});
+    }
+
+    /**
+     * @return true if this transformation will not change any coordinates
+     */
+    public boolean isIdentity() {
+        double[] identity = identity();
+        for (int i = 0; i < matrix.length; i++) {
+            if (Math.abs(matrix[i] - identity[i]) > EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public AffineTransformProcessor toAffineTransform() {
+        return this;
+    }
+
+    @Override
+    public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+        if (isIdentity()) {
+            return Collections.singletonList(command);
+        }
+        return ParsedCommand.toCommands(processCommand(new ParsedCommand(command, state), state));
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        if (isIdentity()) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        GcodeMeta motion = findMotion(parsedCommand.getMeta());
+        if (motion == null) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        String command = parsedCommand.getCommand();
+
+        String comment = GcodePreprocessorUtils.parseComment(command);
+        String rawCommand = GcodePreprocessorUtils.removeComment(command);
+        List<String> args = GcodePreprocessorUtils.splitCommand(rawCommand);
+
+        // Machine coordinates should not be transformed
+        SplitCommand split = GcodePreprocessorUtils.extractMotion(motion.code, rawCommand);
+        if (split == null || GcodePreprocessorUtils.getGCodes(args).contains(G53)) {
+            return Collections.singletonList(parsedCommand);
+        }
+
+        Units units = motion.state.getUnits();
+        double unitScale = UnitUtils.scaleUnits(Units.MM, units);
+        Position start = state.currentPoint.getPositionIn(units);
+        Position end = motion.point.point();
+
+        List<String> result;
+        if (motion.point.isArc() && !preservesArc(getPlane(motion.point))) {
+            result = expandArc(motion, split.remainder, start, end, unitScale);
+        } else {
+            StringBuilder sb = new StringBuilder();
+            appendMotion(sb, motion, args, start, end, unitScale);
+            sb.append(split.remainder);
+            result = Collections.singletonList(sb.toString());
+        }
+
+        if (StringUtils.isNotBlank(comment)) {
+            int last = result.size() - 1;
+            result = new ArrayList<>(result);
+            result.set(last, result.get(last) + "(" + comment + ")");
+        }
+        return ParsedCommand.fromCommands(result, state);
+    }
+
+    private void appendMotion(StringBuilder sb, GcodeMeta motion, List<String> args, Position start, Position end, double unitScale) {
+        PointSegment ps = motion.point;
+        Code code = motion.code;
+        Plane plane = getPlane(ps);
+
+        // A mirrored plane changes the direction of the arc
+        if (ps.isArc() && planeDeterminant(plane) < 0) {
+            code = code == G2 ? G3 : G2;
+        }
+        sb.append(code);
+
+        boolean[] affected = getAffectedAxes(args);
+        if (motion.state.inAbsoluteMode) {
+            double[] point = transformPoint(end, unitScale);
+            appendAxes(sb, AXES, point, affected);
+        } else {
+            double[] delta = transformVector(end.x - start.x, end.y - start.y, end.z - start.z);
+            appendAxes(sb, AXES, delta, affected);
+        }
+
+        // Nothing more to add for linear motions
+        if (!ps.isArc()) {
+            return;
+        }
+
+        boolean[] planeAxes = getPlaneAxes(plane);
+        double radius = GcodePreprocessorUtils.parseCoord(args, 'R');
+        if (!Double.isNaN(radius)) {
+            FORMATTER.format(radius * Math.sqrt(Math.abs(planeDeterminant(plane))), sb.append('R'));
+        } else if (motion.state.inAbsoluteIJKMode) {
+            appendAxes(sb, ARC_AXES, transformPoint(ps.center(), unitScale), planeAxes);
+        } else {
+            Position center = ps.center();
+            double[] offset = transformVector(center.x - start.x, center.y - start.y, center.z - start.z);
+            appendAxes(sb, ARC_AXES, offset, planeAxes);
+        }
+    }
+
+    /**
+     * Expands an arc to line segments, used when the transformation would distort the arc.
+     */
+    private List<String> expandArc(GcodeMeta motion, String remainder, Position start, Position end, double unitScale) {
+        PointSegment ps = motion.point;
+        List<Position> points = GcodePreprocessorUtils.generatePointsAlongArcBDring(
+                start, end, ps.center(), ps.isClockwise(), ps.getRadius(), 0,
+                ARC_SEGMENT_LENGTH, new PlaneFormatter(ps.getPlaneState()));
+
+        List<String> result = new ArrayList<>();
+        if (remainder.length() > 0) {
+            result.add(remainder);
+        }
+
+        boolean[] allAxes = {true, true, true};
+        Position previous = points.remove(0);
+        for (Position point : points) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(G1);
+            if (motion.state.inAbsoluteMode) {
+                appendAxes(sb, AXES, transformPoint(point, unitScale), allAxes);
+            } else {
+                appendAxes(sb, AXES, transformVector(point.x - previous.x, point.y - previous.y, point.z - previous.z), allAxes);
+            }
+            result.add(sb.toString());
+            previous = point;
+        }
+        return result;
+    }
+
+    private void appendAxes(StringBuilder sb, String letters, double[] values, boolean[] include) {
+        for (int i = 0; i < 3; i++) {
+            if (include[i]) {
+                FORMATTER.format(values[i], sb.append(letters.charAt(i)));
+            }
+        }
+    }
+
+    /**
+     * Finds the output axes that needs to be written, which are the ones
+     * that depends on any of the axes given in the command.
+     */
+    private boolean[] getAffectedAxes(List<String> args) {
+        boolean[] given = new boolean[3];
+        for (int i = 0; i < 3; i++) {
+            given[i] = !Double.isNaN(GcodePreprocessorUtils.parseCoord(args, AXES.charAt(i)));
+        }
+
+        boolean[] affected = new boolean[3];
+        for (int row = 0; row < 3; row++) {
+            for (int column = 0; column < 3; column++) {
+                if (given[column] && Math.abs(matrix[row * 4 + column]) > EPSILON) {
+                    affected[row] = true;
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * An arc can be kept if the plane isn't mixed with the linear axis and if
+     * it is only rotated, mirrored or uniformly scaled within the plane.
+     */
+    private boolean preservesArc(Plane plane) {
+        int[] axes = getPlaneIndexes(plane);
+        int a0 = axes[0];
+        int a1 = axes[1];
+        int linear = axes[2];
+
+        if (Math.abs(m(a0, linear)) > EPSILON || Math.abs(m(a1, linear)) > EPSILON ||
+                Math.abs(m(linear, a0)) > EPSILON || Math.abs(m(linear, a1)) > EPSILON) {
+            return false;
+        }
+
+        // The columns of the plane matrix must be orthogonal and of equal length
+        double dot = m(a0, a0) * m(a0, a1) + m(a1, a0) * m(a1, a1);
+        double length0 = m(a0, a0) * m(a0, a0) + m(a1, a0) * m(a1, a0);
+        double length1 = m(a0, a1) * m(a0, a1) + m(a1, a1) * m(a1, a1);
+        return Math.abs(dot) < EPSILON && Math.abs(length0 - length1) < EPSILON;
+    }
+
+    private double planeDeterminant(Plane plane) {
+        int[] axes = getPlaneIndexes(plane);
+        return m(axes[0], axes[0]) * m(axes[1], axes[1]) - m(axes[0], axes[1]) * m(axes[1], axes[0]);
+    }
+
+    private boolean[] getPlaneAxes(Plane plane) {
+        int[] axes = getPlaneIndexes(plane);
+        boolean[] result = new boolean[3];
+        result[axes[0]] = true;
+        result[axes[1]] = true;
+        return result;
+    }
+
+    private static Plane getPlane(PointSegment ps) {
+        if (!ps.isArc() || ps.getPlaneState() == null) {
+            return Plane.XY;
+        }
+        return ps.getPlaneState();
+    }
+
+    /**
+     * Returns the axis indexes of the plane as {axis0, axis1, linear}, see {@link PlaneFormatter}.
+     */
+    private static int[] getPlaneIndexes(Plane plane) {
+        switch (plane) {
+            case XY:
+                return new int[]{0, 1, 2};
+            case ZX:
+                return new int[]{2, 0, 1};
+            case YZ:
+                return new int[]{1, 2, 0};
+            default:
+                throw new IllegalArgumentException("Plane not supported: " + plane);
+        }
+    }
+
+    private double[] transformPoint(Position point, double unitScale) {
+        double[] result = transformVector(point.x, point.y, point.z);
+        result[0] += matrix[3] * unitScale;
+        result[1] += matrix[7] * unitScale;
+        result[2] += matrix[11] * unitScale;
+        return result;
+    }
+
+    private double[] transformVector(double x, double y, double z) {
+        return new double[]{
+                matrix[0] * x + matrix[1] * y + matrix[2] * z,
+                matrix[4] * x + matrix[5] * y + matrix[6] * z,
+                matrix[8] * x + matrix[9] * y + matrix[10] * z
+        };
+    }
+
+    private double m(int row, int column) {
+        return matrix[row * 4 + column];
+    }
+
+    private AffineTransformProcessor then(double[] next) {
+        double[] result = new double[16];
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                double sum = 0;
+                for (int i = 0; i < 4; i++) {
+                    sum += next[row * 4 + i] * matrix[i * 4 + column];
+                }
+                result[row * 4 + column] = sum;
+            }
+        }
+        return new AffineTransformProcessor(result);
+    }
+
+    private static double[] identity() {
+        return new double[]{
+                1, 0, 0, 0,
+                0, 1, 0, 0,
+                0, 0, 1, 0,
+                0, 0, 0, 1};
+    }
+
+    private static GcodeMeta findMotion(List<GcodeMeta> commands) {
+        if (commands == null) {
+            return null;
+        }
+
+        for (GcodeMeta meta : commands) {
+            if (meta.point == null) {
+                continue;
+            }
+
+            switch (meta.code) {
+                case G0:
+                case G1:
+                case G2:
+                case G3:
+                    return meta;
+                default:
+                    break;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + Arrays.toString(matrix);
+    }
+
+    @Override
+    public String getHelp() {
+        return "Transforms the coordinates of the model";
+    }
+}
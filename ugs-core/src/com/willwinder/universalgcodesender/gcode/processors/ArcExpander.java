@@ -19,20 +19,21 @@
 package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.google.common.collect.Iterables;
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import static com.willwinder.universalgcodesender.gcode.util.Code.G1;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
 import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 import com.willwinder.universalgcodesender.types.PointSegment;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -40,20 +41,39 @@ import java.util.List;
 /**
  * Expand an arc into smaller sections. You can configure the length of each
  * section, and whether it is expanded with a bunch of smaller arcs, or with
- * line segments.
+ * line segments. Alternatively an arc tolerance can be given, in which case
+ * the arc is split into as few sections as possible without any of them
+ * deviating more than the tolerance from the arc.
  *
  * @author wwinder
  */
 public class ArcExpander implements CommandProcessor {
     final private boolean convertToLines;
     final private double length;
-    final private DecimalFormat df;
+    final private double tolerance;
+    final private DecimalFormatter df;
+
+    /**
+     * The points of the last expanded arc, reused between commands on the same thread
+     * as the processor may be used by several threads at once.
+     */
+    private final ThreadLocal<double[]> pointBuffer = new ThreadLocal<>();
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + convertToLines + "," + length + "," + tolerance;
+    }
 
     @Override
     public String getHelp() {
-        return Localization.getString("sender.help.arcs") + "\n"
+        String help = Localization.getString("sender.help.arcs") + "\n"
                 + Localization.getString("sender.arcs.length")
                 + ": " + df.format(length);
+        if (tolerance > 0) {
+            help += "\n" + Localization.getString("sender.arcs.tolerance")
+                    + ": " + df.format(tolerance);
+        }
+        return help;
     }
 
     /**
@@ -61,20 +81,33 @@ public class ArcExpander implements CommandProcessor {
      * @param length the length of each smaller segment.
      */
     public ArcExpander(boolean convertToLines, double length) {
+        this(convertToLines, length, 0);
+    }
+
+    /**
+     * @param convertToLines toggles if smaller lines or arcs are returned.
+     * @param length the length of each smaller segment, not used if a tolerance is given.
+     * @param tolerance the maximum distance in millimeters between the smaller segments and the arc, or zero to use the segment length.
+     */
+    public ArcExpander(boolean convertToLines, double length, double tolerance) {
         this.convertToLines = convertToLines;
         this.length = length;
+        this.tolerance = tolerance;
 
         // Setup decimal formatter
-        df = new DecimalFormat("#.#########", Localization.dfs);
+        df = new DecimalFormatter(9);
     }
 
     @Override
     public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
-        if (state.currentPoint == null) throw new GcodeParserException(Localization.getString("parser.processor.arc.start-error"));
+        return ParsedCommand.toCommands(processCommand(new ParsedCommand(command, state), state));
+    }
 
-        List<String> results = new ArrayList<>();
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        if (state.currentPoint == null) throw new GcodeParserException(Localization.getString("parser.processor.arc.start-error"));
 
-        List<GcodeMeta> commands = GcodeParserUtils.processCommand(command, 0, state);
+        List<GcodeMeta> commands = command.getMeta();
 
         // If this is not an arc, there is nothing to do.
         Code c = hasArcCommand(commands);
@@ -82,39 +115,83 @@ public class ArcExpander implements CommandProcessor {
             return Collections.singletonList(command);
         }
 
-        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command);
-        if (sc.remainder.length() > 0) {
-            results.add(sc.remainder);
+        if (!convertToLines) {
+            // TODO: Generate arc segments.
+            throw new UnsupportedOperationException("I have not implemented this.");
         }
 
         GcodeMeta arcMeta = Iterables.getLast(commands);
         PointSegment ps = arcMeta.point;
         Position start = state.currentPoint;
-        Position end = arcMeta.point.point();
+        Position end = ps.point();
+        Position center = ps.center();
+        PlaneFormatter plane = new PlaneFormatter(ps.getPlaneState());
 
-        List<Position> points = GcodePreprocessorUtils.generatePointsAlongArcBDring(
-                start, end, ps.center(), ps.isClockwise(),
-                ps.getRadius(), 0, this.length, new PlaneFormatter(ps.getPlaneState()));
+        double radius = ps.getRadius();
+        if (radius == 0) {
+            radius = Math.hypot(plane.axis0(start) - plane.axis0(center), plane.axis1(start) - plane.axis1(center));
+        }
+        double startAngle = GcodePreprocessorUtils.getAngle(center, start, plane);
+        double endAngle = GcodePreprocessorUtils.getAngle(center, end, plane);
+        double sweep = GcodePreprocessorUtils.calculateSweep(startAngle, endAngle, ps.isClockwise());
+        int numPoints = getSegmentCount(radius, sweep, state);
 
-        // That function returns the first and last points. Exclude the first
-        // point because the previous gcode command ends there already.
-        points.remove(0);
+        double[] points = GcodePreprocessorUtils.generatePointsAlongArc(
+                start, end, center, ps.isClockwise(), radius, startAngle, sweep, numPoints, plane, pointBuffer.get());
+        pointBuffer.set(points);
+
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(c, command.getCommand());
+        List<String> results = new ArrayList<>(numPoints + 1);
+        if (sc.remainder.length() > 0) {
+            results.add(sc.remainder);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        double previousX = start.x;
+        double previousY = start.y;
+        double previousZ = start.z;
+        for (int i = 0; i < numPoints * 3; i += 3) {
+            sb.setLength(0);
+            sb.append(G1);
+            if (state.inAbsoluteMode) {
+                appendAxis(sb, 'X', points[i]);
+                appendAxis(sb, 'Y', points[i + 1]);
+                appendAxis(sb, 'Z', points[i + 2]);
+            } else {
+                appendAxis(sb, 'X', points[i] - previousX);
+                appendAxis(sb, 'Y', points[i + 1] - previousY);
+                appendAxis(sb, 'Z', points[i + 2] - previousZ);
+                previousX = points[i];
+                previousY = points[i + 1];
+                previousZ = points[i + 2];
+            }
 
-        if (convertToLines) {
             // Tack the speed onto the first line segment in case the arc also
             // changed the feed value.
-            String feed = "F" + arcMeta.point.getSpeed();
-            for (Position point : points) {
-                results.add(GcodePreprocessorUtils.generateLineFromPoints(G1, start, point, state.inAbsoluteMode, df) + feed);
-                start = point;
-                feed = "";
+            if (i == 0) {
+                sb.append("F").append(ps.getSpeed());
             }
-        } else {
-            // TODO: Generate arc segments.
-            throw new UnsupportedOperationException("I have not implemented this.");
+            results.add(sb.toString());
+        }
+
+        return ParsedCommand.fromCommands(results, state);
+    }
+
+    private int getSegmentCount(double radius, double sweep, GcodeState state) {
+        if (tolerance > 0) {
+            // The tolerance is given in millimeters while the radius is in the units of the program
+            double toleranceInProgramUnits = tolerance * UnitUtils.scaleUnits(Units.MM, state.getUnits());
+            return GcodePreprocessorUtils.getArcSegmentCount(radius, sweep, toleranceInProgramUnits);
+        } else if (length > 0) {
+            return (int) Math.max(1, Math.ceil(sweep * radius / length));
         }
+        return 20;
+    }
 
-        return results;
+    private void appendAxis(StringBuilder sb, char axis, double value) {
+        if (!Double.isNaN(value)) {
+            df.format(value, sb.append(axis));
+        }
     }
 
     private static Code hasArcCommand(List<GcodeMeta> commands) {
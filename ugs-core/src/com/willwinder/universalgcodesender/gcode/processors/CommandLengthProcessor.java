@@ -37,6 +37,11 @@ public class CommandLengthProcessor implements CommandProcessor {
         this.length = length;
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + length;
+    }
+
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.command.length") + "\n" +
@@ -21,8 +21,10 @@
  */
 package com.willwinder.universalgcodesender.gcode.processors;
 
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,6 +41,66 @@ public interface CommandProcessor {
      */
     List<String> processCommand(String command, GcodeState state) throws GcodeParserException;
 
+    /**
+     * Given a parsed command and the current state of a program returns a
+     * replacement list of parsed commands. Processors which need to parse the
+     * command should override this method to use the parse results of the
+     * command and let {@link #processCommand(String, GcodeState)} parse the
+     * command and delegate to this method.
+     *
+     * Unchanged commands should be returned as they are, so that they don't
+     * need to be parsed again by the following processors.
+     * @param command Input gcode, parsed in the given state.
+     * @param state State of the gcode parser when the command will run.
+     * @return One or more parsed gcode commands to replace the original command with.
+     */
+    default List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) throws GcodeParserException {
+        return ParsedCommand.fromCommands(command, processCommand(command.getCommand(), state), state);
+    }
+
+    /**
+     * Called after the last command of a program has been processed. Processors
+     * which hold back commands to combine them with the following commands
+     * should return them here.
+     * @param state State of the gcode parser after the last command.
+     * @return Any remaining gcode commands.
+     */
+    default List<String> flush(GcodeState state) throws GcodeParserException {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns how many of the given commands are held back to be combined with
+     * the following commands. Held back commands are returned before the result
+     * of the command that releases them.
+     * @return the number of held back commands
+     */
+    default int getHeldBackCommandCount() {
+        return 0;
+    }
+
+    /**
+     * Returns true if the result of processing a command only depends on the
+     * command and the given state. This makes it possible to continue
+     * processing a program from the state at any line, which is used for only
+     * processing the modified part of a reloaded file. Processors which keep
+     * information between commands should return false.
+     * @return true if the processor doesn't keep any information between commands
+     */
+    default boolean isStateless() {
+        return true;
+    }
+
+    /**
+     * Returns a key identifying the processor and its configuration. Files
+     * processed with processors having the same keys are considered equal,
+     * which allows the result to be reused.
+     * @return the key, or null if the result of the processor can't be reused
+     */
+    default String getCacheKey() {
+        return null;
+    }
+
     /**
      * Returns information about the current command and its configuration.
      * @return 
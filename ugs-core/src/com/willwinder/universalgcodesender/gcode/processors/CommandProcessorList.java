@@ -1,12 +1,11 @@
 package com.willwinder.universalgcodesender.gcode.processors;
 
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Spliterator;
@@ -16,6 +15,12 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
 
     private List<CommandProcessor> commandProcessors = new ArrayList<>();
 
+    // The processors to run where adjacent affine transformations have been combined, created when needed.
+    private List<CommandProcessor> combinedProcessors = null;
+
+    // The transformations of the affine processors when they were combined, used for detecting changes.
+    private List<AffineTransformProcessor> combinedTransforms = null;
+
     /**
      * Applies all command processors to a given command and returns the
      * resulting GCode. Does not change the parser state.
@@ -30,65 +35,177 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
      */
     @Override
     public List<String> processCommand(String command, final GcodeState initialState) throws GcodeParserException {
+        if (getCombinedProcessors().isEmpty()) {
+            return Collections.singletonList(command);
+        }
+        return ParsedCommand.toCommands(processCommand(new ParsedCommand(command, initialState), initialState));
+    }
+
+    /**
+     * Applies all command processors to a parsed command. The parse results
+     * are passed between the processors so that commands are only parsed again
+     * when they have been changed.
+     */
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand command, final GcodeState initialState) throws GcodeParserException {
+        return process(Collections.singletonList(command), 0, initialState);
+    }
+
+    /**
+     * Flushes each processor in sequence, any commands returned by a processor
+     * are passed through the processors following it.
+     */
+    @Override
+    public List<String> flush(final GcodeState state) throws GcodeParserException {
         List<String> ret = new ArrayList<>();
-        ret.add(command);
-        GcodeState tempState;
-        for (CommandProcessor p : commandProcessors) {
+        List<CommandProcessor> processors = getCombinedProcessors();
+        for (int i = 0; i < processors.size(); i++) {
+            List<String> flushed = processors.get(i).flush(state);
+            if (!flushed.isEmpty()) {
+                ret.addAll(ParsedCommand.toCommands(process(ParsedCommand.fromCommands(flushed, state), i + 1, state)));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Passes the commands through the processors starting with the given
+     * processor index.
+     */
+    private List<ParsedCommand> process(List<ParsedCommand> commands, int firstProcessor, final GcodeState initialState)
+            throws GcodeParserException {
+        List<ParsedCommand> ret = commands;
+        List<CommandProcessor> processors = getCombinedProcessors();
+        for (int p = firstProcessor; p < processors.size(); p++) {
+            CommandProcessor processor = processors.get(p);
+            List<ParsedCommand> result = new ArrayList<>(ret.size());
+
             // Reset point segments after each pass. The final pass is what we will return.
-            tempState = initialState.copy();
-            // Process each command in the list and add results to the end.
+            GcodeState tempState = initialState;
+
+            // Process each command in the list.
             // Don't re-process the results with the same preprocessor.
-            for (int i = ret.size(); i > 0; i--) {
+            for (ParsedCommand command : ret) {
+                // Continue from the state after the previous results, only parsed when needed
+                if (!result.isEmpty()) {
+                    tempState = result.get(result.size() - 1).getState();
+                }
+
                 // The arc expander changes the lastGcodeCommand which causes the following to fail:
                 // G2 Y-0.7 J-14.7
                 // Y28.7 J14.7 (this line treated as a G1)
-                tempState.currentMotionMode = initialState.currentMotionMode;
-                List<String> intermediate = p.processCommand(ret.remove(0), tempState);
+                if (tempState.currentMotionMode != initialState.currentMotionMode) {
+                    tempState = tempState.copy();
+                    tempState.currentMotionMode = initialState.currentMotionMode;
+                }
 
-                // process results to update the state and collect PointSegments
-                for(String c : intermediate) {
-                    tempState = testState(c, tempState);
+                // The processors expect the command to be parsed in the state they are given
+                if (!command.isParsedIn(tempState)) {
+                    command = new ParsedCommand(command.getCommand(), tempState);
                 }
 
-                ret.addAll(intermediate);
+                result.addAll(processor.processCommand(command, tempState));
             }
+            ret = result;
         }
 
         return ret;
     }
 
+    @Override
+    public int getHeldBackCommandCount() {
+        return commandProcessors.stream().mapToInt(CommandProcessor::getHeldBackCommandCount).sum();
+    }
+
+    @Override
+    public boolean isStateless() {
+        return commandProcessors.stream().allMatch(CommandProcessor::isStateless);
+    }
+
+    /**
+     * Returns the keys of all processors in order, or null if any of them
+     * can't be cached.
+     */
+    @Override
+    public String getCacheKey() {
+        StringBuilder key = new StringBuilder();
+        for (CommandProcessor processor : commandProcessors) {
+            String processorKey = processor.getCacheKey();
+            if (processorKey == null) {
+                return null;
+            }
+            key.append(processorKey).append('\n');
+        }
+        return key.toString();
+    }
+
     @Override
     public String getHelp() {
         return "Combines several processors and runs them in sequence";
     }
 
     /**
-     * Helper to statically process the next step in a program without modifying the parser.
+     * Combines adjacent affine command processors into a single transformation
+     * so that each command only needs to be parsed once for all of them. The
+     * processors are combined again if any of their transformations has changed.
      */
-    static private GcodeState testState(String command, GcodeState state) throws GcodeParserException {
-        GcodeState ret = state;
-
-        // Add command get meta doesn't update the state, so we need to do that manually.
-        Collection<GcodeParser.GcodeMeta> metaObjects = GcodeParserUtils.processCommand(command, 0, state);
-        if (metaObjects != null) {
-            for (GcodeParser.GcodeMeta c : metaObjects) {
-                if (c.state != null) {
-                    ret = c.state;
+    private List<CommandProcessor> getCombinedProcessors() {
+        if (combinedProcessors == null || hasChangedTransforms()) {
+            List<CommandProcessor> result = new ArrayList<>();
+            List<AffineCommandProcessor> transforms = new ArrayList<>();
+            combinedTransforms = new ArrayList<>();
+            for (CommandProcessor p : commandProcessors) {
+                if (p instanceof AffineCommandProcessor) {
+                    transforms.add((AffineCommandProcessor) p);
+                    combinedTransforms.add(((AffineCommandProcessor) p).toAffineTransform());
+                } else {
+                    addCombinedTransforms(transforms, result);
+                    result.add(p);
                 }
             }
+            addCombinedTransforms(transforms, result);
+            combinedProcessors = result;
         }
+        return combinedProcessors;
+    }
 
-        return ret;
+    /**
+     * Affine processors returns a new transformation instance when they are changed
+     */
+    private boolean hasChangedTransforms() {
+        int i = 0;
+        for (CommandProcessor p : commandProcessors) {
+            if (p instanceof AffineCommandProcessor && ((AffineCommandProcessor) p).toAffineTransform() != combinedTransforms.get(i++)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addCombinedTransforms(List<AffineCommandProcessor> transforms, List<CommandProcessor> result) {
+        if (transforms.size() == 1) {
+            // Keep single processors as they are
+            result.add(transforms.get(0));
+        } else if (transforms.size() > 1) {
+            AffineTransformProcessor transform = new AffineTransformProcessor();
+            for (AffineCommandProcessor p : transforms) {
+                transform = transform.then(p.toAffineTransform());
+            }
+            result.add(transform);
+        }
+        transforms.clear();
     }
 
     public void add(CommandProcessor processor) {
         if(!commandProcessors.contains(processor)) {
             commandProcessors.add(processor);
+            combinedProcessors = null;
         }
     }
 
     public void remove(CommandProcessor processor) {
         commandProcessors.remove(processor);
+        combinedProcessors = null;
     }
 
     public int size() {
@@ -97,6 +214,7 @@ public class CommandProcessorList implements CommandProcessor, Iterable<CommandP
 
     public void clear() {
         commandProcessors.clear();
+        combinedProcessors = null;
     }
 
     @Override
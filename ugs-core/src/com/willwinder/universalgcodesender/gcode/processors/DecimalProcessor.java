@@ -41,6 +41,11 @@ public class DecimalProcessor implements CommandProcessor {
         this.numDecimals = numDecimals;
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + numDecimals;
+    }
+
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.truncate") + "\n"
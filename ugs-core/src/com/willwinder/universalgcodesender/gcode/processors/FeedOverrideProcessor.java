@@ -38,6 +38,11 @@ public class FeedOverrideProcessor implements CommandProcessor {
         this.percentOverride = percentOverride;
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + percentOverride;
+    }
+
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.speed.override") + "\n"
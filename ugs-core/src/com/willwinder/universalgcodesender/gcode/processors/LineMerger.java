@@ -0,0 +1,561 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.willwinder.universalgcodesender.gcode.util.Code.G1;
+
+/**
+ * Merges runs of consecutive G1 commands where the points are on a line, within
+ * a tolerance, into a single command. Optionally runs of points on a circle in
+ * the XY plane can be replaced with an arc (G2/G3). This is intended for
+ * programs with lots of very short moves, like 3D finishing passes or image
+ * engravings, which otherwise can saturate the controller planner and the
+ * connection.
+ *
+ * Only absolute moves with axis, feed rate and spindle speed words are merged
+ * and the feed rate and spindle speed must be the same for the whole run. Any
+ * other command ends the current run.
+ *
+ * The commands of a run are held back until the run ends, so the processor
+ * needs to be flushed after the last command of a program. For the same reason
+ * it should be the last of the processors and isn't suited for processing
+ * commands while they are being streamed.
+ *
+ * @author wwinder
+ */
+public class LineMerger implements CommandProcessor {
+    private static final Logger LOGGER = Logger.getLogger(LineMerger.class.getName());
+    private static final double EPSILON = 0.000001;
+    private static final int MAX_RUN_LENGTH = 500;
+    private static final int MIN_ARC_SEGMENTS = 4;
+    private static final DecimalFormatter FORMATTER = new DecimalFormatter(4);
+
+    private final double toleranceMM;
+    private final boolean fitArcs;
+
+    /**
+     * The command being processed, reused between commands
+     */
+    private final Move move = new Move();
+
+    // The current run of moves, the first point is where the run starts
+    private final List<String> runCommands = new ArrayList<>();
+    private final double[] runPoints = new double[(MAX_RUN_LENGTH + 1) * 3];
+    private final String[] runAxisWords = new String[3];
+    private int runLength = 0;
+    private String runMotionWord;
+    private String runPrefix;
+    private double runFeed;
+    private double runSpindleSpeed;
+    private double runTolerance;
+    private Plane runPlane;
+    private boolean runAbsoluteIJK;
+    private Fit runFit;
+    private double arcCenterX;
+    private double arcCenterY;
+    private boolean arcClockwise;
+
+    // Set when an arc has replaced G1 commands, the modal G1 must then be restored
+    private boolean motionModeChanged = false;
+
+    private long inputCommands = 0;
+    private long inputBytes = 0;
+    private long outputCommands = 0;
+    private long outputBytes = 0;
+
+    /**
+     * What the points of a run can be replaced with.
+     */
+    private enum Fit {
+        /**
+         * The points of the run doesn't fit a line, but might fit an arc once there are more of them
+         */
+        NONE,
+        LINE,
+        ARC
+    }
+
+    /**
+     * A parsed G1 command.
+     */
+    private static class Move {
+        private final String[] axisWords = new String[3];
+        private final double[] point = new double[3];
+        private String motionWord;
+        private final StringBuilder prefix = new StringBuilder();
+        private double feed;
+        private double spindleSpeed;
+    }
+
+    /**
+     * @param toleranceMM the maximum distance in millimeters a point may be moved when merging commands.
+     * @param fitArcs     if runs of points on a circle should be replaced with arcs.
+     */
+    public LineMerger(double toleranceMM, boolean fitArcs) {
+        if (toleranceMM <= 0) {
+            throw new IllegalArgumentException("The tolerance must be larger than zero.");
+        }
+        this.toleranceMM = toleranceMM;
+        this.fitArcs = fitArcs;
+    }
+
+    @Override
+    public boolean isStateless() {
+        // Moves are held back between commands to be merged with the following moves
+        return false;
+    }
+
+    @Override
+    public int getHeldBackCommandCount() {
+        return runCommands.size();
+    }
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + toleranceMM + "," + fitArcs;
+    }
+
+    @Override
+    public String getHelp() {
+        return "Merge consecutive G1 commands on a line" + (fitArcs ? " or an arc" : "")
+                + " with a tolerance of " + toleranceMM + "mm.";
+    }
+
+    @Override
+    public List<String> processCommand(String command, GcodeState state) {
+        inputCommands++;
+        inputBytes += command.length();
+
+        List<String> result = new ArrayList<>(2);
+        if (!parseMove(command, state)) {
+            endRun(result);
+            result.add(restoreMotionMode(command));
+        } else if (runLength > 0 && extendsRun()) {
+            addToRun(command);
+        } else {
+            endRun(result);
+            startRun(command, state);
+        }
+
+        countOutput(result);
+        return result;
+    }
+
+    @Override
+    public List<String> flush(GcodeState state) {
+        List<String> result = new ArrayList<>(1);
+        endRun(result);
+        countOutput(result);
+        motionModeChanged = false;
+
+        if (inputCommands > 0) {
+            LOGGER.log(Level.INFO, String.format("Merged %d commands (%d bytes) into %d commands (%d bytes)",
+                    inputCommands, inputBytes, outputCommands, outputBytes));
+        }
+        inputCommands = 0;
+        inputBytes = 0;
+        outputCommands = 0;
+        outputBytes = 0;
+        return result;
+    }
+
+    /**
+     * @return the number of commands given to the processor since it was last flushed.
+     */
+    public long getInputCommandCount() {
+        return inputCommands;
+    }
+
+    /**
+     * @return the number of bytes given to the processor since it was last flushed.
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return the number of commands returned by the processor since it was last flushed.
+     */
+    public long getOutputCommandCount() {
+        return outputCommands;
+    }
+
+    /**
+     * @return the number of bytes returned by the processor since it was last flushed.
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    private void countOutput(List<String> result) {
+        for (String line : result) {
+            outputCommands++;
+            outputBytes += line.length();
+        }
+    }
+
+    /**
+     * Parses the command into the move if it can be merged.
+     *
+     * @return true if the command is a move that can be merged
+     */
+    private boolean parseMove(String command, GcodeState state) {
+        if (!state.inAbsoluteMode || state.currentPoint == null) {
+            return false;
+        }
+
+        // Keep any comments as they are
+        if (command.indexOf('(') >= 0 || command.indexOf(';') >= 0 || command.indexOf('%') >= 0) {
+            return false;
+        }
+
+        move.axisWords[0] = move.axisWords[1] = move.axisWords[2] = null;
+        move.point[0] = state.currentPoint.x;
+        move.point[1] = state.currentPoint.y;
+        move.point[2] = state.currentPoint.z;
+        move.motionWord = null;
+        move.prefix.setLength(0);
+        move.feed = state.speed;
+        move.spindleSpeed = state.spindleSpeed;
+
+        boolean hasAxis = false;
+        for (String word : GcodePreprocessorUtils.splitCommand(command)) {
+            if (word.length() < 2) {
+                return false;
+            }
+
+            double value;
+            try {
+                value = Double.parseDouble(word.substring(1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+
+            switch (Character.toUpperCase(word.charAt(0))) {
+                case 'G':
+                    if (value != 1 || move.motionWord != null) {
+                        return false;
+                    }
+                    move.motionWord = word;
+                    break;
+                case 'X':
+                case 'Y':
+                case 'Z':
+                    int axis = Character.toUpperCase(word.charAt(0)) - 'X';
+                    move.axisWords[axis] = word;
+                    move.point[axis] = value;
+                    hasAxis = true;
+                    break;
+                case 'F':
+                    move.feed = value;
+                    move.prefix.append(word);
+                    break;
+                case 'S':
+                    move.spindleSpeed = value;
+                    move.prefix.append(word);
+                    break;
+                default:
+                    return false;
+            }
+        }
+
+        return hasAxis && (move.motionWord != null || state.currentMotionMode == G1);
+    }
+
+    private void startRun(String command, GcodeState state) {
+        runCommands.clear();
+        runCommands.add(command);
+        runPoints[0] = state.currentPoint.x;
+        runPoints[1] = state.currentPoint.y;
+        runPoints[2] = state.currentPoint.z;
+        System.arraycopy(move.point, 0, runPoints, 3, 3);
+        System.arraycopy(move.axisWords, 0, runAxisWords, 0, 3);
+        runLength = 1;
+
+        runMotionWord = move.motionWord;
+        runPrefix = move.prefix.toString();
+        runFeed = move.feed;
+        runSpindleSpeed = move.spindleSpeed;
+        runTolerance = toleranceMM * UnitUtils.scaleUnits(Units.MM, state.getUnits());
+        runPlane = state.plane;
+        runAbsoluteIJK = state.inAbsoluteIJKMode;
+        runFit = Fit.LINE;
+    }
+
+    private void addToRun(String command) {
+        runCommands.add(command);
+        runLength++;
+        System.arraycopy(move.point, 0, runPoints, runLength * 3, 3);
+        for (int i = 0; i < 3; i++) {
+            if (move.axisWords[i] != null) {
+                runAxisWords[i] = move.axisWords[i];
+            }
+        }
+    }
+
+    /**
+     * Checks if the current run together with the move still is a line or an arc.
+     */
+    private boolean extendsRun() {
+        if (runLength >= MAX_RUN_LENGTH || move.feed != runFeed || move.spindleSpeed != runSpindleSpeed) {
+            return false;
+        }
+
+        if (fitsLine()) {
+            runFit = Fit.LINE;
+            return true;
+        } else if (fitArcs && fitsArc()) {
+            runFit = Fit.ARC;
+            return true;
+        } else if (fitArcs && runLength + 1 < MIN_ARC_SEGMENTS && isPlanar()) {
+            // Too few points to tell if it is an arc yet
+            runFit = Fit.NONE;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks that all points of the run are within the tolerance from a line
+     * between the start of the run and the end of the move, without turning back.
+     */
+    private boolean fitsLine() {
+        double dx = move.point[0] - runPoints[0];
+        double dy = move.point[1] - runPoints[1];
+        double dz = move.point[2] - runPoints[2];
+        double lengthSquared = dx * dx + dy * dy + dz * dz;
+        if (lengthSquared < EPSILON) {
+            return false;
+        }
+
+        double previousT = 0;
+        for (int i = 1; i <= runLength; i++) {
+            double px = runPoints[i * 3] - runPoints[0];
+            double py = runPoints[i * 3 + 1] - runPoints[1];
+            double pz = runPoints[i * 3 + 2] - runPoints[2];
+
+            // How far along the line the point is
+            double t = (px * dx + py * dy + pz * dz) / lengthSquared;
+            if (t < previousT || t > 1) {
+                return false;
+            }
+
+            double ex = t * dx - px;
+            double ey = t * dy - py;
+            double ez = t * dz - pz;
+            if (ex * ex + ey * ey + ez * ez > runTolerance * runTolerance) {
+                return false;
+            }
+            previousT = t;
+        }
+        return true;
+    }
+
+    /**
+     * Checks that all points of the run are within the tolerance from an arc
+     * in the XY plane between the start of the run and the end of the move.
+     * The arc goes through the start, the middle and the end point.
+     */
+    private boolean fitsArc() {
+        int segments = runLength + 1;
+        if (segments < MIN_ARC_SEGMENTS || !isPlanar()) {
+            return false;
+        }
+
+        double sx = runPoints[0];
+        double sy = runPoints[1];
+
+        // Find the center of the circle through the start, middle and end points
+        int middle = segments / 2;
+        double ax = getRunPoint(middle, 0) - sx;
+        double ay = getRunPoint(middle, 1) - sy;
+        double bx = move.point[0] - sx;
+        double by = move.point[1] - sy;
+        double d = 2 * (ax * by - ay * bx);
+        if (Math.abs(d) < EPSILON) {
+            return false;
+        }
+
+        double a2 = ax * ax + ay * ay;
+        double b2 = bx * bx + by * by;
+        double cx = sx + (by * a2 - ay * b2) / d;
+        double cy = sy + (ax * b2 - bx * a2) / d;
+        double radius = Math.hypot(sx - cx, sy - cy);
+
+        double previousAngle = Math.atan2(sy - cy, sx - cx);
+        double sweep = 0;
+        for (int i = 1; i <= segments; i++) {
+            double x = getRunPoint(i, 0);
+            double y = getRunPoint(i, 1);
+            if (Math.abs(Math.hypot(x - cx, y - cy) - radius) > runTolerance) {
+                return false;
+            }
+
+            double angle = Math.atan2(y - cy, x - cx);
+            double delta = angle - previousAngle;
+            if (delta > Math.PI) {
+                delta -= 2 * Math.PI;
+            } else if (delta <= -Math.PI) {
+                delta += 2 * Math.PI;
+            }
+
+            // All points must go in the same direction
+            if (Math.abs(delta) < EPSILON || (sweep != 0 && Math.signum(delta) != Math.signum(sweep))) {
+                return false;
+            }
+
+            // The arc between two points must not bulge too far from the original line
+            if (radius * (1 - Math.cos(delta / 2)) > runTolerance) {
+                return false;
+            }
+
+            sweep += delta;
+            previousAngle = angle;
+        }
+
+        if (Math.abs(sweep) >= 2 * Math.PI - EPSILON) {
+            return false;
+        }
+
+        arcCenterX = cx;
+        arcCenterY = cy;
+        arcClockwise = sweep < 0;
+        return true;
+    }
+
+    /**
+     * Checks that the run together with the move is in the XY plane.
+     */
+    private boolean isPlanar() {
+        if (runPlane != Plane.XY) {
+            return false;
+        }
+
+        for (int i = 1; i <= runLength + 1; i++) {
+            if (Math.abs(getRunPoint(i, 2) - runPoints[2]) > EPSILON) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an axis value of a point in the run, where the point after
+     * the last one in the run is the move being added.
+     */
+    private double getRunPoint(int index, int axis) {
+        if (index > runLength) {
+            return move.point[axis];
+        }
+        return runPoints[index * 3 + axis];
+    }
+
+    private void endRun(List<String> result) {
+        if (runLength == 0) {
+            return;
+        }
+
+        if (runLength == 1 || runFit == Fit.NONE) {
+            for (String command : runCommands) {
+                result.add(restoreMotionMode(command));
+            }
+        } else if (runFit == Fit.ARC) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(arcClockwise ? "G2" : "G3").append(runPrefix);
+            sb.append(runAxisWords[0]).append(runAxisWords[1]);
+            double i = runAbsoluteIJK ? arcCenterX : arcCenterX - runPoints[0];
+            double j = runAbsoluteIJK ? arcCenterY : arcCenterY - runPoints[1];
+            FORMATTER.format(i, sb.append('I'));
+            FORMATTER.format(j, sb.append('J'));
+            result.add(sb.toString());
+            motionModeChanged = true;
+        } else {
+            StringBuilder sb = new StringBuilder();
+            if (runMotionWord != null) {
+                sb.append(runMotionWord);
+            }
+            sb.append(runPrefix);
+            for (String axisWord : runAxisWords) {
+                if (axisWord != null) {
+                    sb.append(axisWord);
+                }
+            }
+            result.add(restoreMotionMode(sb.toString()));
+        }
+
+        runLength = 0;
+        runCommands.clear();
+    }
+
+    /**
+     * If an arc has been added in place of G1 commands, the following commands
+     * relying on the modal G1 needs it to be added again.
+     */
+    private String restoreMotionMode(String command) {
+        if (!motionModeChanged) {
+            return command;
+        }
+
+        boolean hasAxis = false;
+        for (String word : GcodePreprocessorUtils.splitCommand(GcodePreprocessorUtils.removeComment(command))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            char letter = Character.toUpperCase(word.charAt(0));
+            if (letter == 'G') {
+                double code;
+                try {
+                    code = Double.parseDouble(word.substring(1));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+
+                if (code <= 3 || code == 80 || (code > 38 && code < 39)) {
+                    // The command sets its own motion mode
+                    motionModeChanged = false;
+                    return command;
+                } else if (code == 10 || code == 28 || code == 30 || code == 92) {
+                    // The axis words belongs to the non modal command
+                    return command;
+                }
+            } else if ("XYZABC".indexOf(letter) >= 0) {
+                hasAxis = true;
+            }
+        }
+
+        if (hasAxis) {
+            motionModeChanged = false;
+            return G1.name() + command;
+        }
+        return command;
+    }
+}
@@ -19,15 +19,14 @@
 package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.google.common.collect.Iterables;
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.SplitCommand;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import static com.willwinder.universalgcodesender.gcode.util.Code.*;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.model.Position;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -48,6 +47,11 @@ public class LineSplitter implements CommandProcessor {
         this.maxSegmentLength = segmentLength;
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + maxSegmentLength;
+    }
+
     @Override
     public String getHelp() {
         return "Split G0 and G1 commands into multiple commands.";
@@ -68,16 +72,21 @@ public class LineSplitter implements CommandProcessor {
 
     @Override
     public List<String> processCommand(String commandString, GcodeState state) throws GcodeParserException {
-        List<GcodeParser.GcodeMeta> commands = GcodeParserUtils.processCommand(commandString, 0, state);
+        return ParsedCommand.toCommands(processCommand(new ParsedCommand(commandString, state), state));
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeMeta> commands = parsedCommand.getMeta();
 
         List<String> results = new ArrayList<>();
 
         Code code = hasLine(commands);
         if (code == null) {
-            return Collections.singletonList(commandString);
+            return Collections.singletonList(parsedCommand);
         }
 
-        SplitCommand sc = GcodePreprocessorUtils.extractMotion(code, commandString);
+        SplitCommand sc = GcodePreprocessorUtils.extractMotion(code, parsedCommand.getCommand());
         if (sc.remainder.length() > 0) {
             results.add(sc.remainder);
         }
@@ -116,9 +125,9 @@ public class LineSplitter implements CommandProcessor {
             results.add(GcodePreprocessorUtils.generateLineFromPoints(
                     command.code, current, end, command.state.inAbsoluteMode, null));
         } else {
-            return Collections.singletonList(commandString);
+            return Collections.singletonList(parsedCommand);
         }
 
-        return results;
+        return ParsedCommand.fromCommands(results, state);
     }
 }
@@ -21,8 +21,8 @@ package com.willwinder.universalgcodesender.gcode.processors;
 import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.ParsedCommand;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
-import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
@@ -142,11 +142,16 @@ public class MeshLeveler implements CommandProcessor {
 
     @Override
     public List<String> processCommand(final String commandString, GcodeState state) throws GcodeParserException {
-        List<GcodeMeta> commands = GcodeParserUtils.processCommand(commandString, 0, state);
+        return ParsedCommand.toCommands(processCommand(new ParsedCommand(commandString, state), state));
+    }
+
+    @Override
+    public List<ParsedCommand> processCommand(final ParsedCommand parsedCommand, GcodeState state) throws GcodeParserException {
+        List<GcodeMeta> commands = parsedCommand.getMeta();
 
         // If there are no lines, return unmodified input.
         if (!ensureJustLines(commands)) {
-            return Collections.singletonList(commandString);
+            return Collections.singletonList(parsedCommand);
         }
 
         if (commands.size() > 1) {
@@ -160,7 +165,8 @@ public class MeshLeveler implements CommandProcessor {
         }
 
         Position start = state.currentPoint;
-        Position end = command.point.point();
+        // Copy the end point as the parse results are shared
+        Position end = new Position(command.point.point());
 
         if (start.z != end.z) {
             this.lastZHeight = end.z;
@@ -182,7 +188,7 @@ public class MeshLeveler implements CommandProcessor {
 
         String adjustedCommand = GcodePreprocessorUtils.generateLineFromPoints(
                 command.code, start, end, command.state.inAbsoluteMode, null);
-        return Collections.singletonList(adjustedCommand);
+        return ParsedCommand.fromCommands(Collections.singletonList(adjustedCommand), state);
     }
 
     protected Position[][] findBoundingArea(double x, double y) throws GcodeParserException {
@@ -241,6 +247,12 @@ public class MeshLeveler implements CommandProcessor {
         return ((y2 - y)/(y2 - y1)) * R1 + ((y - y1)/(y2 - y1)) * R2;
     }
 
+    @Override
+    public boolean isStateless() {
+        // The height of the previous move is used when leveling the next one
+        return false;
+    }
+
     @Override
     public String getHelp() {
         return null;
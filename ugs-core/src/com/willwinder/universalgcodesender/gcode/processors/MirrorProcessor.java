@@ -23,6 +23,7 @@ import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.model.Axis;
 import com.willwinder.universalgcodesender.model.PartialPosition;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
@@ -40,9 +41,10 @@ import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.n
  *
  * @author Joacim Breiler
  */
-public class MirrorProcessor implements CommandProcessor {
+public class MirrorProcessor implements AffineCommandProcessor {
     private final PartialPosition center;
     private ArcExpander arcExpander;
+    private AffineTransformProcessor transform;
 
     /**
      * Constructor
@@ -118,6 +120,19 @@ public class MirrorProcessor implements CommandProcessor {
         return arcExpander.processCommand(command, state);
     }
 
+    @Override
+    public AffineTransformProcessor toAffineTransform() {
+        if (transform == null) {
+            transform = new AffineTransformProcessor().mirror(Axis.X, center);
+        }
+        return transform;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + center;
+    }
+
     @Override
     public String getHelp() {
         return "Mirrors the model";
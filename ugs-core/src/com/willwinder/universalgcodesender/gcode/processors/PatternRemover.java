@@ -38,6 +38,11 @@ public class PatternRemover implements CommandProcessor {
         p = Pattern.compile(regexPattern);
     }
     
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + p.pattern();
+    }
+
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.patternRemover")
@@ -39,11 +39,12 @@ import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.n
  *
  * @author Joacim Breiler
  */
-public class RotateProcessor implements CommandProcessor {
+public class RotateProcessor implements AffineCommandProcessor {
 
     private ArcExpander arcExpander;
     private Position center;
     private double rotation;
+    private AffineTransformProcessor transform;
 
     public RotateProcessor() {
         init(new Position(0, 0, 0, UnitUtils.Units.MM), 0);
@@ -65,6 +66,7 @@ public class RotateProcessor implements CommandProcessor {
 
     public void setCenter(Position center) {
         this.center = center;
+        this.transform = null;
     }
 
     public double getRotation() {
@@ -73,6 +75,7 @@ public class RotateProcessor implements CommandProcessor {
 
     public void setRotation(double rotation) {
         this.rotation = rotation;
+        this.transform = null;
     }
 
     @Override
@@ -141,6 +144,19 @@ public class RotateProcessor implements CommandProcessor {
         return hasLine;
     }
 
+    @Override
+    public AffineTransformProcessor toAffineTransform() {
+        if (transform == null) {
+            transform = new AffineTransformProcessor().rotate(center, rotation);
+        }
+        return transform;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + center.getX() + "," + center.getY() + "," + center.getZ() + "," + center.getUnits() + "," + rotation;
+    }
+
     @Override
     public String getHelp() {
         return "Rotates the model 180 degrees";
@@ -94,6 +94,12 @@ public class RunFromProcessor implements CommandProcessor {
         return ImmutableList.of(command);
     }
 
+    @Override
+    public boolean isStateless() {
+        // The skipped commands are tracked with a separate parser
+        return false;
+    }
+
     @Override
     public String getHelp() {
         return null;
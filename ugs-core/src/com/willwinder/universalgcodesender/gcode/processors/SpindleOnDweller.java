@@ -52,6 +52,11 @@ public class SpindleOnDweller implements CommandProcessor {
         return Collections.singletonList(command);
     }
 
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + dwellCommand;
+    }
+
     @Override
     public String getHelp() {
         return Localization.getString("sender.help.spindle-dwell");
@@ -18,48 +18,266 @@
  */
 package com.willwinder.universalgcodesender.gcode.processors;
 
+import com.willwinder.universalgcodesender.gcode.GcodeParser.GcodeMeta;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.GcodeStats;
+import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.gcode.util.PlaneFormatter;
 import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.types.PointSegment;
+
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import com.willwinder.universalgcodesender.gcode.GcodeStats;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
+ * Collects statistics about a program while it is being parsed. All values
+ * are gathered in millimeters in a single pass over the parsed commands
+ * without creating any objects per command.
+ *
+ * The bounds only include the end points of the moves, arcs may extend
+ * outside of them. The spindle on time is estimated from the feed rate of
+ * the moves while the spindle is on, rapid moves are not included as the
+ * rapid rate of the machine isn't known.
  *
  * @author wwinder
  */
 public class Stats implements CommandProcessor, GcodeStats {
-    private static Units defaultUnits = Units.MM;
+    private static final int AXES = 6;
+    private static final PlaneFormatter XY_PLANE = new PlaneFormatter(Plane.XY);
+    private static final PlaneFormatter ZX_PLANE = new PlaneFormatter(Plane.ZX);
+    private static final PlaneFormatter YZ_PLANE = new PlaneFormatter(Plane.YZ);
 
-    private Position min = new Position(Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE, Units.MM);
-    private Position max = new Position(Double.MIN_VALUE, Double.MIN_VALUE, Double.MIN_VALUE, Units.MM);
+    // Bounds in millimeters for the X, Y, Z, A, B and C axes
+    private final double[] min = new double[AXES];
+    private final double[] max = new double[AXES];
 
     private long commandCount = 0;
+    private double cuttingDistance = 0;
+    private double rapidDistance = 0;
+    private int toolChangeCount = 0;
+    private double spindleOnMinutes = 0;
+
+    // Cutting distance in millimeters per feed rate in millimeters per minute
+    private double[] feedRates = new double[8];
+    private double[] feedRateDistances = new double[8];
+    private int feedRateCount = 0;
+
+    public Stats() {
+        Arrays.fill(min, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+    }
+
+    /**
+     * Creates a copy of the statistics collected so far
+     *
+     * @return a copy of the statistics
+     */
+    public Stats copy() {
+        Stats ret = new Stats();
+        System.arraycopy(min, 0, ret.min, 0, AXES);
+        System.arraycopy(max, 0, ret.max, 0, AXES);
+        ret.commandCount = commandCount;
+        ret.cuttingDistance = cuttingDistance;
+        ret.rapidDistance = rapidDistance;
+        ret.toolChangeCount = toolChangeCount;
+        ret.spindleOnMinutes = spindleOnMinutes;
+        ret.feedRates = Arrays.copyOf(feedRates, feedRates.length);
+        ret.feedRateDistances = Arrays.copyOf(feedRateDistances, feedRateDistances.length);
+        ret.feedRateCount = feedRateCount;
+        return ret;
+    }
 
     @Override
     public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
-        Position c = state.currentPoint;
-        if (c != null) {
-            Position p = new Position(c.x, c.y, c.z, state.isMetric ? Units.MM : Units.INCH)
-                            .getPositionIn(defaultUnits);
-
-            // Update min
-            min.x = Math.min(min.x, p.x);
-            min.y = Math.min(min.y, p.y);
-            min.z = Math.min(min.z, p.z);
-
-            // Update max
-            max.x = Math.max(max.x, p.x);
-            max.y = Math.max(max.y, p.y);
-            max.z = Math.max(max.z, p.z);
-
-            // Num commands
-            commandCount++;
+        addCommand(command, state, GcodeParserUtils.processCommand(command, 0, state, true));
+        return Collections.singletonList(command);
+    }
+
+    /**
+     * Updates the statistics with a parsed command.
+     *
+     * @param command    the command
+     * @param startState the state before the command
+     * @param metas      the result of parsing the command in the start state, may be null for empty commands
+     */
+    public void addCommand(String command, GcodeState startState, Collection<GcodeMeta> metas) {
+        if (metas == null || metas.isEmpty()) {
+            return;
         }
 
-        return Collections.singletonList(command);
+        commandCount++;
+        if (isToolChange(command)) {
+            toolChangeCount++;
+        }
+
+        Position previous = startState.currentPoint;
+        for (GcodeMeta meta : metas) {
+            if (meta.point != null && meta.state != null && previous != null) {
+                addMotion(previous, meta.point, meta.state);
+            }
+            if (meta.state != null) {
+                previous = meta.state.currentPoint;
+            }
+        }
+    }
+
+    private void addMotion(Position start, PointSegment segment, GcodeState state) {
+        Position end = segment.point();
+        double scale = UnitUtils.scaleUnits(end.getUnits(), Units.MM);
+        updateBounds(start, UnitUtils.scaleUnits(start.getUnits(), Units.MM));
+        updateBounds(end, scale);
+
+        double distance = getDistance(start, segment);
+        if (segment.isFastTraverse()) {
+            rapidDistance += distance * scale;
+            return;
+        }
+
+        cuttingDistance += distance * scale;
+        if (state.speed <= 0) {
+            return;
+        }
+
+        double minutes;
+        switch (state.feedMode) {
+            case G93:
+                // Inverse time, the feed rate is one over the duration of the move
+                minutes = 1 / state.speed;
+                break;
+            case G95:
+                // The feed rate is the distance per spindle revolution
+                minutes = state.spindleSpeed > 0 ? distance / (state.speed * state.spindleSpeed) : 0;
+                break;
+            default:
+                minutes = distance / state.speed;
+                addFeedRateDistance(state.speed * scale, distance * scale);
+                break;
+        }
+
+        if (state.spindle == Code.M3 || state.spindle == Code.M4) {
+            spindleOnMinutes += minutes;
+        }
+    }
+
+    private void updateBounds(Position point, double scale) {
+        updateBounds(0, point.x * scale);
+        updateBounds(1, point.y * scale);
+        updateBounds(2, point.z * scale);
+
+        // Rotation axes are in degrees
+        updateBounds(3, point.a);
+        updateBounds(4, point.b);
+        updateBounds(5, point.c);
+    }
+
+    private void updateBounds(int axis, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        min[axis] = Math.min(min[axis], value);
+        max[axis] = Math.max(max[axis], value);
+    }
+
+    /**
+     * Returns the length of the segment in the units of the program.
+     */
+    private static double getDistance(Position start, PointSegment segment) {
+        Position end = segment.point();
+        PlaneFormatter plane = segment.isArc() ? getPlaneFormatter(segment.getPlaneState()) : null;
+        if (plane == null || segment.center() == null) {
+            double dx = end.x - start.x;
+            double dy = end.y - start.y;
+            double dz = end.z - start.z;
+            return Math.sqrt(dx * dx + dy * dy + dz * dz);
+        }
+
+        // The length of a helix around the linear axis of the plane
+        Position center = segment.center();
+        double radius = Math.hypot(plane.axis0(start) - plane.axis0(center), plane.axis1(start) - plane.axis1(center));
+        double startAngle = GcodePreprocessorUtils.getAngle(center, start, plane);
+        double endAngle = GcodePreprocessorUtils.getAngle(center, end, plane);
+        double sweep = GcodePreprocessorUtils.calculateSweep(startAngle, endAngle, segment.isClockwise());
+        return Math.hypot(sweep * radius, plane.linear(end) - plane.linear(start));
+    }
+
+    private static PlaneFormatter getPlaneFormatter(Plane plane) {
+        if (plane == null) {
+            return XY_PLANE;
+        }
+
+        switch (plane) {
+            case XY:
+                return XY_PLANE;
+            case ZX:
+                return ZX_PLANE;
+            case YZ:
+                return YZ_PLANE;
+            default:
+                return null;
+        }
+    }
+
+    private void addFeedRateDistance(double feedRate, double distance) {
+        for (int i = 0; i < feedRateCount; i++) {
+            if (feedRates[i] == feedRate) {
+                feedRateDistances[i] += distance;
+                return;
+            }
+        }
+
+        if (feedRateCount == feedRates.length) {
+            feedRates = Arrays.copyOf(feedRates, feedRateCount * 2);
+            feedRateDistances = Arrays.copyOf(feedRateDistances, feedRateCount * 2);
+        }
+        feedRates[feedRateCount] = feedRate;
+        feedRateDistances[feedRateCount] = distance;
+        feedRateCount++;
+    }
+
+    /**
+     * Checks if the command contains an M6 word, ignoring comments.
+     */
+    private static boolean isToolChange(String command) {
+        boolean inComment = false;
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (c == '(') {
+                inComment = true;
+            } else if (c == ')') {
+                inComment = false;
+            } else if (c == ';' && !inComment) {
+                return false;
+            } else if ((c == 'M' || c == 'm') && !inComment) {
+                int j = i + 1;
+                while (j < command.length() && (command.charAt(j) == '0' || command.charAt(j) == ' ')) {
+                    j++;
+                }
+                if (j < command.length() && command.charAt(j) == '6'
+                        && (j + 1 == command.length() || !isNumberChar(command.charAt(j + 1)))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumberChar(char c) {
+        return Character.isDigit(c) || c == '.';
+    }
+
+    @Override
+    public boolean isStateless() {
+        return false;
     }
 
     @Override
@@ -69,17 +287,57 @@ public class Stats implements CommandProcessor, GcodeStats {
 
     @Override
     public final Position getMin() {
-        return min;
+        return toPosition(min);
     }
 
     @Override
     public final Position getMax() {
-        return max;
+        return toPosition(max);
+    }
+
+    private static Position toPosition(double[] values) {
+        return new Position(values[0], values[1], values[2],
+                toRotation(values[3]), toRotation(values[4]), toRotation(values[5]), Units.MM);
+    }
+
+    /**
+     * Rotation axes which aren't used in the program are returned as NaN.
+     */
+    private static double toRotation(double value) {
+        return Math.abs(value) == Double.MAX_VALUE ? Double.NaN : value;
     }
 
     @Override
     public final long getCommandCount() {
         return commandCount;
     }
-    
+
+    @Override
+    public double getCuttingDistance() {
+        return cuttingDistance;
+    }
+
+    @Override
+    public double getRapidDistance() {
+        return rapidDistance;
+    }
+
+    @Override
+    public SortedMap<Double, Double> getFeedRateDistances() {
+        SortedMap<Double, Double> result = new TreeMap<>();
+        for (int i = 0; i < feedRateCount; i++) {
+            result.put(feedRates[i], feedRateDistances[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public int getToolChangeCount() {
+        return toolChangeCount;
+    }
+
+    @Override
+    public double getSpindleOnTime() {
+        return spindleOnMinutes * 60;
+    }
 }
@@ -39,10 +39,11 @@ import static com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils.n
  *
  * @author Joacim Breiler
  */
-public class TranslateProcessor implements CommandProcessor {
+public class TranslateProcessor implements AffineCommandProcessor {
 
     private ArcExpander arcExpander;
     private Position offset;
+    private AffineTransformProcessor transform;
 
     public TranslateProcessor() {
         init(new Position(0, 0, 0, UnitUtils.Units.MM));
@@ -63,6 +64,7 @@ public class TranslateProcessor implements CommandProcessor {
 
     public void setOffset(Position offset) {
         this.offset = offset;
+        this.transform = null;
     }
 
     @Override
@@ -130,6 +132,19 @@ public class TranslateProcessor implements CommandProcessor {
         return hasLine;
     }
 
+    @Override
+    public AffineTransformProcessor toAffineTransform() {
+        if (transform == null) {
+            transform = new AffineTransformProcessor().translate(offset);
+        }
+        return transform;
+    }
+
+    @Override
+    public String getCacheKey() {
+        return getClass().getSimpleName() + ":" + offset.getX() + "," + offset.getY() + "," + offset.getZ() + "," + offset.getUnits();
+    }
+
     @Override
     public String getHelp() {
         return "Translates to model in 3 dimensional space";
@@ -20,21 +20,24 @@ package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
-import java.text.ParseException;
 import java.util.Collections;
 import java.util.List;
 import org.apache.commons.lang3.StringUtils;
 
-import static com.willwinder.universalgcodesender.Utils.formatter;
-
 /**
+ * Shifts all absolute X, Y and Z words, including the ones of non motion commands
+ * such as G92 and G10. It is therefore not combined with the affine transformations
+ * which only transform motions.
  *
  * @author wwinder
  */
 public class Translator implements CommandProcessor {
+  private static final DecimalFormatter FORMATTER = new DecimalFormatter(3);
+
   private final Position offset;
 
   public Translator(Position offset) {
@@ -43,8 +46,8 @@ public class Translator implements CommandProcessor {
 
   private String shift(String part, double amount) {
     try {
-      return "" + part.charAt(0) + formatter.format(formatter.parse(part.substring(1)).doubleValue() + amount);
-    } catch (ParseException e) {
+      return FORMATTER.format(Double.parseDouble(part.substring(1)) + amount, new StringBuilder().append(part.charAt(0))).toString();
+    } catch (NumberFormatException e) {
       throw new IllegalArgumentException("Could not parse '" + part + "' as a double");
     }
   }
@@ -109,6 +112,11 @@ public class Translator implements CommandProcessor {
     return Collections.singletonList(sb.toString());
   }
 
+  @Override
+  public String getCacheKey() {
+    return getClass().getSimpleName() + ":" + offset.getX() + "," + offset.getY() + "," + offset.getZ() + "," + offset.getUnits();
+  }
+
   @Override
   public String getHelp() {
     return "Translates gcode location.";
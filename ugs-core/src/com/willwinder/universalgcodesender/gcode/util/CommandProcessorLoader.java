@@ -122,7 +122,8 @@ public class CommandProcessorLoader {
      *         "enabled": <enabled>,
      *         "optional": <optional>,
      *         "args": {
-     *             "segmentLengthMM": <double>
+     *             "segmentLengthMM": <double>,
+     *             "arcToleranceMM": <double> (optional)
      *         }
      *     },{
      *         "name": "CommandLenghtProcessor",
@@ -171,6 +172,14 @@ public class CommandProcessorLoader {
      *         "args": {
      *             "segmentLengthMM": <double>
      *         }
+     *     },{
+     *         "name":"LineMerger",
+     *         "enabled": <enabled>,
+     *         "optional": <optional>,
+     *         "args": {
+     *             "toleranceMM": <double>,
+     *             "fitArcs": <boolean> (optional)
+     *         }
      *     }
      *  ]
      */
@@ -210,7 +219,8 @@ public class CommandProcessorLoader {
         switch (pc.name) {
             case "ArcExpander":
                 double length = pc.args.get("segmentLengthMM").getAsDouble();
-                return new ArcExpander(true, length);
+                double tolerance = pc.args.has("arcToleranceMM") ? pc.args.get("arcToleranceMM").getAsDouble() : 0;
+                return new ArcExpander(true, length, tolerance);
             case "CommandLengthProcessor":
                 int commandLength = pc.args.get("commandLength").getAsInt();
                 return new CommandLengthProcessor(commandLength);
@@ -234,6 +244,9 @@ public class CommandProcessorLoader {
                 return new SpindleOnDweller(duration);
             case "LineSplitter":
                 return new LineSplitter(pc.args.get("segmentLengthMM").getAsDouble());
+            case "LineMerger":
+                boolean fitArcs = pc.args.has("fitArcs") && pc.args.get("fitArcs").getAsBoolean();
+                return new LineMerger(pc.args.get("toleranceMM").getAsDouble(), fitArcs);
             default:
                 throw new IllegalArgumentException("Unknown processor: " + pc.name);
         }
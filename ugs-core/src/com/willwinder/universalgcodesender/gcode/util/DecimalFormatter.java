@@ -0,0 +1,180 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * A fixed precision number formatter for generating gcode. It rounds a number
+ * to a given number of decimals, strips any trailing zeros and always uses a
+ * '.' as decimal separator. The exact binary value of the number is rounded
+ * half even, so a number is only rounded to even if it is exactly halfway.
+ * Negative numbers that are rounded to zero are written as "-0", like
+ * {@link java.text.DecimalFormat}. The output is the same as a DecimalFormat
+ * with the pattern "0.####", except for a few numbers very close to halfway
+ * which DecimalFormat rounds in the wrong direction.
+ *
+ * Unlike {@link java.text.DecimalFormat} this class is immutable and thread safe
+ * and it will append the digits directly to a given buffer without creating any
+ * intermediate objects. Numbers too large to be represented with the requested
+ * precision in a long are formatted using {@link BigDecimal} instead.
+ *
+ * @author wwinder
+ */
+public class DecimalFormatter {
+    /**
+     * The maximum number of decimals handled without falling back to {@link BigDecimal}
+     */
+    private static final int MAX_FAST_DECIMALS = 15;
+
+    /**
+     * Numbers scaled above this value can not be represented exactly in a double
+     */
+    private static final double MAX_FAST_VALUE = 1L << 53;
+
+    /**
+     * Enough space for a sign, the integer digits, a decimal point and the decimals
+     */
+    private static final int BUFFER_SIZE = 40;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_FAST_DECIMALS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[BUFFER_SIZE]);
+
+    private final int decimals;
+
+    /**
+     * @param decimals the maximum number of decimals to keep, must not be negative.
+     */
+    public DecimalFormatter(int decimals) {
+        if (decimals < 0) {
+            throw new IllegalArgumentException("The number of decimals can not be negative: " + decimals);
+        }
+        this.decimals = decimals;
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * Formats the number into a new string.
+     *
+     * @param value the number to format
+     * @return the formatted number
+     */
+    public String format(double value) {
+        return format(value, new StringBuilder()).toString();
+    }
+
+    /**
+     * Appends the formatted number to the given string builder.
+     *
+     * @param value the number to format
+     * @param sb    the string builder to append the number to
+     * @return the given string builder
+     */
+    public StringBuilder format(double value, StringBuilder sb) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return sb.append(value);
+        }
+
+        double scaled = decimals <= MAX_FAST_DECIMALS ? Math.abs(value) * POWERS_OF_TEN[decimals] : Double.MAX_VALUE;
+        if (scaled >= MAX_FAST_VALUE || isNearHalfway(scaled)) {
+            return sb.append(formatBigDecimal(value));
+        }
+
+        char[] buffer = BUFFER.get();
+        int length = format((long) Math.rint(scaled), isNegative(value), buffer);
+        return sb.append(buffer, BUFFER_SIZE - length, length);
+    }
+
+    /**
+     * Writes the digits of a number scaled with the number of decimals to the
+     * end of the buffer.
+     *
+     * @return the number of characters written
+     */
+    private int format(long scaled, boolean negative, char[] buffer) {
+        int position = BUFFER_SIZE;
+        long integerPart = scaled / POWERS_OF_TEN[decimals];
+        long fraction = scaled % POWERS_OF_TEN[decimals];
+
+        if (fraction != 0) {
+            int fractionDigits = decimals;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                fractionDigits--;
+            }
+
+            for (int i = 0; i < fractionDigits; i++) {
+                buffer[--position] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            buffer[--position] = '.';
+        }
+
+        do {
+            buffer[--position] = (char) ('0' + integerPart % 10);
+            integerPart /= 10;
+        } while (integerPart != 0);
+
+        if (negative) {
+            buffer[--position] = '-';
+        }
+        return BUFFER_SIZE - position;
+    }
+
+    /**
+     * The scaled number is rounded when it is multiplied, if it is this close
+     * to halfway the exact value could be on the other side.
+     */
+    private static boolean isNearHalfway(double scaled) {
+        return Math.abs(scaled - Math.floor(scaled) - 0.5) <= Math.ulp(scaled);
+    }
+
+    /**
+     * Uses the digits of the shortest representation of the number just like
+     * {@link java.text.DecimalFormat}, but rounds using the exact value since
+     * the shortest representation can be halfway when the exact value isn't.
+     */
+    private String formatBigDecimal(double value) {
+        BigDecimal result = BigDecimal.valueOf(value);
+        if (result.scale() > decimals) {
+            result = new BigDecimal(value).setScale(decimals, RoundingMode.HALF_EVEN);
+        }
+        if (result.signum() == 0) {
+            return isNegative(value) ? "-0" : "0";
+        }
+        return result.stripTrailingZeros().toPlainString();
+    }
+
+    private static boolean isNegative(double value) {
+        // Also true for negative zero
+        return Double.doubleToRawLongBits(value) < 0;
+    }
+}
@@ -84,7 +84,34 @@ public class GcodeParserUtils {
 
         // Initialize with original state
         GcodeState state = inputState.copy();
+        List<GcodeParser.GcodeMeta> results = applyCommand(command, args, line, state);
 
+        // Return updated state / command.
+        if (results.isEmpty() && includeNonMotionStates) {
+            GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
+            meta.state = state;
+            meta.command = command;
+            meta.code = state.currentMotionMode;
+            return Collections.singletonList(meta);
+        }
+
+        return results;
+    }
+
+    /**
+     * Applies a command which has been split into words to the given state,
+     * unlike {@link #processCommand(String, int, GcodeState)} the state is
+     * modified.
+     *
+     * @param command the command, used for the resulting meta objects
+     * @param args    the words of the command
+     * @param line    the line number of the command
+     * @param state   the state before the command, it will be updated with the command
+     * @return the meta objects of the gcodes in the command, any F, S or M words
+     * are only applied to the state
+     */
+    public static List<GcodeParser.GcodeMeta> applyCommand(String command, List<String> args, int line, GcodeState state)
+            throws GcodeParserException {
         state.commandNumber = line;
 
         // handle M codes.
@@ -142,13 +169,22 @@ public class GcodeParserUtils {
         }
 
         // Apply each code to the state.
-        List<GcodeParser.GcodeMeta> results = new ArrayList<>();
+        List<GcodeParser.GcodeMeta> results = new ArrayList<>(gCodes.size());
+        GcodeParser.GcodeMeta previous = null;
         for (Code i : gCodes) {
             if (i == UNKNOWN) {
                 LOGGER.warning("An unknown gcode command was detected in: " + command);
             } else {
+                // The state is only copied when there are more codes changing it,
+                // the last code gets the resulting state.
+                if (previous != null) {
+                    previous.state = state.copy();
+                }
+
                 GcodeParser.GcodeMeta meta = handleGCode(i, args, line, state);
+                meta.state = state;
                 meta.command = command;
+                previous = meta;
                 // Commands like 'G21' don't return a point segment.
                 if (meta.point != null) {
                     meta.point.setSpeed(state.speed);
@@ -157,15 +193,6 @@ public class GcodeParserUtils {
             }
         }
 
-        // Return updated state / command.
-        if (results.isEmpty() && includeNonMotionStates) {
-            GcodeParser.GcodeMeta meta = new GcodeParser.GcodeMeta();
-            meta.state = state;
-            meta.command = command;
-            meta.code = state.currentMotionMode;
-            return Collections.singletonList(meta);
-        }
-
         return results;
     }
 
@@ -242,7 +269,7 @@ public class GcodeParserUtils {
     /**
      * Branch parser to handle specific gcode command.
      * <p>
-     * A copy of the state object should go in the resulting GcodeMeta object.
+     * The state of the resulting GcodeMeta object is set by the caller.
      */
     private static GcodeParser.GcodeMeta handleGCode(final Code code, List<String> args, int line, GcodeState state)
             throws GcodeParserException {
@@ -356,7 +383,6 @@ public class GcodeParserUtils {
         if (code.getType() == Motion) {
             state.currentMotionMode = code;
         }
-        meta.state = state.copy();
         return meta;
     }
 
@@ -377,25 +403,57 @@ public class GcodeParserUtils {
     }
 
     /**
-     * Common logic in processAndExport* methods.
+     * Common logic in processAndExport* methods. Commands held back by the
+     * processors are written with the line of the first held back command
+     * once they are released.
+     *
+     * @param heldBackLine the line of the first command held back by the processors
+     * @return the line of the first command held back by the processors after this command
      */
-    private static void preprocessAndWrite(GcodeParser gcp, IGcodeWriter gsw, String command, String comment, int idx) throws GcodeParserException {
+    static int preprocessAndWrite(GcodeParser gcp, IGcodeWriter gsw, String command, String comment, int idx, int heldBackLine) throws GcodeParserException {
         if (idx % 100000 == 0) {
             LOGGER.log(Level.FINE, "gcode processing line: " + idx);
         }
 
         if (StringUtils.isEmpty(command)) {
             gsw.addLine(command, command, comment, idx);
+            return heldBackLine;
         }
-        else {
-            // Parse the gcode for the buffer.
-            Collection<String> lines = gcp.preprocessCommand(command, gcp.getCurrentState());
 
-            for(String processedLine : lines) {
-                gsw.addLine(command, processedLine, comment, idx);
+        // Parse the gcode for the buffer.
+        int heldBackCommands = gcp.getHeldBackCommandCount();
+        List<String> lines = gcp.preprocessCommand(command, gcp.getCurrentState());
+        boolean isHeldBack = gcp.getHeldBackCommandCount() > 0;
+
+        // The released commands come first, followed by the result of this command unless it was held back
+        int releasedLines = 0;
+        if (heldBackCommands > 0) {
+            releasedLines = isHeldBack ? lines.size() : Math.max(0, lines.size() - 1);
+        }
+
+        for (int i = 0; i < lines.size(); i++) {
+            if (i < releasedLines) {
+                gsw.addLine("", lines.get(i), "", heldBackLine);
+            } else {
+                gsw.addLine(command, lines.get(i), comment, idx);
             }
+        }
 
-            gcp.addCommand(command);
+        gcp.addCommand(command);
+        if (isHeldBack && (heldBackCommands == 0 || releasedLines > 0)) {
+            return idx;
+        }
+        return heldBackLine;
+    }
+
+    /**
+     * Writes any commands held back by the processors after the last line.
+     *
+     * @param heldBackLine the line of the first command held back by the processors
+     */
+    static void flushAndWrite(GcodeParser gcp, IGcodeWriter gsw, int heldBackLine) throws GcodeParserException {
+        for (String processedLine : gcp.flushCommandProcessors()) {
+            gsw.addLine("", processedLine, "", heldBackLine);
         }
     }
 
@@ -409,11 +467,13 @@ public class GcodeParserUtils {
         // Preprocess a GcodeStream file.
         try (IGcodeStreamReader gsr = new GcodeStreamReader(input)) {
             int i = 0;
+            int heldBackLine = 0;
             while (gsr.getNumRowsRemaining() > 0) {
                 i++;
                 GcodeCommand gc = gsr.getNextCommand();
-                preprocessAndWrite(gcp, output, gc.getCommandString(), gc.getComment(), i);
+                heldBackLine = preprocessAndWrite(gcp, output, gc.getCommandString(), gc.getComment(), i, heldBackLine);
             }
+            flushAndWrite(gcp, output, heldBackLine);
 
             // Done processing GcodeStream file.
             return true;
@@ -432,12 +492,14 @@ public class GcodeParserUtils {
         // Preprocess a regular gcode file.
         try(BufferedReader br = input) {
             int i = 0;
+            int heldBackLine = 0;
             for(String line; (line = br.readLine()) != null; ) {
                 i++;
 
                 String comment = GcodePreprocessorUtils.parseComment(line);
-                preprocessAndWrite(gcp, output, line, comment, i);
+                heldBackLine = preprocessAndWrite(gcp, output, line, comment, i, heldBackLine);
             }
+            flushAndWrite(gcp, output, heldBackLine);
         }
     }
 }
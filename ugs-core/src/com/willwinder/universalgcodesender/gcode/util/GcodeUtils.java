@@ -18,7 +18,6 @@
  */
 package com.willwinder.universalgcodesender.gcode.util;
 
-import com.willwinder.universalgcodesender.Utils;
 import com.willwinder.universalgcodesender.model.PartialPosition;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 
@@ -28,6 +27,7 @@ import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 public class GcodeUtils {
     public static final String GCODE_RETURN_TO_XY_ZERO_LOCATION = "G90 G0 X0 Y0";
     public static final String GCODE_RETURN_TO_Z_ZERO_LOCATION = "G90 G0 Z0";
+    private static final DecimalFormatter FORMATTER = new DecimalFormatter(3);
 
     /**
      * Generates a gcode command for switching units.
@@ -60,13 +60,10 @@ public class GcodeUtils {
 
         sb.append(GcodeUtils.unitCommand(p.getUnits()));
         sb.append(command);
-        sb.append(p.getFormattedGCode(Utils.formatter));
+        p.appendFormattedGCode(sb, FORMATTER);
 
         if (feedRate > 0) {
-            String convertedFeedRate = Utils.formatter.format(feedRate);
-            if (convertedFeedRate != null) {
-                sb.append("F").append(convertedFeedRate);
-            }
+            FORMATTER.format(feedRate, sb.append("F"));
         }
 
         return sb.toString();
@@ -98,11 +95,10 @@ public class GcodeUtils {
         sb.append(command);
 
         // Add all axises
-        sb.append(position.getFormattedGCode());
+        position.appendFormattedGCode(sb, FORMATTER);
 
-        String convertedFeedRate = Utils.formatter.format(feedRate);
-        if (feedRate > 0 && convertedFeedRate != null) {
-            sb.append("F").append(convertedFeedRate);
+        if (feedRate > 0) {
+            FORMATTER.format(feedRate, sb.append("F"));
         }
 
         return sb.toString();
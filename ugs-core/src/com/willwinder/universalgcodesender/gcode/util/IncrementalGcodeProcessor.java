@@ -0,0 +1,324 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.google.common.io.CountingInputStream;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodePreprocessorUtils;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.GcodeStreamWriter;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Processes gcode files into the GcodeStream format while saving checkpoints
+ * of the parser state at regular intervals. When a modified version of the
+ * file is processed again only the lines from the checkpoint before the first
+ * modified line will be processed, the rows before it are copied from the
+ * previously processed file.
+ *
+ * Checkpoints are only created if none of the command processors keep
+ * information between commands, otherwise the whole file is processed.
+ *
+ * The processing can be cancelled by interrupting the thread running it,
+ * which will throw an {@link InterruptedIOException}.
+ *
+ * @author wwinder
+ */
+public class IncrementalGcodeProcessor {
+    private static final Logger LOGGER = Logger.getLogger(IncrementalGcodeProcessor.class.getName());
+
+    /**
+     * The number of input lines between each checkpoint
+     */
+    static final int CHECKPOINT_INTERVAL = 1000;
+
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long[] lineHashes = new long[0];
+    private int lineCount;
+
+    /**
+     * The state of the parser after the last line
+     */
+    private GcodeParser.Checkpoint endCheckpoint;
+
+    /**
+     * The parser and processed file of the previous result, or null if there is nothing to continue from
+     */
+    private GcodeParser parser;
+    private File processedFile;
+
+    private ProgressListener progressListener = (bytesRead, totalBytes, lines) -> {
+    };
+
+    /**
+     * Listener for the progress of processing a file
+     */
+    public interface ProgressListener {
+        /**
+         * Called for each processed line
+         *
+         * @param bytesRead  the number of bytes read from the input file
+         * @param totalBytes the size of the input file
+         * @param lines      the number of lines processed
+         */
+        void onProgress(long bytesRead, long totalBytes, int lines);
+    }
+
+    private static class Checkpoint {
+        /**
+         * The number of input lines processed before the checkpoint
+         */
+        private final int line;
+
+        /**
+         * The number of rows written to the processed file before the checkpoint
+         */
+        private final int rows;
+
+        private final GcodeParser.Checkpoint parserCheckpoint;
+
+        private Checkpoint(int line, int rows, GcodeParser.Checkpoint parserCheckpoint) {
+            this.line = line;
+            this.rows = rows;
+            this.parserCheckpoint = parserCheckpoint;
+        }
+    }
+
+    /**
+     * Source of input lines, returns null when there are no more lines.
+     */
+    private interface LineSource {
+        String readLine() throws IOException;
+    }
+
+    /**
+     * Sets a listener to be notified of the progress when processing files
+     *
+     * @param progressListener the listener
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Processes the whole input file and saves checkpoints for reprocessing it.
+     *
+     * @param gcp    the parser with the command processors to use, it should be reset
+     * @param input  the gcode file to process
+     * @param output the file to write the result to in GcodeStream format
+     */
+    public void process(GcodeParser gcp, File input, File output) throws IOException, GcodeParserException {
+        clear();
+        if (isGcodeStream(input)) {
+            try (IGcodeWriter gcw = new GcodeStreamWriter(output)) {
+                GcodeParserUtils.processAndExport(gcp, input, gcw);
+            }
+            return;
+        }
+
+        boolean createCheckpoints = gcp.canCreateCheckpoint();
+        try (CountingInputStream inputStream = new CountingInputStream(new FileInputStream(input));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+             GcodeStreamWriter gsw = new GcodeStreamWriter(output)) {
+            processLines(gcp, reader::readLine, 0, gsw, createCheckpoints, inputStream, input.length());
+        } catch (IOException | GcodeParserException | RuntimeException e) {
+            clear();
+            throw e;
+        }
+
+        if (createCheckpoints) {
+            this.parser = gcp;
+            this.processedFile = output;
+        } else {
+            clear();
+        }
+    }
+
+    /**
+     * Processes a modified version of the previously processed file. Only the lines from the
+     * last checkpoint before the first modified line will be processed again. If there is no
+     * previous result to continue from the whole file will be processed.
+     *
+     * @param gcp    the reset parser with the command processors to use, it needs to be the
+     *               same parser with the same processors as when the file was processed
+     * @param input  the gcode file to process
+     * @param output the file to write the result to in GcodeStream format
+     * @return the number of input lines that didn't need to be processed again
+     */
+    public int reprocess(GcodeParser gcp, File input, File output) throws IOException, GcodeParserException {
+        if (!canReprocess(gcp) || isGcodeStream(input)) {
+            process(gcp, input, output);
+            return 0;
+        }
+
+        try (CountingInputStream inputStream = new CountingInputStream(new FileInputStream(input));
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            // Read until the first modified line, keeping the lines after the last checkpoint
+            List<String> linesSinceCheckpoint = new ArrayList<>();
+            int checkpointIndex = 0;
+            boolean isModified = false;
+            int line = 0;
+            for (String text; (text = reader.readLine()) != null; line++) {
+                if (line % CHECKPOINT_INTERVAL == 0 && line / CHECKPOINT_INTERVAL < checkpoints.size()) {
+                    linesSinceCheckpoint.clear();
+                    checkpointIndex = line / CHECKPOINT_INTERVAL;
+                }
+                linesSinceCheckpoint.add(text);
+
+                if (line >= lineCount || hash(text) != lineHashes[line]) {
+                    isModified = true;
+                    break;
+                }
+            }
+
+            if (!isModified && line == lineCount) {
+                // The file hasn't been modified, reuse the previous result as it is
+                Files.copy(processedFile.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                gcp.restoreCheckpoint(endCheckpoint);
+                processedFile = output;
+                return lineCount;
+            }
+
+            Checkpoint checkpoint = checkpoints.get(checkpointIndex);
+            checkpoints.subList(checkpointIndex, checkpoints.size()).clear();
+            LOGGER.log(Level.FINE, "Reprocessing from line {0}, the first modified line is {1}", new Object[]{checkpoint.line + 1, line + 1});
+
+            try (GcodeStreamWriter gsw = new GcodeStreamWriter(output)) {
+                copyRows(processedFile, checkpoint.rows, gsw);
+                gcp.restoreCheckpoint(checkpoint.parserCheckpoint);
+
+                Iterator<String> pendingLines = linesSinceCheckpoint.iterator();
+                processLines(gcp, () -> pendingLines.hasNext() ? pendingLines.next() : reader.readLine(), checkpoint.line, gsw, true, inputStream, input.length());
+            }
+
+            processedFile = output;
+            return checkpoint.line;
+        } catch (IOException | GcodeParserException | RuntimeException e) {
+            clear();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true if there are checkpoints from processing a file with the parser that
+     * {@link #reprocess(GcodeParser, File, File)} can continue from.
+     *
+     * @param gcp the parser with the command processors to use
+     */
+    public boolean canReprocess(GcodeParser gcp) {
+        return gcp == parser && processedFile != null && processedFile.exists() && !checkpoints.isEmpty()
+                && gcp.canCreateCheckpoint();
+    }
+
+    /**
+     * Removes all checkpoints, the next file will be completely processed.
+     */
+    public void clear() {
+        checkpoints.clear();
+        lineHashes = new long[0];
+        lineCount = 0;
+        endCheckpoint = null;
+        parser = null;
+        processedFile = null;
+    }
+
+    private void processLines(GcodeParser gcp, LineSource source, int firstLine, GcodeStreamWriter gsw, boolean createCheckpoints,
+                              CountingInputStream inputStream, long totalBytes) throws IOException, GcodeParserException {
+        int line = firstLine;
+        int heldBackLine = firstLine;
+        for (String text; (text = source.readLine()) != null; ) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("The processing was cancelled");
+            }
+
+            if (createCheckpoints) {
+                if (line % CHECKPOINT_INTERVAL == 0) {
+                    checkpoints.add(new Checkpoint(line, gsw.getLineCount(), gcp.createCheckpoint()));
+                }
+
+                if (line >= lineHashes.length) {
+                    lineHashes = Arrays.copyOf(lineHashes, Math.max(1024, lineHashes.length * 2));
+                }
+                lineHashes[line] = hash(text);
+            }
+            line++;
+
+            String comment = GcodePreprocessorUtils.parseComment(text);
+            heldBackLine = GcodeParserUtils.preprocessAndWrite(gcp, gsw, text, comment, line, heldBackLine);
+            progressListener.onProgress(inputStream.getCount(), totalBytes, line);
+        }
+        GcodeParserUtils.flushAndWrite(gcp, gsw, heldBackLine);
+
+        if (createCheckpoints) {
+            lineCount = line;
+            endCheckpoint = gcp.createCheckpoint();
+        }
+    }
+
+    private static void copyRows(File source, int rows, GcodeStreamWriter gsw) throws IOException {
+        if (rows == 0) {
+            return;
+        }
+
+        try (GcodeStreamReader reader = new GcodeStreamReader(source)) {
+            for (int i = 0; i < rows; i++) {
+                gsw.addLine(reader.getNextCommand());
+            }
+        } catch (GcodeStreamReader.NotGcodeStreamFile e) {
+            throw new IOException("The previously processed file is not a gcode stream: " + source, e);
+        }
+    }
+
+    private static boolean isGcodeStream(File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            new GcodeStreamReader(reader);
+            return true;
+        } catch (GcodeStreamReader.NotGcodeStreamFile e) {
+            return false;
+        }
+    }
+
+    /**
+     * A 64 bit FNV-1a hash of the line used for detecting modified lines
+     */
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
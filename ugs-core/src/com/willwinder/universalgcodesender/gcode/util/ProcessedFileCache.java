@@ -0,0 +1,267 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.Stats;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * A cache of processed gcode files stored in a directory. Each file is stored
+ * using a key created from the contents of the source file, the command
+ * processors of the parser and the firmware, together with the statistics of
+ * the processed file. The cache may be used from several threads.
+ *
+ * When the total size of the cached files exceeds the maximum size, the least
+ * recently used files are removed. Files that are in use, see
+ * {@link #retain(String)}, are never removed.
+ *
+ * @author wwinder
+ */
+public class ProcessedFileCache {
+    private static final Logger LOGGER = Logger.getLogger(ProcessedFileCache.class.getName());
+    private static final String FILE_SUFFIX = ".gcode";
+    private static final String STATS_SUFFIX = ".stats";
+    private static final Gson GSON = new GsonBuilder()
+            .serializeSpecialFloatingPointValues()
+            .create();
+
+    private final File directory;
+    private final Map<File, SourceHash> sourceHashes = new HashMap<>();
+    private final Map<String, Integer> retainedKeys = new HashMap<>();
+    private long maxSize;
+
+    /**
+     * Creates a cache in the given directory
+     *
+     * @param directory the directory to store the processed files in
+     * @param maxSize   the maximum total size in bytes of the cached files
+     */
+    public ProcessedFileCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        directory.mkdirs();
+    }
+
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Creates the key for the result of processing the source file using the
+     * command processors of the parser.
+     *
+     * @param source   the file to process
+     * @param gcp      the parser with the command processors to use
+     * @param firmware the firmware the file is processed for
+     * @return the key, or null if the result of the processors can't be cached
+     * @throws IOException if the source file couldn't be read
+     */
+    public synchronized String createKey(File source, GcodeParser gcp, String firmware) throws IOException {
+        String processorKey = gcp.getCacheKey();
+        if (processorKey == null) {
+            return null;
+        }
+
+        return Hashing.sha256().newHasher()
+                .putBytes(hashSource(source).asBytes())
+                .putString(processorKey, StandardCharsets.UTF_8)
+                .putString(StringUtils.defaultString(firmware), StandardCharsets.UTF_8)
+                .hash()
+                .toString();
+    }
+
+    /**
+     * Returns the file where the processed result for the key is stored. The
+     * file is only a valid cache entry after {@link #put(String, Stats)}
+     * has been called.
+     *
+     * @param key the key of the processed file
+     * @return the file to write the processed result to
+     */
+    public File getFile(String key) {
+        return new File(directory, key + FILE_SUFFIX);
+    }
+
+    /**
+     * Looks up the processed file for the key and marks it as recently used.
+     *
+     * @param key the key of the processed file
+     * @return the statistics of the processed file if it has been cached
+     */
+    public synchronized Optional<Stats> get(String key) {
+        File file = getFile(key);
+        File statsFile = getStatsFile(key);
+        if (!file.isFile() || !statsFile.isFile()) {
+            return Optional.empty();
+        }
+
+        try {
+            String json = new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8);
+            Stats stats = GSON.fromJson(json, Stats.class);
+            long now = System.currentTimeMillis();
+            file.setLastModified(now);
+            statsFile.setLastModified(now);
+            return Optional.ofNullable(stats);
+        } catch (IOException | JsonParseException e) {
+            LOGGER.log(Level.WARNING, "Couldn't read the cached file " + file, e);
+            remove(key);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Adds the file written to {@link #getFile(String)} to the cache and
+     * removes the least recently used files if the cache is too large.
+     *
+     * @param key   the key of the processed file
+     * @param stats the statistics of the processed file
+     * @throws IOException if the statistics couldn't be written
+     */
+    public synchronized void put(String key, Stats stats) throws IOException {
+        Files.write(getStatsFile(key).toPath(), GSON.toJson(stats).getBytes(StandardCharsets.UTF_8));
+        evict(key);
+    }
+
+    /**
+     * Marks the processed file for the key as being in use which prevents it
+     * from being removed when the cache is too large. Each call needs to be
+     * followed by a call to {@link #release(String)}.
+     *
+     * @param key the key of the processed file
+     */
+    public synchronized void retain(String key) {
+        retainedKeys.merge(key, 1, Integer::sum);
+    }
+
+    /**
+     * Releases a processed file previously marked as in use with
+     * {@link #retain(String)}.
+     *
+     * @param key the key of the processed file
+     */
+    public synchronized void release(String key) {
+        retainedKeys.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Removes the processed file for the key, for instance if the processing
+     * failed before it was completed.
+     *
+     * @param key the key of the processed file
+     */
+    public synchronized void remove(String key) {
+        deleteFile(getStatsFile(key));
+        deleteFile(getFile(key));
+    }
+
+    /**
+     * Removes the least recently used files until the total size is within the
+     * maximum size, the file for the given key and the retained files are
+     * always kept.
+     */
+    private void evict(String keep) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) {
+            return;
+        }
+
+        long totalSize = Arrays.stream(files).mapToLong(this::getEntrySize).sum();
+        List<File> leastRecentlyUsed = Arrays.stream(files)
+                .sorted(Comparator.comparingLong(File::lastModified))
+                .collect(Collectors.toList());
+
+        for (File file : leastRecentlyUsed) {
+            if (totalSize <= maxSize) {
+                break;
+            }
+
+            String key = StringUtils.removeEnd(file.getName(), FILE_SUFFIX);
+            if (!key.equals(keep) && !retainedKeys.containsKey(key)) {
+                totalSize -= getEntrySize(file);
+                LOGGER.log(Level.INFO, "Removing the least recently used file {0} from the cache", file);
+                remove(key);
+            }
+        }
+    }
+
+    private long getEntrySize(File file) {
+        String key = StringUtils.removeEnd(file.getName(), FILE_SUFFIX);
+        return file.length() + getStatsFile(key).length();
+    }
+
+    private File getStatsFile(String key) {
+        return new File(directory, key + STATS_SUFFIX);
+    }
+
+    /**
+     * Hashes the contents of the source file, the hash is remembered as long
+     * as the size and modification time of the file are unchanged.
+     */
+    private HashCode hashSource(File source) throws IOException {
+        SourceHash sourceHash = sourceHashes.get(source);
+        if (sourceHash == null || sourceHash.length != source.length() || sourceHash.lastModified != source.lastModified()) {
+            long lastModified = source.lastModified();
+            long length = source.length();
+            HashCode hash = com.google.common.io.Files.asByteSource(source).hash(Hashing.murmur3_128());
+            sourceHash = new SourceHash(length, lastModified, hash);
+            sourceHashes.put(source, sourceHash);
+        }
+        return sourceHash.hash;
+    }
+
+    private void deleteFile(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Couldn't delete the cached file " + file, e);
+        }
+    }
+
+    private static class SourceHash {
+        private final long length;
+        private final long lastModified;
+        private final HashCode hash;
+
+        private SourceHash(long length, long lastModified, HashCode hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
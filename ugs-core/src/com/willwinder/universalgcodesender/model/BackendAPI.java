@@ -30,26 +30,51 @@ import com.willwinder.universalgcodesender.utils.Settings;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * API used by front ends to interface with the model.
  */
 public interface BackendAPI extends BackendAPIReadOnly {
     /**
-     * Sets and loads a new gcode file, resets the parser and its processors.
+     * Sets and loads a new gcode file, resets the parser and its processors. This waits for the
+     * file to be loaded, use {@link #loadGcodeFile(File)} from the event dispatch thread as the
+     * file events are sent from the thread loading the file.
      *
      * @param file the file to load
      * @throws Exception
      */
     void setGcodeFile(File file) throws Exception;
 
+    /**
+     * Sets and loads a new gcode file in the background, resets the parser and its processors.
+     * The progress of the loading is dispatched as {@link com.willwinder.universalgcodesender.model.events.FileProgressEvent}s.
+     * Loading another file will cancel the loading of this file. If the loading fails the error
+     * is logged and dispatched as an error message.
+     *
+     * @param file the file to load
+     * @return a future with the processed file which can be used to wait for or cancel the loading
+     */
+    Future<File> loadGcodeFile(File file);
+
     /**
      * Reloads the currently loaded gcode file. This will retain the current parser and its processors.
+     * This waits for the file to be processed, use {@link #reloadGcodeFileInBackground()} from the
+     * event dispatch thread as the file events are sent from the thread processing the file.
      *
      * @throws Exception
      */
     void reloadGcodeFile() throws Exception;
 
+    /**
+     * Reloads the currently loaded gcode file in the background. This will retain the current parser
+     * and its processors. If the loading fails the error is logged and dispatched as an error message.
+     *
+     * @return a future with the processed file which can be used to wait for the loading
+     */
+    Future<File> reloadGcodeFileInBackground();
+
     /**
      * Returns a list of files from the configured workspace directory
      *
@@ -79,7 +104,8 @@ public interface BackendAPI extends BackendAPIReadOnly {
 
     /**
      * Adds a command processor and applies it to currently loaded program and subsequent
-     * loaded gcode programs.
+     * loaded gcode programs. This waits for the program to be processed, use
+     * {@link #applyCommandProcessorInBackground(CommandProcessor)} from the event dispatch thread.
      *
      * @param commandProcessor a command processor.
      * @throws Exception
@@ -87,13 +113,56 @@ public interface BackendAPI extends BackendAPIReadOnly {
     void applyCommandProcessor(CommandProcessor commandProcessor) throws Exception;
 
     /**
-     * Removes a command processor.
+     * Adds a command processor and applies it to currently loaded program in the background.
+     * If the processing fails the error is logged and dispatched as an error message.
+     *
+     * @param commandProcessor a command processor.
+     * @return a future with the processed file which can be used to wait for the processing
+     */
+    Future<File> applyCommandProcessorInBackground(CommandProcessor commandProcessor);
+
+    /**
+     * Removes a command processor. This waits for the program to be processed, use
+     * {@link #removeCommandProcessorInBackground(CommandProcessor)} from the event dispatch thread.
      *
      * @param commandProcessor a command processor.
      * @throws Exception
      */
     void removeCommandProcessor(CommandProcessor commandProcessor) throws Exception;
 
+    /**
+     * Removes a command processor and reprocesses the currently loaded program in the background.
+     * If the processing fails the error is logged and dispatched as an error message.
+     *
+     * @param commandProcessor a command processor.
+     * @return a future with the processed file which can be used to wait for the processing
+     */
+    Future<File> removeCommandProcessorInBackground(CommandProcessor commandProcessor);
+
+    /**
+     * Adds a command processor which is applied to the commands while they are being
+     * streamed instead of when the program is loaded. This avoids reprocessing the whole
+     * program and is intended for per line transformations like mesh leveling or translations.
+     * If a program is currently being streamed with streaming command processors the change will
+     * be used for the remaining commands, otherwise it is used the next time a program is streamed.
+     * The output of the processors is formatted using the processors of the firmware.
+     *
+     * The factory is used for creating a new processor for each stream, so that processors
+     * which keep information between commands doesn't share it between streams.
+     *
+     * @param commandProcessorFactory a factory creating the command processor.
+     * @throws Exception if the pending commands could not be processed
+     */
+    void applyStreamingCommandProcessor(Supplier<CommandProcessor> commandProcessorFactory) throws Exception;
+
+    /**
+     * Removes a command processor that was added with {@link #applyStreamingCommandProcessor(Supplier)}.
+     *
+     * @param commandProcessorFactory the factory that was used when adding the command processor.
+     * @throws Exception if the pending commands could not be processed
+     */
+    void removeStreamingCommandProcessor(Supplier<CommandProcessor> commandProcessorFactory) throws Exception;
+
     /**
      * Process the currently loaded gcode file and export it to a file.
      * Intended primarily as "save and export" style preprocessor option.
@@ -114,9 +183,11 @@ public interface BackendAPI extends BackendAPIReadOnly {
      *
      * @param distance how long to jog along the different axes.
      * @param feedRate how fast should we jog in the given direction
+     * @return true if the jog command was sent, false if it was skipped because the
+     *         controller wasn't idle or jogging or the distance was empty
      * @throws Exception if something went wrong when jogging
      */
-    void adjustManualLocation(PartialPosition distance, double feedRate) throws Exception;
+    boolean adjustManualLocation(PartialPosition distance, double feedRate) throws Exception;
 
     void probe(String axis, double feedRate, double distance, UnitUtils.Units units) throws Exception;
     void offsetTool(String axis, double offset, UnitUtils.Units units) throws Exception;
@@ -28,6 +28,8 @@ import com.willwinder.universalgcodesender.gcode.GcodeState;
 import com.willwinder.universalgcodesender.gcode.GcodeStats;
 import com.willwinder.universalgcodesender.gcode.processors.*;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.gcode.util.IncrementalGcodeProcessor;
+import com.willwinder.universalgcodesender.gcode.util.ProcessedFileCache;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.*;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
@@ -44,8 +46,17 @@ import javax.script.ScriptException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.InterruptedIOException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
@@ -59,6 +70,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     private static final Logger logger = Logger.getLogger(GUIBackend.class.getName());
     private static final String NEW_LINE = "\n    ";
 
+    /**
+     * The minimum time in milliseconds between the progress events when loading a file
+     */
+    private static final long FILE_PROGRESS_INTERVAL = 200;
+
     private final MessageService messageService = new MessageService();
 
     private IController controller = null;
@@ -70,6 +86,16 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     private File gcodeFile = null;
     private File processedGcodeFile = null;
     private File tempDir = null;
+    /**
+     * The directory of the processed file cache, or null to use the settings directory
+     */
+    private final File processedFileCacheDirectory;
+    private ProcessedFileCache processedFileCache = null;
+
+    /**
+     * The cache key of the current processed file, the file is retained in the cache while in use
+     */
+    private String processedFileCacheKey = null;
     private String firmware = null;
 
     private long lastResponse = Long.MIN_VALUE;
@@ -77,8 +103,34 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     private boolean autoconnect = false;
 
     private GcodeParser gcp = new GcodeParser();
+    private final IncrementalGcodeProcessor gcodeFileProcessor = new IncrementalGcodeProcessor();
+
+    // Files are loaded and the gcode parser is modified on a single background thread
+    private volatile Thread fileLoaderThread;
+    private final ExecutorService fileLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "GcodeFileLoader");
+        thread.setDaemon(true);
+        fileLoaderThread = thread;
+        return thread;
+    });
+    private Future<File> currentFileLoad;
+    private final List<Supplier<CommandProcessor>> streamingCommandProcessors = new CopyOnWriteArrayList<>();
+    private ProcessedGcodeStreamReader processedStreamReader = null;
     private ControllerStatus controllerStatus = new ControllerStatus();
 
+    public GUIBackend() {
+        this(null);
+    }
+
+    /**
+     * Creates a backend which keeps processed files for reuse in the given directory
+     *
+     * @param processedFileCacheDirectory the directory for the processed file cache, or null to use the settings directory
+     */
+    public GUIBackend(File processedFileCacheDirectory) {
+        this.processedFileCacheDirectory = processedFileCacheDirectory;
+    }
+
     @Override
     public void addUGSEventListener(UGSEventListener listener) {
         if (!ugsEventListener.contains(listener)) {
@@ -154,7 +206,7 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
         // Reload gcode file to use the controllers processors.
         if (this.gcodeFile != null) {
-            setGcodeFile(this.gcodeFile);
+            loadGcodeFile(this.gcodeFile);
         }
     }
 
@@ -300,12 +352,12 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
     }
 
     @Override
-    public void adjustManualLocation(PartialPosition distance, double feedRate) throws Exception {
+    public boolean adjustManualLocation(PartialPosition distance, double feedRate) throws Exception {
         // Do not allow jogging if we are not idle or already jogging
         boolean canJog = getControllerState() == ControllerState.IDLE || getControllerState() == ControllerState.JOG;
         if (!canJog) {
             logger.fine("Skipping jog as controller state was not IDLE or JOG");
-            return;
+            return false;
         }
 
         boolean isEmpty = Arrays.stream(Axis.values())
@@ -314,10 +366,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
         // Don't send empty commands.
         if (isEmpty) {
-            return;
+            return false;
         }
 
         controller.jogMachine(distance, feedRate);
+        return true;
     }
 
     @Override
@@ -381,32 +434,132 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
     @Override
     public void setGcodeFile(File file) throws Exception {
-        logger.log(Level.INFO, "Setting gcode file.");
-        this.sendUGSEvent(new FileStateEvent(FileState.OPENING_FILE, file.getAbsolutePath()));
-        initGcodeParser();
-        this.gcodeFile = file;
-        processGcodeFile();
+        waitFor(loadGcodeFile(file));
+    }
+
+    @Override
+    public Future<File> loadGcodeFile(File file) {
+        synchronized (fileLoader) {
+            if (currentFileLoad != null) {
+                currentFileLoad.cancel(true);
+            }
+
+            currentFileLoad = submitToFileLoader(reportErrors(() -> {
+                logger.log(Level.INFO, "Setting gcode file.");
+                this.sendUGSEvent(new FileStateEvent(FileState.OPENING_FILE, file.getAbsolutePath()));
+                initGcodeParser();
+                this.gcodeFile = file;
+                processGcodeFile();
+                return this.processedGcodeFile;
+            }));
+            return currentFileLoad;
+        }
     }
 
     @Override
     public void reloadGcodeFile() throws Exception {
-        logger.log(Level.INFO, "Reloading gcode file.");
-        this.sendUGSEvent(new FileStateEvent(FileState.OPENING_FILE, gcodeFile.getAbsolutePath()));
-        processGcodeFile();
+        waitFor(reloadGcodeFileInBackground());
+    }
+
+    @Override
+    public Future<File> reloadGcodeFileInBackground() {
+        return submitToFileLoader(reportErrors(() -> {
+            logger.log(Level.INFO, "Reloading gcode file.");
+            this.sendUGSEvent(new FileStateEvent(FileState.OPENING_FILE, gcodeFile.getAbsolutePath()));
+            processGcodeFile(true);
+            return this.processedGcodeFile;
+        }));
     }
 
     private void processGcodeFile() throws Exception {
+        processGcodeFile(false);
+    }
+
+    /**
+     * Processes the gcode file, when reloading the same file only the modified part of it will be processed
+     */
+    private void processGcodeFile(boolean reload) throws Exception {
         this.processedGcodeFile = null;
 
         this.sendUGSEvent(new FileStateEvent(FileState.FILE_LOADING,
                 this.gcodeFile.getAbsolutePath()));
 
-        initializeProcessedLines(true, this.gcodeFile, this.gcp);
+        try {
+            initializeProcessedLines(true, this.gcodeFile, this.gcp, reload);
+        } catch (InterruptedIOException e) {
+            logger.log(Level.INFO, "Loading of {0} was cancelled", this.gcodeFile);
+            this.gcodeFile = null;
+            throw e;
+        }
 
         this.sendUGSEvent(new FileStateEvent(FileState.FILE_LOADED,
                 processedGcodeFile.getAbsolutePath()));
     }
 
+    /**
+     * Runs the task on the file loader thread, or directly if called from the file loader thread
+     */
+    private <T> Future<T> submitToFileLoader(Callable<T> task) {
+        if (Thread.currentThread() == fileLoaderThread) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return fileLoader.submit(task);
+    }
+
+    /**
+     * Logs and dispatches any error from the task as callers aren't required to wait for the result.
+     * A cancelled load is not reported.
+     */
+    private <T> Callable<T> reportErrors(Callable<T> task) {
+        return () -> {
+            try {
+                return task.call();
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (Exception e) {
+                File file = this.gcodeFile;
+                String name = file != null ? file.getName() : "";
+                logger.log(Level.SEVERE, "Couldn't load the gcode file " + file, e);
+                dispatchMessage(MessageType.ERROR, "Couldn't load the gcode file " + name + ": " + e.getMessage() + "\n");
+                throw e;
+            }
+        };
+    }
+
+    /**
+     * Waits for the task to complete and rethrows any exception thrown by the task
+     */
+    private static <T> T waitFor(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private IncrementalGcodeProcessor.ProgressListener createFileProgressListener(File file) {
+        long start = System.currentTimeMillis();
+        long[] lastEventTime = {start};
+        return (bytesRead, totalBytes, lines) -> {
+            long now = System.currentTimeMillis();
+            if (now - lastEventTime[0] < FILE_PROGRESS_INTERVAL) {
+                return;
+            }
+            lastEventTime[0] = now;
+
+            long estimatedTimeRemaining = -1;
+            if (bytesRead > 0 && totalBytes >= bytesRead) {
+                estimatedTimeRemaining = (now - start) * (totalBytes - bytesRead) / bytesRead;
+            }
+            sendUGSEvent(new FileProgressEvent(file.getAbsolutePath(), bytesRead, totalBytes, lines, estimatedTimeRemaining));
+        };
+    }
+
     @Override
     public List<String> getWorkspaceFileList() {
         String workspaceDirectory = settings.getWorkspaceDirectory();
@@ -463,22 +616,80 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
 
     @Override
     public void applyCommandProcessor(CommandProcessor commandProcessor) throws Exception {
+        waitFor(applyCommandProcessorInBackground(commandProcessor));
+    }
+
+    @Override
+    public Future<File> applyCommandProcessorInBackground(CommandProcessor commandProcessor) {
         logger.log(Level.INFO, "Applying new command processor");
-        gcp.addCommandProcessor(commandProcessor);
+        return submitToFileLoader(reportErrors(() -> {
+            gcp.addCommandProcessor(commandProcessor);
 
-        if (gcodeFile != null) {
-            processGcodeFile();
-        }
+            if (gcodeFile != null) {
+                processGcodeFile();
+            }
+            return this.processedGcodeFile;
+        }));
     }
 
     @Override
     public void removeCommandProcessor(CommandProcessor commandProcessor) throws Exception {
-        gcp.removeCommandProcessor(commandProcessor);
-        processGcodeFile();
+        waitFor(removeCommandProcessorInBackground(commandProcessor));
+    }
+
+    @Override
+    public Future<File> removeCommandProcessorInBackground(CommandProcessor commandProcessor) {
+        return submitToFileLoader(reportErrors(() -> {
+            gcp.removeCommandProcessor(commandProcessor);
 
-        if (gcodeFile != null) {
-            processGcodeFile();
+            if (gcodeFile != null) {
+                processGcodeFile();
+            }
+            return this.processedGcodeFile;
+        }));
+    }
+
+    @Override
+    public void applyStreamingCommandProcessor(Supplier<CommandProcessor> commandProcessorFactory) throws Exception {
+        logger.log(Level.INFO, "Applying new streaming command processor");
+        if (!streamingCommandProcessors.contains(commandProcessorFactory)) {
+            streamingCommandProcessors.add(commandProcessorFactory);
         }
+        updateStreamingCommandProcessors();
+    }
+
+    @Override
+    public void removeStreamingCommandProcessor(Supplier<CommandProcessor> commandProcessorFactory) throws Exception {
+        streamingCommandProcessors.remove(commandProcessorFactory);
+        updateStreamingCommandProcessors();
+    }
+
+    /**
+     * Gives the stream currently being sent new instances of the streaming command processors so that
+     * the change is used for the commands that hasn't been sent yet. If the stream was started without
+     * streaming command processors the change is used the next time the file is sent.
+     */
+    private void updateStreamingCommandProcessors() throws Exception {
+        ProcessedGcodeStreamReader reader = this.processedStreamReader;
+        if (reader != null) {
+            reader.setCommandProcessor(createStreamingCommandProcessor());
+        }
+    }
+
+    /**
+     * Creates the streaming command processors followed by the processors that formats their output
+     * for the firmware, for instance limiting the length of the commands.
+     */
+    private CommandProcessorList createStreamingCommandProcessor() {
+        CommandProcessorList result = new CommandProcessorList();
+        streamingCommandProcessors.forEach(factory -> result.add(factory.get()));
+        try {
+            FirmwareUtils.getFormattingProcessorsFor(firmware).forEach(result::add);
+        } catch (Exception e) {
+            result.add(new WhitespaceProcessor());
+            result.add(new DecimalProcessor(4));
+        }
+        return result;
     }
 
     @Override
@@ -503,7 +714,14 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
             // This will throw an exception and prevent that other stuff from
             // happening (clearing the table before its ready for clearing.
             this.controller.isReadyToStreamFile();
-            this.controller.queueStream(new GcodeStreamReader(this.processedGcodeFile));
+            IGcodeStreamReader reader = new GcodeStreamReader(this.processedGcodeFile);
+            if (streamingCommandProcessors.isEmpty()) {
+                this.processedStreamReader = null;
+            } else {
+                this.processedStreamReader = new ProcessedGcodeStreamReader(reader, createStreamingCommandProcessor());
+                reader = this.processedStreamReader;
+            }
+            this.controller.queueStream(reader);
             this.controller.beginStreaming();
         } catch (Exception e) {
             throw new Exception(Localization.getString("mainWindow.error.startingStream"), e);
@@ -810,7 +1028,11 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         try {
             connected = controller.openCommPort(settings.getConnectionDriver(), port, baudRate);
 
-            this.initializeProcessedLines(false, this.gcodeFile, this.gcp);
+            // The file loader owns the parser and the processed file, errors are reported by the task
+            submitToFileLoader(reportErrors(() -> {
+                this.initializeProcessedLines(false, this.gcodeFile, this.gcp, false);
+                return this.processedGcodeFile;
+            }));
         } catch (Exception e) {
             logger.log(Level.INFO, "Exception in openCommConnection.", e);
             throw new Exception(Localization.getString("mainWindow.error.connection")
@@ -819,7 +1041,7 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
         return connected;
     }
 
-    private void initializeProcessedLines(boolean forceReprocess, File startFile, GcodeParser gcodeParser)
+    private void initializeProcessedLines(boolean forceReprocess, File startFile, GcodeParser gcodeParser, boolean reload)
             throws Exception {
         if (startFile != null) {
             try (FileReader fr = new FileReader(startFile)) {
@@ -830,30 +1052,112 @@ public class GUIBackend implements BackendAPI, ControllerListener, SettingChange
             if (this.processedGcodeFile == null || forceReprocess) {
                 gcodeParser.reset();
 
-                String name = startFile.getName();
+                ProcessedFileCache cache = getProcessedFileCache();
+                String cacheKey = cache != null ? cache.createKey(startFile, gcodeParser, firmware) : null;
+                setProcessedFileCacheKey(cacheKey);
+
+                // Prefer reprocessing the modified part of a reloaded file as it keeps the checkpoints
+                boolean useCache = cacheKey != null && !(reload && gcodeFileProcessor.canReprocess(gcodeParser));
+                Optional<Stats> cachedStats = useCache ? cache.get(cacheKey) : Optional.empty();
+                if (cachedStats.isPresent()) {
+                    // The checkpoints may have been created with other processors, the next
+                    // reload will process the whole file and create new checkpoints.
+                    gcodeFileProcessor.clear();
+                    gcodeParser.restoreStats(cachedStats.get());
+                    this.processedGcodeFile = cache.getFile(cacheKey);
+                    this.settings.setFileStats(createFileStats(cachedStats.get()));
+                    logger.log(Level.INFO, "Reusing the processed file {0} for {1}", new Object[]{processedGcodeFile.getCanonicalPath(), startFile.getCanonicalPath()});
+                } else {
+                    this.processedGcodeFile = cacheKey != null ? cache.getFile(cacheKey) : createProcessedFile(startFile);
+                    logger.log(Level.INFO, "Preprocessing {0} to {1}", new Object[]{startFile.getCanonicalPath(), processedGcodeFile.getCanonicalPath()});
+                    gcodeFileProcessor.setProgressListener(createFileProgressListener(startFile));
+                    try {
+                        if (reload) {
+                            int unchangedLines = gcodeFileProcessor.reprocess(gcodeParser, startFile, this.processedGcodeFile);
+                            logger.log(Level.INFO, "Reused the result of {0} unchanged lines", unchangedLines);
+                        } else {
+                            gcodeFileProcessor.process(gcodeParser, startFile, this.processedGcodeFile);
+                        }
+                    } catch (Exception e) {
+                        if (cacheKey != null) {
+                            setProcessedFileCacheKey(null);
+                            cache.remove(cacheKey);
+                        }
+                        throw e;
+                    }
 
-                // If this is being re-processed, strip the ugs postfix and try again.
-                Pattern word = Pattern.compile("(.*)_ugs_[\\d]+$");
-                Matcher match = word.matcher(name);
-                if (match.matches()) {
-                    name = match.group(1);
-                }
-                this.processedGcodeFile =
-                        new File(this.getTempDir(), name + "_ugs_" + System.currentTimeMillis());
-                try (IGcodeWriter gcw = new GcodeStreamWriter(this.processedGcodeFile)) {
-                    this.preprocessAndExportToFile(gcodeParser, startFile, gcw);
+                    // Store gcode file stats.
+                    Stats stats = gcodeParser.getCurrentStats();
+                    this.settings.setFileStats(createFileStats(stats));
+                    if (cacheKey != null) {
+                        cache.put(cacheKey, stats);
+                    }
                 }
-
-                // Store gcode file stats.
-                GcodeStats gs = gcodeParser.getCurrentStats();
-                this.settings.setFileStats(new FileStats(
-                        gs.getMin(), gs.getMax(), gs.getCommandCount()));
             }
             long end = System.currentTimeMillis();
             logger.info("Took " + (end - start) + "ms to preprocess");
         }
     }
 
+    private static FileStats createFileStats(GcodeStats stats) {
+        FileStats fileStats = new FileStats(stats.getMin(), stats.getMax(), stats.getCommandCount());
+        fileStats.cuttingDistance = stats.getCuttingDistance();
+        fileStats.rapidDistance = stats.getRapidDistance();
+        fileStats.cuttingTime = stats.getCuttingTime();
+        fileStats.spindleOnTime = stats.getSpindleOnTime();
+        fileStats.toolChanges = stats.getToolChangeCount();
+        return fileStats;
+    }
+
+    /**
+     * Retains the cached file that is used as the processed file so that it isn't
+     * removed from the cache, and releases the previously used file.
+     */
+    private void setProcessedFileCacheKey(String cacheKey) {
+        if (cacheKey != null) {
+            processedFileCache.retain(cacheKey);
+        }
+        if (processedFileCacheKey != null) {
+            processedFileCache.release(processedFileCacheKey);
+        }
+        processedFileCacheKey = cacheKey;
+    }
+
+    /**
+     * Creates a file in the temp directory for a processed file which can't be cached
+     */
+    private File createProcessedFile(File startFile) {
+        String name = startFile.getName();
+
+        // If this is being re-processed, strip the ugs postfix and try again.
+        Pattern word = Pattern.compile("(.*)_ugs_[\\d]+$");
+        Matcher match = word.matcher(name);
+        if (match.matches()) {
+            name = match.group(1);
+        }
+        File file = new File(this.getTempDir(), name + "_ugs_" + System.currentTimeMillis());
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Returns the cache for processed files, or null if it has been disabled
+     */
+    private ProcessedFileCache getProcessedFileCache() {
+        long maxSize = this.settings.getProcessedFileCacheSize() * 1024L * 1024L;
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        if (this.processedFileCache == null) {
+            File cacheDir = processedFileCacheDirectory != null ? processedFileCacheDirectory :
+                    new File(SettingsFactory.getSettingsDirectory(), "processed_files");
+            this.processedFileCache = new ProcessedFileCache(cacheDir, maxSize);
+        }
+        this.processedFileCache.setMaxSize(maxSize);
+        return this.processedFileCache;
+    }
+
     private void sendUGSEvent(UGSEvent event) {
         logger.log(Level.FINE, "Sending event {0}.", event.getClass().getSimpleName());
         ugsEventListener.forEach(l -> l.UGSEvent(event));
@@ -19,17 +19,20 @@
 package com.willwinder.universalgcodesender.model;
 
 import com.google.common.collect.ImmutableMap;
-import com.willwinder.universalgcodesender.Utils;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
 
 import java.text.NumberFormat;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.ObjDoubleConsumer;
 
 /**
  * Represents a maybe partial coordinate (ie. only certain axis-values are known, eg. for moves where only some axis
  * are changed)
  */
 public class PartialPosition {
+    private static final DecimalFormatter FORMATTER = new DecimalFormatter(3);
+
     private final Double x;
     private final Double y;
     private final Double z;
@@ -339,31 +342,52 @@ public class PartialPosition {
     }
 
     public String getFormattedGCode() {
-        return getFormattedGCode(Utils.formatter);
+        return getFormattedGCode(FORMATTER);
+    }
 
+    public String getFormattedGCode(DecimalFormatter formatter) {
+        return appendFormattedGCode(new StringBuilder(), formatter).toString();
     }
 
+    /**
+     * @deprecated use {@link #getFormattedGCode(DecimalFormatter)} which is thread safe and faster.
+     */
+    @Deprecated
     public String getFormattedGCode(NumberFormat formatter) {
-        StringBuilder sb = new StringBuilder();
+        return appendFormattedGCode(new StringBuilder(), (sb, value) -> sb.append(formatter.format(value))).toString();
+    }
+
+    /**
+     * Appends the axes of this position as gcode words to the given string builder.
+     *
+     * @param sb        the string builder to append to
+     * @param formatter the formatter to use for the axis values
+     * @return the given string builder
+     */
+    public StringBuilder appendFormattedGCode(StringBuilder sb, DecimalFormatter formatter) {
+        return appendFormattedGCode(sb, (builder, value) -> formatter.format(value, builder));
+    }
+
+    private StringBuilder appendFormattedGCode(StringBuilder sb, ObjDoubleConsumer<StringBuilder> formatter) {
         if (this.hasX()) {
-            sb.append("X").append(formatter.format(this.getX()));
+            formatter.accept(sb.append("X"), this.getX());
         }
         if (this.hasY()) {
-            sb.append("Y").append(formatter.format(this.getY()));
+            formatter.accept(sb.append("Y"), this.getY());
         }
         if (this.hasZ()) {
-            sb.append("Z").append(formatter.format(this.getZ()));
+            formatter.accept(sb.append("Z"), this.getZ());
         }
         if (this.hasA()) {
-            sb.append("A").append(formatter.format(this.getA()));
+            formatter.accept(sb.append("A"), this.getA());
         }
         if (this.hasB()) {
-            sb.append("B").append(formatter.format(this.getB()));
+            formatter.accept(sb.append("B"), this.getB());
         }
         if (this.hasC()) {
-            sb.append("C").append(formatter.format(this.getC()));
+            formatter.accept(sb.append("C"), this.getC());
         }
-        return sb.toString();
+        return sb;
     }
 
     @Override
@@ -0,0 +1,87 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.model.events;
+
+import com.willwinder.universalgcodesender.model.UGSEvent;
+
+/**
+ * An event that will be dispatched periodically while a gcode file is
+ * being loaded.
+ */
+public class FileProgressEvent implements UGSEvent {
+    private final String file;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final int linesProcessed;
+    private final long estimatedTimeRemaining;
+
+    /**
+     * Create a file progress event
+     *
+     * @param filepath               the file being loaded
+     * @param bytesRead              the number of bytes read from the file
+     * @param totalBytes             the size of the file in bytes
+     * @param linesProcessed         the number of lines processed
+     * @param estimatedTimeRemaining the estimated time in milliseconds until the file is loaded, or -1 if unknown
+     */
+    public FileProgressEvent(String filepath, long bytesRead, long totalBytes, int linesProcessed, long estimatedTimeRemaining) {
+        this.file = filepath;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.linesProcessed = linesProcessed;
+        this.estimatedTimeRemaining = estimatedTimeRemaining;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getLinesProcessed() {
+        return linesProcessed;
+    }
+
+    /**
+     * Returns the estimated time until the file is loaded
+     *
+     * @return the time in milliseconds or -1 if unknown
+     */
+    public long getEstimatedTimeRemaining() {
+        return estimatedTimeRemaining;
+    }
+
+    /**
+     * Returns how much of the file that has been loaded
+     *
+     * @return a value between 0 and 1
+     */
+    public double getProgress() {
+        if (totalBytes <= 0) {
+            return 0;
+        }
+        return Math.min(1, (double) bytesRead / totalBytes);
+    }
+}
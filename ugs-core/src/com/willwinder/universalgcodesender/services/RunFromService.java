@@ -41,22 +41,15 @@ public class RunFromService implements UGSEventListener {
 
     public RunFromService(BackendAPI backend) {
         this.backend = backend;
-        try {
-            this.backend.applyCommandProcessor(runFromProcessor);
-        } catch (Exception e) {
-            // Never mind this
-        }
+        this.backend.applyCommandProcessorInBackground(runFromProcessor);
         this.backend.addUGSEventListener(this);
     }
 
     public void runFromLine(int lineNumber) {
-        try {
-            this.runFromProcessor.setLineNumber(lineNumber);
-            this.backend.applyCommandProcessor(runFromProcessor);
-            listeners.forEach(listener -> listener.runFromLineChanged(lineNumber));
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+        // This is called from the UI, errors are dispatched by the backend
+        this.runFromProcessor.setLineNumber(lineNumber);
+        this.backend.applyCommandProcessorInBackground(runFromProcessor);
+        listeners.forEach(listener -> listener.runFromLineChanged(lineNumber));
     }
 
     public void addListener(RunFromServiceListener runFromServiceListener) {
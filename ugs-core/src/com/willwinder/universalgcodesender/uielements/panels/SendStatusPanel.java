@@ -23,6 +23,8 @@ import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
 import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 import com.willwinder.universalgcodesender.model.events.CommandEvent;
 import com.willwinder.universalgcodesender.model.events.CommandEventType;
 import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
@@ -31,6 +33,7 @@ import com.willwinder.universalgcodesender.types.GcodeCommand;
 import com.willwinder.universalgcodesender.utils.GUIHelpers;
 import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.Settings.FileStats;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
@@ -58,6 +61,10 @@ public class SendStatusPanel extends JPanel implements UGSEventListener {
     private final JLabel remainingTimeLabel = new JLabel(Localization.getString("mainWindow.swing.remainingTimeLabel"));
     private final JLabel durationLabel = new JLabel(Localization.getString("mainWindow.swing.durationLabel"));
     private final JLabel latestCommentLabel = new JLabel(Localization.getString("mainWindow.swing.latestCommentLabel"));
+    private final JLabel distanceLabel = new JLabel(Localization.getString("mainWindow.swing.distanceLabel"));
+    private final JLabel cuttingTimeLabel = new JLabel(Localization.getString("mainWindow.swing.cuttingTimeLabel"));
+    private final JLabel spindleOnTimeLabel = new JLabel(Localization.getString("mainWindow.swing.spindleOnTimeLabel"));
+    private final JLabel toolChangesLabel = new JLabel(Localization.getString("mainWindow.swing.toolChangesLabel"));
 
     private final JLabel rowsValue = new JLabel();
     private final JLabel sentRowsValue = new JLabel();
@@ -65,6 +72,10 @@ public class SendStatusPanel extends JPanel implements UGSEventListener {
     private final JLabel remainingTimeValue = new JLabel();
     private final JLabel durationValue = new JLabel();
     private final JTextArea latestCommentValueLabel = new JTextArea();
+    private final JLabel distanceValue = new JLabel();
+    private final JLabel cuttingTimeValue = new JLabel();
+    private final JLabel spindleOnTimeValue = new JLabel();
+    private final JLabel toolChangesValue = new JLabel();
 
     private Timer timer;
 
@@ -186,6 +197,25 @@ public class SendStatusPanel extends JPanel implements UGSEventListener {
         this.sentRowsValue.setText("0");
         this.remainingRowsValue.setText(totalRows);
         this.rowsValue.setText(totalRows);
+        resetFileStatsLabels();
+    }
+
+    private void resetFileStatsLabels() {
+        FileStats fileStats = backend.getSettings().getFileStats();
+        if (backend.getProcessedGcodeFile() == null || fileStats == null) {
+            distanceValue.setText("");
+            cuttingTimeValue.setText("");
+            spindleOnTimeValue.setText("");
+            toolChangesValue.setText("");
+            return;
+        }
+
+        Units units = backend.getSettings().getPreferredUnits();
+        double scale = UnitUtils.scaleUnits(Units.MM, units);
+        distanceValue.setText(String.format("%.1f / %.1f %s", fileStats.cuttingDistance * scale, fileStats.rapidDistance * scale, units.abbreviation));
+        cuttingTimeValue.setText(Utils.formattedMillis((long) (fileStats.cuttingTime * 1000)));
+        spindleOnTimeValue.setText(Utils.formattedMillis((long) (fileStats.spindleOnTime * 1000)));
+        toolChangesValue.setText(String.valueOf(fileStats.toolChanges));
     }
 
     private void initComponents() {
@@ -201,6 +231,14 @@ public class SendStatusPanel extends JPanel implements UGSEventListener {
         add(remainingTimeValue);
         add(durationLabel, AL_RIGHT);
         add(durationValue);
+        add(distanceLabel, AL_RIGHT);
+        add(distanceValue);
+        add(cuttingTimeLabel, AL_RIGHT);
+        add(cuttingTimeValue);
+        add(spindleOnTimeLabel, AL_RIGHT);
+        add(spindleOnTimeValue);
+        add(toolChangesLabel, AL_RIGHT);
+        add(toolChangesValue);
         add(latestCommentLabel, "span 2, wrap");
         add(latestCommentValueLabel, "growx, span 2, wrap, wmin 10");
 
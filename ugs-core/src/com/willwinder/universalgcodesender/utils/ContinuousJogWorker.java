@@ -18,6 +18,8 @@
  */
 package com.willwinder.universalgcodesender.utils;
 
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
 import com.willwinder.universalgcodesender.model.Axis;
 import com.willwinder.universalgcodesender.model.BackendAPI;
@@ -27,13 +29,26 @@ import com.willwinder.universalgcodesender.model.UnitUtils;
 import com.willwinder.universalgcodesender.model.events.CommandEvent;
 import com.willwinder.universalgcodesender.model.events.CommandEventType;
 import com.willwinder.universalgcodesender.services.JogService;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * A continuous jog worker that will send small jog commands at a fixed interval so that
- * it will achieve the jog feed rate set in the {@link JogService#getFeedRate()}.
+ * A continuous jog worker that streams small jog commands from a dedicated thread so
+ * that it will achieve the jog feed rate set in the {@link JogService#getFeedRate()}.
  * <p>
- * It will attempt to listen to completed commands to determine if a new jog command
- * can be sent.
+ * The worker keeps a number of jog segments queued in the controller, the length of
+ * each segment and the number of segments are based on the measured latency of the
+ * commands, the feed rate and the acceleration of the machine. Since the controller
+ * acknowledges a segment when it has been planned rather than when it has been
+ * executed, the queued segments are tracked using the time it takes to execute them.
+ * When stopped the queued segments are canceled.
  * <p>
  * Example usage:
  * ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, jogService);
@@ -44,16 +59,49 @@ import com.willwinder.universalgcodesender.services.JogService;
  * @author Joacim Breiler
  */
 public class ContinuousJogWorker implements UGSEventListener {
+    private static final Logger LOGGER = Logger.getLogger(ContinuousJogWorker.class.getName());
+
+    /**
+     * The number of blocks in the GRBL planner buffer
+     */
+    static final int PLANNER_BLOCKS = 15;
+
+    /**
+     * The smallest number of segments to keep queued, one executing and one waiting
+     */
+    static final int MIN_QUEUED_SEGMENTS = 2;
+
+    /**
+     * The shortest time in seconds that a jog segment should take to execute
+     */
+    static final double MIN_SEGMENT_DURATION = 0.010;
+
+    /**
+     * The weight of a new latency sample in the moving average of the latency
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /**
+     * How many times the measured latency to wait for an acknowledgement before the segment is considered lost
+     */
+    static final int ACK_TIMEOUT_LATENCY_FACTOR = 4;
+    private static final int DEFAULT_STATUS_INTERVAL = 200;
+
     private final JogService jogService;
     private final BackendAPI backendAPI;
-    private float x;
-    private float y;
-    private float z;
-    private float a;
-    private float b;
-    private float c;
+    private final Object lock = new Object();
+
+    // The jog segments queued in the controller, guarded by lock
+    private final SegmentQueue segmentQueue = new SegmentQueue();
+    private volatile float x;
+    private volatile float y;
+    private volatile float z;
+    private volatile float a;
+    private volatile float b;
+    private volatile float c;
     private boolean isRunning = false;
     private boolean jogCanceled = true;
+    private Thread jogThread;
 
     public ContinuousJogWorker(BackendAPI backendAPI, JogService jogService) {
         this.jogService = jogService;
@@ -73,72 +121,266 @@ public class ContinuousJogWorker implements UGSEventListener {
      * Destroys this instance, removing it as a listener from the backend API.
      */
     public void destroy() {
-        isRunning = false;
-        jogCanceled = true;
+        stop();
         backendAPI.removeUGSEventListener(this);
     }
 
     /**
-     * Starts sending continuous jogging commands at a fixed interval.
+     * Starts sending continuous jogging commands.
      * Use {@link #stop()} to stop sending jog commands
      */
     public void start() {
-        if (!isRunning) {
+        synchronized (lock) {
+            if (isRunning) {
+                return;
+            }
+
             isRunning = true;
-            jogCanceled = false;
-            sendJogCommand();
+            if (jogThread == null) {
+                jogThread = new Thread(this::streamJogCommands, "ContinuousJogWorker");
+                jogThread.setDaemon(true);
+                jogThread.start();
+            }
         }
     }
 
     /**
-     * Stops sending continuous jogging commands
+     * Stops sending continuous jogging commands and cancels the queued jog commands
      */
     public void stop() {
-        isRunning = false;
-    }
-
-    /**
-     * puts one jog command in the buffer that will take JOG_COMMAND_INTERVAL ms to execute (excluding accelleration)
-     * 
-     * This function calculates the feedrate and magnitude of an individual jog command based
-     * on the algorithm described here: https://github.com/gnea/grbl/wiki/Grbl-v1.1-Jogging
-     * The algorithm has been simplified by reducing consideration for:
-     *    dt > v^2 / (2 * a * (N-1))
-     * Instead, we make some assumptions that are expected for good jog performance:
-     *  1) The latency from when we send a jog command to GRBL and receive the "ok" back is less than 10ms (typically 1-7ms).
-     *  2) The Jog feedrate and machine acceleration are such that the machine can accelerate to it's full jog rate within
-     *     the length of the command buffer (N=15 for regular GRBL).
-     *  3) The command buffer isn't larger than N=15 (if it is, we'll get increasing lag in response to direction/rate changes on the joystick)
-     * command to take 10ms to execute excluding acceleration time.
+        synchronized (lock) {
+            isRunning = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Keeps the calculated number of jog segments queued until stopped, then
+     * cancels the remaining segments.
+     */
+    private void streamJogCommands() {
+        try {
+            Map<Axis, Double> accelerations = getAccelerations();
+            while (true) {
+                Pacing pacing = getPacing(accelerations);
+                if (awaitQueueSpace(pacing)) {
+                    sendJogCommand(pacing);
+                    continue;
+                }
+
+                cancelJog();
+                synchronized (lock) {
+                    if (!isRunning) {
+                        jogThread = null;
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelJog();
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "Stopped the continuous jog because of an error", e);
+            cancelJog();
+        } finally {
+            synchronized (lock) {
+                if (jogThread == Thread.currentThread()) {
+                    isRunning = false;
+                    jogThread = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until fewer segments than needed are queued. Segments that haven't been
+     * acknowledged within the acknowledgement timeout are considered lost.
      *
+     * @return true if a segment should be sent, false if the worker has been stopped
+     */
+    private boolean awaitQueueSpace(Pacing pacing) throws InterruptedException {
+        final long statusInterval = TimeUnit.MILLISECONDS.toNanos(getStatusInterval());
+        synchronized (lock) {
+            while (isRunning) {
+                long waitTime = segmentQueue.getWaitTime(System.nanoTime(), pacing, segmentQueue.getAckTimeout(statusInterval));
+                if (waitTime <= 0) {
+                    break;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, waitTime);
+            }
+            return isRunning;
+        }
+    }
+
+    /**
+     * Sends one jog command that will take the duration of the pacing to execute (excluding acceleration)
+     * <p>
+     * The feed rate and length of the jog command are based on the algorithm described
+     * here: https://github.com/gnea/grbl/wiki/Grbl-v1.1-Jogging
+     * <p>
      * Note: the jog command total feedrate may exceed the set feedrate if moving in more than one axis at the same time. The max rate
      * in any 1 axis will never exceed the jog feedrate.
-     *
      */
-    private void sendJogCommand() {
-        final UnitUtils.Units units = jogService.getUnits();
-        final double jogVectorLength = Math.sqrt((x * x) + (y * y) + (z * z) + (a * a) + (b * b) + (c * c));
+    private void sendJogCommand(Pacing pacing) throws InterruptedException {
+        final double jogVectorLength = getJogVectorLength();
+        final ControllerState state = backendAPI.getControllerState();
+        if (jogVectorLength == 0 || (state != ControllerState.IDLE && state != ControllerState.JOG)) {
+            // Wait for the controller to become ready
+            synchronized (lock) {
+                lock.wait(getStatusInterval());
+            }
+            return;
+        }
+
         final double speedFactor = jogVectorLength; //FIXME? Double.min(jogVectorLength, 1.0); // caps jog speed at 100% (1.0) of maxFeedRate
-        final double maxFeedRate = jogService.getFeedRate() / 60.0; // maximum jog feed rate in units per second
-        final double v = maxFeedRate * speedFactor; // scaled jog feed rate in units per second
-        final double dt = 0.010; // minimum dt in ms for grbl command latency
-        final double s = v * dt; // s = distance in units that this jog command should travel
+        final double s = getJogSpeed() * pacing.getSegmentDuration(); // s = distance in units that this jog command should travel
         final double scaleFactor = s / jogVectorLength; // determine scaleFactor required to scale jogVectorLength to s
 
-        PartialPosition.Builder builder = PartialPosition.builder().setUnits(units);
-        setAxisIfNotZero(builder, Axis.X, x * scaleFactor);
-        setAxisIfNotZero(builder, Axis.Y, y * scaleFactor);
-        setAxisIfNotZero(builder, Axis.Z, z * scaleFactor);
-        setAxisIfNotZero(builder, Axis.A, a * scaleFactor);
-        setAxisIfNotZero(builder, Axis.B, b * scaleFactor);
-        setAxisIfNotZero(builder, Axis.C, c * scaleFactor);
-        jogService.adjustManualLocation(builder.build(), speedFactor);
+        PartialPosition.Builder builder = PartialPosition.builder().setUnits(jogService.getUnits());
+        boolean hasAxis = setAxisIfNotZero(builder, Axis.X, x * scaleFactor);
+        hasAxis |= setAxisIfNotZero(builder, Axis.Y, y * scaleFactor);
+        hasAxis |= setAxisIfNotZero(builder, Axis.Z, z * scaleFactor);
+        hasAxis |= setAxisIfNotZero(builder, Axis.A, a * scaleFactor);
+        hasAxis |= setAxisIfNotZero(builder, Axis.B, b * scaleFactor);
+        hasAxis |= setAxisIfNotZero(builder, Axis.C, c * scaleFactor);
+        if (!hasAxis) {
+            synchronized (lock) {
+                lock.wait(getStatusInterval());
+            }
+            return;
+        }
+
+        boolean isSent;
+        try {
+            // Sends the command directly to the backend instead of going through the jog service
+            isSent = backendAPI.adjustManualLocation(builder.build(), jogService.getFeedRate() * speedFactor);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Couldn't send the jog command", e);
+            isSent = false;
+        }
+
+        synchronized (lock) {
+            if (isSent) {
+                segmentQueue.add(System.nanoTime(), pacing);
+                jogCanceled = false;
+            } else {
+                // Wait for the controller to become ready
+                lock.wait(getStatusInterval());
+            }
+        }
     }
 
-    private void setAxisIfNotZero(PartialPosition.Builder builder, Axis axis, double value) {
+    private void cancelJog() {
+        synchronized (lock) {
+            if (jogCanceled) {
+                return;
+            }
+            jogCanceled = true;
+            segmentQueue.clear();
+        }
+        jogService.cancelJog();
+    }
+
+    private Pacing getPacing(Map<Axis, Double> accelerations) {
+        double acceleration = getAcceleration(accelerations);
+        synchronized (lock) {
+            return calculatePacing(getJogSpeed(), acceleration, segmentQueue.getLatency());
+        }
+    }
+
+    /**
+     * Calculates the duration of each jog segment and how many segments to keep queued.
+     * <p>
+     * To be able to reach the jog speed the queued segments need to be long enough to
+     * decelerate from it: (N-1) * v * dt &gt; v^2 / (2 * a), which gives the segment
+     * duration dt &gt; v / (2 * a * (N-1)). If the acceleration is unknown, which it is
+     * for firmwares other than GRBL, the minimum number of segments is used. Each segment should also take at
+     * least as long as the latency so that the next segment is received before the queue
+     * runs out. The number of segments is kept below the planner size so that changes in
+     * direction are responsive.
+     * <p>
+     * Accelerating from standstill to the jog speed takes v / (2 * a) longer than moving
+     * the same distance at the jog speed, which is added to the time of the queue when
+     * starting to move.
+     *
+     * @param v            the jog speed in units per second
+     * @param acceleration the acceleration in units per second^2, or zero if unknown
+     * @param latency      the time in seconds from sending a segment until it is acknowledged
+     * @return the pacing of the jog segments
+     */
+    static Pacing calculatePacing(double v, double acceleration, double latency) {
+        double segmentDuration = Math.max(MIN_SEGMENT_DURATION, latency);
+        if (v <= 0 || acceleration <= 0) {
+            return new Pacing(segmentDuration, MIN_QUEUED_SEGMENTS, 0);
+        }
+
+        int maxQueueSize = PLANNER_BLOCKS - 1;
+        int queueSize = (int) Math.ceil(v / (2 * acceleration * segmentDuration)) + 1;
+        if (queueSize > maxQueueSize) {
+            queueSize = maxQueueSize;
+            segmentDuration = v / (2 * acceleration * (queueSize - 1));
+        }
+        return new Pacing(segmentDuration, Math.max(MIN_QUEUED_SEGMENTS, queueSize), v / (2 * acceleration));
+    }
+
+    /**
+     * Returns the jog speed in units per second
+     */
+    private double getJogSpeed() {
+        return (jogService.getFeedRate() / 60.0) * getJogVectorLength();
+    }
+
+    private double getJogVectorLength() {
+        return Math.sqrt((x * x) + (y * y) + (z * z) + (a * a) + (b * b) + (c * c));
+    }
+
+    /**
+     * Returns the lowest acceleration of the axes that are moving in units per second^2, or zero if unknown
+     */
+    private double getAcceleration(Map<Axis, Double> accelerations) {
+        double acceleration = Double.MAX_VALUE;
+        for (Map.Entry<Axis, Double> entry : accelerations.entrySet()) {
+            if (getDirection(entry.getKey()) != 0) {
+                acceleration = Math.min(acceleration, entry.getValue());
+            }
+        }
+        return acceleration == Double.MAX_VALUE ? 0 : acceleration * UnitUtils.scaleUnits(UnitUtils.Units.MM, jogService.getUnits());
+    }
+
+    private Map<Axis, Double> getAccelerations() {
+        Map<Axis, Double> accelerations = new EnumMap<>(Axis.class);
+        IController controller = backendAPI.getController();
+        if (controller == null || controller.getFirmwareSettings() == null) {
+            return accelerations;
+        }
+
+        for (Axis axis : Axis.values()) {
+            try {
+                double acceleration = controller.getFirmwareSettings().getAcceleration(axis);
+                if (acceleration > 0) {
+                    accelerations.put(axis, acceleration);
+                }
+            } catch (Exception e) {
+                // The acceleration of this axis is unknown
+            }
+        }
+        return accelerations;
+    }
+
+    private int getStatusInterval() {
+        IController controller = backendAPI.getController();
+        if (controller == null || controller.getStatusUpdateRate() <= 0) {
+            return DEFAULT_STATUS_INTERVAL;
+        }
+        return controller.getStatusUpdateRate();
+    }
+
+    private boolean setAxisIfNotZero(PartialPosition.Builder builder, Axis axis, double value) {
         if (value != 0 && backendAPI.getController().getCapabilities().hasAxis(axis)) {
             builder.setValue(axis, value);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -177,19 +419,32 @@ public class ContinuousJogWorker implements UGSEventListener {
 
     @Override
     public void UGSEvent(UGSEvent event) {
-        if (event instanceof CommandEvent && ((CommandEvent) event).getCommandEventType() == CommandEventType.COMMAND_COMPLETE) {
-            if (isRunning) {
-                // still running, send the next jog command
-                sendJogCommand();
-            } else if (!jogCanceled) {
-                // a command has completed
-                // we've been stopped, so cancel jog commands in the buffer
-                jogService.cancelJog();
-                jogCanceled = true;
+        if (event instanceof CommandEvent &&
+                ((CommandEvent) event).getCommandEventType() == CommandEventType.COMMAND_COMPLETE &&
+                isJogCommand(((CommandEvent) event).getCommand())) {
+            long statusInterval = TimeUnit.MILLISECONDS.toNanos(getStatusInterval());
+            synchronized (lock) {
+                if (segmentQueue.acknowledge(System.nanoTime(), segmentQueue.getAckTimeout(statusInterval))) {
+                    // Signal that another segment can be queued
+                    lock.notifyAll();
+                }
             }
         }
     }
 
+    /**
+     * Returns if the command is a relative jog command such as the ones created by the
+     * controllers for {@link BackendAPI#adjustManualLocation(PartialPosition, double)}
+     */
+    static boolean isJogCommand(GcodeCommand command) {
+        if (command == null || command.getCommandString() == null) {
+            return false;
+        }
+
+        String commandString = command.getCommandString().toUpperCase();
+        return commandString.startsWith("$J=G91") || commandString.startsWith("G91G1");
+    }
+
     public void setDirection(Axis axis, float value) {
         switch (axis) {
             case X:
@@ -213,6 +468,25 @@ public class ContinuousJogWorker implements UGSEventListener {
         }
     }
 
+    private float getDirection(Axis axis) {
+        switch (axis) {
+            case X:
+                return x;
+            case Y:
+                return y;
+            case Z:
+                return z;
+            case A:
+                return a;
+            case B:
+                return b;
+            case C:
+                return c;
+            default:
+                return 0;
+        }
+    }
+
     public void update() {
         if (x != 0 || y != 0 || z != 0 || a != 0 || b != 0 || c != 0) {
             start();
@@ -220,4 +494,163 @@ public class ContinuousJogWorker implements UGSEventListener {
             stop();
         }
     }
+
+    /**
+     * The duration of each jog segment and the number of segments to keep queued
+     */
+    static class Pacing {
+        private final double segmentDuration;
+        private final int queueSize;
+        private final double accelerationTime;
+
+        Pacing(double segmentDuration, int queueSize, double accelerationTime) {
+            this.segmentDuration = segmentDuration;
+            this.queueSize = queueSize;
+            this.accelerationTime = accelerationTime;
+        }
+
+        /**
+         * @return the time in seconds that each segment takes to execute
+         */
+        double getSegmentDuration() {
+            return segmentDuration;
+        }
+
+        /**
+         * @return the number of segments to keep queued
+         */
+        int getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * @return the extra time in seconds it takes to accelerate to the jog speed
+         */
+        double getAccelerationTime() {
+            return accelerationTime;
+        }
+    }
+
+    /**
+     * Keeps track of the jog segments queued in the controller. Since the controller
+     * acknowledges a segment when it has been planned rather than when it has been
+     * executed, the queue also estimates when the queued segments have been executed.
+     * All times are given in nanoseconds.
+     */
+    static class SegmentQueue {
+        // The send time of each segment that hasn't been acknowledged
+        private final Deque<Long> unacknowledgedSegments = new ArrayDeque<>();
+
+        // The send time of each canceled segment that may still be acknowledged
+        private final Deque<Long> canceledSegments = new ArrayDeque<>();
+
+        // The estimated time when the queued segments have been executed, only valid while moving
+        private long endTime;
+        private boolean isMoving;
+
+        // The measured time in seconds from sending a jog segment until it was acknowledged
+        private double latency = MIN_SEGMENT_DURATION;
+
+        /**
+         * Adds a segment that was sent to the controller
+         *
+         * @param now    the time the segment was sent
+         * @param pacing the pacing of the segment
+         */
+        void add(long now, Pacing pacing) {
+            if (!isMoving || endTime - now <= 0) {
+                // Starting from standstill, the first segments take longer to execute while accelerating
+                endTime = now + toNanos(pacing.getAccelerationTime());
+                isMoving = true;
+            }
+            endTime += toNanos(pacing.getSegmentDuration());
+            unacknowledgedSegments.add(now);
+        }
+
+        /**
+         * Acknowledges the oldest sent segment and updates the moving average of the latency.
+         * Acknowledgements of segments that were canceled are ignored.
+         *
+         * @param now        the time the acknowledgement was received
+         * @param ackTimeout the time to wait for a segment to be acknowledged
+         * @return true if there was a segment to acknowledge
+         */
+        boolean acknowledge(long now, long ackTimeout) {
+            while (!canceledSegments.isEmpty() && now - canceledSegments.peekFirst() >= ackTimeout) {
+                canceledSegments.pollFirst();
+            }
+            if (canceledSegments.pollFirst() != null) {
+                return false;
+            }
+
+            Long sendTime = unacknowledgedSegments.poll();
+            if (sendTime == null) {
+                return false;
+            }
+
+            double sample = (now - sendTime) / 1_000_000_000.0;
+            latency += (sample - latency) * LATENCY_SMOOTHING;
+            return true;
+        }
+
+        /**
+         * Returns how long to wait until the next segment should be sent. Segments that
+         * haven't been acknowledged within the timeout are considered lost and removed.
+         *
+         * @param now        the current time
+         * @param pacing     the pacing of the segments
+         * @param ackTimeout the time to wait for a segment to be acknowledged
+         * @return the time to wait, zero or less if a segment should be sent now
+         */
+        long getWaitTime(long now, Pacing pacing, long ackTimeout) {
+            while (!unacknowledgedSegments.isEmpty() && now - unacknowledgedSegments.peekFirst() >= ackTimeout) {
+                LOGGER.fine("Jog segment was never acknowledged");
+                unacknowledgedSegments.pollFirst();
+            }
+
+            // Wait until the queue only has time left for all but one segment
+            long waitTime = 0;
+            if (isMoving) {
+                waitTime = endTime - now - (pacing.getQueueSize() - 1) * toNanos(pacing.getSegmentDuration());
+            }
+            if (unacknowledgedSegments.size() >= pacing.getQueueSize()) {
+                // Wait for the oldest segment to be acknowledged or to time out
+                waitTime = Math.max(waitTime, unacknowledgedSegments.peekFirst() + ackTimeout - now);
+            }
+            return waitTime;
+        }
+
+        /**
+         * Returns the time to wait for a segment to be acknowledged, which is a number of
+         * times the measured latency but at least the status interval.
+         *
+         * @param statusInterval the status interval of the controller
+         * @return the time to wait for an acknowledgement
+         */
+        long getAckTimeout(long statusInterval) {
+            return Math.max(statusInterval, toNanos(latency * ACK_TIMEOUT_LATENCY_FACTOR));
+        }
+
+        /**
+         * Removes all segments, for instance when the queued segments have been canceled.
+         * The acknowledgements of the removed segments that are received afterwards are ignored.
+         */
+        void clear() {
+            canceledSegments.addAll(unacknowledgedSegments);
+            unacknowledgedSegments.clear();
+            isMoving = false;
+        }
+
+        int size() {
+            return unacknowledgedSegments.size();
+        }
+
+        double getLatency() {
+            return latency;
+        }
+
+        private static long toNanos(double seconds) {
+            return (long) (seconds * 1_000_000_000L);
+        }
+    }
 }
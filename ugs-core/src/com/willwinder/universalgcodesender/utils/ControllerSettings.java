@@ -30,11 +30,13 @@ import com.willwinder.universalgcodesender.SmoothieController;
 import com.willwinder.universalgcodesender.TinyGController;
 import com.willwinder.universalgcodesender.XLCDCommunicator;
 import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.SpindleOnDweller;
 import com.willwinder.universalgcodesender.gcode.util.CommandProcessorLoader;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 /**
  * POJO Object representation of a controller JSON file.
@@ -136,6 +138,17 @@ public class ControllerSettings {
         return ret;
     }
 
+    /**
+     * Get the processors that format the commands for the controller, these
+     * only change each command and can be applied again to commands that have
+     * already been processed.
+     */
+    public List<CommandProcessor> getFormattingProcessors() {
+        return CommandProcessorLoader.initializeWithProcessors(GcodeProcessors.End).stream()
+                .filter(processor -> !(processor instanceof SpindleOnDweller))
+                .collect(Collectors.toList());
+    }
+
     public ProcessorConfigGroups getProcessorConfigs() {
         return this.GcodeProcessors;
     }
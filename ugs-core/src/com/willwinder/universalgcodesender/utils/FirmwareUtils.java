@@ -89,6 +89,17 @@ public class FirmwareUtils {
         return Optional.of(configFiles.get(firmware).loader.getProcessors());
     }
 
+    /**
+     * Gets a list of the command processors that formats the commands for the
+     * firmware, initialized with user settings.
+     */
+    public static List<CommandProcessor> getFormattingProcessorsFor(String firmware) throws Exception {
+        if (!configFiles.containsKey(firmware)) {
+            throw new Exception("Missing config file.");
+        }
+        return configFiles.get(firmware).loader.getFormattingProcessors();
+    }
+
     /**
      * Gets a new controller object from a firmware config.
      *
@@ -21,7 +21,6 @@ package com.willwinder.universalgcodesender.utils;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.BackendAPI;
 import java.io.File;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 import org.apache.commons.lang3.StringUtils;
@@ -89,15 +88,11 @@ public class GUIHelpers {
     }
 
     public static void openGcodeFile(File f, BackendAPI backend) {
+        backend.loadGcodeFile(f);
         ThreadHelper.invokeLater(() -> {
-            try {
-              backend.setGcodeFile(f);
-              Settings settings = backend.getSettings();
-              settings.setLastOpenedFilename(f.getAbsolutePath());
-              SettingsFactory.saveSettings(settings);
-            } catch (Exception e) {
-              LOGGER.log(Level.WARNING, "Couldn't set gcode-file" + e.getMessage(), e);
-            }
+            Settings settings = backend.getSettings();
+            settings.setLastOpenedFilename(f.getAbsolutePath());
+            SettingsFactory.saveSettings(settings);
         });
     }
 }
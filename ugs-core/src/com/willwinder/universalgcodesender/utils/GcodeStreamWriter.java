@@ -62,6 +62,13 @@ public class GcodeStreamWriter extends GcodeStream implements IGcodeWriter {
         return file.getCanonicalPath();
     }
 
+    /**
+     * Returns the number of rows written so far
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
     public void addLine(GcodeCommand command) {
         lineCount++;
         String sep = "";
@@ -0,0 +1,228 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.google.common.base.Preconditions;
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A gcode stream which applies a command processor to the commands of another
+ * stream while they are being read, instead of when the file is loaded. This
+ * is intended for per line transformations like mesh leveling or translations
+ * which can then be changed without reprocessing and rewriting the whole file.
+ *
+ * A limited number of lines are read and parsed ahead of the consumer, but
+ * they are only processed when they are about to be read. If the command
+ * processor is replaced, the old processor is flushed and all lines that
+ * hasn't been processed yet will use the new processor.
+ *
+ * Since a processor may split or remove lines, the number of rows of the
+ * stream is the number of commands it will produce as far as is known, and is
+ * updated as the lines are processed.
+ *
+ * @author wwinder
+ */
+public class ProcessedGcodeStreamReader implements IGcodeStreamReader {
+    public static final int DEFAULT_LOOK_AHEAD = 50;
+
+    private final IGcodeStreamReader reader;
+    private final int maxLookAhead;
+    private final GcodeParser gcodeParser = new GcodeParser();
+    private final Deque<UnprocessedLine> lookAhead = new ArrayDeque<>();
+    private final Deque<GcodeCommand> processedCommands = new ArrayDeque<>();
+    private CommandProcessor commandProcessor;
+    private boolean flushed = false;
+
+    // The number of commands produced by the processor in addition to the processed lines
+    private int addedCommands = 0;
+
+    /**
+     * A line read from the underlying stream together with the state it
+     * should be processed with.
+     */
+    private static class UnprocessedLine {
+        private final GcodeCommand command;
+        private final GcodeState state;
+
+        private UnprocessedLine(GcodeCommand command, GcodeState state) {
+            this.command = command;
+            this.state = state;
+        }
+    }
+
+    /**
+     * @param reader           the stream to read commands from
+     * @param commandProcessor the processor to apply to each command
+     */
+    public ProcessedGcodeStreamReader(IGcodeStreamReader reader, CommandProcessor commandProcessor) {
+        this(reader, commandProcessor, DEFAULT_LOOK_AHEAD);
+    }
+
+    /**
+     * @param reader           the stream to read commands from
+     * @param commandProcessor the processor to apply to each command
+     * @param maxLookAhead     the maximum number of lines to read ahead of the consumer
+     */
+    public ProcessedGcodeStreamReader(IGcodeStreamReader reader, CommandProcessor commandProcessor, int maxLookAhead) {
+        Preconditions.checkArgument(maxLookAhead > 0, "The look ahead must be at least one line.");
+        this.reader = reader;
+        this.commandProcessor = commandProcessor;
+        this.maxLookAhead = maxLookAhead;
+    }
+
+    /**
+     * Replaces the command processor. Any commands held back by the old
+     * processor are flushed and will be read before the commands of the lines
+     * that are processed with the new processor.
+     *
+     * @param commandProcessor the new command processor
+     * @throws GcodeParserException if the old processor could not be flushed
+     */
+    public synchronized void setCommandProcessor(CommandProcessor commandProcessor) throws GcodeParserException {
+        if (!flushed) {
+            flush();
+        }
+        this.commandProcessor = commandProcessor;
+    }
+
+    public synchronized CommandProcessor getCommandProcessor() {
+        return commandProcessor;
+    }
+
+    @Override
+    public synchronized boolean ready() {
+        return !processedCommands.isEmpty() || !lookAhead.isEmpty() || reader.getNumRowsRemaining() > 0 ||
+                (!flushed && commandProcessor != null);
+    }
+
+    @Override
+    public synchronized int getNumRows() {
+        return reader.getNumRows() + addedCommands;
+    }
+
+    @Override
+    public synchronized int getNumRowsRemaining() {
+        return reader.getNumRowsRemaining() + lookAhead.size() + processedCommands.size();
+    }
+
+    @Override
+    public synchronized GcodeCommand getNextCommand() throws IOException {
+        // A processor may remove or hold back lines, in which case we continue with the next
+        while (processedCommands.isEmpty()) {
+            fillLookAhead();
+
+            // The line is only removed once it has been processed so that it isn't lost if processing fails
+            UnprocessedLine line = lookAhead.peekFirst();
+            if (line == null && flushed) {
+                return null;
+            }
+
+            try {
+                if (line != null) {
+                    process(line);
+                    lookAhead.removeFirst();
+                }
+
+                // Flush the held back commands together with the last line so that they are counted as remaining
+                if (!flushed && (line == null || (lookAhead.isEmpty() && reader.getNumRowsRemaining() <= 0))) {
+                    flush();
+                    flushed = true;
+                }
+            } catch (GcodeParserException e) {
+                String command = line != null ? line.command.getCommandString() : "the end of the program";
+                throw new IOException("Could not process " + command, e);
+            }
+        }
+        return processedCommands.pollFirst();
+    }
+
+    private void fillLookAhead() throws IOException {
+        while (lookAhead.size() < maxLookAhead && reader.getNumRowsRemaining() > 0) {
+            GcodeCommand command = reader.getNextCommand();
+            if (command == null) {
+                return;
+            }
+
+            lookAhead.addLast(new UnprocessedLine(command, gcodeParser.getCurrentState()));
+
+            // The parser state follows the unprocessed commands, just like when preprocessing a file
+            if (StringUtils.isNotEmpty(command.getCommandString())) {
+                try {
+                    gcodeParser.addCommand(command.getCommandString(), command.getCommandNumber());
+                } catch (GcodeParserException e) {
+                    throw new IOException("Could not parse command: " + command.getCommandString(), e);
+                }
+            }
+        }
+    }
+
+    private void process(UnprocessedLine line) throws GcodeParserException {
+        String command = line.command.getCommandString();
+        if (StringUtils.isEmpty(command) || commandProcessor == null) {
+            processedCommands.add(line.command);
+            return;
+        }
+
+        List<String> result = commandProcessor.processCommand(command, line.state);
+        for (String processedCommand : result) {
+            processedCommands.add(new GcodeCommand(
+                    processedCommand,
+                    line.command.getOriginalCommandString(),
+                    line.command.getComment(),
+                    line.command.getCommandNumber(),
+                    false));
+        }
+        addedCommands += result.size() - 1;
+    }
+
+    /**
+     * Flushes the commands held back by the processor using the state of the
+     * next line that hasn't been processed.
+     */
+    private void flush() throws GcodeParserException {
+        if (commandProcessor == null) {
+            return;
+        }
+
+        UnprocessedLine next = lookAhead.peekFirst();
+        GcodeState state = next != null ? next.state : gcodeParser.getCurrentState();
+        List<String> result = commandProcessor.flush(state);
+        for (String command : result) {
+            processedCommands.add(new GcodeCommand(command, "", "", state.commandNumber, false));
+        }
+        addedCommands += result.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        lookAhead.clear();
+        processedCommands.clear();
+        reader.close();
+    }
+}
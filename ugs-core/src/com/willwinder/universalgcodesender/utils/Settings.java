@@ -115,6 +115,13 @@ public class Settings {
      */
     private boolean invertMouseZoom = false;
 
+    /**
+     * The maximum size in megabytes of the processed files that are kept for reuse, zero disables the cache.
+     * A processed file contains both the original and the processed commands and is about twice the size of
+     * its source, the default keeps the result of a couple of gigabytes large program.
+     */
+    private int processedFileCacheSize = 8192;
+
     /**
      * The GSON deserialization doesn't do anything beyond initialize what's in the json document.  Call finalizeInitialization() before using the Settings.
      */
@@ -547,6 +554,15 @@ public class Settings {
         changed();
     }
 
+    public int getProcessedFileCacheSize() {
+        return processedFileCacheSize;
+    }
+
+    public void setProcessedFileCacheSize(int processedFileCacheSize) {
+        this.processedFileCacheSize = processedFileCacheSize;
+        changed();
+    }
+
     public static class AutoLevelSettings {
         // Setting window
         public double autoLevelProbeZeroHeight = 0;
@@ -574,6 +590,13 @@ public class Settings {
         public Position maxCoordinate;
         public long numCommands;
 
+        // Distances in millimeters and times in seconds
+        public double cuttingDistance;
+        public double rapidDistance;
+        public double cuttingTime;
+        public double spindleOnTime;
+        public int toolChanges;
+
         public FileStats() {
             this.minCoordinate = new Position(0, 0, 0, Units.MM);
             this.maxCoordinate = new Position(0, 0, 0, Units.MM);
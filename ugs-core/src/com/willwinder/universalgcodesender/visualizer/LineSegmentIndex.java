@@ -0,0 +1,152 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.visualizer;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An index from line numbers to the line segments generated from that line, making it
+ * possible to find the segments of a line or a range of lines without iterating through
+ * all segments.
+ * <p>
+ * The index stores the offset of the first segment of each line number in an int array,
+ * the segments of a line number are found between its offset and the offset of the next
+ * line number. If the segments aren't ordered by line number an additional array with
+ * the sorted order of the segments is kept.
+ *
+ * @author wwinder
+ */
+public class LineSegmentIndex {
+    public static final LineSegmentIndex EMPTY = new LineSegmentIndex(Collections.emptyList());
+
+    private final List<LineSegment> segments;
+
+    /**
+     * The position of the first segment for each line number, the array has one extra
+     * element in the end with the total number of segments.
+     */
+    private final int[] lineOffsets;
+
+    /**
+     * The indexes of the segments sorted by line number, or null if the segments already are sorted
+     */
+    private final int[] order;
+
+    public LineSegmentIndex(List<LineSegment> segments) {
+        this.segments = segments;
+        this.order = isSortedByLineNumber(segments) ? null : createSortedOrder(segments);
+
+        int maxLineNumber = segments.stream()
+                .mapToInt(LineSegmentIndex::getLineNumber)
+                .max()
+                .orElse(-1);
+
+        // Count the segments for each line number and convert the counts to offsets
+        lineOffsets = new int[maxLineNumber + 2];
+        segments.forEach(segment -> lineOffsets[getLineNumber(segment) + 1]++);
+        for (int i = 1; i < lineOffsets.length; i++) {
+            lineOffsets[i] += lineOffsets[i - 1];
+        }
+    }
+
+    /**
+     * Returns the line segments generated from the given line number
+     *
+     * @param lineNumber the line number
+     * @return a list with the segments, empty if there are no segments for the line
+     */
+    public List<LineSegment> getSegments(int lineNumber) {
+        return getSegments(lineNumber, lineNumber);
+    }
+
+    /**
+     * Returns the line segments generated from the given range of line numbers
+     *
+     * @param firstLineNumber the first line number to include
+     * @param lastLineNumber  the last line number to include
+     * @return a list with the segments, empty if there are no segments within the range
+     */
+    public List<LineSegment> getSegments(int firstLineNumber, int lastLineNumber) {
+        int start = getOffset(firstLineNumber);
+        int end = getOffset(lastLineNumber + 1);
+        if (start >= end) {
+            return Collections.emptyList();
+        }
+
+        if (order == null) {
+            return Collections.unmodifiableList(segments.subList(start, end));
+        }
+
+        return new AbstractList<LineSegment>() {
+            @Override
+            public LineSegment get(int index) {
+                return segments.get(order[start + index]);
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of indexed line segments
+     *
+     * @return the number of line segments
+     */
+    public int size() {
+        return segments.size();
+    }
+
+    private int getOffset(int lineNumber) {
+        if (lineNumber <= 0) {
+            return 0;
+        }
+        return lineOffsets[Math.min(lineNumber, lineOffsets.length - 1)];
+    }
+
+    private static int getLineNumber(LineSegment segment) {
+        return Math.max(0, segment.getLineNumber());
+    }
+
+    private static boolean isSortedByLineNumber(List<LineSegment> segments) {
+        int previousLineNumber = 0;
+        for (LineSegment segment : segments) {
+            int lineNumber = getLineNumber(segment);
+            if (lineNumber < previousLineNumber) {
+                return false;
+            }
+            previousLineNumber = lineNumber;
+        }
+        return true;
+    }
+
+    private static int[] createSortedOrder(List<LineSegment> segments) {
+        return IntStream.range(0, segments.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(index -> getLineNumber(segments.get(index))))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+}
@@ -2,6 +2,8 @@ package com.willwinder.universalgcodesender.gcode;
 
 import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.Plane;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
 import org.junit.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -54,4 +56,37 @@ public class GcodeStateTest {
         assertThat(state.toAccessoriesCode())
                 .isEqualTo("M3S0.0M7F0.0");
     }
+
+    @Test
+    public void copyShouldShareCurrentPoint() {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(1, 2, 3, Units.MM);
+
+        GcodeState copy = state.copy();
+
+        assertThat(copy.currentPoint).isSameAs(state.currentPoint);
+        assertThat(copy.isEquivalent(state)).isTrue();
+    }
+
+    @Test
+    public void copyShouldSetUnitsOfCurrentPoint() {
+        GcodeState state = new GcodeState();
+        state.units = Code.G20;
+        state.currentPoint = new Position(1, 2, 3, Units.MM);
+
+        GcodeState copy = state.copy();
+
+        assertThat(copy.currentPoint).isEqualTo(new Position(1, 2, 3, Units.INCH));
+    }
+
+    @Test
+    public void isEquivalentShouldIgnoreCommandNumber() {
+        GcodeState state = new GcodeState();
+        GcodeState copy = state.copy();
+        copy.commandNumber = 10;
+        assertThat(copy.isEquivalent(state)).isTrue();
+
+        copy.currentPoint = new Position(1, 0, 0, Units.MM);
+        assertThat(copy.isEquivalent(state)).isFalse();
+    }
 }
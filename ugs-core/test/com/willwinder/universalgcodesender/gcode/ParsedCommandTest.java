@@ -0,0 +1,118 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode;
+
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessorList;
+import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ParsedCommandTest {
+
+    @Test
+    public void parsedCommandShouldContainStateAfterCommand() throws GcodeParserException {
+        ParsedCommand command = new ParsedCommand("G1 X10 Y20 F100", new GcodeState());
+
+        assertEquals(Arrays.asList("G1", "X10", "Y20", "F100"), command.getWords());
+        assertEquals(1, command.getMeta().size());
+        assertEquals(Code.G1, command.getMeta().get(0).code);
+        assertEquals(new Position(10, 20, 0, Units.MM), command.getState().currentPoint);
+        assertEquals(100, command.getState().speed, 0.0001);
+        assertEquals(new Position(0, 0, 0, Units.MM), command.getStartState().currentPoint);
+    }
+
+    @Test
+    public void commandWithoutWordsShouldNotChangeState() throws GcodeParserException {
+        ParsedCommand command = new ParsedCommand("", new GcodeState());
+
+        assertTrue(command.getMeta().isEmpty());
+        assertSame(command.getStartState(), command.getState());
+    }
+
+    @Test
+    public void fromCommandsShouldChainStates() throws GcodeParserException {
+        List<ParsedCommand> commands = ParsedCommand.fromCommands(Arrays.asList("G91", "G1 X1", "X1"), new GcodeState());
+
+        assertEquals(3, commands.size());
+        assertSame(commands.get(1).getState(), commands.get(2).getStartState());
+        assertEquals(new Position(2, 0, 0, Units.MM), commands.get(2).getState().currentPoint);
+        assertEquals(Arrays.asList("G91", "G1 X1", "X1"), ParsedCommand.toCommands(commands));
+    }
+
+    @Test
+    public void fromCommandsShouldReuseUnchangedCommand() throws GcodeParserException {
+        GcodeState state = new GcodeState();
+        ParsedCommand command = new ParsedCommand("G1 X1", state);
+
+        assertSame(command, ParsedCommand.fromCommands(command, Collections.singletonList("G1 X1"), state.copy()).get(0));
+
+        // Parsed in another state
+        GcodeState otherState = state.copy();
+        otherState.inAbsoluteMode = false;
+        assertFalse(command.isParsedIn(otherState));
+        ParsedCommand reparsed = ParsedCommand.fromCommands(command, Collections.singletonList("G1 X1"), otherState).get(0);
+        assertTrue(reparsed.isParsedIn(otherState));
+    }
+
+    @Test
+    public void commandProcessorListShouldPassParsedCommands() throws GcodeParserException {
+        List<ParsedCommand> seen = new ArrayList<>();
+        CommandProcessor recorder = new CommandProcessor() {
+            @Override
+            public List<String> processCommand(String command, GcodeState state) {
+                throw new AssertionError("The parsed command should be used");
+            }
+
+            @Override
+            public List<ParsedCommand> processCommand(ParsedCommand command, GcodeState state) {
+                seen.add(command);
+                return Collections.singletonList(command);
+            }
+
+            @Override
+            public String getHelp() {
+                return "";
+            }
+        };
+
+        CommandProcessorList processors = new CommandProcessorList();
+        processors.add(new LineSplitter(1));
+        processors.add(recorder);
+
+        List<String> result = processors.processCommand("G1 X2", new GcodeState());
+
+        assertEquals(Arrays.asList("G1X1Y0Z0", "G1X2Y0Z0"), result);
+        assertEquals(2, seen.size());
+        assertEquals(seen.get(0).getState().currentPoint, seen.get(1).getStartState().currentPoint);
+    }
+}
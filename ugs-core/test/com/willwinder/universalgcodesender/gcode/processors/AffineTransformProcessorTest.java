@@ -0,0 +1,162 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Axis;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AffineTransformProcessorTest {
+    private GcodeState state;
+
+    @Before
+    public void setUp() {
+        state = new GcodeState();
+        state.currentPoint = new Position(0, 0, 0, Units.MM);
+    }
+
+    @Test
+    public void identityShouldNotChangeCommand() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor();
+        assertTrue(instance.isIdentity());
+        assertEquals(Collections.singletonList("G0 X1 Y1"), instance.processCommand("G0 X1 Y1", state));
+    }
+
+    @Test
+    public void translateShouldOnlyWriteGivenAxes() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .translate(new Position(10, 20, 30, Units.MM));
+
+        assertEquals(Collections.singletonList("G0X10Y20"), instance.processCommand("G0 X0 Y0", state));
+        assertEquals(Collections.singletonList("G1Z31F100(comment)"), instance.processCommand("G1 Z1 F100 (comment)", state));
+    }
+
+    @Test
+    public void translateShouldConvertUnits() throws GcodeParserException {
+        state.units = Code.G20;
+        state.isMetric = false;
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .translate(new Position(25.4, 0, 0, Units.MM));
+
+        assertEquals(Collections.singletonList("G0X2"), instance.processCommand("G0 X1", state));
+    }
+
+    @Test
+    public void rotateShouldWriteDependentAxes() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .rotate(new Position(0, 0, 0, Units.MM), Math.PI / 2);
+
+        assertEquals(Collections.singletonList("G1Y-1"), instance.processCommand("G1 X1", state));
+        assertEquals(Collections.singletonList("G1X2Y-1"), instance.processCommand("G1 X1 Y2", state));
+    }
+
+    @Test
+    public void mirrorShouldChangeArcDirection() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .mirror(Axis.X, new PartialPosition(0d, 0d, Units.MM));
+
+        assertEquals(Collections.singletonList("G3X-2Y0I-1J0"), instance.processCommand("G2 X2 Y0 I1 J0", state));
+    }
+
+    @Test
+    public void scaleShouldScaleArcRadius() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .scale(2, 2, 1);
+
+        assertEquals(Collections.singletonList("G2X4Y0R2"), instance.processCommand("G2 X2 Y0 R1", state));
+    }
+
+    @Test
+    public void nonUniformScaleShouldExpandArcs() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .scale(2, 1, 1);
+
+        List<String> result = instance.processCommand("G2 X2 Y0 I1 J0", state);
+        assertTrue(result.size() > 1);
+        result.forEach(command -> assertTrue(command.startsWith("G1")));
+        assertEquals("G1X4Y0Z0", result.get(result.size() - 1));
+    }
+
+    @Test
+    public void relativeMovesShouldNotBeTranslated() throws GcodeParserException {
+        state.inAbsoluteMode = false;
+        state.distanceMode = Code.G91;
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .translate(new Position(10, 10, 0, Units.MM))
+                .rotate(new Position(0, 0, 0, Units.MM), Math.PI);
+
+        assertEquals(Collections.singletonList("G1X-1Y-2"), instance.processCommand("G1 X1 Y2", state));
+    }
+
+    @Test
+    public void machineCoordinatesShouldNotBeTransformed() throws GcodeParserException {
+        AffineTransformProcessor instance = new AffineTransformProcessor()
+                .translate(new Position(10, 10, 0, Units.MM));
+
+        assertEquals(Collections.singletonList("G53 G0 X1 Y2"), instance.processCommand("G53 G0 X1 Y2", state));
+    }
+
+    @Test
+    public void commandProcessorListShouldCombineTransformations() throws GcodeParserException {
+        CommandProcessorList processors = new CommandProcessorList();
+        processors.add(new TranslateProcessor(new Position(1, 1, 0, Units.MM)));
+        processors.add(new TranslateProcessor(new Position(2, 2, 0, Units.MM)));
+
+        // A single TranslateProcessor would have expanded the arc
+        assertEquals(Collections.singletonList("G2X5Y3I1J0"), processors.processCommand("G2 X2 Y0 I1 J0", state));
+    }
+
+    @Test
+    public void commandProcessorListShouldNotCombineTranslator() throws GcodeParserException {
+        CommandProcessorList processors = new CommandProcessorList();
+        processors.add(new TranslateProcessor(new Position(1, 1, 0, Units.MM)));
+        processors.add(new Translator(new Position(2, 2, 0, Units.MM)));
+
+        // The Translator also shifts the coordinates of non motion commands
+        assertEquals(Collections.singletonList("G92X2Y2"), processors.processCommand("G92 X0 Y0", state));
+    }
+
+    @Test
+    public void commandProcessorListShouldUseChangedTransformations() throws GcodeParserException {
+        CommandProcessorList processors = new CommandProcessorList();
+        TranslateProcessor translateProcessor = new TranslateProcessor(new Position(1, 1, 0, Units.MM));
+        RotateProcessor rotateProcessor = new RotateProcessor(new Position(0, 0, 0, Units.MM), 0);
+        processors.add(translateProcessor);
+        processors.add(rotateProcessor);
+        assertEquals(Collections.singletonList("G1X3Y1"), processors.processCommand("G1 X2 Y0", state));
+
+        translateProcessor.setOffset(new Position(2, 2, 0, Units.MM));
+        assertEquals(Collections.singletonList("G1X4Y2"), processors.processCommand("G1 X2 Y0", state));
+
+        rotateProcessor.setRotation(Math.PI);
+        assertEquals(Collections.singletonList("G1X-4Y-2"), processors.processCommand("G1 X2 Y0", state));
+    }
+}
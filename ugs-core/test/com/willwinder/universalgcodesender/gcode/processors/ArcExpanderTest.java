@@ -20,14 +20,20 @@
 package com.willwinder.universalgcodesender.gcode.processors;
 
 import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.util.Code;
 import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
 import com.willwinder.universalgcodesender.gcode.util.Plane;
 import static com.willwinder.universalgcodesender.gcode.util.Plane.*;
 import com.willwinder.universalgcodesender.i18n.Localization;
 import com.willwinder.universalgcodesender.model.Position;
+import static com.willwinder.universalgcodesender.model.UnitUtils.Units.INCH;
 import static com.willwinder.universalgcodesender.model.UnitUtils.Units.MM;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.junit.Test;
@@ -162,6 +168,101 @@ public class ArcExpanderTest {
         }
     }
 
+    @Test
+    public void expandArcWithTolerance() throws Exception {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(-1,0,0,MM);
+        state.plane = XY;
+
+        for (double tolerance = 0.001; tolerance < 0.5; tolerance *= 2) {
+            ArcExpander instance = new ArcExpander(true, 0, tolerance);
+
+            // Half circle clockwise, X-1 -> X1, Y0 -> Y1 -> Y0
+            List<String> result = instance.processCommand("G2 Y0 X1 R1", state);
+            int expectedSegments = (int) Math.ceil(Math.PI / (2 * Math.acos(1 - tolerance)));
+            assertThat(result.size()).isEqualTo(expectedSegments);
+            verifyLines(new Position(0,0,0,MM), result, 1., new Position(-1, 0, 0,MM), new Position(1,1,0,MM), state.plane);
+
+            // The middle of each segment should be within the tolerance from the arc
+            double previousX = -1;
+            double previousY = 0;
+            for (String line : result) {
+                Matcher m = LINE_COORDS.matcher(line);
+                assertThat(m.find()).isTrue();
+                double x = Double.parseDouble(m.group(1));
+                double y = Double.parseDouble(m.group(2));
+                double distance = Math.hypot((x + previousX) / 2, (y + previousY) / 2);
+                assertThat(1 - distance).isLessThanOrEqualTo(tolerance + 0.000001);
+                previousX = x;
+                previousY = y;
+            }
+        }
+    }
+
+    @Test
+    public void expandArcWithToleranceShouldConvertToProgramUnits() throws Exception {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(-1,0,0,INCH);
+        state.plane = XY;
+        state.units = Code.G20;
+
+        // The tolerance is in millimeters, which is 0.01 inch
+        ArcExpander instance = new ArcExpander(true, 0, 0.254);
+        List<String> result = instance.processCommand("G2 Y0 X1 R1", state);
+        int expectedSegments = (int) Math.ceil(Math.PI / (2 * Math.acos(1 - 0.01)));
+        assertThat(result.size()).isEqualTo(expectedSegments);
+    }
+
+    @Test
+    public void expandArcInRelativeMode() throws Exception {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(-1,0,0,MM);
+        state.plane = XY;
+        state.inAbsoluteMode = false;
+        ArcExpander instance = new ArcExpander(true, 0, 0.01);
+
+        // The relative moves should add up to the end of the arc
+        List<String> result = instance.processCommand("G2 Y0 X2 R1", state);
+        double x = 0;
+        double y = 0;
+        for (String line : result) {
+            Matcher m = LINE_COORDS.matcher(line);
+            assertThat(m.find()).isTrue();
+            x += Double.parseDouble(m.group(1));
+            y += Double.parseDouble(m.group(2));
+        }
+        assertThat(x).isCloseTo(2, Offset.offset(0.0001));
+        assertThat(y).isCloseTo(0, Offset.offset(0.0001));
+    }
+
+    @Test
+    public void expandArcFromSeveralThreadsShouldGiveTheSameResult() throws Exception {
+        ArcExpander instance = new ArcExpander(true, 0.1);
+        List<String> expectedSmall = instance.processCommand("G2 Y0 X1 R1", createXYState());
+        List<String> expectedLarge = instance.processCommand("G2 Y0 X19 R10", createXYState());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(() -> expectedSmall.equals(instance.processCommand("G2 Y0 X1 R1", createXYState()))));
+                results.add(executor.submit(() -> expectedLarge.equals(instance.processCommand("G2 Y0 X19 R10", createXYState()))));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GcodeState createXYState() {
+        GcodeState state = new GcodeState();
+        state.currentPoint = new Position(-1, 0, 0, MM);
+        state.plane = XY;
+        return state;
+    }
+
 
     /**
      * Verify that the points around given center point have a known radius and
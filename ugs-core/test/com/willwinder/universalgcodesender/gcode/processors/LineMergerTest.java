@@ -0,0 +1,151 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserUtils;
+import com.willwinder.universalgcodesender.utils.IGcodeWriter;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class LineMergerTest {
+    private GcodeParser gcp;
+
+    @Before
+    public void setUp() {
+        gcp = new GcodeParser();
+    }
+
+    private List<String> process(String... commands) throws GcodeParserException {
+        List<String> result = new ArrayList<>();
+        for (String command : commands) {
+            result.addAll(gcp.preprocessCommand(command, gcp.getCurrentState()));
+            gcp.addCommand(command);
+        }
+        result.addAll(gcp.flushCommandProcessors());
+        return result;
+    }
+
+    @Test
+    public void collinearMovesShouldBeMerged() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+
+        List<String> result = process("G1 X1 Y1 F100", "X2 Y2.001", "X3 Y3", "X4 Y4", "M5");
+        assertEquals(Arrays.asList("G1F100X4Y4", "M5"), result);
+    }
+
+    @Test
+    public void movesOutsideOfToleranceShouldNotBeMerged() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+
+        List<String> result = process("G1 X1 Y0 F100", "X2 Y0", "X2 Y1", "X2 Y2");
+        assertEquals(Arrays.asList("G1F100X2Y0", "X2Y2"), result);
+    }
+
+    @Test
+    public void movesTurningBackShouldNotBeMerged() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+
+        List<String> result = process("G1 X2 F100", "X1", "X3");
+        assertEquals(Arrays.asList("G1 X2 F100", "X1", "X3"), result);
+    }
+
+    @Test
+    public void feedRateChangesShouldEndTheRun() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+
+        List<String> result = process("G1 X1 F100", "X2", "X3 F200", "X4", "X5 F200");
+        assertEquals(Arrays.asList("G1F100X2", "F200X5"), result);
+    }
+
+    @Test
+    public void otherCommandsShouldNotBeMerged() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+
+        List<String> result = process("G0 X1", "G0 X2", "G91", "G1 X1", "G1 X1", "G90", "G1 X3 (comment)", "G1 X4");
+        assertEquals(Arrays.asList("G0 X1", "G0 X2", "G91", "G1 X1", "G1 X1", "G90", "G1 X3 (comment)", "G1 X4"), result);
+    }
+
+    @Test
+    public void pointsOnACircleShouldBeReplacedWithAnArc() throws GcodeParserException {
+        gcp.addCommandProcessor(new LineMerger(0.02, true));
+
+        // Half a circle with a radius of 10 around X10Y0, counter clockwise
+        List<String> commands = new ArrayList<>();
+        commands.add("G0 X0 Y0");
+        commands.add("G1 F100");
+        for (int i = 1; i <= 36; i++) {
+            double angle = Math.PI + i * Math.PI / 36;
+            commands.add(String.format("X%.4fY%.4f", 10 + Math.cos(angle) * 10, Math.sin(angle) * 10).replace(',', '.'));
+        }
+        commands.add("X20 Y10");
+
+        List<String> result = process(commands.toArray(new String[0]));
+        assertEquals(Arrays.asList("G0 X0 Y0", "G1 F100", "G3X20.0000Y-0.0000I10J0", "G1X20 Y10"), result);
+    }
+
+    @Test
+    public void processorShouldCountTheSavings() throws GcodeParserException {
+        LineMerger lineMerger = new LineMerger(0.01, false);
+        gcp.addCommandProcessor(lineMerger);
+
+        for (String command : Arrays.asList("G1X1", "X2", "X3")) {
+            gcp.preprocessCommand(command, gcp.getCurrentState());
+            gcp.addCommand(command);
+        }
+        assertEquals(3, lineMerger.getInputCommandCount());
+        assertEquals(8, lineMerger.getInputBytes());
+        assertEquals(0, lineMerger.getOutputCommandCount());
+
+        assertEquals(Arrays.asList("G1X3"), gcp.flushCommandProcessors());
+        assertTrue(lineMerger.getInputCommandCount() == 0);
+    }
+
+    @Test
+    public void mergedCommandsShouldBeWrittenWithTheLineOfTheFirstMergedCommand() throws Exception {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+        File file = File.createTempFile("linemerger", ".gcode");
+        file.deleteOnExit();
+        FileUtils.writeLines(file, Arrays.asList("G1 X1 Y1 F100", "X2 Y2", "", "X3 Y3", "M5", "G1 X4 Y4", "X5 Y5"));
+
+        IGcodeWriter writer = mock(IGcodeWriter.class);
+        GcodeParserUtils.processAndExport(gcp, file, writer);
+
+        InOrder inOrder = inOrder(writer);
+        inOrder.verify(writer).addLine("", "", "", 3);
+        inOrder.verify(writer).addLine("", "G1F100X3Y3", "", 1);
+        inOrder.verify(writer).addLine("M5", "M5", "", 5);
+        inOrder.verify(writer).addLine("", "G1X5Y5", "", 6);
+        verifyNoMoreInteractions(writer);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.processors;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeStats;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import org.junit.Test;
+
+import java.util.SortedMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsTest {
+    private static final double DELTA = 0.0001;
+
+    private static GcodeStats parse(String... commands) throws GcodeParserException {
+        GcodeParser gcp = new GcodeParser();
+        for (String command : commands) {
+            gcp.addCommand(command);
+        }
+        return gcp.getCurrentStats();
+    }
+
+    @Test
+    public void boundsShouldHandleNegativeCoordinates() throws GcodeParserException {
+        GcodeStats stats = parse("G0 X-10 Y-20 Z-1", "G1 X-5 Y-30 Z-2 F100");
+
+        assertEquals(new Position(-10, -30, -2, Units.MM), stats.getMin());
+        assertEquals(new Position(0, 0, 0, Units.MM), stats.getMax());
+        assertEquals(2, stats.getCommandCount());
+    }
+
+    @Test
+    public void boundsShouldIncludeRotationAxes() throws GcodeParserException {
+        GcodeStats stats = parse("G0 X1 A-90", "G0 X2 A180");
+
+        assertEquals(-90, stats.getMin().a, DELTA);
+        assertEquals(180, stats.getMax().a, DELTA);
+        assertTrue(Double.isNaN(stats.getMin().b));
+        assertTrue(Double.isNaN(stats.getMax().c));
+    }
+
+    @Test
+    public void boundsAndDistancesShouldBeInMillimeters() throws GcodeParserException {
+        GcodeStats stats = parse("G20", "G0 X1", "G1 X2 F10");
+
+        assertEquals(50.8, stats.getMax().x, DELTA);
+        assertEquals(25.4, stats.getRapidDistance(), DELTA);
+        assertEquals(25.4, stats.getCuttingDistance(), DELTA);
+        assertEquals(25.4, stats.getFeedRateDistances().get(254.0), DELTA);
+    }
+
+    @Test
+    public void arcDistanceShouldFollowTheArc() throws GcodeParserException {
+        GcodeStats stats = parse("G0 X10 Y0", "G3 X-10 Y0 I-10 J0 F100");
+
+        assertEquals(10, stats.getRapidDistance(), DELTA);
+        assertEquals(Math.PI * 10, stats.getCuttingDistance(), DELTA);
+    }
+
+    @Test
+    public void feedRateDistancesShouldBeGroupedByFeedRate() throws GcodeParserException {
+        GcodeStats stats = parse("G1 X10 F100", "G1 X20 F200", "G1 X25 F100");
+
+        SortedMap<Double, Double> distances = stats.getFeedRateDistances();
+        assertEquals(2, distances.size());
+        assertEquals(15, distances.get(100.0), DELTA);
+        assertEquals(10, distances.get(200.0), DELTA);
+    }
+
+    @Test
+    public void cuttingTimeShouldBeBasedOnTheFeedRates() throws GcodeParserException {
+        GcodeStats stats = parse("G1 X10 F100", "G1 X20 F200", "G0 X0", "G1 X25 F100");
+
+        // 35mm at 100mm/min and 10mm at 200mm/min
+        assertEquals(24, stats.getCuttingTime(), DELTA);
+    }
+
+    @Test
+    public void toolChangesShouldBeCounted() throws GcodeParserException {
+        GcodeStats stats = parse("T1 M6", "M06 T2 (comment)", "(M6 in a comment)", "M60", "G0 X1 ; M6");
+
+        assertEquals(2, stats.getToolChangeCount());
+    }
+
+    @Test
+    public void spindleOnTimeShouldOnlyIncludeMovesWithSpindleOn() throws GcodeParserException {
+        GcodeStats stats = parse("G1 X100 F100", "M3 S1000", "G1 X200", "G0 X0", "M5", "G1 X100");
+
+        // 100mm at 100mm/min
+        assertEquals(60, stats.getSpindleOnTime(), DELTA);
+    }
+}
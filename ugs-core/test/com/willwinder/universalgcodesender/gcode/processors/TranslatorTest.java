@@ -111,6 +111,15 @@ public class TranslatorTest {
         Assertions.assertThat(result).hasSize(1).contains("G0X10.1Y20.2Z30.3(another comment)");
     }
 
+    @Test
+    public void shouldTranslateCoordinateSystemCommands() {
+        List<String> result = instance.processCommand("G92 X0 Y0 Z0", state);
+        Assertions.assertThat(result).hasSize(1).contains("G92X10.1Y20.2Z30.3");
+
+        result = instance.processCommand("G10 L20 P1 X0 Y0", state);
+        Assertions.assertThat(result).hasSize(1).contains("G10L20P1X10.1Y20.2");
+    }
+
     @Test
     public void shouldRoundDecimals() {
         List<String> result = instance.processCommand("G0 X0.0001", state);
@@ -0,0 +1,125 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.i18n.Localization;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DecimalFormatterTest {
+
+    @Test
+    public void formatShouldStripTrailingZeros() {
+        DecimalFormatter formatter = new DecimalFormatter(4);
+        assertEquals("1", formatter.format(1.0));
+        assertEquals("1.5", formatter.format(1.5));
+        assertEquals("0.05", formatter.format(0.05));
+        assertEquals("-10.0001", formatter.format(-10.0001));
+        assertEquals("100", formatter.format(100));
+    }
+
+    @Test
+    public void formatShouldRound() {
+        DecimalFormatter formatter = new DecimalFormatter(3);
+        assertEquals("1.556", formatter.format(1.5555555));
+        assertEquals("2", formatter.format(1.99999999));
+        assertEquals("0", new DecimalFormatter(0).format(0.11111));
+        assertEquals("2", new DecimalFormatter(0).format(1.5));
+    }
+
+    @Test
+    public void formatShouldKeepSignOfNumbersRoundedToZero() {
+        DecimalFormatter formatter = new DecimalFormatter(3);
+        assertEquals("0", formatter.format(0.0001));
+        assertEquals("-0", formatter.format(-0.0001));
+        assertEquals("-0", formatter.format(-0.0));
+    }
+
+    @Test
+    public void formatShouldAppendToBuffer() {
+        StringBuilder sb = new StringBuilder("X");
+        new DecimalFormatter(4).format(12.34567, sb).append("Y");
+        new DecimalFormatter(4).format(-1, sb);
+        assertEquals("X12.3457Y-1", sb.toString());
+    }
+
+    @Test
+    public void formatShouldHandleLargeNumbers() {
+        assertEquals("100000000000000000000", new DecimalFormatter(4).format(1e20));
+        assertEquals("0.12345678901234568", new DecimalFormatter(20).format(0.12345678901234568));
+        assertEquals("NaN", new DecimalFormatter(4).format(Double.NaN));
+    }
+
+    @Test
+    public void formatShouldBeSameAsDecimalFormat() {
+        DecimalFormatter formatter = new DecimalFormatter(4);
+        DecimalFormat decimalFormat = new DecimalFormat("0.####", Localization.dfs);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * 2000;
+            assertEquals(decimalFormat.format(value), formatter.format(value));
+        }
+        assertEquals(decimalFormat.format(-0.00001), formatter.format(-0.00001));
+    }
+
+    @Test
+    public void formatShouldRoundUsingTheExactValue() {
+        // As doubles 0.015 and 0.045 are slightly below and 0.0015 slightly above halfway
+        DecimalFormatter formatter = new DecimalFormatter(2);
+        assertEquals("0.01", formatter.format(0.015));
+        assertEquals("0.04", formatter.format(0.045));
+        assertEquals("-0.01", formatter.format(-0.015));
+        assertEquals("0.002", new DecimalFormatter(3).format(0.0015));
+
+        // Exactly halfway should be rounded to even
+        assertEquals("0.12", formatter.format(0.125));
+        assertEquals("0.38", formatter.format(0.375));
+    }
+
+    @Test
+    public void formatShouldRoundNumbersCloseToHalfway() {
+        for (int decimals = 0; decimals <= 6; decimals++) {
+            DecimalFormatter formatter = new DecimalFormatter(decimals);
+            double step = Math.pow(10, -decimals);
+            for (int i = -5000; i < 5000; i++) {
+                double value = (i + 0.5) * step;
+                assertEquals(round(value, decimals), formatter.format(value));
+
+                value = Double.parseDouble(i + "." + StringUtils.repeat('0', decimals) + "5");
+                assertEquals(round(value, decimals), formatter.format(value));
+            }
+        }
+    }
+
+    private static String round(double value, int decimals) {
+        BigDecimal result = new BigDecimal(value).setScale(decimals, RoundingMode.HALF_EVEN);
+        if (result.signum() == 0) {
+            return value < 0 ? "-0" : "0";
+        }
+        return result.stripTrailingZeros().toPlainString();
+    }
+}
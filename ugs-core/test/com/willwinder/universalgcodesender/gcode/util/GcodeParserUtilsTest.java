@@ -113,4 +113,17 @@ public class GcodeParserUtilsTest {
         GcodeParser.GcodeMeta meta = Iterables.getOnlyElement(metaList);
         assertThat(meta.state.spindleSpeed).isEqualTo(100.0);
     }
+
+    @Test
+    public void eachCodeShouldHaveItsOwnState() throws Exception {
+        List<GcodeParser.GcodeMeta> metas = GcodeParserUtils.processCommand("G20 G91 G1 X1", 0, new GcodeState());
+
+        assertThat(metas).hasSize(3);
+        assertThat(metas.get(0).state.isMetric).isFalse();
+        assertThat(metas.get(0).state.inAbsoluteMode).isTrue();
+        assertThat(metas.get(1).state.inAbsoluteMode).isFalse();
+        assertThat(metas.get(1).state.currentMotionMode).isEqualTo(G0);
+        assertThat(metas.get(2).state.currentMotionMode).isEqualTo(G1);
+        assertThat(metas.get(2).state.currentPoint.x).isEqualTo(1);
+    }
 }
@@ -0,0 +1,198 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.processors.LineMerger;
+import com.willwinder.universalgcodesender.gcode.processors.TranslateProcessor;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalGcodeProcessorTest {
+    private static final int LINES = 2 * IncrementalGcodeProcessor.CHECKPOINT_INTERVAL + 500;
+
+    private Path tempDir;
+    private GcodeParser gcp;
+    private IncrementalGcodeProcessor processor;
+
+    @Before
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("incremental");
+        gcp = new GcodeParser();
+        gcp.addCommandProcessor(new TranslateProcessor(new Position(10, 0, 0, UnitUtils.Units.MM)));
+        processor = new IncrementalGcodeProcessor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void reprocessShouldOnlyProcessFromTheCheckpointBeforeTheModifiedLine() throws Exception {
+        List<String> lines = createProgram(LINES);
+        File input = write("input.gcode", lines);
+        processor.process(gcp, input, tempDir.resolve("first").toFile());
+
+        lines.set(2200, "G0 X1000 Y1000");
+        write("input.gcode", lines);
+        File output = tempDir.resolve("second").toFile();
+        gcp.reset();
+        int unchangedLines = processor.reprocess(gcp, input, output);
+
+        assertEquals(2 * IncrementalGcodeProcessor.CHECKPOINT_INTERVAL, unchangedLines);
+        assertEquals(1000, gcp.getCurrentStats().getMax().x, 0.001);
+        assertEquals(LINES, gcp.getCurrentStats().getCommandCount());
+        assertEquals(processFully(input), readRows(output));
+    }
+
+    @Test
+    public void reprocessShouldHandleAddedAndRemovedLines() throws Exception {
+        List<String> lines = createProgram(LINES);
+        File input = write("input.gcode", lines);
+        processor.process(gcp, input, tempDir.resolve("first").toFile());
+
+        lines.add(1500, "G1 X-10 Y-10");
+        lines.add("G0 X0 Y0");
+        write("input.gcode", lines);
+        File output = tempDir.resolve("second").toFile();
+        gcp.reset();
+        processor.reprocess(gcp, input, output);
+        assertEquals(processFully(input), readRows(output));
+
+        lines.subList(1000, lines.size()).clear();
+        write("input.gcode", lines);
+        output = tempDir.resolve("third").toFile();
+        gcp.reset();
+        processor.reprocess(gcp, input, output);
+        assertEquals(processFully(input), readRows(output));
+    }
+
+    @Test
+    public void reprocessOfUnmodifiedFileShouldReuseTheResult() throws Exception {
+        File input = write("input.gcode", createProgram(LINES));
+        processor.process(gcp, input, tempDir.resolve("first").toFile());
+
+        File output = tempDir.resolve("second").toFile();
+        gcp.reset();
+        int unchangedLines = processor.reprocess(gcp, input, output);
+
+        assertEquals(LINES, unchangedLines);
+        assertEquals(LINES, gcp.getCurrentStats().getCommandCount());
+        assertEquals(processFully(input), readRows(output));
+    }
+
+    @Test
+    public void reprocessShouldProcessEverythingWithStatefulProcessors() throws Exception {
+        gcp.addCommandProcessor(new LineMerger(0.01, false));
+        List<String> lines = createProgram(LINES);
+        File input = write("input.gcode", lines);
+        processor.process(gcp, input, tempDir.resolve("first").toFile());
+
+        lines.set(2200, "G0 X1000 Y1000");
+        write("input.gcode", lines);
+        File output = tempDir.resolve("second").toFile();
+        gcp.reset();
+
+        assertEquals(0, processor.reprocess(gcp, input, output));
+        assertEquals(processFully(input), readRows(output));
+    }
+
+    @Test
+    public void processShouldReportTheProgress() throws Exception {
+        File input = write("input.gcode", createProgram(LINES));
+        List<Long> bytesRead = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        processor.setProgressListener((read, total, line) -> {
+            assertEquals(input.length(), total);
+            bytesRead.add(read);
+            lines.add(line);
+        });
+
+        processor.process(gcp, input, tempDir.resolve("output").toFile());
+
+        assertEquals(LINES, lines.size());
+        assertEquals(LINES, lines.get(lines.size() - 1).intValue());
+        assertEquals(input.length(), bytesRead.get(bytesRead.size() - 1).longValue());
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void processShouldAbortWhenTheThreadIsInterrupted() throws Exception {
+        File input = write("input.gcode", createProgram(LINES));
+        processor.setProgressListener((read, total, line) -> {
+            if (line == 100) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        try {
+            processor.process(gcp, input, tempDir.resolve("output").toFile());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+    }
+
+    private List<String> processFully(File input) throws Exception {
+        File output = File.createTempFile("full", ".gcode", tempDir.toFile());
+        gcp.reset();
+        new IncrementalGcodeProcessor().process(gcp, input, output);
+        return readRows(output);
+    }
+
+    private static List<String> createProgram(int lines) {
+        List<String> result = new ArrayList<>();
+        result.add("G21 G90 F100 ; setup");
+        for (int i = 1; i < lines; i++) {
+            result.add("G1 X" + (i % 100) + " Y" + (i / 100));
+        }
+        return result;
+    }
+
+    private File write(String name, List<String> lines) throws IOException {
+        return Files.write(tempDir.resolve(name), lines).toFile();
+    }
+
+    private static List<String> readRows(File file) throws Exception {
+        List<String> rows = new ArrayList<>();
+        try (GcodeStreamReader reader = new GcodeStreamReader(file)) {
+            while (reader.getNumRowsRemaining() > 0) {
+                GcodeCommand command = reader.getNextCommand();
+                rows.add(command.getCommandNumber() + ":" + command.getOriginalCommandString() + ":" + command.getCommandString() + ":" + command.getComment());
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,162 @@
+package com.willwinder.universalgcodesender.gcode.util;
+
+import com.willwinder.universalgcodesender.gcode.GcodeParser;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.Stats;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessedFileCacheTest {
+    private Path tempDir;
+    private ProcessedFileCache cache;
+    private GcodeParser gcp;
+
+    @Before
+    public void setUp() throws IOException, GcodeParserException {
+        tempDir = Files.createTempDirectory("cache");
+        cache = new ProcessedFileCache(tempDir.resolve("processed").toFile(), 3000);
+        gcp = new GcodeParser();
+        gcp.addCommandProcessor(new DecimalProcessor(4));
+    }
+
+    @After
+    public void tearDown() throws IOException, GcodeParserException {
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Test
+    public void createKeyShouldDependOnTheContentsProcessorsAndFirmware() throws IOException, GcodeParserException {
+        File source = write("source.gcode", "G0 X1");
+        String key = cache.createKey(source, gcp, "GRBL");
+
+        assertEquals(key, cache.createKey(write("copy.gcode", "G0 X1"), gcp, "GRBL"));
+        assertNotEquals(key, cache.createKey(source, gcp, "TinyG"));
+
+        GcodeParser otherParser = new GcodeParser();
+        otherParser.addCommandProcessor(new DecimalProcessor(5));
+        assertNotEquals(key, cache.createKey(source, otherParser, "GRBL"));
+
+        write("source.gcode", "G0 X2");
+        source.setLastModified(source.lastModified() + 2000);
+        assertNotEquals(key, cache.createKey(source, gcp, "GRBL"));
+    }
+
+    @Test
+    public void createKeyShouldReturnNullForProcessorsThatCantBeCached() throws IOException, GcodeParserException {
+        gcp.addCommandProcessor(new CommandProcessor() {
+            @Override
+            public List<String> processCommand(String command, GcodeState state) {
+                return Collections.singletonList(command);
+            }
+
+            @Override
+            public String getHelp() {
+                return "Processor without a cache key";
+            }
+        });
+        assertNull(cache.createKey(write("source.gcode", "G0 X1"), gcp, "GRBL"));
+    }
+
+    @Test
+    public void getShouldReturnTheStatsOfCachedFiles() throws IOException, GcodeParserException {
+        String key = cache.createKey(write("source.gcode", "G0 X1"), gcp, "GRBL");
+        assertFalse(cache.get(key).isPresent());
+
+        Files.write(cache.getFile(key).toPath(), "processed".getBytes());
+        assertFalse("Files should only be cached after they have been put", cache.get(key).isPresent());
+
+        cache.put(key, createStats(42));
+        Optional<Stats> stats = cache.get(key);
+        assertTrue(stats.isPresent());
+        assertEquals(43, stats.get().getCommandCount());
+        assertEquals(10, stats.get().getMax().x, 0.001);
+        assertEquals(0, stats.get().getMin().x, 0.001);
+        assertEquals(10, stats.get().getCuttingDistance(), 0.001);
+        assertEquals(10, stats.get().getFeedRateDistances().get(100d), 0.001);
+        assertTrue(Double.isNaN(stats.get().getMax().a));
+    }
+
+    @Test
+    public void putShouldRemoveTheLeastRecentlyUsedFiles() throws IOException, GcodeParserException {
+        String first = putFile("first", 1000, 1000);
+        String second = putFile("second", 1000, 2000);
+        assertTrue(cache.get(first).isPresent());
+
+        String third = putFile("third", 1000, 3000);
+
+        assertTrue(cache.get(first).isPresent());
+        assertFalse(cache.get(second).isPresent());
+        assertFalse(cache.getFile(second).exists());
+        assertTrue(cache.get(third).isPresent());
+    }
+
+    @Test
+    public void putShouldKeepTheNewFileEvenIfItIsTooLarge() throws IOException, GcodeParserException {
+        String key = putFile("large", 6000, 1000);
+        assertNotNull(key);
+        assertTrue(cache.get(key).isPresent());
+    }
+
+    @Test
+    public void putShouldKeepRetainedFiles() throws IOException, GcodeParserException {
+        String first = putFile("first", 1000, 1000);
+        cache.retain(first);
+        String second = putFile("second", 1000, 2000);
+        cache.retain(second);
+        cache.retain(second);
+        cache.release(second);
+
+        String third = putFile("third", 1000, 3000);
+        assertTrue(cache.get(first).isPresent());
+        assertTrue(cache.get(second).isPresent());
+        assertTrue(cache.get(third).isPresent());
+
+        cache.release(first);
+        putFile("fourth", 1000, 4000);
+        assertFalse(cache.get(first).isPresent());
+        assertTrue(cache.get(second).isPresent());
+    }
+
+    private String putFile(String name, int size, long lastUsed) throws IOException, GcodeParserException {
+        String key = cache.createKey(write(name + ".gcode", name), gcp, "GRBL");
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) 'G');
+        Files.write(cache.getFile(key).toPath(), content);
+        cache.put(key, createStats(1));
+        cache.getFile(key).setLastModified(lastUsed);
+        return key;
+    }
+
+    private static Stats createStats(int rapidMoves) throws GcodeParserException {
+        GcodeParser parser = new GcodeParser();
+        parser.addCommand("G1 X10 F100");
+        for (int i = 0; i < rapidMoves; i++) {
+            parser.addCommand("G0 X10 Y20");
+        }
+        return parser.getCurrentStats();
+    }
+
+    private File write(String name, String content) throws IOException, GcodeParserException {
+        return Files.write(tempDir.resolve(name), content.getBytes()).toFile();
+    }
+}
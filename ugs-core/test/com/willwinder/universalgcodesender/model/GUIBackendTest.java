@@ -21,16 +21,24 @@ package com.willwinder.universalgcodesender.model;
 import com.willwinder.universalgcodesender.AbstractController;
 import com.willwinder.universalgcodesender.IController;
 import com.willwinder.universalgcodesender.firmware.IFirmwareSettings;
+import com.willwinder.universalgcodesender.gcode.processors.DecimalProcessor;
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
 import com.willwinder.universalgcodesender.listeners.ControllerState;
 import com.willwinder.universalgcodesender.listeners.ControllerStatus;
+import com.willwinder.universalgcodesender.listeners.MessageType;
 import com.willwinder.universalgcodesender.listeners.UGSEventListener;
 import com.willwinder.universalgcodesender.model.events.ControllerStateEvent;
 import com.willwinder.universalgcodesender.model.events.FileState;
 import com.willwinder.universalgcodesender.model.events.FileStateEvent;
 import com.willwinder.universalgcodesender.model.events.SettingChangedEvent;
 import com.willwinder.universalgcodesender.types.GcodeCommand;
+import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
+import com.willwinder.universalgcodesender.utils.ProcessedGcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.Settings;
 import org.apache.commons.io.FileUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -38,7 +46,14 @@ import org.mockito.ArgumentCaptor;
 import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -67,11 +82,14 @@ public class GUIBackendTest {
 
     private GUIBackend instance;
 
+    private Path cacheDir;
+
     @Before
     public void setUp() throws Exception {
 
         // We need to mock the method that loads the controller
-        instance = spy(new GUIBackend());
+        cacheDir = Files.createTempDirectory("ugs-processed-files");
+        instance = spy(new GUIBackend(cacheDir.toFile()));
         IFirmwareSettings firmwareSettings = mock(IFirmwareSettings.class);
         controller = mock(AbstractController.class);
         doReturn(controller).when(instance).fetchControllerFromFirmware(any());
@@ -83,18 +101,24 @@ public class GUIBackendTest {
         doNothing().when(ugsEventListener).UGSEvent(eventArgumentCaptor.capture());
         instance.addUGSEventListener(ugsEventListener);
 
-        // Add settings
+        // Add settings, the processed file cache is disabled unless used by the test
         settings = new Settings();
+        settings.setProcessedFileCacheSize(0);
         instance.applySettings(settings);
     }
 
+    @After
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(cacheDir.toFile());
+    }
+
     @Test
     public void adjustManualLocationWhenIdleShouldBeOk() throws Exception {
         instance.connect(FIRMWARE, PORT, BAUD_RATE);
         when(instance.getControllerState()).thenReturn(ControllerState.IDLE);
 
         PartialPosition p = new PartialPosition(10., 0., 0., UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertTrue(instance.adjustManualLocation(p, 10));
         verify(controller, times(1)).jogMachine(p, 10);
     }
 
@@ -104,7 +128,7 @@ public class GUIBackendTest {
         when(instance.getControllerState()).thenReturn(ControllerState.JOG);
 
         PartialPosition p = new PartialPosition(10., 0., 0., UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertTrue(instance.adjustManualLocation(p, 10));
         verify(controller, times(1)).jogMachine(p, 10);
     }
 
@@ -114,7 +138,7 @@ public class GUIBackendTest {
         when(instance.getControllerState()).thenReturn(ControllerState.DOOR);
 
         PartialPosition p = new PartialPosition(10., 0., 0., UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertFalse(instance.adjustManualLocation(p, 10));
         verify(controller, times(0)).jogMachine(any(), anyDouble());
     }
 
@@ -124,7 +148,7 @@ public class GUIBackendTest {
         when(instance.getControllerState()).thenReturn(ControllerState.RUN);
 
         PartialPosition p = new PartialPosition(10., 0., 0., UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertFalse(instance.adjustManualLocation(p, 10));
         verify(controller, times(0)).jogMachine(any(), anyDouble());
     }
 
@@ -134,7 +158,7 @@ public class GUIBackendTest {
         when(instance.getControllerState()).thenReturn(ControllerState.IDLE);
 
         PartialPosition p = new PartialPosition(0., 0., 0., UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertFalse(instance.adjustManualLocation(p, 10));
         verify(controller, times(0)).jogMachine(any(), anyDouble());
     }
 
@@ -144,7 +168,7 @@ public class GUIBackendTest {
         when(instance.getControllerState()).thenReturn(ControllerState.IDLE);
 
         PartialPosition p = new PartialPosition(null, null, UnitUtils.Units.MM);
-        instance.adjustManualLocation(p, 10);
+        assertFalse(instance.adjustManualLocation(p, 10));
         verify(controller, times(0)).jogMachine(any(), anyDouble());
     }
 
@@ -468,6 +492,195 @@ public class GUIBackendTest {
         assertNotNull(instance.getProcessedGcodeFile());
     }
 
+    @Test
+    public void removeCommandProcessorWithoutFileShouldNotProcessAnything() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+
+        // When
+        instance.removeCommandProcessor(new DecimalProcessor(4));
+
+        // Then
+        assertNull(instance.getProcessedGcodeFile());
+        assertTrue(eventArgumentCaptor.getAllValues().stream().noneMatch(FileStateEvent.class::isInstance));
+    }
+
+    @Test
+    public void removeCommandProcessorShouldProcessTheFileOnce() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.setGcodeFile(tempFile);
+
+        DecimalProcessor processor = new DecimalProcessor(4);
+        instance.applyCommandProcessor(processor);
+        int eventCount = eventArgumentCaptor.getAllValues().size();
+
+        // When
+        instance.removeCommandProcessor(processor);
+
+        // Then
+        long loadingEvents = eventArgumentCaptor.getAllValues().stream()
+                .skip(eventCount)
+                .filter(event -> event instanceof FileStateEvent && ((FileStateEvent) event).getFileState() == FileState.FILE_LOADING)
+                .count();
+        assertEquals(1, loadingEvents);
+        assertNotNull(instance.getProcessedGcodeFile());
+    }
+
+    @Test
+    public void applyCommandProcessorInBackgroundShouldProcessTheLoadedFile() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.loadGcodeFile(tempFile).get();
+
+        // When
+        Future<File> result = instance.applyCommandProcessorInBackground(new CommandProcessor() {
+            @Override
+            public List<String> processCommand(String command, GcodeState state) {
+                return Collections.singletonList(command + "Z1");
+            }
+
+            @Override
+            public String getHelp() {
+                return "Adds a Z coordinate";
+            }
+        });
+
+        // Then
+        File processedFile = result.get();
+        assertEquals(instance.getProcessedGcodeFile(), processedFile);
+        GcodeStreamReader reader = new GcodeStreamReader(processedFile);
+        assertEquals("G0X0Y0Z1", reader.getNextCommand().getCommandString());
+        reader.close();
+    }
+
+    @Test
+    public void applyCommandProcessorInBackgroundShouldDispatchErrors() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.loadGcodeFile(tempFile).get();
+
+        // When
+        Future<File> result = instance.applyCommandProcessorInBackground(new CommandProcessor() {
+            @Override
+            public List<String> processCommand(String command, GcodeState state) {
+                throw new IllegalStateException("Failing processor");
+            }
+
+            @Override
+            public String getHelp() {
+                return "Always fails";
+            }
+        });
+
+        // Then
+        try {
+            result.get();
+            fail("The processing should have failed");
+        } catch (ExecutionException e) {
+            assertEquals(IllegalStateException.class, e.getCause().getClass());
+        }
+        verify(instance).dispatchMessage(eq(MessageType.ERROR), contains("Failing processor"));
+    }
+
+    @Test
+    public void reloadGcodeFileInBackgroundShouldSendFileEventsFromTheLoader() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.loadGcodeFile(tempFile).get();
+        int eventCount = eventArgumentCaptor.getAllValues().size();
+
+        // When
+        File result = instance.reloadGcodeFileInBackground().get();
+
+        // Then
+        assertNotNull(result);
+        List<FileState> fileStates = eventArgumentCaptor.getAllValues().stream()
+                .skip(eventCount)
+                .filter(FileStateEvent.class::isInstance)
+                .map(event -> ((FileStateEvent) event).getFileState())
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(FileState.OPENING_FILE, FileState.FILE_LOADING, FileState.FILE_LOADED), fileStates);
+    }
+
+    @Test
+    public void setGcodeFileShouldReuseTheCachedProcessedFile() throws Exception {
+        // Given
+        settings.setProcessedFileCacheSize(16);
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\nG1 X10 F100\n", StandardCharsets.UTF_8);
+        instance.setGcodeFile(tempFile);
+        File processedFile = instance.getProcessedGcodeFile();
+        assertEquals(cacheDir.toFile(), processedFile.getParentFile());
+        FileUtils.writeStringToFile(processedFile, "cached", StandardCharsets.UTF_8);
+
+        // When
+        instance.setGcodeFile(tempFile);
+
+        // Then the file is not processed again
+        assertEquals(processedFile, instance.getProcessedGcodeFile());
+        assertEquals("cached", FileUtils.readFileToString(processedFile, StandardCharsets.UTF_8));
+        assertEquals(2, settings.getFileStats().numCommands);
+        assertEquals(10, settings.getFileStats().maxCoordinate.x, 0.001);
+        assertEquals(10, settings.getFileStats().cuttingDistance, 0.001);
+        assertEquals(6, settings.getFileStats().cuttingTime, 0.001);
+    }
+
+    @Test
+    public void sendWithoutStreamingCommandProcessorsShouldStreamTheProcessedFile() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.setGcodeFile(tempFile);
+
+        // When
+        instance.send();
+
+        // Then
+        ArgumentCaptor<IGcodeStreamReader> streamCaptor = ArgumentCaptor.forClass(IGcodeStreamReader.class);
+        verify(controller).queueStream(streamCaptor.capture());
+        assertEquals(GcodeStreamReader.class, streamCaptor.getValue().getClass());
+    }
+
+    @Test
+    public void sendWithStreamingCommandProcessorsShouldFormatTheProcessedCommands() throws Exception {
+        // Given
+        instance.connect(FIRMWARE, PORT, BAUD_RATE);
+        File tempFile = File.createTempFile("ugs-", ".gcode");
+        FileUtils.writeStringToFile(tempFile, "G0 X0 Y0\n", StandardCharsets.UTF_8);
+        instance.setGcodeFile(tempFile);
+        instance.applyStreamingCommandProcessor(() -> new CommandProcessor() {
+            @Override
+            public List<String> processCommand(String command, GcodeState state) {
+                return Collections.singletonList(command + "Z1.123456789");
+            }
+
+            @Override
+            public String getHelp() {
+                return "Adds a Z coordinate";
+            }
+        });
+
+        // When
+        instance.send();
+
+        // Then the output of the streaming processor is formatted by the firmware processors
+        ArgumentCaptor<IGcodeStreamReader> streamCaptor = ArgumentCaptor.forClass(IGcodeStreamReader.class);
+        verify(controller).queueStream(streamCaptor.capture());
+        assertEquals(ProcessedGcodeStreamReader.class, streamCaptor.getValue().getClass());
+        assertEquals("G0X0Y0Z1.1235", streamCaptor.getValue().getNextCommand().getCommandString());
+    }
+
     @Test(expected = IOException.class)
     public void getGcodeFileThatDoesNotExistShouldThrowException() throws Exception {
         // Given
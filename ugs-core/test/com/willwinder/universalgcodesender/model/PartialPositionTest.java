@@ -1,11 +1,21 @@
 package com.willwinder.universalgcodesender.model;
 
+import com.willwinder.universalgcodesender.i18n.Localization;
 import org.junit.Test;
 
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
 import static org.junit.Assert.*;
 
 public class PartialPositionTest {
 
+    @Test
+    public void testFormattedWithNumberFormat() {
+        NumberFormat formatter = new DecimalFormat("0.0", Localization.dfs);
+        assertEquals("X1.0Y-2.5", new PartialPosition(1.0, -2.5, UnitUtils.Units.MM).getFormattedGCode(formatter));
+    }
+
     @Test
     public void testFormatted() {
         assertEquals("Y0Z0", new PartialPosition(null, 0.0, 0.0, UnitUtils.Units.MM).getFormattedGCode());
@@ -0,0 +1,309 @@
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.Capabilities;
+import com.willwinder.universalgcodesender.CapabilitiesConstants;
+import com.willwinder.universalgcodesender.IController;
+import com.willwinder.universalgcodesender.listeners.ControllerState;
+import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.model.events.CommandEvent;
+import com.willwinder.universalgcodesender.model.events.CommandEventType;
+import com.willwinder.universalgcodesender.services.JogService;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ContinuousJogWorkerTest {
+    private static final long ACK_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    public void calculatePacingWithUnknownAccelerationShouldUseTheMinimumQueue() {
+        ContinuousJogWorker.Pacing pacing = ContinuousJogWorker.calculatePacing(10, 0, 0.001);
+        assertEquals(ContinuousJogWorker.MIN_SEGMENT_DURATION, pacing.getSegmentDuration(), 0.0001);
+        assertEquals(ContinuousJogWorker.MIN_QUEUED_SEGMENTS, pacing.getQueueSize());
+        assertEquals(0, pacing.getAccelerationTime(), 0.0001);
+    }
+
+    @Test
+    public void calculatePacingShouldUseSegmentsLongerThanTheLatency() {
+        ContinuousJogWorker.Pacing pacing = ContinuousJogWorker.calculatePacing(10, 500, 0.030);
+        assertEquals(0.030, pacing.getSegmentDuration(), 0.0001);
+    }
+
+    @Test
+    public void calculatePacingShouldQueueEnoughSegmentsToDecelerate() {
+        // 50 mm/s with 500 mm/s^2 requires 2.5 mm to stop, which is five segments of 0.5 mm
+        ContinuousJogWorker.Pacing pacing = ContinuousJogWorker.calculatePacing(50, 500, 0.010);
+        assertEquals(0.010, pacing.getSegmentDuration(), 0.0001);
+        assertEquals(6, pacing.getQueueSize());
+        assertEquals(0.05, pacing.getAccelerationTime(), 0.0001);
+        assertPacingCanDecelerate(50, 500, pacing);
+    }
+
+    @Test
+    public void calculatePacingShouldUseLongerSegmentsWhenThePlannerIsFull() {
+        ContinuousJogWorker.Pacing pacing = ContinuousJogWorker.calculatePacing(100, 50, 0.010);
+        assertEquals(ContinuousJogWorker.PLANNER_BLOCKS - 1, pacing.getQueueSize());
+        assertTrue(pacing.getSegmentDuration() > 0.010);
+        assertPacingCanDecelerate(100, 50, pacing);
+    }
+
+    @Test
+    public void calculatePacingShouldUseTheSegmentDurationNeededToDecelerate() {
+        // 100 mm/s with 50 mm/s^2 requires 100 mm to stop, dt = v / (2 * a * (N-1)) = 100 / (2 * 50 * 13)
+        ContinuousJogWorker.Pacing pacing = ContinuousJogWorker.calculatePacing(100, 50, 0.010);
+        assertEquals(14, pacing.getQueueSize());
+        assertEquals(100.0 / 1300.0, pacing.getSegmentDuration(), 0.000001);
+        assertEquals(100, (pacing.getQueueSize() - 1) * 100 * pacing.getSegmentDuration(), 0.0001);
+    }
+
+    @Test
+    public void segmentQueueShouldWaitUntilAllButOneSegmentHasBeenExecuted() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 3, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        assertTrue(queue.getWaitTime(0, pacing, ACK_TIMEOUT) <= 0);
+
+        queue.add(0, pacing);
+        queue.add(0, pacing);
+        queue.acknowledge(0, ACK_TIMEOUT);
+        queue.acknowledge(0, ACK_TIMEOUT);
+        assertTrue(queue.getWaitTime(0, pacing, ACK_TIMEOUT) <= 0);
+
+        queue.add(0, pacing);
+        queue.acknowledge(0, ACK_TIMEOUT);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), queue.getWaitTime(0, pacing, ACK_TIMEOUT));
+        assertTrue(queue.getWaitTime(TimeUnit.MILLISECONDS.toNanos(10), pacing, ACK_TIMEOUT) <= 0);
+    }
+
+    @Test
+    public void segmentQueueShouldAddTheAccelerationTimeWhenStartingFromStandstill() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0.050);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+
+        queue.add(0, pacing);
+        queue.acknowledge(0, ACK_TIMEOUT);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), queue.getWaitTime(0, pacing, ACK_TIMEOUT));
+    }
+
+    @Test
+    public void segmentQueueShouldWaitForAcknowledgementsWhenFull() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        queue.add(0, pacing);
+        queue.add(0, pacing);
+
+        // The queued segments have been executed but not acknowledged, wait for the oldest to time out
+        long now = TimeUnit.MILLISECONDS.toNanos(50);
+        assertEquals(ACK_TIMEOUT - now, queue.getWaitTime(now, pacing, ACK_TIMEOUT));
+
+        assertTrue(queue.acknowledge(now, ACK_TIMEOUT));
+        assertEquals(1, queue.size());
+        assertTrue(queue.getWaitTime(now, pacing, ACK_TIMEOUT) <= 0);
+    }
+
+    @Test
+    public void segmentQueueShouldUpdateTheLatencyWhenAcknowledged() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        assertFalse(queue.acknowledge(0, ACK_TIMEOUT));
+        assertEquals(ContinuousJogWorker.MIN_SEGMENT_DURATION, queue.getLatency(), 0.0001);
+
+        queue.add(0, pacing);
+        assertTrue(queue.acknowledge(TimeUnit.MILLISECONDS.toNanos(60), ACK_TIMEOUT));
+        assertTrue(queue.getLatency() > ContinuousJogWorker.MIN_SEGMENT_DURATION);
+    }
+
+    @Test
+    public void segmentQueueShouldRemoveSegmentsThatWereNeverAcknowledged() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        queue.add(0, pacing);
+        queue.add(TimeUnit.MILLISECONDS.toNanos(100), pacing);
+
+        assertTrue(queue.getWaitTime(ACK_TIMEOUT - 1, pacing, ACK_TIMEOUT) > 0);
+        assertEquals(2, queue.size());
+
+        assertTrue(queue.getWaitTime(ACK_TIMEOUT, pacing, ACK_TIMEOUT) <= 0);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void segmentQueueShouldBeEmptyWhenCleared() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0.050);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        queue.add(0, pacing);
+        queue.add(0, pacing);
+
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertFalse(queue.acknowledge(0, ACK_TIMEOUT));
+        assertTrue(queue.getWaitTime(0, pacing, ACK_TIMEOUT) <= 0);
+    }
+
+    @Test
+    public void segmentQueueShouldIgnoreAcknowledgementsOfClearedSegments() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        queue.add(0, pacing);
+        queue.add(0, pacing);
+        queue.clear();
+
+        long now = TimeUnit.MILLISECONDS.toNanos(10);
+        queue.add(now, pacing);
+        assertFalse(queue.acknowledge(now, ACK_TIMEOUT));
+        assertFalse(queue.acknowledge(now, ACK_TIMEOUT));
+        assertEquals(1, queue.size());
+
+        assertTrue(queue.acknowledge(now, ACK_TIMEOUT));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void segmentQueueShouldOnlyIgnoreAcknowledgementsOfClearedSegmentsUntilTheyTimeOut() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        queue.add(0, pacing);
+        queue.clear();
+
+        queue.add(ACK_TIMEOUT, pacing);
+        assertTrue(queue.acknowledge(ACK_TIMEOUT, ACK_TIMEOUT));
+    }
+
+    @Test
+    public void segmentQueueAckTimeoutShouldBeBasedOnTheLatency() {
+        ContinuousJogWorker.Pacing pacing = new ContinuousJogWorker.Pacing(0.010, 2, 0);
+        ContinuousJogWorker.SegmentQueue queue = new ContinuousJogWorker.SegmentQueue();
+        assertEquals(ACK_TIMEOUT, queue.getAckTimeout(ACK_TIMEOUT));
+
+        // Acknowledgements that take longer than the status interval
+        for (int i = 0; i < 20; i++) {
+            queue.add(0, pacing);
+            queue.acknowledge(TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1));
+        }
+        long expectedTimeout = (long) (queue.getLatency() * ContinuousJogWorker.ACK_TIMEOUT_LATENCY_FACTOR * 1_000_000_000L);
+        assertTrue(expectedTimeout > ACK_TIMEOUT);
+        assertEquals(expectedTimeout, queue.getAckTimeout(ACK_TIMEOUT));
+    }
+
+    @Test
+    public void isJogCommandShouldOnlyMatchRelativeJogCommands() {
+        assertTrue(ContinuousJogWorker.isJogCommand(new GcodeCommand("$J=G91X1F600")));
+        assertTrue(ContinuousJogWorker.isJogCommand(new GcodeCommand("G91G1X1F600")));
+        assertFalse(ContinuousJogWorker.isJogCommand(new GcodeCommand("$$")));
+        assertFalse(ContinuousJogWorker.isJogCommand(new GcodeCommand("G0X1")));
+        assertFalse(ContinuousJogWorker.isJogCommand(null));
+    }
+
+    @Test
+    public void workerShouldNotTreatOtherCommandsAsAcknowledgements() throws Exception {
+        BackendAPI backendAPI = createBackend(true);
+        ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, createJogService());
+        worker.setDirection(1, 0, 0);
+        worker.start();
+        verify(backendAPI, timeout(1000).times(2)).adjustManualLocation(any(), anyDouble());
+
+        // A command sent from the console completing while jogging
+        worker.UGSEvent(new CommandEvent(CommandEventType.COMMAND_COMPLETE, new GcodeCommand("$$")));
+        Thread.sleep(200);
+        verify(backendAPI, times(2)).adjustManualLocation(any(), anyDouble());
+        worker.destroy();
+    }
+
+    @Test
+    public void workerShouldSendAnotherSegmentWhenAcknowledged() throws Exception {
+        BackendAPI backendAPI = createBackend(true);
+        JogService jogService = createJogService();
+        ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, jogService);
+        worker.setDirection(1, 0, 0);
+        worker.start();
+
+        // Without acceleration the minimum queue is used, then the worker waits for an acknowledgement
+        verify(backendAPI, timeout(1000).times(2)).adjustManualLocation(any(), anyDouble());
+        Thread.sleep(200);
+        verify(backendAPI, times(2)).adjustManualLocation(any(), anyDouble());
+
+        worker.UGSEvent(new CommandEvent(CommandEventType.COMMAND_COMPLETE, new GcodeCommand("$J=G91X1F600")));
+        verify(backendAPI, timeout(1000).times(3)).adjustManualLocation(any(), anyDouble());
+        worker.destroy();
+    }
+
+    @Test
+    public void workerShouldStopWaitingForLostAcknowledgements() throws Exception {
+        BackendAPI backendAPI = createBackend(true);
+        ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, createJogService());
+        worker.setDirection(1, 0, 0);
+        worker.start();
+
+        verify(backendAPI, timeout(1000).times(2)).adjustManualLocation(any(), anyDouble());
+        verify(backendAPI, timeout(3000).atLeast(3)).adjustManualLocation(any(), anyDouble());
+        worker.destroy();
+    }
+
+    @Test
+    public void workerShouldCancelTheJogWhenStopped() throws Exception {
+        BackendAPI backendAPI = createBackend(true);
+        JogService jogService = createJogService();
+        ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, jogService);
+        worker.setDirection(1, 0, 0);
+        worker.start();
+        verify(backendAPI, timeout(1000).atLeastOnce()).adjustManualLocation(any(), anyDouble());
+
+        worker.stop();
+        verify(jogService, timeout(1000).times(1)).cancelJog();
+        worker.destroy();
+    }
+
+    @Test
+    public void workerShouldNotCancelWhenNoSegmentWasSent() throws Exception {
+        BackendAPI backendAPI = createBackend(false);
+        JogService jogService = createJogService();
+        ContinuousJogWorker worker = new ContinuousJogWorker(backendAPI, jogService);
+        worker.setDirection(1, 0, 0);
+        worker.start();
+        verify(backendAPI, timeout(1000).atLeastOnce()).adjustManualLocation(any(), anyDouble());
+
+        worker.destroy();
+        Thread.sleep(500);
+        verify(jogService, never()).cancelJog();
+    }
+
+    private static BackendAPI createBackend(boolean isSent) throws Exception {
+        Capabilities capabilities = new Capabilities();
+        capabilities.addCapability(CapabilitiesConstants.X_AXIS);
+
+        IController controller = mock(IController.class);
+        when(controller.getCapabilities()).thenReturn(capabilities);
+        when(controller.getStatusUpdateRate()).thenReturn(1000);
+
+        BackendAPI backendAPI = mock(BackendAPI.class);
+        when(backendAPI.getController()).thenReturn(controller);
+        when(backendAPI.getControllerState()).thenReturn(ControllerState.JOG);
+        when(backendAPI.adjustManualLocation(any(), anyDouble())).thenReturn(isSent);
+        return backendAPI;
+    }
+
+    private static JogService createJogService() {
+        JogService jogService = mock(JogService.class);
+        when(jogService.getFeedRate()).thenReturn(600);
+        when(jogService.getUnits()).thenReturn(UnitUtils.Units.MM);
+        return jogService;
+    }
+
+    private static void assertPacingCanDecelerate(double v, double acceleration, ContinuousJogWorker.Pacing pacing) {
+        double queuedDistance = (pacing.getQueueSize() - 1) * v * pacing.getSegmentDuration();
+        assertTrue(queuedDistance >= (v * v) / (2 * acceleration) - 0.0001);
+    }
+}
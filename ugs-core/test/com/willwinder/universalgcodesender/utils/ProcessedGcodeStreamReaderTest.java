@@ -0,0 +1,258 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.utils;
+
+import com.willwinder.universalgcodesender.gcode.GcodeState;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.Translator;
+import com.willwinder.universalgcodesender.gcode.util.GcodeParserException;
+import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import com.willwinder.universalgcodesender.types.GcodeCommand;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProcessedGcodeStreamReaderTest {
+
+    @Test
+    public void readingShouldApplyCommandProcessor() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new Translator(new Position(10, 10, 0, UnitUtils.Units.MM)));
+        assertEquals(2, processedReader.getNumRows());
+        assertEquals(2, processedReader.getNumRowsRemaining());
+
+        GcodeCommand command = processedReader.getNextCommand();
+        assertEquals("G0X10Y10", command.getCommandString());
+        assertEquals("G0X0Y0", command.getOriginalCommandString());
+        assertEquals(0, command.getCommandNumber());
+
+        command = processedReader.getNextCommand();
+        assertEquals("G1X11Y11", command.getCommandString());
+        assertEquals(1, command.getCommandNumber());
+
+        assertNull(processedReader.getNextCommand());
+        assertEquals(0, processedReader.getNumRowsRemaining());
+    }
+
+    @Test
+    public void changingCommandProcessorShouldReprocessPendingLines() throws Exception {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1", "G1X2Y2");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new Translator(new Position(10, 10, 0, UnitUtils.Units.MM)), 2);
+
+        assertEquals("G0X10Y10", processedReader.getNextCommand().getCommandString());
+
+        processedReader.setCommandProcessor(new Translator(new Position(-1, -1, 0, UnitUtils.Units.MM)));
+        assertEquals("G1X0Y0", processedReader.getNextCommand().getCommandString());
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertNull(processedReader.getNextCommand());
+    }
+
+    @Test
+    public void changingCommandProcessorShouldFlushTheHeldBackCommands() throws Exception {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1", "G1X2Y2", "G1X3Y3");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new DelayingProcessor());
+
+        assertEquals("G0X0Y0", processedReader.getNextCommand().getCommandString());
+
+        // The second line is held back by the old processor and should not be lost
+        processedReader.setCommandProcessor(new Translator(new Position(10, 10, 0, UnitUtils.Units.MM)));
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertEquals("G1X12Y12", processedReader.getNextCommand().getCommandString());
+        assertEquals("G1X13Y13", processedReader.getNextCommand().getCommandString());
+        assertNull(processedReader.getNextCommand());
+    }
+
+    @Test
+    public void heldBackCommandsShouldBeFlushedAtTheEndOfTheStream() throws Exception {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new DelayingProcessor());
+
+        assertEquals("G0X0Y0", processedReader.getNextCommand().getCommandString());
+        assertTrue(processedReader.ready());
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertNull(processedReader.getNextCommand());
+        assertFalse(processedReader.ready());
+    }
+
+    @Test
+    public void linesRemovedByTheProcessorShouldBeSkipped() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "M5", "G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new MCodeRemover());
+
+        assertEquals("G0X0Y0", processedReader.getNextCommand().getCommandString());
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertNull(processedReader.getNextCommand());
+    }
+
+    @Test
+    public void lineShouldNotBeLostIfItCouldNotBeProcessed() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1");
+        FailingProcessor processor = new FailingProcessor("G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, processor);
+        assertEquals("G0X0Y0", processedReader.getNextCommand().getCommandString());
+
+        try {
+            processedReader.getNextCommand();
+            fail("Expected the processing to fail");
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof GcodeParserException);
+        }
+        assertEquals(1, processedReader.getNumRowsRemaining());
+
+        processor.failingCommand = null;
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertNull(processedReader.getNextCommand());
+    }
+
+    @Test
+    public void rowsShouldIncludeAllCommandsCreatedByTheProcessor() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G1X1", "G1X2");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new SplittingProcessor(3));
+        assertEquals(2, processedReader.getNumRows());
+        assertEquals(2, processedReader.getNumRowsRemaining());
+
+        assertEquals("G1X1", processedReader.getNextCommand().getCommandString());
+        assertEquals(4, processedReader.getNumRows());
+        assertEquals(3, processedReader.getNumRowsRemaining());
+
+        int sent = 1;
+        while (processedReader.getNextCommand() != null) {
+            sent++;
+            assertEquals(processedReader.getNumRows() - sent, processedReader.getNumRowsRemaining());
+        }
+        assertEquals(6, sent);
+        assertEquals(6, processedReader.getNumRows());
+        assertEquals(0, processedReader.getNumRowsRemaining());
+    }
+
+    @Test
+    public void rowsShouldIncludeTheHeldBackCommandsUntilTheyAreRead() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new DelayingProcessor());
+
+        assertEquals("G0X0Y0", processedReader.getNextCommand().getCommandString());
+        assertEquals(1, processedReader.getNumRowsRemaining());
+        assertEquals("G1X1Y1", processedReader.getNextCommand().getCommandString());
+        assertEquals(0, processedReader.getNumRowsRemaining());
+        assertEquals(2, processedReader.getNumRows());
+    }
+
+    @Test
+    public void rowsShouldNotIncludeLinesRemovedByTheProcessor() throws IOException {
+        SimpleGcodeStreamReader reader = new SimpleGcodeStreamReader("G0X0Y0", "M5", "G1X1Y1");
+        ProcessedGcodeStreamReader processedReader = new ProcessedGcodeStreamReader(reader, new MCodeRemover());
+
+        while (processedReader.getNextCommand() != null) {
+            // Read all commands
+        }
+        assertEquals(2, processedReader.getNumRows());
+        assertEquals(0, processedReader.getNumRowsRemaining());
+    }
+
+    /**
+     * Holds back each command until the next command is processed
+     */
+    private static class DelayingProcessor implements CommandProcessor {
+        private String heldBack;
+
+        @Override
+        public List<String> processCommand(String command, GcodeState state) {
+            List<String> result = heldBack == null ? Collections.emptyList() : Collections.singletonList(heldBack);
+            heldBack = command;
+            return result;
+        }
+
+        @Override
+        public List<String> flush(GcodeState state) {
+            List<String> result = heldBack == null ? Collections.emptyList() : Collections.singletonList(heldBack);
+            heldBack = null;
+            return result;
+        }
+
+        @Override
+        public boolean isStateless() {
+            return false;
+        }
+
+        @Override
+        public String getHelp() {
+            return "";
+        }
+    }
+
+    private static class FailingProcessor implements CommandProcessor {
+        private String failingCommand;
+
+        private FailingProcessor(String failingCommand) {
+            this.failingCommand = failingCommand;
+        }
+
+        @Override
+        public List<String> processCommand(String command, GcodeState state) throws GcodeParserException {
+            if (command.equals(failingCommand)) {
+                throw new GcodeParserException("Could not process " + command);
+            }
+            return Collections.singletonList(command);
+        }
+
+        @Override
+        public String getHelp() {
+            return "";
+        }
+    }
+
+    private static class SplittingProcessor implements CommandProcessor {
+        private final int parts;
+
+        private SplittingProcessor(int parts) {
+            this.parts = parts;
+        }
+
+        @Override
+        public List<String> processCommand(String command, GcodeState state) {
+            return Collections.nCopies(parts, command);
+        }
+
+        @Override
+        public String getHelp() {
+            return "";
+        }
+    }
+
+    private static class MCodeRemover implements CommandProcessor {
+        @Override
+        public List<String> processCommand(String command, GcodeState state) {
+            return command.startsWith("M") ? Collections.emptyList() : Collections.singletonList(command);
+        }
+
+        @Override
+        public String getHelp() {
+            return "";
+        }
+    }
+}
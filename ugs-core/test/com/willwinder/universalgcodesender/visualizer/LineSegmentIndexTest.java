@@ -0,0 +1,84 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.universalgcodesender.visualizer;
+
+import com.willwinder.universalgcodesender.model.Position;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineSegmentIndexTest {
+
+    @Test
+    public void getSegmentsShouldReturnTheSegmentsOfTheLine() {
+        LineSegment segment1 = createSegment(1);
+        LineSegment segment2 = createSegment(3);
+        LineSegment segment3 = createSegment(3);
+        LineSegment segment4 = createSegment(4);
+        LineSegmentIndex index = new LineSegmentIndex(Arrays.asList(segment1, segment2, segment3, segment4));
+
+        assertEquals(Collections.singletonList(segment1), index.getSegments(1));
+        assertTrue(index.getSegments(2).isEmpty());
+        assertEquals(Arrays.asList(segment2, segment3), index.getSegments(3));
+        assertEquals(Collections.singletonList(segment4), index.getSegments(4));
+        assertTrue(index.getSegments(5).isEmpty());
+        assertTrue(index.getSegments(-1).isEmpty());
+    }
+
+    @Test
+    public void getSegmentsShouldReturnTheSegmentsWithinTheRange() {
+        LineSegment segment1 = createSegment(1);
+        LineSegment segment2 = createSegment(3);
+        LineSegment segment3 = createSegment(3);
+        LineSegment segment4 = createSegment(4);
+        LineSegmentIndex index = new LineSegmentIndex(Arrays.asList(segment1, segment2, segment3, segment4));
+
+        assertEquals(Arrays.asList(segment1, segment2, segment3), index.getSegments(0, 3));
+        assertEquals(Arrays.asList(segment2, segment3, segment4), index.getSegments(2, 100));
+        assertTrue(index.getSegments(5, 100).isEmpty());
+    }
+
+    @Test
+    public void getSegmentsShouldHandleUnorderedSegments() {
+        LineSegment segment1 = createSegment(4);
+        LineSegment segment2 = createSegment(2);
+        LineSegment segment3 = createSegment(4);
+        LineSegment segment4 = createSegment(1);
+        LineSegmentIndex index = new LineSegmentIndex(Arrays.asList(segment1, segment2, segment3, segment4));
+
+        assertEquals(Arrays.asList(segment1, segment3), index.getSegments(4));
+        List<LineSegment> segments = index.getSegments(1, 2);
+        assertEquals(Arrays.asList(segment4, segment2), segments);
+    }
+
+    @Test
+    public void emptyIndexShouldReturnNoSegments() {
+        assertTrue(LineSegmentIndex.EMPTY.getSegments(0, 10).isEmpty());
+        assertEquals(0, LineSegmentIndex.EMPTY.size());
+    }
+
+    private static LineSegment createSegment(int lineNumber) {
+        return new LineSegment(new Position(lineNumber, 0, 0), new Position(lineNumber, 1, 0), lineNumber);
+    }
+}
@@ -35,7 +35,9 @@ public class FilesResource {
         File file = new File(tempDir + File.separator + fileName);
         Files.copy(fileInputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
         IOUtils.closeQuietly(fileInputStream);
-        backendAPI.setGcodeFile(file);
+
+        // The file is loaded in the background, the backend logs and dispatches a message if it fails
+        backendAPI.loadGcodeFile(file);
     }
 
     @POST
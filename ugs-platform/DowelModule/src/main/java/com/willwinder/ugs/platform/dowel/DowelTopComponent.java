@@ -218,7 +218,7 @@ public final class DowelTopComponent extends TopComponent {
       try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
         generator.generate(writer);
       }
-      backend.setGcodeFile(file);
+      backend.loadGcodeFile(file);
     } catch (IOException e) {
       GUIHelpers.displayErrorDialog(ERROR_GENERATING + e.getLocalizedMessage());
     } catch (Exception e) {
@@ -202,7 +202,7 @@ public final class GcodeTilerTopComponent extends TopComponent {
           }
         }
       }
-      backend.setGcodeFile(file);
+      backend.loadGcodeFile(file);
     } catch (IOException e) {
       GUIHelpers.displayErrorDialog(ERROR_GENERATING + e.getLocalizedMessage());
     } catch (Exception e) {
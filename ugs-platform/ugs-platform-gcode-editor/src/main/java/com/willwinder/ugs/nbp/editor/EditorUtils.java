@@ -20,7 +20,6 @@ package com.willwinder.ugs.nbp.editor;
 
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
 import com.willwinder.universalgcodesender.model.BackendAPI;
-import org.openide.ErrorManager;
 import org.openide.filesystems.FileObject;
 
 import java.io.File;
@@ -31,10 +30,6 @@ import java.io.File;
 public class EditorUtils {
     public static void openFile(FileObject pf) {
         BackendAPI backend = CentralLookup.getDefault().lookup(BackendAPI.class);
-        try {
-            backend.setGcodeFile(new File((pf.getPath())));
-        } catch (Exception e) {
-            ErrorManager.getDefault().notify(ErrorManager.WARNING, e);
-        }
+        backend.loadGcodeFile(new File(pf.getPath()));
     }
 }
@@ -20,19 +20,29 @@ package com.willwinder.ugs.nbp.editor;
 
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
 import com.willwinder.universalgcodesender.model.BackendAPI;
+import com.willwinder.universalgcodesender.utils.ThreadHelper;
 import org.openide.ErrorManager;
 import org.openide.filesystems.FileAttributeEvent;
 import org.openide.filesystems.FileChangeListener;
 import org.openide.filesystems.FileEvent;
 import org.openide.filesystems.FileRenameEvent;
 import java.io.Serializable;
+import java.util.concurrent.ScheduledFuture;
 
 /**
- * Listens to external file change events and updates it on the controller
+ * Listens to external file change events and updates it on the controller. Saves made
+ * in rapid succession are collected to a single reload of the file.
  */
 public class GcodeFileListener implements FileChangeListener, Serializable {
     private static final long serialVersionUID = 7255903502190131123L;
 
+    /**
+     * The time in milliseconds to wait for more changes before reloading the file
+     */
+    private static final long RELOAD_DELAY = 500;
+
+    private transient ScheduledFuture<?> reloadFuture;
+
     @Override
     public void fileFolderCreated(FileEvent fe) {
 
@@ -44,7 +54,16 @@ public class GcodeFileListener implements FileChangeListener, Serializable {
     }
 
     @Override
-    public void fileChanged(FileEvent fe) {
+    public synchronized void fileChanged(FileEvent fe) {
+        // Postpone any pending reload
+        if (reloadFuture != null && !reloadFuture.isDone()) {
+            reloadFuture.cancel(false);
+        }
+
+        reloadFuture = ThreadHelper.invokeLater(this::reloadFile, RELOAD_DELAY);
+    }
+
+    private void reloadFile() {
         try {
             BackendAPI backend = CentralLookup.getDefault().lookup(BackendAPI.class);
             // Do not reload the file if the machine is running.
@@ -31,4 +31,17 @@ public class GcodeError extends DefaultError {
     public GcodeError(String key, String displayName, String description, FileObject file, int start, int end, boolean lineError, Severity severity) {
         super(key, displayName, description, file, start, end, lineError, severity);
     }
+
+    /**
+     * Creates a copy of this error moved by the given number of characters
+     *
+     * @param delta the number of characters to move the error
+     * @return a new error or this error if it isn't moved
+     */
+    public GcodeError move(int delta) {
+        if (delta == 0) {
+            return this;
+        }
+        return new GcodeError(getKey(), getDisplayName(), getDescription(), getFile(), getStartPosition() + delta, getEndPosition() + delta, isLineError(), getSeverity());
+    }
 }
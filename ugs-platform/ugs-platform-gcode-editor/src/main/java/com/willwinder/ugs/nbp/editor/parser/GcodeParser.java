@@ -18,9 +18,7 @@
 */
 package com.willwinder.ugs.nbp.editor.parser;
 
-import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenId;
 import com.willwinder.ugs.nbp.editor.parser.errors.*;
-import org.netbeans.api.lexer.Token;
 import org.netbeans.api.lexer.TokenSequence;
 import org.netbeans.modules.parsing.api.Snapshot;
 import org.netbeans.modules.parsing.api.Task;
@@ -33,7 +31,6 @@ import org.openide.util.lookup.ServiceProvider;
 import javax.swing.event.ChangeListener;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * A gcode parser that parses errors from gcode tokens
@@ -49,44 +46,44 @@ public class GcodeParser extends Parser {
      * A support object for notifying listeners about that we need to reparse the document
      */
     private final ChangeSupport changeSupport = new ChangeSupport(this);
-    private List<GcodeError> errors;
+    private IncrementalErrorChecker errorChecker;
     private Snapshot snapshot;
+    private volatile boolean cancelled;
 
     @Override
     public void parse(Snapshot snapshot, Task task, SourceModificationEvent sourceModificationEvent) {
         this.snapshot = snapshot;
+        cancelled = false;
 
-        FileObject fileObject = snapshot.getSource().getFileObject();
+        // The error checker keeps the result of the previous parse and will only check the modified lines
+        if (errorChecker == null) {
+            errorChecker = new IncrementalErrorChecker(createErrorParsers(snapshot.getSource().getFileObject()));
+        }
+
+        TokenSequence<?> tokenSequence = snapshot.getTokenHierarchy().tokenSequence();
+        errorChecker.check(snapshot.getText(), tokenSequence, () -> cancelled);
+    }
+
+    private static List<ErrorParser> createErrorParsers(FileObject fileObject) {
         List<ErrorParser> errorParserList = new ArrayList<>();
         errorParserList.add(new FeedRateMissingErrorParser(fileObject));
         errorParserList.add(new InvalidGrblCommandErrorParser(fileObject));
         errorParserList.add(new MovementInMachineCoordinatesErrorParser(fileObject));
         errorParserList.add(new InvalidG2CommandErrorParser(fileObject));
+        return errorParserList;
+    }
 
-        TokenSequence<?> tokenSequence = snapshot.getTokenHierarchy().tokenSequence();
-        tokenSequence.moveStart();
-
-        int line = 1; // The snapshot starts on line 1
-        while (tokenSequence.moveNext()) {
-            Token<?> token = tokenSequence.token();
-            if (GcodeTokenId.END_OF_LINE.equals(token.id())) {
-                line++;
-            }
-
-            final int currentLine = line;
-            errorParserList.forEach(errorParser -> errorParser.handleToken(token, currentLine));
-        }
-
-        this.errors = errorParserList.stream()
-                .flatMap(ep -> ep.getErrors().stream())
-                .collect(Collectors.toList());
+    @Override
+    public void cancel(CancelReason reason, SourceModificationEvent event) {
+        // The document has been changed or the result is no longer needed, abort the current parse
+        cancelled = true;
     }
 
     @Override
     public Result getResult(Task task) {
         if (task instanceof SyntaxErrorTask) {
             GcodeParserResult parserResult = new GcodeParserResult(snapshot);
-            parserResult.addAll(errors);
+            parserResult.addAll(errorChecker.getErrors());
             return parserResult;
         }
         return null;
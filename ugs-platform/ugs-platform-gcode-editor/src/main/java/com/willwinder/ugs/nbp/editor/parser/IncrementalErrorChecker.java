@@ -0,0 +1,292 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+*/
+package com.willwinder.ugs.nbp.editor.parser;
+
+import com.willwinder.ugs.nbp.editor.parser.errors.ErrorParser;
+import org.netbeans.api.lexer.TokenSequence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks a document for errors using a list of {@link ErrorParser}s and caches the errors
+ * and the state of the parsers for each line. When the document is modified only the lines
+ * from the first modified line will be checked again, until the state of the parsers
+ * converges with the cached state at the unmodified lines in the end of the document.
+ *
+ * @author Joacim Breiler
+ */
+public class IncrementalErrorChecker {
+    private final List<ErrorParser> errorParsers;
+
+    /**
+     * The text of the document that was last checked, or null if nothing has been checked
+     */
+    private CharSequence text;
+
+    /**
+     * The offset of where each line starts in the text
+     */
+    private int[] lineStarts = new int[0];
+
+    /**
+     * The state of the error parsers after each line
+     */
+    private Object[] lineStates = new Object[0];
+
+    /**
+     * The errors found on each line
+     */
+    private List<?>[] lineErrors = new List<?>[0];
+
+    private Object initialState;
+    private List<GcodeError> errors = Collections.emptyList();
+
+    public IncrementalErrorChecker(List<ErrorParser> errorParsers) {
+        this.errorParsers = errorParsers;
+    }
+
+    /**
+     * Checks the given text for errors, only the lines that has been changed since
+     * the last check and the lines affected by the changed state will be checked.
+     *
+     * @param text          the text of the document
+     * @param tokenSequence the tokens of the text
+     * @param isCancelled   a supplier returning true if the check should be aborted
+     * @return true if the check was completed or false if it was cancelled
+     */
+    public boolean check(CharSequence text, TokenSequence<?> tokenSequence, BooleanSupplier isCancelled) {
+        // Changing settings may affect the result of any line, then everything needs to be checked again
+        Object currentInitialState = getInitialState();
+        if (this.text == null || !Objects.equals(currentInitialState, initialState)) {
+            clear();
+            initialState = currentInitialState;
+        }
+
+        CharSequence previousText = this.text;
+        int firstChange = getFirstChange(previousText, text);
+        if (firstChange == text.length() && firstChange == previousText.length()) {
+            this.text = text;
+            return true;
+        }
+
+        int unchangedEnd = getUnchangedEnd(previousText, text, firstChange);
+        int lengthChange = text.length() - previousText.length();
+
+        // Reuse the lines before the first change, find the new lines within the changed region
+        // and move the lines in the unchanged end of the document
+        int previousLineCount = lineStarts.length;
+        int unchangedLines = getLineAt(lineStarts, firstChange);
+        int[] newLineStarts = getLineStarts(text, unchangedLines, firstChange, unchangedEnd, lengthChange);
+        int lineCount = newLineStarts.length;
+        int firstUnchangedEndLine = getFirstUnchangedEndLine(newLineStarts, unchangedEnd);
+        int lineOffset = previousLineCount - lineCount;
+
+        Object[] newLineStates = Arrays.copyOf(lineStates, lineCount);
+        List<?>[] newLineErrors = Arrays.copyOf(lineErrors, lineCount);
+
+        Object state = unchangedLines == 0 ? initialState : lineStates[unchangedLines - 1];
+        boolean isTokenSequencePositioned = false;
+        boolean hasToken = false;
+        for (int line = unchangedLines; line < lineCount; line++) {
+            if (line >= firstUnchangedEndLine) {
+                int previousLine = line + lineOffset;
+                Object previousState = previousLine == 0 ? initialState : lineStates[previousLine - 1];
+                if (Objects.equals(state, previousState)) {
+                    // The state has converged, the rest of the document will give the same result as before
+                    for (; line < lineCount; line++, previousLine++) {
+                        newLineStates[line] = lineStates[previousLine];
+                        newLineErrors[line] = moveErrors(lineErrors[previousLine], lengthChange);
+                    }
+                    break;
+                }
+            }
+
+            if (isCancelled.getAsBoolean()) {
+                return false;
+            }
+
+            if (!isTokenSequencePositioned) {
+                tokenSequence.move(newLineStarts[line]);
+                hasToken = tokenSequence.moveNext();
+                isTokenSequencePositioned = true;
+            }
+
+            resetErrorParsers(state);
+            int lineEnd = line + 1 < lineCount ? newLineStarts[line + 1] : Integer.MAX_VALUE;
+            while (hasToken && tokenSequence.offset() < lineEnd) {
+                final int currentLine = line + 1; // The snapshot starts on line 1
+                errorParsers.forEach(errorParser -> errorParser.handleToken(tokenSequence.token(), currentLine));
+                hasToken = tokenSequence.moveNext();
+            }
+
+            newLineErrors[line] = getErrorParserErrors();
+            Object newState = getErrorParserState();
+            state = Objects.equals(newState, state) ? state : newState;
+            newLineStates[line] = state;
+        }
+
+        this.text = text;
+        this.lineStarts = newLineStarts;
+        this.lineStates = newLineStates;
+        this.lineErrors = newLineErrors;
+        this.errors = collectErrors(newLineErrors);
+        return true;
+    }
+
+    /**
+     * Returns the errors found in the last completed check
+     *
+     * @return a list of errors
+     */
+    public List<GcodeError> getErrors() {
+        return errors;
+    }
+
+    private void clear() {
+        text = "";
+        lineStarts = new int[]{0};
+        lineStates = new Object[1];
+        lineErrors = new List<?>[]{Collections.emptyList()};
+        errors = Collections.emptyList();
+    }
+
+    private Object getInitialState() {
+        resetErrorParsers(null);
+        return getErrorParserState();
+    }
+
+    private void resetErrorParsers(Object state) {
+        for (int i = 0; i < errorParsers.size(); i++) {
+            errorParsers.get(i).reset(state == null ? null : ((List<?>) state).get(i));
+        }
+    }
+
+    private Object getErrorParserState() {
+        List<Object> state = new ArrayList<>(errorParsers.size());
+        errorParsers.forEach(errorParser -> state.add(errorParser.getState()));
+        return state;
+    }
+
+    private List<GcodeError> getErrorParserErrors() {
+        List<GcodeError> result = null;
+        for (ErrorParser errorParser : errorParsers) {
+            List<GcodeError> parserErrors = errorParser.getErrors();
+            if (!parserErrors.isEmpty()) {
+                if (result == null) {
+                    result = new ArrayList<>();
+                }
+                result.addAll(parserErrors);
+            }
+        }
+        return result == null ? Collections.emptyList() : result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<GcodeError> moveErrors(List<?> errors, int delta) {
+        if (delta == 0 || errors.isEmpty()) {
+            return (List<GcodeError>) errors;
+        }
+
+        List<GcodeError> result = new ArrayList<>(errors.size());
+        errors.forEach(error -> result.add(((GcodeError) error).move(delta)));
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<GcodeError> collectErrors(List<?>[] lineErrors) {
+        List<GcodeError> result = new ArrayList<>();
+        for (List<?> errors : lineErrors) {
+            result.addAll((List<GcodeError>) errors);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the offset of the first character that differs between the texts
+     */
+    private static int getFirstChange(CharSequence previousText, CharSequence text) {
+        int length = Math.min(previousText.length(), text.length());
+        int offset = 0;
+        while (offset < length && previousText.charAt(offset) == text.charAt(offset)) {
+            offset++;
+        }
+        return offset;
+    }
+
+    /**
+     * Returns the offset in the text from where the rest of the text is the same as in the end of the previous text
+     */
+    private static int getUnchangedEnd(CharSequence previousText, CharSequence text, int firstChange) {
+        int maxLength = Math.min(previousText.length(), text.length()) - firstChange;
+        int length = 0;
+        while (length < maxLength && previousText.charAt(previousText.length() - length - 1) == text.charAt(text.length() - length - 1)) {
+            length++;
+        }
+        return text.length() - length;
+    }
+
+    /**
+     * Returns the index of the line containing the given offset
+     */
+    private static int getLineAt(int[] lineStarts, int offset) {
+        int index = Arrays.binarySearch(lineStarts, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the index of the first line that starts within the unchanged end of the text
+     */
+    private static int getFirstUnchangedEndLine(int[] lineStarts, int unchangedEnd) {
+        // The line break before the line also needs to be unchanged
+        int index = Arrays.binarySearch(lineStarts, unchangedEnd + 1);
+        return Math.max(1, index >= 0 ? index : -index - 1);
+    }
+
+    private int[] getLineStarts(CharSequence text, int unchangedLines, int firstChange, int unchangedEnd, int lengthChange) {
+        int[] result = Arrays.copyOf(lineStarts, Math.max(lineStarts.length, unchangedLines + 1) + 16);
+        int count = unchangedLines + 1;
+
+        for (int offset = firstChange; offset < unchangedEnd; offset++) {
+            if (text.charAt(offset) == '\n') {
+                result = ensureCapacity(result, count + 1);
+                result[count++] = offset + 1;
+            }
+        }
+
+        int previousUnchangedEnd = unchangedEnd - lengthChange;
+        for (int line = getFirstUnchangedEndLine(lineStarts, previousUnchangedEnd); line < lineStarts.length; line++) {
+            result = ensureCapacity(result, count + 1);
+            result[count++] = lineStarts[line] + lengthChange;
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (array.length >= capacity) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
@@ -33,4 +33,23 @@ public interface ErrorParser {
     void handleToken(Token<?> token, int line);
 
     List<GcodeError> getErrors();
+
+    /**
+     * Returns the state that this parser carries over to the following lines together with
+     * any settings that affects the result. The state is used for detecting when the result
+     * of a modified document converges with a previous result, so it needs to implement
+     * equals and must not be modified after it has been returned.
+     *
+     * @return the current state or null if the parser has no state
+     */
+    default Object getState() {
+        return null;
+    }
+
+    /**
+     * Clears all found errors and restores the parser to the given state.
+     *
+     * @param state a state previously returned by {@link #getState()} or null for the initial state
+     */
+    void reset(Object state);
 }
@@ -36,12 +36,21 @@ public class FeedRateMissingErrorParser implements ErrorParser {
     private Token<?> firstMovementToken;
     private Token<?> firstFeedRateToken;
 
+    /**
+     * If a feed rate or movement already has been found on a previous line
+     */
+    private boolean resolved;
+
     public FeedRateMissingErrorParser(FileObject fileObject) {
         this.fileObject = fileObject;
     }
 
     @Override
     public void handleToken(Token<?> token, int line) {
+        if (resolved) {
+            return;
+        }
+
         if (GcodeTokenId.MOVEMENT.equals(token.id())) {
             if (isMovementCommand(token) && firstMovementToken == null) {
                 firstMovementToken = token;
@@ -75,4 +84,18 @@ public class FeedRateMissingErrorParser implements ErrorParser {
 
         return Collections.emptyList();
     }
+
+    @Override
+    public Object getState() {
+        return resolved || firstMovementToken != null || firstFeedRateToken != null;
+    }
+
+    @Override
+    public void reset(Object state) {
+        resolved = Boolean.TRUE.equals(state);
+        firstMovementToken = null;
+        firstFeedRateToken = null;
+        firstMovementLine = 0;
+        firstFeedRateLine = 0;
+    }
 }
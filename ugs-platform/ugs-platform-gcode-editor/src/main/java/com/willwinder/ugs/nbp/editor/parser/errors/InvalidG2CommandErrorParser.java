@@ -43,7 +43,7 @@ public class InvalidG2CommandErrorParser implements ErrorParser {
 
     @Override
     public void handleToken(Token<?> token, int line) {
-        if (!(backend.isConnected() && backend.getController() instanceof TinyGController)) {
+        if (!isTinyGConnected()) {
             return;
         }
 
@@ -57,8 +57,22 @@ public class InvalidG2CommandErrorParser implements ErrorParser {
         }
     }
 
+    private boolean isTinyGConnected() {
+        return backend.isConnected() && backend.getController() instanceof TinyGController;
+    }
+
     @Override
     public List<GcodeError> getErrors() {
         return errorList;
     }
+
+    @Override
+    public Object getState() {
+        return isTinyGConnected();
+    }
+
+    @Override
+    public void reset(Object state) {
+        errorList.clear();
+    }
 }
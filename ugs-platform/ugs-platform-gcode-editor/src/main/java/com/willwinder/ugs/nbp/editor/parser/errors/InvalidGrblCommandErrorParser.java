@@ -62,7 +62,7 @@ public class InvalidGrblCommandErrorParser implements ErrorParser {
 
     @Override
     public void handleToken(Token<?> token, int line) {
-        if (!(backend.isConnected() && backend.getController() instanceof GrblController)) {
+        if (!isGrblConnected()) {
             return;
         }
 
@@ -81,8 +81,22 @@ public class InvalidGrblCommandErrorParser implements ErrorParser {
         errorList.add(error);
     }
 
+    private boolean isGrblConnected() {
+        return backend.isConnected() && backend.getController() instanceof GrblController;
+    }
+
     @Override
     public List<GcodeError> getErrors() {
         return errorList;
     }
+
+    @Override
+    public Object getState() {
+        return isGrblConnected();
+    }
+
+    @Override
+    public void reset(Object state) {
+        errorList.clear();
+    }
 }
@@ -55,4 +55,14 @@ public class MovementInMachineCoordinatesErrorParser implements ErrorParser {
     public List<GcodeError> getErrors() {
         return errorList;
     }
+
+    @Override
+    public Object getState() {
+        return isHomingEnabled();
+    }
+
+    @Override
+    public void reset(Object state) {
+        errorList.clear();
+    }
 }
@@ -26,8 +26,10 @@ import com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions;
 import com.willwinder.ugs.nbm.visualizer.renderables.GcodeModel;
 import com.willwinder.ugs.nbm.visualizer.shared.Renderable;
 import com.willwinder.universalgcodesender.model.Position;
+import com.willwinder.universalgcodesender.visualizer.LineSegment;
 
 import java.awt.Color;
+import java.util.List;
 
 import static com.willwinder.ugs.nbm.visualizer.options.VisualizerOptions.VISUALIZER_OPTION_EDITOR_POSITION;
 
@@ -92,10 +94,10 @@ public class EditorPosition extends Renderable {
             return;
         }
 
-        model.getLineList().stream()
-                .filter(lineSegment -> lineSegment.getLineNumber() == lineNumber + 1)
-                .findFirst()
-                .ifPresent(lineSegment -> position = lineSegment.getEnd());
+        List<LineSegment> lineSegments = model.getLineSegmentIndex().getSegments(lineNumber + 1);
+        if (!lineSegments.isEmpty()) {
+            position = lineSegments.get(0).getEnd();
+        }
     }
 
     @Override
@@ -125,8 +125,7 @@ public class Highlight extends Renderable {
         points.clear();
         double offset = LINE_WIDTH / scaleFactor / 2d;
         double halfPI = Math.PI / 2d;
-        List<CNCPoint> newPoints = model.getLineList().stream()
-                .filter(ls -> ls.getLineNumber() > startLine && ls.getLineNumber() - 1 <= endLine)
+        List<CNCPoint> newPoints = model.getLineSegmentIndex().getSegments(startLine + 1, endLine + 1).stream()
                 .flatMap(lineSegment -> {
                     double angle = getAngle(lineSegment.getStart(), lineSegment.getEnd(), new PlaneFormatter(Plane.XY));
                     Position xyOffset = new Position(offset * Math.cos(angle - halfPI), offset * Math.sin(angle - halfPI), 0.0);
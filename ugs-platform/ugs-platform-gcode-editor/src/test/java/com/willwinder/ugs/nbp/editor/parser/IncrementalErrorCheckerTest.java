@@ -0,0 +1,97 @@
+package com.willwinder.ugs.nbp.editor.parser;
+
+import com.willwinder.ugs.nbp.editor.lexer.GcodeTokenId;
+import com.willwinder.ugs.nbp.editor.parser.errors.FeedRateMissingErrorParser;
+import org.junit.Before;
+import org.junit.Test;
+import org.netbeans.api.lexer.TokenHierarchy;
+import org.netbeans.api.lexer.TokenSequence;
+import org.openide.filesystems.FileObject;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class IncrementalErrorCheckerTest {
+
+    private IncrementalErrorChecker errorChecker;
+
+    @Before
+    public void setUp() {
+        FileObject fileObject = mock(FileObject.class);
+        errorChecker = new IncrementalErrorChecker(Collections.singletonList(new FeedRateMissingErrorParser(fileObject)));
+    }
+
+    @Test
+    public void checkShouldFindErrors() {
+        String text = "G0 X0\nG1 X10\nG1 X20";
+        assertTrue(check(text));
+
+        List<GcodeError> errors = errorChecker.getErrors();
+        assertEquals(1, errors.size());
+        assertEquals(text.indexOf("G1"), errors.get(0).getStartPosition());
+    }
+
+    @Test
+    public void checkShouldUpdateErrorsWhenModifyingState() {
+        check("G0 X0\nG1 X10\nG1 X20");
+
+        check("G0 X0 F100\nG1 X10\nG1 X20");
+        assertEquals(0, errorChecker.getErrors().size());
+
+        String text = "G0 X0\nG1 X10\nG1 X20";
+        check(text);
+        assertEquals(1, errorChecker.getErrors().size());
+        assertEquals(text.indexOf("G1"), errorChecker.getErrors().get(0).getStartPosition());
+    }
+
+    @Test
+    public void checkShouldMoveCachedErrorsWhenInsertingLines() {
+        check("G0 X0\nG0 X1\nG1 X10\nG1 X20");
+
+        String text = "; Comment\nG0 X0\nG0 X1\nG1 X10\nG1 X20";
+        check(text);
+
+        List<GcodeError> errors = errorChecker.getErrors();
+        assertEquals(1, errors.size());
+        assertEquals(text.indexOf("G1"), errors.get(0).getStartPosition());
+        assertEquals(text.indexOf("G1") + 2, errors.get(0).getEndPosition());
+    }
+
+    @Test
+    public void checkShouldMoveCachedErrorsWhenRemovingLines() {
+        check("G0 X0\nG0 X1\nG1 X10\nG1 X20");
+
+        String text = "G0 X1\nG1 X10\nG1 X20";
+        check(text);
+
+        List<GcodeError> errors = errorChecker.getErrors();
+        assertEquals(1, errors.size());
+        assertEquals(text.indexOf("G1"), errors.get(0).getStartPosition());
+    }
+
+    @Test
+    public void cancelledCheckShouldKeepThePreviousResult() {
+        check("G0 X0\nG1 X10\nG1 X20");
+
+        String text = "F100\nG0 X0\nG1 X10\nG1 X20";
+        assertFalse(errorChecker.check(text, createTokenSequence(text), () -> true));
+        assertEquals(1, errorChecker.getErrors().size());
+
+        check(text);
+        assertEquals(0, errorChecker.getErrors().size());
+    }
+
+    private boolean check(String text) {
+        return errorChecker.check(text, createTokenSequence(text), () -> false);
+    }
+
+    private TokenSequence<?> createTokenSequence(String text) {
+        TokenHierarchy<?> tokenHierarchy = TokenHierarchy.create(text, GcodeTokenId.getLanguage());
+        return tokenHierarchy.tokenSequence();
+    }
+}
@@ -105,6 +105,6 @@ public final class CloudStorageOpenAction implements ActionListener {
         File target = new File(cloudDir, f.getName());
         logger.log(Level.INFO, "Downloading S3 file '" + f.toString() + "' to '" + cloudDir.getAbsolutePath());
         viewer.downloadFile(f.toString(), target);
-        backend.setGcodeFile(target);
+        backend.loadGcodeFile(target);
     }
 }
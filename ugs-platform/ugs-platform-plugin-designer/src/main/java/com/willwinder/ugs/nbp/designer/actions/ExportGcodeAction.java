@@ -18,22 +18,29 @@
  */
 package com.willwinder.ugs.nbp.designer.actions;
 
-import com.willwinder.ugs.nbp.designer.io.DesignWriter;
+import com.willwinder.ugs.nbp.designer.io.gcode.DesignSnapshot;
 import com.willwinder.ugs.nbp.designer.io.gcode.GcodeDesignWriter;
+import com.willwinder.ugs.nbp.designer.io.gcode.ToolPathProgressListener;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
+import com.willwinder.universalgcodesender.utils.GUIHelpers;
 import com.willwinder.universalgcodesender.utils.SwingHelpers;
+import com.willwinder.universalgcodesender.utils.ThreadHelper;
 import org.openide.util.ImageUtilities;
 
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author Joacim Breiler
  */
 public class ExportGcodeAction extends AbstractAction {
+    private static final Logger LOGGER = Logger.getLogger(ExportGcodeAction.class.getSimpleName());
     public static final String SMALL_ICON_PATH = "img/export.svg";
     public static final String LARGE_ICON_PATH = "img/export24.svg";
 
@@ -55,8 +62,87 @@ public class ExportGcodeAction extends AbstractAction {
                 path = path + ".gcode";
             }
             Controller controller = CentralLookup.getDefault().lookup(Controller.class);
-            DesignWriter designWriter = new GcodeDesignWriter();
-            designWriter.write(new File(path), controller);
+            export(new File(path), controller);
+        }
+    }
+
+    private void export(File file, Controller controller) {
+        // The design may be edited while the gcode is generated, copy it on the event dispatch thread
+        DesignSnapshot snapshot = DesignSnapshot.of(controller);
+        ProgressMonitor progressMonitor = new ProgressMonitor(null, "Generating gcode", null, 0, 100);
+        ExportProgressListener progressListener = new ExportProgressListener(progressMonitor);
+
+        ThreadHelper.invokeLater(() -> {
+            try {
+                export(file, snapshot, progressListener);
+            } catch (CancellationException e) {
+                LOGGER.log(Level.INFO, "The gcode export to " + file.getAbsolutePath() + " was cancelled");
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE, "Could not export gcode to " + file.getAbsolutePath(), e);
+                GUIHelpers.displayErrorDialog("Could not export gcode: " + e.getLocalizedMessage());
+            } finally {
+                SwingUtilities.invokeLater(progressListener::close);
+            }
+        });
+    }
+
+    /**
+     * Writes the gcode for the snapshot to the file, an incomplete file is removed if the export is cancelled.
+     *
+     * @param file             the file to write to
+     * @param snapshot         the snapshot of the design
+     * @param progressListener a listener for following or cancelling the export
+     * @throws CancellationException if the export was cancelled
+     */
+    static void export(File file, DesignSnapshot snapshot, ToolPathProgressListener progressListener) {
+        try {
+            new GcodeDesignWriter(progressListener).write(file, snapshot);
+        } catch (CancellationException e) {
+            if (!file.delete()) {
+                LOGGER.log(Level.WARNING, "Could not remove the incomplete file " + file.getAbsolutePath());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Shows the progress in a progress monitor. The monitor may only be used on the event dispatch
+     * thread, the cancel state is therefore polled on it and kept in a flag read by the generating threads.
+     */
+    private static class ExportProgressListener implements ToolPathProgressListener {
+        private static final int CANCEL_POLL_INTERVAL = 200;
+        private final ProgressMonitor progressMonitor;
+        private final Timer cancelTimer;
+        private volatile boolean cancelled;
+
+        private ExportProgressListener(ProgressMonitor progressMonitor) {
+            this.progressMonitor = progressMonitor;
+            cancelTimer = new Timer(CANCEL_POLL_INTERVAL, e -> updateCancelled());
+            cancelTimer.start();
+        }
+
+        @Override
+        public void onProgress(int completed, int total) {
+            SwingUtilities.invokeLater(() -> {
+                progressMonitor.setProgress(completed * 100 / total);
+                updateCancelled();
+            });
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void updateCancelled() {
+            if (progressMonitor.isCanceled()) {
+                cancelled = true;
+            }
+        }
+
+        private void close() {
+            cancelTimer.stop();
+            progressMonitor.close();
         }
     }
 }
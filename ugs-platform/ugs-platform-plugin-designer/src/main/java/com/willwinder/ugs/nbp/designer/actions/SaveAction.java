@@ -18,12 +18,16 @@
  */
 package com.willwinder.ugs.nbp.designer.actions;
 
+import com.willwinder.ugs.nbp.designer.io.DesignWriter;
 import com.willwinder.ugs.nbp.designer.io.ugsd.UgsDesignWriter;
+import com.willwinder.ugs.nbp.designer.io.ugsd.binary.BinaryDesignWriter;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
 import org.openide.util.ImageUtilities;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileFilter;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.event.ActionEvent;
 import java.io.File;
 
@@ -33,6 +37,7 @@ import java.io.File;
 public class SaveAction extends AbstractAction {
     private static final String ICON_SMALL_PATH = "img/save.svg";
     private static final String ICON_LARGE_PATH = "img/save24.svg";
+    private static final FileFilter JSON_DESIGN_FILE_FILTER = new FileNameExtensionFilter("UGS Design as JSON (ugsd)", "ugsd");
     private final Controller controller;
 
     public SaveAction(Controller controller) {
@@ -52,14 +57,17 @@ public class SaveAction extends AbstractAction {
         fileDialog.setFileSelectionMode(JFileChooser.FILES_ONLY);
         fileDialog.setDialogType(JFileChooser.CUSTOM_DIALOG);
         fileDialog.addChoosableFileFilter(OpenAction.DESIGN_FILE_FILTER);
+        fileDialog.addChoosableFileFilter(JSON_DESIGN_FILE_FILTER);
+        fileDialog.setFileFilter(OpenAction.DESIGN_FILE_FILTER);
 
         fileDialog.setSelectedFile(new File("out.ugsd"));
         fileDialog.showSaveDialog(null);
 
         File f = fileDialog.getSelectedFile();
+        boolean isJson = fileDialog.getFileFilter() == JSON_DESIGN_FILE_FILTER;
         if (f != null) {
             ThreadHelper.invokeLater(() -> {
-                UgsDesignWriter writer = new UgsDesignWriter();
+                DesignWriter writer = isJson ? new UgsDesignWriter() : new BinaryDesignWriter();
                 writer.write(f, controller);
             });
         }
@@ -18,8 +18,9 @@
  */
 package com.willwinder.ugs.nbp.designer.actions;
 
+import com.willwinder.ugs.nbp.designer.io.ShapeSimplifier;
 import com.willwinder.ugs.nbp.designer.io.c2d.C2dReader;
-import com.willwinder.ugs.nbp.designer.io.dxf.DxfReader;
+import com.willwinder.ugs.nbp.designer.io.dxf.DxfStreamReader;
 import com.willwinder.ugs.nbp.designer.io.svg.SvgReader;
 import com.willwinder.ugs.nbp.designer.model.Design;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
@@ -71,7 +72,7 @@ public final class ToolImportAction extends AbstractAction {
                     SvgReader svgReader = new SvgReader();
                     optionalDesign = svgReader.read(f);
                 } else if (StringUtils.endsWithIgnoreCase(f.getName(), ".dxf")) {
-                    DxfReader reader = new DxfReader();
+                    DxfStreamReader reader = new DxfStreamReader();
                     optionalDesign = reader.read(f);
                 } else if (StringUtils.endsWithIgnoreCase(f.getName(), ".c2d")) {
                     C2dReader reader = new C2dReader();
@@ -80,6 +81,7 @@ public final class ToolImportAction extends AbstractAction {
 
                 if (optionalDesign.isPresent()) {
                     Design design = optionalDesign.get();
+                    ShapeSimplifier.simplify(design.getEntities(), controller.getSettings().getImportSimplifyTolerance());
                     controller.setTool(Tool.SELECT);
                     controller.addEntities(design.getEntities());
                     controller.getSelectionManager().addSelection(design.getEntities());
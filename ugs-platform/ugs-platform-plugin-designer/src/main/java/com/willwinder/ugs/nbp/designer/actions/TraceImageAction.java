@@ -20,6 +20,7 @@ package com.willwinder.ugs.nbp.designer.actions;
 
 import com.willwinder.ugs.nbp.designer.entities.Entity;
 import com.willwinder.ugs.nbp.designer.gui.imagetracer.ImageTracerDialog;
+import com.willwinder.ugs.nbp.designer.io.ShapeSimplifier;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.ugs.nbp.designer.logic.Tool;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
@@ -54,6 +55,7 @@ public class TraceImageAction extends AbstractAction {
             List<Entity> entities = dialog.showDialog();
 
             if (entities != null && !entities.isEmpty()) {
+                ShapeSimplifier.simplify(entities, controller.getSettings().getImportSimplifyTolerance());
                 AddAction addAction = new AddAction(controller, entities);
                 addAction.actionPerformed(e);
                 controller.getSelectionManager().addSelection(entities);
@@ -25,10 +25,13 @@ import com.willwinder.ugs.nbp.designer.model.Size;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
+import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Set;
 
+import static com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils.FLATNESS_PRECISION;
+
 /**
  * @author Joacim Breiler
  */
@@ -40,6 +43,12 @@ public abstract class AbstractEntity implements Entity {
     private String name = "AbstractEntity";
     private String description;
 
+    /**
+     * A cached version of the transformed shape, it will be regenerated if the
+     * transform or the relative shape has changed
+     */
+    private volatile CachedShape cachedShape;
+
     protected AbstractEntity() {
         this(0, 0);
     }
@@ -70,11 +79,12 @@ public abstract class AbstractEntity implements Entity {
 
     @Override
     public boolean isWithin(Point2D point) {
-        return getShape().contains(point) || getShape().intersects(point.getX() - 1, point.getY() - 1, 2, 2);
+        Shape shape = getFlattenedShape();
+        return shape.contains(point) || shape.intersects(point.getX() - 1, point.getY() - 1, 2, 2);
     }
 
     public boolean isIntersecting(Shape shape) {
-        return shape.intersects(getShape().getBounds2D());
+        return shape.intersects(getBounds());
     }
 
     @Override
@@ -99,12 +109,46 @@ public abstract class AbstractEntity implements Entity {
 
     @Override
     public Rectangle2D getBounds() {
-        return getShape().getBounds2D();
+        Shape shape = getShape();
+        CachedShape cached = cachedShape;
+        if (cached != null && cached.shape == shape) {
+            return (Rectangle2D) cached.bounds.clone();
+        }
+        return shape.getBounds2D();
     }
 
     @Override
     public Shape getShape() {
-        return getTransform().createTransformedShape(getRelativeShape());
+        Shape relativeShape = getRelativeShape();
+        CachedShape cached = cachedShape;
+        if (cached == null || cached.relativeShape != relativeShape || !cached.transform.equals(getTransform())) {
+            cached = new CachedShape(relativeShape, getTransform());
+            cachedShape = cached;
+        }
+        return cached.shape;
+    }
+
+    @Override
+    public Shape getFlattenedShape() {
+        Shape shape = getShape();
+        CachedShape cached = cachedShape;
+        if (cached != null && cached.shape == shape) {
+            return cached.getFlattenedShape();
+        }
+        return flatten(shape);
+    }
+
+    private static Shape flatten(Shape shape) {
+        Path2D result = new Path2D.Double(shape.getPathIterator(null).getWindingRule());
+        result.append(shape.getPathIterator(null, FLATNESS_PRECISION), false);
+        return result;
+    }
+
+    /**
+     * Clears the cached shape, needs to be called if the relative shape is modified in place
+     */
+    protected void invalidateShape() {
+        cachedShape = null;
     }
 
     @Override
@@ -172,6 +216,7 @@ public abstract class AbstractEntity implements Entity {
         }
 
         this.transform = transform;
+        invalidateShape();
     }
 
     @Override
@@ -229,6 +274,7 @@ public abstract class AbstractEntity implements Entity {
     @Override
     public void applyTransform(AffineTransform transform) {
         this.transform.preConcatenate(transform);
+        invalidateShape();
     }
 
     @Override
@@ -263,4 +309,32 @@ public abstract class AbstractEntity implements Entity {
         Size size = getSize();
         setSize(new Size(size.getWidth(), height));
     }
+
+    private static class CachedShape {
+        private final Shape relativeShape;
+        private final AffineTransform transform;
+        private final Shape shape;
+        private final Rectangle2D bounds;
+
+        /**
+         * The flattened shape which is created the first time it is needed
+         */
+        private volatile Shape flattenedShape;
+
+        private CachedShape(Shape relativeShape, AffineTransform transform) {
+            this.relativeShape = relativeShape;
+            this.transform = new AffineTransform(transform);
+            this.shape = transform.createTransformedShape(relativeShape);
+            this.bounds = shape.getBounds2D();
+        }
+
+        private Shape getFlattenedShape() {
+            Shape result = flattenedShape;
+            if (result == null) {
+                result = flatten(shape);
+                flattenedShape = result;
+            }
+            return result;
+        }
+    }
 }
@@ -56,6 +56,14 @@ public interface Entity {
      */
     Shape getShape();
 
+    /**
+     * Returns the transformed shape with all curves converted to straight line segments. This should be used
+     * for operations that would otherwise need to flatten the curves of the shape, such as creating tool paths.
+     *
+     * @return a transformed shape only containing straight lines
+     */
+    Shape getFlattenedShape();
+
     /**
      * Adds an entity listener to be notified on entity events
      *
@@ -80,12 +80,24 @@ public class EntityGroup extends AbstractEntity implements EntityListener {
 
     @Override
     public Shape getShape() {
-        final Area area = new Area();
-        List<Entity> allChildren = getAllChildren();
-        allChildren.stream()
-                .filter(c -> c != this)
-                .forEach(c -> area.add(new Area(c.getBounds())));
-        return area.getBounds2D();
+        // The shape of a group is the union of the bounds of its children, the bounds
+        // are merged directly as it is a lot cheaper than creating the union of areas
+        Rectangle2D bounds = null;
+        for (Entity child : getAllChildren()) {
+            if (child == this) {
+                continue;
+            }
+
+            Rectangle2D childBounds = child.getBounds();
+            if (childBounds.isEmpty()) {
+                continue;
+            } else if (bounds == null) {
+                bounds = childBounds;
+            } else {
+                bounds.add(childBounds);
+            }
+        }
+        return bounds != null ? bounds : new Rectangle2D.Double();
     }
 
     @Override
@@ -0,0 +1,186 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.entities;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.quadtree.Quadtree;
+
+import java.awt.Shape;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * A spatial index over the bounds of entities making it possible to find the entities
+ * at a point or within an area without testing every entity in the drawing. Groups are
+ * never indexed themselves, instead all of their children are indexed.
+ * <p>
+ * The index needs to be updated whenever an entity is transformed, the index will only
+ * be used to find candidates which then will be tested against the real shape.
+ *
+ * @author Joacim Breiler
+ */
+public class EntitySpatialIndex {
+
+    /**
+     * The margin used when searching for entities at a point, this should be the same
+     * margin as used by {@link AbstractEntity#isWithin(Point2D)}
+     */
+    private static final double POINT_MARGIN = 1;
+
+    private Quadtree quadtree = new Quadtree();
+    private final Map<Entity, Envelope> envelopes = new HashMap<>();
+
+    /**
+     * Adds the entity to the index, if the entity is a group all of its children will be added
+     *
+     * @param entity the entity to add
+     * @return the region covered by the added entities
+     */
+    public synchronized Optional<Rectangle2D> add(Entity entity) {
+        Envelope region = new Envelope();
+        getLeafEntities(entity).forEach(leaf -> region.expandToInclude(addLeaf(leaf)));
+        return toRectangle(region);
+    }
+
+    /**
+     * Removes the entity from the index, if the entity is a group all of its children will be removed
+     *
+     * @param entity the entity to remove
+     * @return the region previously covered by the removed entities
+     */
+    public synchronized Optional<Rectangle2D> remove(Entity entity) {
+        Envelope region = new Envelope();
+        getLeafEntities(entity).forEach(leaf -> region.expandToInclude(removeLeaf(leaf)));
+        return toRectangle(region);
+    }
+
+    /**
+     * Updates the bounds of an entity that already is in the index. If the entity is a group
+     * the children will be updated. Entities not in the index will be ignored.
+     *
+     * @param entity the entity that has been changed
+     * @return the region covered by the entities before and after the change
+     */
+    public synchronized Optional<Rectangle2D> update(Entity entity) {
+        Envelope region = new Envelope();
+        getLeafEntities(entity).stream()
+                .filter(envelopes::containsKey)
+                .forEach(leaf -> {
+                    region.expandToInclude(removeLeaf(leaf));
+                    region.expandToInclude(addLeaf(leaf));
+                });
+        return toRectangle(region);
+    }
+
+    /**
+     * Removes all entities from the index
+     */
+    public synchronized void clear() {
+        quadtree = new Quadtree();
+        envelopes.clear();
+    }
+
+    /**
+     * Returns the number of indexed entities
+     *
+     * @return the number of entities
+     */
+    public synchronized int size() {
+        return envelopes.size();
+    }
+
+    /**
+     * Returns all entities which are at the given point
+     *
+     * @param point the point in real space
+     * @return a list of entities at the point
+     */
+    public List<Entity> getEntitiesAt(Point2D point) {
+        Envelope envelope = new Envelope(point.getX() - POINT_MARGIN, point.getX() + POINT_MARGIN, point.getY() - POINT_MARGIN, point.getY() + POINT_MARGIN);
+        return getCandidates(envelope).stream()
+                .filter(entity -> entity.isWithin(point))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns all entities which are intersecting the given shape
+     *
+     * @param shape the shape in real space
+     * @return a list of entities intersecting the shape
+     */
+    public List<Entity> getEntitiesIntersecting(Shape shape) {
+        return getCandidates(toEnvelope(shape.getBounds2D())).stream()
+                .filter(entity -> entity.isIntersecting(shape))
+                .collect(Collectors.toList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized List<Entity> getCandidates(Envelope envelope) {
+        // The quad tree may return items that are outside the envelope, so we need to filter them again
+        List<Entity> candidates = quadtree.query(envelope);
+        return candidates.stream()
+                .filter(entity -> envelopes.get(entity).intersects(envelope))
+                .collect(Collectors.toList());
+    }
+
+    private Envelope addLeaf(Entity entity) {
+        if (envelopes.containsKey(entity)) {
+            return envelopes.get(entity);
+        }
+
+        Envelope envelope = toEnvelope(entity.getBounds());
+        envelopes.put(entity, envelope);
+        quadtree.insert(envelope, entity);
+        return envelope;
+    }
+
+    private Envelope removeLeaf(Entity entity) {
+        Envelope envelope = envelopes.remove(entity);
+        if (envelope == null) {
+            return new Envelope();
+        }
+
+        quadtree.remove(envelope, entity);
+        return envelope;
+    }
+
+    private static Optional<Rectangle2D> toRectangle(Envelope envelope) {
+        if (envelope.isNull()) {
+            return Optional.empty();
+        }
+        return Optional.of(new Rectangle2D.Double(envelope.getMinX(), envelope.getMinY(), envelope.getWidth(), envelope.getHeight()));
+    }
+
+    private static Envelope toEnvelope(Rectangle2D bounds) {
+        return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
+    }
+
+    private static List<Entity> getLeafEntities(Entity entity) {
+        if (entity instanceof EntityGroup) {
+            return ((EntityGroup) entity).getAllChildren();
+        }
+        return Collections.singletonList(entity);
+    }
+}
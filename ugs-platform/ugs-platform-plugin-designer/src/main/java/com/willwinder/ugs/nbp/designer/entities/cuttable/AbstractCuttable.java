@@ -19,6 +19,8 @@
 package com.willwinder.ugs.nbp.designer.entities.cuttable;
 
 import com.willwinder.ugs.nbp.designer.entities.AbstractEntity;
+import com.willwinder.ugs.nbp.designer.entities.EntityEvent;
+import com.willwinder.ugs.nbp.designer.entities.EventType;
 import com.willwinder.ugs.nbp.designer.gui.Colors;
 import com.willwinder.ugs.nbp.designer.gui.Drawing;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
@@ -50,7 +52,10 @@ public abstract class AbstractCuttable extends AbstractEntity implements Cuttabl
 
     @Override
     public void setCutType(CutType cutType) {
-        this.cutType = cutType;
+        if (this.cutType != cutType) {
+            this.cutType = cutType;
+            notifyEvent(new EntityEvent(this, EventType.SETTINGS_CHANGED));
+        }
     }
 
     @Override
@@ -60,7 +65,10 @@ public abstract class AbstractCuttable extends AbstractEntity implements Cuttabl
 
     @Override
     public void setStartDepth(double startDepth) {
-        this.startDepth = Math.abs(startDepth);
+        if (this.startDepth != Math.abs(startDepth)) {
+            this.startDepth = Math.abs(startDepth);
+            notifyEvent(new EntityEvent(this, EventType.SETTINGS_CHANGED));
+        }
     }
 
     @Override
@@ -70,7 +78,10 @@ public abstract class AbstractCuttable extends AbstractEntity implements Cuttabl
 
     @Override
     public void setTargetDepth(double targetDepth) {
-        this.targetDepth = Math.abs(targetDepth);
+        if (this.targetDepth != Math.abs(targetDepth)) {
+            this.targetDepth = Math.abs(targetDepth);
+            notifyEvent(new EntityEvent(this, EventType.SETTINGS_CHANGED));
+        }
     }
 
     @Override
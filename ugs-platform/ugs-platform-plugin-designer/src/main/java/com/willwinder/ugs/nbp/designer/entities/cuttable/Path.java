@@ -46,6 +46,7 @@ public class Path extends AbstractCuttable {
         try {
             Point2D relativePoint = getTransform().inverseTransform(new Point2D.Double(x, y), null);
             shape.moveTo(relativePoint.getX(), relativePoint.getY());
+            invalidateShape();
         } catch (NoninvertibleTransformException e) {
             throw new EntityException(e);
         }
@@ -55,6 +56,7 @@ public class Path extends AbstractCuttable {
         try {
             Point2D relativePoint = getTransform().inverseTransform(new Point2D.Double(x, y), null);
             shape.lineTo(relativePoint.getX(), relativePoint.getY());
+            invalidateShape();
         } catch (NoninvertibleTransformException e) {
             throw new EntityException(e);
         }
@@ -65,6 +67,7 @@ public class Path extends AbstractCuttable {
             Point2D relativePoint1 = getTransform().inverseTransform(new Point2D.Double(x1, y1), null);
             Point2D relativePoint2 = getTransform().inverseTransform(new Point2D.Double(x2, y2), null);
             shape.quadTo(relativePoint1.getX(), relativePoint1.getY(), relativePoint2.getX(), relativePoint2.getY());
+            invalidateShape();
         } catch (NoninvertibleTransformException e) {
             throw new EntityException(e);
         }
@@ -76,6 +79,7 @@ public class Path extends AbstractCuttable {
             Point2D relativePoint2 = getTransform().inverseTransform(new Point2D.Double(x2, y2), null);
             Point2D relativePoint3 = getTransform().inverseTransform(new Point2D.Double(x3, y3), null);
             shape.curveTo(relativePoint1.getX(), relativePoint1.getY(), relativePoint2.getX(), relativePoint2.getY(), relativePoint3.getX(), relativePoint3.getY());
+            invalidateShape();
         } catch (NoninvertibleTransformException e) {
             throw new EntityException(e);
         }
@@ -83,6 +87,25 @@ public class Path extends AbstractCuttable {
 
     public void append(Shape s) {
         shape.append(s, true);
+        invalidateShape();
+    }
+
+    /**
+     * Replaces the path with the given shape, the coordinates of the shape are in real space
+     * the same way as for {@link #moveTo(double, double)} and {@link #lineTo(double, double)}.
+     *
+     * @param s the new shape of the path
+     */
+    public void setShape(Shape s) {
+        try {
+            Shape relativeShape = getTransform().createInverse().createTransformedShape(s);
+            shape.reset();
+            shape.setWindingRule(s.getPathIterator(null).getWindingRule());
+            shape.append(relativeShape, false);
+            invalidateShape();
+        } catch (NoninvertibleTransformException e) {
+            throw new EntityException(e);
+        }
     }
 
     /**
@@ -117,5 +140,6 @@ public class Path extends AbstractCuttable {
 
     public void close() {
         shape.closePath();
+        invalidateShape();
     }
 }
@@ -1,6 +1,8 @@
 package com.willwinder.ugs.nbp.designer.entities.cuttable;
 
 import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityEvent;
+import com.willwinder.ugs.nbp.designer.entities.EventType;
 import org.apache.commons.lang3.StringUtils;
 
 import java.awt.Font;
@@ -55,6 +57,7 @@ public class Text extends AbstractCuttable {
     public void setText(String text) {
         this.text = text;
         regenerateShape();
+        notifyEvent(new EntityEvent(this, EventType.RESIZED));
     }
 
     public String getFontFamily() {
@@ -64,6 +67,7 @@ public class Text extends AbstractCuttable {
     public void setFontFamily(String fontFamily) {
         this.fontFamily = fontFamily;
         regenerateShape();
+        notifyEvent(new EntityEvent(this, EventType.RESIZED));
     }
 
     @Override
@@ -21,7 +21,9 @@ package com.willwinder.ugs.nbp.designer.gui;
 import com.google.common.collect.Sets;
 import com.willwinder.ugs.nbp.designer.Throttler;
 import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityEvent;
 import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.EntitySpatialIndex;
 import com.willwinder.ugs.nbp.designer.entities.controls.Control;
 import com.willwinder.ugs.nbp.designer.entities.controls.CreateEllipseControl;
 import com.willwinder.ugs.nbp.designer.entities.controls.CreateRectangleControl;
@@ -35,6 +37,7 @@ import com.willwinder.ugs.nbp.designer.entities.controls.ResizeControl;
 import com.willwinder.ugs.nbp.designer.entities.controls.RotationControl;
 import com.willwinder.ugs.nbp.designer.entities.controls.SelectionControl;
 import com.willwinder.ugs.nbp.designer.entities.controls.ZoomControl;
+import com.willwinder.ugs.nbp.designer.entities.selection.SelectionManager;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
 
@@ -42,6 +45,7 @@ import javax.swing.JPanel;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.geom.AffineTransform;
@@ -50,6 +54,7 @@ import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -72,18 +77,27 @@ public class Drawing extends JPanel {
     private final transient EntityGroup controlsRoot;
     private final transient Set<DrawingListener> listeners = Sets.newConcurrentHashSet();
     private final transient Throttler refreshThrottler;
+    private final transient EntitySpatialIndex entityIndex = new EntitySpatialIndex();
+    private final transient RenderTileCache renderTileCache = new RenderTileCache();
+    private final transient GridControl gridControl;
+    private final transient SelectionManager selectionManager;
     private double scale;
 
     public Drawing(Controller controller) {
         refreshThrottler = new Throttler(this::refresh, 2000);
 
         globalRoot = new EntityGroup();
-        globalRoot.addChild(new GridControl(controller));
-        globalRoot.addListener(event -> refreshThrottler.run());
+        gridControl = new GridControl(controller);
+        globalRoot.addChild(gridControl);
+        globalRoot.addListener(event -> {
+            updateEntityIndex(event);
+            refreshThrottler.run();
+        });
 
         entitiesRoot = new EntityGroup();
         globalRoot.addChild(entitiesRoot);
-        globalRoot.addChild(controller.getSelectionManager());
+        selectionManager = controller.getSelectionManager();
+        globalRoot.addChild(selectionManager);
 
         controlsRoot = new EntityGroup();
         globalRoot.addChild(controlsRoot);
@@ -105,6 +119,9 @@ public class Drawing extends JPanel {
         controlsRoot.addChild(new EditTextControl(controller));
         controlsRoot.addChild(new ZoomControl(controller));
 
+        // The colors of the entities depends on the stock settings
+        controller.getSettings().addListener(renderTileCache::invalidate);
+
         setBackground(Colors.BACKGROUND);
         setScale(2);
     }
@@ -117,22 +134,51 @@ public class Drawing extends JPanel {
         return bi;
     }
 
+    /**
+     * Returns the entities in the drawing at the given point
+     *
+     * @param p the point in real space
+     * @return a list of entities at the point
+     */
     public List<Entity> getEntitiesAt(Point2D p) {
-        return globalRoot.getChildrenAt(p);
+        return entityIndex.getEntitiesAt(p);
     }
 
+    /**
+     * Returns the entities in the drawing that intersects with the given shape
+     *
+     * @param shape the shape in real space
+     * @return a list of entities intersecting the shape
+     */
     public List<Entity> getEntitiesIntersecting(Shape shape) {
-        return globalRoot.getChildrenIntersecting(shape);
+        return entityIndex.getEntitiesIntersecting(shape);
+    }
+
+    private void updateEntityIndex(EntityEvent event) {
+        switch (event.getType()) {
+            case MOVED:
+            case RESIZED:
+            case ROTATED:
+            case SETTINGS_CHANGED:
+                entityIndex.update(event.getTarget()).ifPresent(renderTileCache::invalidate);
+                break;
+            default:
+                break;
+        }
     }
 
     public void insertEntity(Entity entity) {
         entitiesRoot.addChild(entity);
+        entityIndex.add(entity).ifPresent(renderTileCache::invalidate);
         listeners.forEach(l -> l.onDrawingEvent(DrawingEvent.ENTITY_ADDED));
         refresh();
     }
 
     public void insertEntities(List<Entity> entities) {
-        entities.forEach(entitiesRoot::addChild);
+        entities.forEach(entity -> {
+            entitiesRoot.addChild(entity);
+            entityIndex.add(entity).ifPresent(renderTileCache::invalidate);
+        });
         listeners.forEach(l -> l.onDrawingEvent(DrawingEvent.ENTITY_ADDED));
         refresh();
     }
@@ -173,8 +219,35 @@ public class Drawing extends JPanel {
         rh.put(KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         rh.put(KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         g2.setRenderingHints(rh);
-        globalRoot.render(g2, this);
+
+        if (isPaintingForPrint()) {
+            globalRoot.render(g2, this);
+            g2.setTransform(previousTransform);
+            return;
+        }
+
+        // The entities are rendered from cached tiles with the grid beneath and the selection and controls on top
+        gridControl.render(g2, this);
         g2.setTransform(previousTransform);
+        Rectangle clip = g2.getClipBounds() != null ? g2.getClipBounds() : new Rectangle(0, 0, getWidth(), getHeight());
+        renderTileCache.render(g2, getTransform(), clip, this::renderEntities);
+
+        g2.setTransform(affineTransform);
+        selectionManager.render(g2, this);
+        controlsRoot.render(g2, this);
+        g2.setTransform(previousTransform);
+    }
+
+    private void renderEntities(Graphics2D graphics, Rectangle2D bounds) {
+        Set<Entity> entitiesInBounds = new HashSet<>(entityIndex.getEntitiesIntersecting(bounds));
+        if (entitiesInBounds.isEmpty()) {
+            return;
+        }
+
+        // Render the entities in the same order as they are in the drawing
+        getEntities().stream()
+                .filter(entitiesInBounds::contains)
+                .forEach(entity -> entity.render(graphics, this));
     }
 
     public void removeEntity(Entity entity) {
@@ -183,6 +256,7 @@ public class Drawing extends JPanel {
 
     public void removeEntities(List<Entity> entities) {
         removeEntitiesRecursively(globalRoot, entities);
+        entities.forEach(entity -> entityIndex.remove(entity).ifPresent(renderTileCache::invalidate));
         ThreadHelper.invokeLater(() -> listeners.forEach(l -> l.onDrawingEvent(DrawingEvent.ENTITY_REMOVED)));
         refresh();
     }
@@ -259,5 +333,7 @@ public class Drawing extends JPanel {
 
     public void clear() {
         entitiesRoot.removeAll();
+        entityIndex.clear();
+        renderTileCache.invalidate();
     }
 }
@@ -0,0 +1,169 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.awt.RenderingHints.KEY_ALPHA_INTERPOLATION;
+import static java.awt.RenderingHints.KEY_ANTIALIASING;
+import static java.awt.RenderingHints.KEY_RENDERING;
+import static java.awt.RenderingHints.KEY_TEXT_ANTIALIASING;
+
+/**
+ * A cache with rasterized tiles of the drawing. The tiles are rendered in the pixel space
+ * of the screen and are kept until the region they cover is invalidated or the zoom level,
+ * size or screen scaling has been changed.
+ *
+ * @author Joacim Breiler
+ */
+public class RenderTileCache {
+
+    /**
+     * The size of each tile in pixels
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * A margin in pixels around the invalidated regions to include antialiasing and strokes
+     * that are drawn outside the bounds of the shapes
+     */
+    private static final int MARGIN = 4;
+
+    private final Map<Point, BufferedImage> tiles = new HashMap<>();
+
+    /**
+     * The transform used for rendering the current tiles, from real space to tile pixel space
+     */
+    private AffineTransform tileTransform;
+
+    /**
+     * A renderer that will render the contents of a tile
+     */
+    public interface TileRenderer {
+
+        /**
+         * Renders everything within the given bounds
+         *
+         * @param graphics the graphics with a transform from real space to the tile
+         * @param bounds   the bounds in real space of the tile
+         */
+        void render(Graphics2D graphics, Rectangle2D bounds);
+    }
+
+    /**
+     * Removes all tiles
+     */
+    public synchronized void invalidate() {
+        tiles.clear();
+    }
+
+    /**
+     * Removes the tiles covering the given region
+     *
+     * @param bounds the bounds in real space
+     */
+    public synchronized void invalidate(Rectangle2D bounds) {
+        if (tileTransform == null || tiles.isEmpty()) {
+            return;
+        }
+
+        Rectangle region = tileTransform.createTransformedShape(bounds).getBounds();
+        region.grow(MARGIN, MARGIN);
+        tiles.keySet().removeIf(tile -> region.intersects(getTileRectangle(tile)));
+    }
+
+    /**
+     * Renders the visible tiles to the graphics, any missing tiles will be rendered using the renderer.
+     *
+     * @param graphics         the graphics of the component without the drawing transform
+     * @param drawingTransform the transform from real space to the component space
+     * @param clip             the visible region of the component
+     * @param renderer         the renderer for rendering missing tiles
+     */
+    public synchronized void render(Graphics2D graphics, AffineTransform drawingTransform, Rectangle clip, TileRenderer renderer) {
+        // Render the tiles using the pixel scale of the screen to get a sharp result on high resolution displays
+        double pixelScale = graphics.getTransform().getScaleX();
+        AffineTransform transform = AffineTransform.getScaleInstance(pixelScale, pixelScale);
+        transform.concatenate(drawingTransform);
+        if (!transform.equals(tileTransform)) {
+            tiles.clear();
+            tileTransform = transform;
+        }
+
+        Rectangle visibleRegion = AffineTransform.getScaleInstance(pixelScale, pixelScale).createTransformedShape(clip).getBounds();
+        int startColumn = Math.floorDiv(visibleRegion.x, TILE_SIZE);
+        int endColumn = Math.floorDiv(visibleRegion.x + visibleRegion.width, TILE_SIZE);
+        int startRow = Math.floorDiv(visibleRegion.y, TILE_SIZE);
+        int endRow = Math.floorDiv(visibleRegion.y + visibleRegion.height, TILE_SIZE);
+
+        // Release the tiles that are no longer visible
+        tiles.keySet().removeIf(tile -> tile.x < startColumn - 1 || tile.x > endColumn + 1 || tile.y < startRow - 1 || tile.y > endRow + 1);
+
+        AffineTransform previousTransform = graphics.getTransform();
+        AffineTransform pixelTransform = new AffineTransform(previousTransform);
+        pixelTransform.scale(1 / pixelScale, 1 / pixelScale);
+        graphics.setTransform(pixelTransform);
+        for (int column = startColumn; column <= endColumn; column++) {
+            for (int row = startRow; row <= endRow; row++) {
+                Point tile = new Point(column, row);
+                BufferedImage image = tiles.computeIfAbsent(tile, t -> renderTile(t, renderer));
+                graphics.drawImage(image, column * TILE_SIZE, row * TILE_SIZE, null);
+            }
+        }
+        graphics.setTransform(previousTransform);
+    }
+
+    private BufferedImage renderTile(Point tile, TileRenderer renderer) {
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setComposite(AlphaComposite.SrcOver);
+            graphics.setRenderingHint(KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            graphics.setRenderingHint(KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+            graphics.setRenderingHint(KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics.setRenderingHint(KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.translate(-tile.x * TILE_SIZE, -tile.y * TILE_SIZE);
+            graphics.transform(tileTransform);
+
+            Rectangle tileRegion = getTileRectangle(tile);
+            tileRegion.grow(MARGIN, MARGIN);
+            Rectangle2D bounds = tileTransform.createInverse().createTransformedShape(tileRegion).getBounds2D();
+            renderer.render(graphics, bounds);
+        } catch (NoninvertibleTransformException e) {
+            // The drawing has no size, leave the tile empty
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    private static Rectangle getTileRectangle(Point tile) {
+        return new Rectangle(tile.x * TILE_SIZE, tile.y * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+    }
+}
@@ -18,6 +18,7 @@
  */
 package com.willwinder.ugs.nbp.designer.gui;
 
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.PocketStrategy;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.ugs.nbp.designer.model.Settings;
 import com.willwinder.universalgcodesender.Utils;
@@ -39,6 +40,9 @@ public class ToolSettingsPanel extends JPanel {
     private JTextField stepOver;
     private JTextField safeHeight;
     private JTextField spindleSpeed;
+    private JComboBox<PocketStrategy> pocketStrategy;
+    private JCheckBox linkPocketPasses;
+    private JTextField importSimplifyTolerance;
 
     public ToolSettingsPanel(Controller controller) {
         this.controller = controller;
@@ -75,6 +79,26 @@ public class ToolSettingsPanel extends JPanel {
         safeHeight = new TextFieldWithUnit(Unit.MM, 2, controller.getSettings().getSafeHeight());
         add(safeHeight, "grow, wrap");
 
+        add(new JLabel("Pocket strategy"));
+        pocketStrategy = new JComboBox<>(PocketStrategy.values());
+        pocketStrategy.setSelectedItem(controller.getSettings().getPocketStrategy());
+        pocketStrategy.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                Object name = value instanceof PocketStrategy ? ((PocketStrategy) value).getName() : value;
+                return super.getListCellRendererComponent(list, name, index, isSelected, cellHasFocus);
+            }
+        });
+        add(pocketStrategy, "grow, wrap");
+
+        add(new JLabel(""));
+        linkPocketPasses = new JCheckBox("Link pocket passes without retracting", controller.getSettings().isLinkPocketPasses());
+        add(linkPocketPasses, "grow, wrap");
+
+        add(new JLabel("Import simplification"));
+        importSimplifyTolerance = new TextFieldWithUnit(Unit.MM, 2, controller.getSettings().getImportSimplifyTolerance());
+        add(importSimplifyTolerance, "grow, wrap");
+
         add(new JSeparator(SwingConstants.HORIZONTAL), "spanx, grow, wrap");
         add(new JLabel("Spindle speed"));
         spindleSpeed =  new TextFieldWithUnit(Unit.ROTATIONS_PER_MINUTE, 0, controller.getSettings().getSpindleSpeed());
@@ -137,6 +161,22 @@ public class ToolSettingsPanel extends JPanel {
         }
     }
 
+    public PocketStrategy getPocketStrategy() {
+        return (PocketStrategy) pocketStrategy.getSelectedItem();
+    }
+
+    public boolean isLinkPocketPasses() {
+        return linkPocketPasses.isSelected();
+    }
+
+    public double getImportSimplifyTolerance() {
+        try {
+            return Utils.formatter.parse(importSimplifyTolerance.getText()).doubleValue();
+        } catch (ParseException e) {
+            return controller.getSettings().getImportSimplifyTolerance();
+        }
+    }
+
     public Settings getSettings() {
         Settings settings = new Settings();
         settings.applySettings(controller.getSettings());
@@ -147,6 +187,9 @@ public class ToolSettingsPanel extends JPanel {
         settings.setToolStepOver(getStepOver());
         settings.setPlungeSpeed(getPlungeSpeed());
         settings.setSpindleSpeed(getSpindleSpeed());
+        settings.setPocketStrategy(getPocketStrategy());
+        settings.setLinkPocketPasses(isLinkPocketPasses());
+        settings.setImportSimplifyTolerance(getImportSimplifyTolerance());
         return settings;
     }
 }
@@ -0,0 +1,596 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Traces an image into filled paths, one layer for each color in the palette. This is
+ * an implementation of the algorithm in {@link jankovicsandras.imagetracer.ImageTracer}
+ * which keeps all pixels and path points in primitive arrays, traces the color layers
+ * and their paths in parallel and creates the shapes directly instead of an SVG document.
+ * <p>
+ * The steps of the algorithm are:
+ * <ol>
+ *     <li>Color quantization, each pixel is assigned the closest palette color</li>
+ *     <li>Edge detection, for each layer an edge node type is calculated for every pixel</li>
+ *     <li>Path scan, the edge nodes are walked into closed paths</li>
+ *     <li>Interpolation, the path points are converted to internodes with one of eight directions</li>
+ *     <li>Tracing, straight lines and quadratic curves are fitted on the internodes</li>
+ * </ol>
+ *
+ * @author Joacim Breiler
+ */
+public class ImageTraceEngine {
+
+    /**
+     * Gaussian kernels for blur with the radius 1 to 5
+     */
+    private static final double[][] GAUSSIAN_KERNELS = {
+            {0.27901, 0.44198, 0.27901},
+            {0.135336, 0.228569, 0.272192, 0.228569, 0.135336},
+            {0.086776, 0.136394, 0.178908, 0.195843, 0.178908, 0.136394, 0.086776},
+            {0.063327, 0.093095, 0.122589, 0.144599, 0.152781, 0.144599, 0.122589, 0.093095, 0.063327},
+            {0.049692, 0.069304, 0.089767, 0.107988, 0.120651, 0.125194, 0.120651, 0.107988, 0.089767, 0.069304, 0.049692}};
+
+    /**
+     * The initial walk direction for each edge node type
+     */
+    private static final byte[] PATH_SCAN_DIRECTION = {0, 0, 3, 0, 1, 0, 3, 0, 0, 3, 3, 1, 0, 3, 0, 0};
+
+    /**
+     * If a path starting with the edge node type is a hole
+     */
+    private static final boolean[] PATH_SCAN_HOLE = {false, false, false, false, false, false, false, true, false, false, false, true, false, true, true, false};
+
+    /**
+     * The next edge node type, walk direction, delta x and delta y for each edge node type and walk direction
+     */
+    private static final byte[][][] PATH_SCAN_LOOKUP = {
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+            {{0, 1, 0, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 1, 0, -1}, {0, 0, 1, 0}},
+            {{0, 0, 1, 0}, {-1, -1, -1, -1}, {0, 2, -1, 0}, {-1, -1, -1, -1}},
+
+            {{-1, -1, -1, -1}, {0, 0, 1, 0}, {0, 3, 0, 1}, {-1, -1, -1, -1}},
+            {{13, 3, 0, 1}, {13, 2, -1, 0}, {7, 1, 0, -1}, {7, 0, 1, 0}},
+            {{-1, -1, -1, -1}, {0, 1, 0, -1}, {-1, -1, -1, -1}, {0, 3, 0, 1}},
+            {{0, 3, 0, 1}, {0, 2, -1, 0}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+
+            {{0, 3, 0, 1}, {0, 2, -1, 0}, {-1, -1, -1, -1}, {-1, -1, -1, -1}},
+            {{-1, -1, -1, -1}, {0, 1, 0, -1}, {-1, -1, -1, -1}, {0, 3, 0, 1}},
+            {{11, 1, 0, -1}, {14, 0, 1, 0}, {14, 3, 0, 1}, {11, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {0, 0, 1, 0}, {0, 3, 0, 1}, {-1, -1, -1, -1}},
+
+            {{0, 0, 1, 0}, {-1, -1, -1, -1}, {0, 2, -1, 0}, {-1, -1, -1, -1}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 1, 0, -1}, {0, 0, 1, 0}},
+            {{0, 1, 0, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {0, 2, -1, 0}},
+            {{-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}, {-1, -1, -1, -1}}};
+
+    private final float lineThreshold;
+    private final float quadThreshold;
+    private final int pathOmit;
+    private final int colorQuantizationCycles;
+    private final int blurRadius;
+    private final int blurDelta;
+
+    public ImageTraceEngine(TraceSettings settings) {
+        this.lineThreshold = settings.getLineThreshold();
+        this.quadThreshold = settings.getQuadThreshold();
+        this.pathOmit = settings.getPathOmit();
+        this.colorQuantizationCycles = settings.getColorQuantize();
+        this.blurRadius = settings.getBlurRadius();
+        this.blurDelta = settings.getBlurDelta();
+    }
+
+    /**
+     * Traces the image
+     *
+     * @param image   the image to trace
+     * @param palette the initial palette with RGBA colors where each channel is offset by -128,
+     *                the colors will be adjusted to the colors of the image
+     * @return the result with all traced paths in image coordinates
+     */
+    public TraceResult trace(BufferedImage image, byte[][] palette) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] data = blur(getImageData(image), width, height);
+
+        byte[][] layerPalette = copyPalette(palette);
+        int[] indexedImage = quantizeColors(data, width, height, layerPalette);
+
+        // Trace each color layer separately, the layers are independent of each other
+        List<List<TracedPathData>> layers = IntStream.range(0, layerPalette.length)
+                .parallel()
+                .mapToObj(layer -> traceLayer(indexedImage, width + 2, height + 2, layer))
+                .collect(Collectors.toList());
+
+        // Draw the paths in the order of their start points which will put inner paths above the outer paths
+        List<TraceResult.TracedPath> paths = layers.stream()
+                .flatMap(List::stream)
+                .sorted(Comparator.comparingDouble(path -> path.startY * width + path.startX))
+                .map(path -> path.tracedPath)
+                .collect(Collectors.toList());
+
+        Color[] colors = Arrays.stream(layerPalette)
+                .map(color -> new Color(color[0] + 128, color[1] + 128, color[2] + 128, color[3] + 128))
+                .toArray(Color[]::new);
+        return new TraceResult(width, height, colors, paths);
+    }
+
+    /**
+     * Returns the RGBA values of the image with each channel offset by -128
+     */
+    private static byte[] getImageData(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] data = new byte[pixels.length * 4];
+        for (int i = 0; i < pixels.length; i++) {
+            data[i * 4] = (byte) (((pixels[i] >>> 16) & 0xff) - 128);
+            data[i * 4 + 1] = (byte) (((pixels[i] >>> 8) & 0xff) - 128);
+            data[i * 4 + 2] = (byte) ((pixels[i] & 0xff) - 128);
+            data[i * 4 + 3] = (byte) (((pixels[i] >>> 24) & 0xff) - 128);
+        }
+        return data;
+    }
+
+    private static byte[][] copyPalette(byte[][] palette) {
+        byte[][] result = new byte[palette.length][];
+        for (int i = 0; i < palette.length; i++) {
+            result[i] = Arrays.copyOf(palette[i], 4);
+        }
+        return result;
+    }
+
+    /**
+     * Assigns each pixel the closest palette color using k-means clustering. Returns an indexed image
+     * which has a border of -1 in every direction, making it two pixels wider and higher than the image.
+     */
+    private int[] quantizeColors(byte[] data, int width, int height, byte[][] palette) {
+        int indexedWidth = width + 2;
+        int[] indexedImage = new int[indexedWidth * (height + 2)];
+        Arrays.fill(indexedImage, -1);
+
+        long[] accumulator = new long[palette.length * 5];
+        int cycles = Math.max(1, colorQuantizationCycles);
+        for (int cycle = 0; cycle < cycles; cycle++) {
+            if (cycle > 0) {
+                averagePalette(palette, accumulator);
+            }
+
+            // Assign the closest color row by row in parallel, accumulating the color sums for each palette color
+            accumulator = IntStream.range(0, height)
+                    .parallel()
+                    .collect(() -> new long[palette.length * 5],
+                            (rowAccumulator, y) -> quantizeRow(data, width, y, palette, indexedImage, rowAccumulator),
+                            ImageTraceEngine::addAccumulators);
+        }
+        return indexedImage;
+    }
+
+    private static void quantizeRow(byte[] data, int width, int y, byte[][] palette, int[] indexedImage, long[] accumulator) {
+        int indexedWidth = width + 2;
+        for (int x = 0; x < width; x++) {
+            int index = ((y * width) + x) * 4;
+
+            // Find the closest color using the rectilinear distance, alpha is weighted to help images with transparency
+            int closestDistance = 256 + 256 + 256 + 256;
+            int closestColor = 0;
+            for (int k = 0; k < palette.length; k++) {
+                int distance = Math.abs(palette[k][0] - data[index]) +
+                        Math.abs(palette[k][1] - data[index + 1]) +
+                        Math.abs(palette[k][2] - data[index + 2]) +
+                        Math.abs(palette[k][3] - data[index + 3]) * 4;
+                if (distance < closestDistance) {
+                    closestDistance = distance;
+                    closestColor = k;
+                }
+            }
+
+            int offset = closestColor * 5;
+            accumulator[offset] += 128 + data[index];
+            accumulator[offset + 1] += 128 + data[index + 1];
+            accumulator[offset + 2] += 128 + data[index + 2];
+            accumulator[offset + 3] += 128 + data[index + 3];
+            accumulator[offset + 4]++;
+            indexedImage[(y + 1) * indexedWidth + x + 1] = closestColor;
+        }
+    }
+
+    private static void addAccumulators(long[] accumulator, long[] other) {
+        for (int i = 0; i < accumulator.length; i++) {
+            accumulator[i] += other[i];
+        }
+    }
+
+    /**
+     * Moves each palette color to the average of the pixels assigned to it
+     */
+    private static void averagePalette(byte[][] palette, long[] accumulator) {
+        for (int k = 0; k < palette.length; k++) {
+            long count = accumulator[k * 5 + 4];
+            if (accumulator[k * 5 + 3] > 0) {
+                for (int channel = 0; channel < 4; channel++) {
+                    palette[k][channel] = (byte) (-128 + (accumulator[k * 5 + channel] / count));
+                }
+            }
+        }
+    }
+
+    /**
+     * A selective gaussian blur where pixels that differ more than the blur delta from the blurred pixel are kept
+     */
+    private byte[] blur(byte[] data, int width, int height) {
+        int radius = Math.min(blurRadius, 5);
+        if (radius < 1) {
+            return data;
+        }
+        int delta = Math.min(Math.abs(blurDelta), 1024);
+        double[] kernel = GAUSSIAN_KERNELS[radius - 1];
+
+        byte[] horizontal = new byte[data.length];
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                blurPixel(data, horizontal, kernel, radius, y * width + x, x, width, 1);
+            }
+        });
+
+        byte[] result = new byte[data.length];
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                int pixel = y * width + x;
+                blurPixel(horizontal, result, kernel, radius, pixel, y, height, width);
+
+                int index = pixel * 4;
+                int difference = Math.abs(result[index] - data[index]) + Math.abs(result[index + 1] - data[index + 1]) +
+                        Math.abs(result[index + 2] - data[index + 2]) + Math.abs(result[index + 3] - data[index + 3]);
+                if (difference > delta) {
+                    System.arraycopy(data, index, result, index, 4);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Blurs a pixel along one axis
+     *
+     * @param position the position of the pixel along the axis
+     * @param length   the length of the axis
+     * @param stride   the number of pixels between two neighbours along the axis
+     */
+    private static void blurPixel(byte[] source, byte[] target, double[] kernel, int radius, int pixel, int position, int length, int stride) {
+        double red = 0;
+        double green = 0;
+        double blue = 0;
+        double alpha = 0;
+        double weight = 0;
+        for (int k = -radius; k <= radius; k++) {
+            if (position + k > 0 && position + k < length) {
+                int index = (pixel + k * stride) * 4;
+                red += source[index] * kernel[k + radius];
+                green += source[index + 1] * kernel[k + radius];
+                blue += source[index + 2] * kernel[k + radius];
+                alpha += source[index + 3] * kernel[k + radius];
+                weight += kernel[k + radius];
+            }
+        }
+
+        int index = pixel * 4;
+        target[index] = (byte) Math.floor(red / weight);
+        target[index + 1] = (byte) Math.floor(green / weight);
+        target[index + 2] = (byte) Math.floor(blue / weight);
+        target[index + 3] = (byte) Math.floor(alpha / weight);
+    }
+
+    private List<TracedPathData> traceLayer(int[] indexedImage, int width, int height, int layer) {
+        byte[] edgeNodes = createEdgeNodes(indexedImage, width, height, layer);
+        List<int[]> paths = scanPaths(edgeNodes, width, height);
+        return paths.parallelStream()
+                .map(path -> tracePath(layer, path))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Calculates the edge node type for each pixel of the given layer
+     * <pre>
+     * Edge node types ( #:in layer ; .:outside layer )
+     * ..  #.  .#  ##  ..  #.  .#  ##  ..  #.  .#  ##  ..  #.  .#  ##
+     * ..  ..  ..  ..  .#  .#  .#  .#  #.  #.  #.  #.  ##  ##  ##  ##
+     * 0   1   2   3   4   5   6   7   8   9   10  11  12  13  14  15
+     * </pre>
+     */
+    private static byte[] createEdgeNodes(int[] indexedImage, int width, int height, int layer) {
+        byte[] nodes = new byte[width * height];
+        for (int y = 1; y < height - 1; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int index = y * width + x;
+                if (indexedImage[index] != layer) {
+                    continue;
+                }
+
+                // Are the neighbour pixels in the same layer?
+                int n1 = indexedImage[index - width - 1] == layer ? 1 : 0;
+                int n2 = indexedImage[index - width] == layer ? 1 : 0;
+                int n3 = indexedImage[index - width + 1] == layer ? 1 : 0;
+                int n4 = indexedImage[index - 1] == layer ? 1 : 0;
+                int n5 = indexedImage[index + 1] == layer ? 1 : 0;
+                int n6 = indexedImage[index + width - 1] == layer ? 1 : 0;
+                int n7 = indexedImage[index + width] == layer ? 1 : 0;
+                int n8 = indexedImage[index + width + 1] == layer ? 1 : 0;
+
+                // The type of this pixel and looking back on the previous pixels
+                nodes[index + width + 1] = (byte) (1 + n5 * 2 + n8 * 4 + n7 * 8);
+                if (n4 == 0) {
+                    nodes[index + width] = (byte) (2 + n7 * 4 + n6 * 8);
+                }
+                if (n2 == 0) {
+                    nodes[index + 1] = (byte) (n3 * 2 + n5 * 4 + 8);
+                }
+                if (n1 == 0) {
+                    nodes[index] = (byte) (n2 * 2 + 4 + n4 * 8);
+                }
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Walks through the edge nodes creating closed paths, edge nodes of type 0 and 15 are discarded.
+     * Hole paths and paths shorter than the path omit setting are also discarded.
+     *
+     * @return a list of paths with the points as x and y pairs
+     */
+    private List<int[]> scanPaths(byte[] nodes, int width, int height) {
+        List<int[]> paths = new ArrayList<>();
+        int[] points = new int[64];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int node = nodes[y * width + x];
+                if (node == 0 || node == 15) {
+                    continue;
+                }
+
+                int px = x;
+                int py = y;
+                int direction = PATH_SCAN_DIRECTION[node];
+                boolean isHole = PATH_SCAN_HOLE[node];
+                int pointCount = 0;
+                boolean isFinished = false;
+                while (!isFinished) {
+                    if (pointCount * 2 + 2 > points.length) {
+                        points = Arrays.copyOf(points, points.length * 2);
+                    }
+                    points[pointCount * 2] = px - 1;
+                    points[pointCount * 2 + 1] = py - 1;
+                    pointCount++;
+
+                    // Clear this node, turn if required and walk forward
+                    byte[] lookup = PATH_SCAN_LOOKUP[nodes[py * width + px]][direction];
+                    nodes[py * width + px] = lookup[0];
+                    direction = lookup[1];
+                    px += lookup[2];
+                    py += lookup[3];
+
+                    if (px - 1 == points[0] && py - 1 == points[1]) {
+                        isFinished = true;
+                        if (!isHole && pointCount >= pathOmit) {
+                            paths.add(Arrays.copyOf(points, pointCount * 2));
+                        }
+                    }
+                }
+            }
+        }
+        return paths;
+    }
+
+    private TracedPathData tracePath(int layer, int[] points) {
+        Internodes internodes = new Internodes(points);
+        Path2D shape = new Path2D.Double(Path2D.WIND_NON_ZERO, internodes.length + 1);
+        shape.moveTo(internodes.x[0], internodes.y[0]);
+
+        int length = internodes.length;
+        int start = 0;
+        while (start < length) {
+            // Find a sequence of points with only two directions
+            int direction1 = internodes.direction[start];
+            int direction2 = -1;
+            int end = start + 1;
+            while (end < length - 1 && (internodes.direction[end] == direction1 || internodes.direction[end] == direction2 || direction2 == -1)) {
+                if (internodes.direction[end] != direction1 && direction2 == -1) {
+                    direction2 = internodes.direction[end];
+                }
+                end++;
+            }
+            if (end == length - 1) {
+                end = 0;
+            }
+
+            fitSequence(internodes, start, end, shape);
+            start = end > 0 ? end : length;
+        }
+        shape.closePath();
+
+        return new TracedPathData(new TraceResult.TracedPath(layer, shape), internodes.x[0], internodes.y[0]);
+    }
+
+    /**
+     * Recursively fits a straight line or a quadratic curve on the sequence of internodes,
+     * if neither fits the sequence is split and each part is fitted separately.
+     */
+    private void fitSequence(Internodes internodes, int start, int end, Path2D shape) {
+        int length = internodes.length;
+        if (end > length || end < 0) {
+            return;
+        }
+
+        double[] x = internodes.x;
+        double[] y = internodes.y;
+        int errorPoint = start;
+        boolean isFitting = true;
+        double errorValue = 0;
+        double sequenceLength = end - start;
+        if (sequenceLength < 0) {
+            sequenceLength += length;
+        }
+
+        // Try to fit a straight line on the sequence
+        double vx = (x[end] - x[start]) / sequenceLength;
+        double vy = (y[end] - y[start]) / sequenceLength;
+        for (int point = (start + 1) % length; point != end; point = (point + 1) % length) {
+            double position = point - start;
+            if (position < 0) {
+                position += length;
+            }
+            double px = x[start] + vx * position;
+            double py = y[start] + vy * position;
+            double distance = (x[point] - px) * (x[point] - px) + (y[point] - py) * (y[point] - py);
+            if (distance > lineThreshold) {
+                isFitting = false;
+            }
+            if (distance > errorValue) {
+                errorPoint = point;
+                errorValue = distance;
+            }
+        }
+
+        if (isFitting) {
+            shape.lineTo(x[end], y[end]);
+            return;
+        }
+
+        // Fit a quadratic curve through the point with the biggest error
+        int fitPoint = errorPoint;
+        isFitting = true;
+        errorValue = 0;
+        double t = (fitPoint - start) / sequenceLength;
+        double t1 = (1.0 - t) * (1.0 - t);
+        double t2 = 2.0 * (1.0 - t) * t;
+        double t3 = t * t;
+        double cpx = ((t1 * x[start] + t3 * x[end]) - x[fitPoint]) / -t2;
+        double cpy = ((t1 * y[start] + t3 * y[end]) - y[fitPoint]) / -t2;
+
+        for (int point = (start + 1) % length; point != end; point = (point + 1) % length) {
+            t = (point - start) / sequenceLength;
+            t1 = (1.0 - t) * (1.0 - t);
+            t2 = 2.0 * (1.0 - t) * t;
+            t3 = t * t;
+            double px = t1 * x[start] + t2 * cpx + t3 * x[end];
+            double py = t1 * y[start] + t2 * cpy + t3 * y[end];
+            double distance = (x[point] - px) * (x[point] - px) + (y[point] - py) * (y[point] - py);
+            if (distance > quadThreshold) {
+                isFitting = false;
+            }
+            if (distance > errorValue) {
+                errorPoint = point;
+                errorValue = distance;
+            }
+        }
+
+        if (isFitting) {
+            shape.quadTo(cpx, cpy, x[end], y[end]);
+            return;
+        }
+
+        // Split the sequence between the fitting point and the point with the biggest error
+        int splitPoint = (fitPoint + errorPoint) / 2;
+        fitSequence(internodes, start, splitPoint, shape);
+        fitSequence(internodes, splitPoint, end, shape);
+    }
+
+    /**
+     * The points between each pair of path points with the direction to the next point
+     * <pre>
+     * Directions: 0 E ; 1 SE ; 2 S ; 3 SW ; 4 W ; 5 NW ; 6 N ; 7 NE ; 8 center
+     * </pre>
+     */
+    private static class Internodes {
+        private final int length;
+        private final double[] x;
+        private final double[] y;
+        private final int[] direction;
+
+        private Internodes(int[] points) {
+            length = points.length / 2;
+            x = new double[length];
+            y = new double[length];
+            direction = new int[length];
+
+            for (int i = 0; i < length; i++) {
+                int next = (i + 1) % length;
+                x[i] = (points[i * 2] + points[next * 2]) / 2.0;
+                y[i] = (points[i * 2 + 1] + points[next * 2 + 1]) / 2.0;
+            }
+
+            for (int i = 0; i < length; i++) {
+                int next = (i + 1) % length;
+                direction[i] = getDirection(x[i], y[i], x[next], y[next]);
+            }
+        }
+
+        private static int getDirection(double x, double y, double nextX, double nextY) {
+            if (x < nextX) {
+                if (y < nextY) {
+                    return 1;
+                } else if (y > nextY) {
+                    return 7;
+                }
+                return 0;
+            } else if (x > nextX) {
+                if (y < nextY) {
+                    return 3;
+                } else if (y > nextY) {
+                    return 5;
+                }
+                return 4;
+            }
+
+            if (y < nextY) {
+                return 2;
+            } else if (y > nextY) {
+                return 6;
+            }
+            return 8;
+        }
+    }
+
+    /**
+     * A traced path with its start point used for ordering the paths
+     */
+    private static class TracedPathData {
+        private final TraceResult.TracedPath tracedPath;
+        private final double startX;
+        private final double startY;
+
+        private TracedPathData(TraceResult.TracedPath tracedPath, double startX, double startY) {
+            this.tracedPath = tracedPath;
+            this.startX = startX;
+            this.startY = startY;
+        }
+    }
+}
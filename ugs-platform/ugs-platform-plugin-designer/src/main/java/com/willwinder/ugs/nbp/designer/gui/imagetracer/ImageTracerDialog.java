@@ -21,19 +21,16 @@ package com.willwinder.ugs.nbp.designer.gui.imagetracer;
 import com.willwinder.ugs.nbp.designer.Throttler;
 import com.willwinder.ugs.nbp.designer.entities.Entity;
 import com.willwinder.ugs.nbp.designer.entities.cuttable.Group;
-import com.willwinder.ugs.nbp.designer.io.svg.SvgReader;
-import com.willwinder.ugs.nbp.designer.model.Design;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
 import com.willwinder.universalgcodesender.utils.ThreadHelper;
 import net.miginfocom.swing.MigLayout;
-import org.apache.commons.lang3.StringUtils;
 
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.io.ByteArrayInputStream;
+import java.awt.geom.AffineTransform;
 import java.io.File;
-import java.nio.charset.Charset;
-import java.util.*;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -41,12 +38,12 @@ import java.util.List;
  */
 public class ImageTracerDialog extends JDialog {
     private List<Entity> entities = new ArrayList<>();
-    private final SVGCanvas svgCanvas = new SVGCanvas();
+    private final TracePreviewPanel previewPanel = new TracePreviewPanel();
     private final TraceSettingsPanel settingsPanel = new TraceSettingsPanel();
     private final Throttler refreshThrottler;
 
     private File selectedFile;
-    private String generatedSvgData;
+    private transient TraceResult traceResult;
 
     public ImageTracerDialog() {
         super((JFrame) null, true);
@@ -55,9 +52,9 @@ public class ImageTracerDialog extends JDialog {
         setMinimumSize(new Dimension(500, 500));
         setLayout(new MigLayout("fill, insets 5", "[170px][grow]", "[grow][20px]"));
 
-        svgCanvas.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
+        previewPanel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1));
         add(settingsPanel, "grow");
-        add(svgCanvas, "grow, wrap");
+        add(previewPanel, "grow, wrap");
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         JButton openImage = new JButton("Open");
@@ -73,20 +70,20 @@ public class ImageTracerDialog extends JDialog {
         buttonPanel.add(okButton);
         add(buttonPanel, "spanx, grow");
 
-        refreshThrottler = new Throttler(this::refreshSvg, 1000);
+        refreshThrottler = new Throttler(this::refreshPreview, 1000);
         settingsPanel.addListener(e -> refreshThrottler.run());
         setResizable(true);
         pack();
     }
 
-    private void refreshSvg() {
+    private void refreshPreview() {
         ThreadHelper.invokeLater(() -> {
             if (selectedFile != null) {
-                generatedSvgData = TraceUtils.traceImage(selectedFile, settingsPanel.getSettings());
-                svgCanvas.setSvgData(generatedSvgData);
+                traceResult = TraceUtils.traceImage(selectedFile, settingsPanel.getSettings());
             } else {
-                svgCanvas.setSVGDocument(null);
+                traceResult = null;
             }
+            previewPanel.setTraceResult(traceResult);
         });
     }
 
@@ -100,31 +97,39 @@ public class ImageTracerDialog extends JDialog {
     }
 
     private void generateEntities() {
-        SvgReader svgReader = new SvgReader();
-        Optional<Design> designOptional = svgReader.read(new ByteArrayInputStream(generatedSvgData.getBytes(Charset.defaultCharset())));
-        designOptional.ifPresent(design -> {
-            Map<String, List<Entity>> entityLayersMap = new HashMap<>();
-            ((Group) design.getEntities().get(0)).getAllChildren().forEach(entity -> {
-                String layerId = StringUtils.substringBetween(entity.getDescription(), "l ", " ");
-                List<Entity> layerEntities = entityLayersMap.getOrDefault(layerId, new ArrayList<>());
-                layerEntities.add(entity);
-                entityLayersMap.put(layerId, layerEntities);
-            });
-
-            List<String> layerIds = new ArrayList<>(entityLayersMap.keySet());
-            Collections.reverse(layerIds);
-
-            entities = new ArrayList<>();
-            layerIds.forEach(layerId -> {
-                Group layerGroup = new Group();
-                layerGroup.setName(layerId);
-                layerGroup.addAll(entityLayersMap.get(layerId));
-                entities.add(layerGroup);
-            });
-            dispose();
+        TraceResult result = traceResult;
+        if (result == null) {
+            return;
+        }
+
+        // The image has its origin in the top left corner, we need to invert the Y coordinate
+        AffineTransform transform = new AffineTransform();
+        transform.translate(0, result.getHeight());
+        transform.scale(1, -1);
+
+        List<List<Entity>> layerEntities = new ArrayList<>();
+        for (int layer = 0; layer < result.getLayerCount(); layer++) {
+            layerEntities.add(new ArrayList<>());
+        }
+
+        result.getPaths().forEach(tracedPath -> {
+            Path path = new Path();
+            path.append(tracedPath.getShape().createTransformedShape(transform));
+            layerEntities.get(tracedPath.getLayer()).add(path);
         });
-    }
 
+        List<Entity> layerGroups = new ArrayList<>();
+        for (int layer = layerEntities.size() - 1; layer >= 0; layer--) {
+            if (!layerEntities.get(layer).isEmpty()) {
+                Group layerGroup = new Group();
+                layerGroup.setName(String.valueOf(layer));
+                layerGroup.addAll(layerEntities.get(layer));
+                layerGroups.add(layerGroup);
+            }
+        }
+        entities = layerGroups;
+        dispose();
+    }
 
     private void setSelectedFile(File selectedFile) {
         this.selectedFile = selectedFile;
@@ -0,0 +1,69 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+
+/**
+ * A panel showing a preview of a traced image scaled to fit the panel
+ *
+ * @author Joacim Breiler
+ */
+public class TracePreviewPanel extends JPanel {
+    private transient TraceResult traceResult;
+
+    public TracePreviewPanel() {
+        setBackground(Color.WHITE);
+    }
+
+    public void setTraceResult(TraceResult traceResult) {
+        this.traceResult = traceResult;
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        TraceResult result = traceResult;
+        if (result == null || result.getWidth() == 0 || result.getHeight() == 0) {
+            return;
+        }
+
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Insets insets = getInsets();
+        double width = (double) getWidth() - insets.left - insets.right;
+        double height = (double) getHeight() - insets.top - insets.bottom;
+        double scale = Math.min(width / result.getWidth(), height / result.getHeight());
+
+        AffineTransform transform = new AffineTransform();
+        transform.translate(insets.left + (width - result.getWidth() * scale) / 2, insets.top + (height - result.getHeight() * scale) / 2);
+        transform.scale(scale, scale);
+        g2.transform(transform);
+
+        result.getPaths().forEach(path -> {
+            g2.setColor(result.getLayerColor(path.getLayer()));
+            g2.fill(path.getShape());
+        });
+        g2.dispose();
+    }
+}
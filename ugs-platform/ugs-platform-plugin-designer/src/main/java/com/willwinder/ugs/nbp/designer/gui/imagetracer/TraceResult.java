@@ -0,0 +1,89 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import java.awt.Color;
+import java.awt.geom.Path2D;
+import java.util.List;
+
+/**
+ * The result of tracing an image with the {@link ImageTraceEngine}
+ *
+ * @author Joacim Breiler
+ */
+public class TraceResult {
+    private final int width;
+    private final int height;
+    private final Color[] layerColors;
+    private final List<TracedPath> paths;
+
+    public TraceResult(int width, int height, Color[] layerColors, List<TracedPath> paths) {
+        this.width = width;
+        this.height = height;
+        this.layerColors = layerColors;
+        this.paths = paths;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLayerCount() {
+        return layerColors.length;
+    }
+
+    public Color getLayerColor(int layer) {
+        return layerColors[layer];
+    }
+
+    /**
+     * Returns the traced paths in the order they should be drawn, the holes of a path
+     * are not cut out but covered by the paths drawn after it.
+     *
+     * @return a list of paths
+     */
+    public List<TracedPath> getPaths() {
+        return paths;
+    }
+
+    /**
+     * A closed path in image coordinates with the color layer it was traced from
+     */
+    public static class TracedPath {
+        private final int layer;
+        private final Path2D shape;
+
+        public TracedPath(int layer, Path2D shape) {
+            this.layer = layer;
+            this.shape = shape;
+        }
+
+        public int getLayer() {
+            return layer;
+        }
+
+        public Path2D getShape() {
+            return shape;
+        }
+    }
+}
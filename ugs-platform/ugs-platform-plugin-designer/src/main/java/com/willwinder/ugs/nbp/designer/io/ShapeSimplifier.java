@@ -0,0 +1,237 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+
+import java.awt.Shape;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils.FLATNESS_PRECISION;
+
+/**
+ * Simplifies imported paths by converting the curves to straight lines and removing the points
+ * that deviates less than a given tolerance from the path using the Douglas-Peucker algorithm.
+ * Paths with thousands of tiny segments can be reduced to a fraction of the points, making
+ * both rendering and tool path generation a lot faster.
+ *
+ * @author Joacim Breiler
+ */
+public class ShapeSimplifier {
+    private ShapeSimplifier() {
+    }
+
+    /**
+     * Simplifies all paths in the given entities and their children
+     *
+     * @param entities  the entities to simplify
+     * @param tolerance the maximum deviation from the original paths in millimeters, if zero nothing will be simplified
+     */
+    public static void simplify(List<Entity> entities, double tolerance) {
+        if (tolerance <= 0) {
+            return;
+        }
+
+        entities.stream()
+                .flatMap(entity -> entity instanceof EntityGroup ? ((EntityGroup) entity).getAllChildren().stream() : Stream.of(entity))
+                .filter(Path.class::isInstance)
+                .map(Path.class::cast)
+                .parallel()
+                .forEach(path -> path.setShape(simplify(path.getShape(), tolerance)));
+    }
+
+    /**
+     * Converts the shape to straight lines and removes the points that deviates less than the tolerance
+     *
+     * @param shape     the shape to simplify
+     * @param tolerance the maximum deviation from the original shape
+     * @return a simplified shape only containing straight lines
+     */
+    public static Shape simplify(Shape shape, double tolerance) {
+        PathIterator iterator = shape.getPathIterator(null, Math.min(FLATNESS_PRECISION, tolerance));
+        Path2D result = new Path2D.Double(iterator.getWindingRule());
+        double toleranceSquared = tolerance * tolerance;
+
+        double[] coords = new double[6];
+        double[] points = new double[64];
+        int count = 0;
+        while (!iterator.isDone()) {
+            int type = iterator.currentSegment(coords);
+            if (type == PathIterator.SEG_CLOSE) {
+                addSubPath(result, points, count, true, toleranceSquared);
+
+                // A new sub path without a move will continue from the start point of the closed path
+                count = 1;
+            } else {
+                if (type == PathIterator.SEG_MOVETO) {
+                    addSubPath(result, points, count, false, toleranceSquared);
+                    count = 0;
+                }
+
+                if (count * 2 + 2 > points.length) {
+                    points = Arrays.copyOf(points, points.length * 2);
+                }
+                points[count * 2] = coords[0];
+                points[count * 2 + 1] = coords[1];
+                count++;
+            }
+            iterator.next();
+        }
+        addSubPath(result, points, count, false, toleranceSquared);
+        return result;
+    }
+
+    private static void addSubPath(Path2D result, double[] points, int count, boolean isClosed, double toleranceSquared) {
+        if (count < 2) {
+            return;
+        }
+
+        boolean[] keep = new boolean[count + 1];
+        if (isClosed) {
+            // Remove the last point if it is the same as the first
+            if (count > 1 && points[0] == points[count * 2 - 2] && points[1] == points[count * 2 - 1]) {
+                count--;
+            }
+
+            // Split the closed path in the point farthest away from the start point
+            int farthest = getFarthestPoint(points, count);
+            double[] ring = Arrays.copyOf(points, count * 2 + 2);
+            ring[count * 2] = points[0];
+            ring[count * 2 + 1] = points[1];
+            simplify(ring, 0, farthest, toleranceSquared, keep);
+            simplify(ring, farthest, count, toleranceSquared, keep);
+            keep[count] = false;
+
+            // Keep the original points if the path would collapse
+            if (countKept(keep) < 3) {
+                Arrays.fill(keep, true);
+                keep[count] = false;
+            }
+        } else {
+            simplify(points, 0, count - 1, toleranceSquared, keep);
+        }
+
+        boolean isFirst = true;
+        for (int i = 0; i < count; i++) {
+            if (!keep[i]) {
+                continue;
+            }
+
+            if (isFirst) {
+                result.moveTo(points[i * 2], points[i * 2 + 1]);
+                isFirst = false;
+            } else {
+                result.lineTo(points[i * 2], points[i * 2 + 1]);
+            }
+        }
+
+        if (isClosed) {
+            result.closePath();
+        }
+    }
+
+    /**
+     * Marks the points between the first and last point that needs to be kept for the path to stay within the tolerance
+     */
+    private static void simplify(double[] points, int first, int last, double toleranceSquared, boolean[] keep) {
+        keep[first] = true;
+        keep[last] = true;
+
+        int[] stack = new int[32];
+        int stackSize = 0;
+        stack[stackSize++] = first;
+        stack[stackSize++] = last;
+        while (stackSize > 0) {
+            int end = stack[--stackSize];
+            int start = stack[--stackSize];
+
+            double maxDistance = 0;
+            int index = -1;
+            for (int i = start + 1; i < end; i++) {
+                double distance = getSegmentDistanceSquared(points, i, start, end);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = i;
+                }
+            }
+
+            if (index != -1 && maxDistance > toleranceSquared) {
+                keep[index] = true;
+                if (stackSize + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[stackSize++] = start;
+                stack[stackSize++] = index;
+                stack[stackSize++] = index;
+                stack[stackSize++] = end;
+            }
+        }
+    }
+
+    /**
+     * Returns the squared distance from the point to the line segment between the start and end point
+     */
+    private static double getSegmentDistanceSquared(double[] points, int point, int start, int end) {
+        double x = points[point * 2];
+        double y = points[point * 2 + 1];
+        double x1 = points[start * 2];
+        double y1 = points[start * 2 + 1];
+        double dx = points[end * 2] - x1;
+        double dy = points[end * 2 + 1] - y1;
+
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared > 0) {
+            double t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSquared));
+            x1 += t * dx;
+            y1 += t * dy;
+        }
+        return (x - x1) * (x - x1) + (y - y1) * (y - y1);
+    }
+
+    private static int getFarthestPoint(double[] points, int count) {
+        int result = 0;
+        double maxDistance = -1;
+        for (int i = 1; i < count; i++) {
+            double dx = points[i * 2] - points[0];
+            double dy = points[i * 2 + 1] - points[1];
+            double distance = dx * dx + dy * dy;
+            if (distance > maxDistance) {
+                maxDistance = distance;
+                result = i;
+            }
+        }
+        return result;
+    }
+
+    private static int countKept(boolean[] keep) {
+        int result = 0;
+        for (boolean value : keep) {
+            if (value) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.dxf;
+
+import java.awt.geom.Path2D;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins line and arc segments into continuous paths as they are read. The open ends of
+ * each path are kept in a hash index with the quantized end point as key, which makes
+ * it possible to find the path a segment connects to without searching all paths.
+ *
+ * @author Joacim Breiler
+ */
+class DxfPathJoiner {
+    /**
+     * The tolerance for when two end points are considered to be the same point
+     */
+    private static final double TOLERANCE = 1e-6;
+
+    private final Map<PointKey, Chain> openEnds = new HashMap<>();
+    private final List<Chain> chains = new ArrayList<>();
+
+    /**
+     * Adds a segment, connecting it to any path that ends in one of its end points
+     *
+     * @param segment the segment to add
+     */
+    void add(DxfSegment segment) {
+        PointKey start = findKey(segment.getStartX(), segment.getStartY());
+        PointKey end = findKey(segment.getEndX(), segment.getEndY());
+        if (start.isNeighbour(end)) {
+            Chain chain = new Chain(segment, start, end);
+            chain.closed = true;
+            chains.add(chain);
+            return;
+        }
+
+        Chain startChain = openEnds.remove(start);
+        Chain endChain = openEnds.remove(end);
+        if (startChain == null && endChain == null) {
+            Chain chain = new Chain(segment, start, end);
+            chains.add(chain);
+            openEnds.put(start, chain);
+            openEnds.put(end, chain);
+        } else if (startChain == null) {
+            endChain.attach(end, segment.reversed(), start);
+            openEnds.put(start, endChain);
+        } else if (endChain == null) {
+            startChain.attach(start, segment, end);
+            openEnds.put(end, startChain);
+        } else if (startChain == endChain) {
+            startChain.attach(start, segment, end);
+            startChain.closed = true;
+        } else {
+            startChain.attach(start, segment, end);
+            merge(startChain, endChain, end);
+        }
+    }
+
+    /**
+     * Returns the joined paths in the order they were started
+     *
+     * @return a list of paths
+     */
+    List<Path2D> getPaths() {
+        List<Path2D> result = new ArrayList<>();
+        for (Chain chain : chains) {
+            if (!chain.merged) {
+                result.add(chain.toPath());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of an open end within the tolerance of the point. Points close to the
+     * edge of a bucket may be quantized to the neighbouring bucket, which is why those
+     * buckets are also searched.
+     */
+    private PointKey findKey(double x, double y) {
+        PointKey key = new PointKey(x, y);
+        if (openEnds.containsKey(key)) {
+            return key;
+        }
+
+        for (long dx = -1; dx <= 1; dx++) {
+            for (long dy = -1; dy <= 1; dy++) {
+                PointKey neighbour = new PointKey(key.x + dx, key.y + dy);
+                if (openEnds.containsKey(neighbour)) {
+                    return neighbour;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Merges two chains sharing an end point, the shorter chain is added to the longer
+     */
+    private void merge(Chain chain, Chain other, PointKey point) {
+        Chain target = chain.segments.size() >= other.segments.size() ? chain : other;
+        Chain source = target == chain ? other : chain;
+
+        PointKey sourceOtherEnd = source.getOtherEnd(point);
+        if (sourceOtherEnd.equals(target.getOtherEnd(point))) {
+            openEnds.remove(sourceOtherEnd);
+            target.closed = true;
+        } else {
+            openEnds.put(sourceOtherEnd, target);
+        }
+
+        // Walk the source chain outwards from the shared point
+        boolean sourceStartsAtPoint = source.start.equals(point);
+        Iterator<DxfSegment> iterator = sourceStartsAtPoint ? source.segments.iterator() : source.segments.descendingIterator();
+        while (iterator.hasNext()) {
+            DxfSegment segment = iterator.next();
+            DxfSegment outwards = sourceStartsAtPoint ? segment : segment.reversed();
+            if (target.end.equals(point)) {
+                target.segments.addLast(outwards);
+            } else {
+                target.segments.addFirst(outwards.reversed());
+            }
+        }
+
+        if (target.end.equals(point)) {
+            target.end = sourceOtherEnd;
+        } else {
+            target.start = sourceOtherEnd;
+        }
+        source.merged = true;
+    }
+
+    /**
+     * A key for an end point quantized to the tolerance
+     */
+    private static class PointKey {
+        private final long x;
+        private final long y;
+
+        private PointKey(double x, double y) {
+            this(Math.round(x / TOLERANCE), Math.round(y / TOLERANCE));
+        }
+
+        private PointKey(long x, long y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        private boolean isNeighbour(PointKey other) {
+            return Math.abs(x - other.x) <= 1 && Math.abs(y - other.y) <= 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PointKey)) {
+                return false;
+            }
+            PointKey other = (PointKey) o;
+            return x == other.x && y == other.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(x) * 31 + Long.hashCode(y);
+        }
+    }
+
+    /**
+     * A sequence of connected segments where each segment starts where the previous ends
+     */
+    private static class Chain {
+        private final Deque<DxfSegment> segments = new ArrayDeque<>();
+        private PointKey start;
+        private PointKey end;
+        private boolean closed;
+        private boolean merged;
+
+        private Chain(DxfSegment segment, PointKey start, PointKey end) {
+            this.segments.add(segment);
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Attaches a segment going from the given point in the chain to a new end point
+         */
+        private void attach(PointKey point, DxfSegment segment, PointKey newEnd) {
+            if (end.equals(point)) {
+                segments.addLast(segment);
+                end = newEnd;
+            } else {
+                segments.addFirst(segment.reversed());
+                start = newEnd;
+            }
+        }
+
+        private PointKey getOtherEnd(PointKey point) {
+            return start.equals(point) ? end : start;
+        }
+
+        private Path2D toPath() {
+            Path2D path = new Path2D.Double();
+            DxfSegment first = segments.getFirst();
+            path.moveTo(first.getStartX(), first.getStartY());
+            segments.forEach(segment -> segment.appendTo(path));
+            if (closed) {
+                path.closePath();
+            }
+            return path;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.dxf;
+
+import java.awt.geom.Path2D;
+
+/**
+ * A line or a circular arc read from a DXF file which can be joined with other segments
+ * to a continuous path. Arcs are defined by their center, radius, start angle and a signed
+ * sweep where a positive sweep is counter clockwise.
+ *
+ * @author Joacim Breiler
+ */
+class DxfSegment {
+    private static final double MAX_ARC_SWEEP = Math.PI / 2;
+
+    private final double startX;
+    private final double startY;
+    private final double endX;
+    private final double endY;
+
+    private final boolean isArc;
+    private final double centerX;
+    private final double centerY;
+    private final double radius;
+    private final double startAngle;
+    private final double sweep;
+
+    private DxfSegment(double startX, double startY, double endX, double endY, boolean isArc, double centerX, double centerY, double radius, double startAngle, double sweep) {
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = endX;
+        this.endY = endY;
+        this.isArc = isArc;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        this.radius = radius;
+        this.startAngle = startAngle;
+        this.sweep = sweep;
+    }
+
+    /**
+     * Creates a straight line segment
+     */
+    static DxfSegment line(double startX, double startY, double endX, double endY) {
+        return new DxfSegment(startX, startY, endX, endY, false, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates an arc segment
+     *
+     * @param centerX    the center of the arc
+     * @param centerY    the center of the arc
+     * @param radius     the radius of the arc
+     * @param startAngle the start angle in radians
+     * @param sweep      the sweep in radians, positive for counter clockwise arcs
+     */
+    static DxfSegment arc(double centerX, double centerY, double radius, double startAngle, double sweep) {
+        double endAngle = startAngle + sweep;
+        return new DxfSegment(
+                centerX + radius * Math.cos(startAngle), centerY + radius * Math.sin(startAngle),
+                centerX + radius * Math.cos(endAngle), centerY + radius * Math.sin(endAngle),
+                true, centerX, centerY, radius, startAngle, sweep);
+    }
+
+    double getStartX() {
+        return startX;
+    }
+
+    double getStartY() {
+        return startY;
+    }
+
+    double getEndX() {
+        return endX;
+    }
+
+    double getEndY() {
+        return endY;
+    }
+
+    /**
+     * Returns the same segment in the opposite direction
+     */
+    DxfSegment reversed() {
+        return new DxfSegment(endX, endY, startX, startY, isArc, centerX, centerY, radius, startAngle + sweep, -sweep);
+    }
+
+    /**
+     * Adds the segment to the path, the path is expected to end in the start point of this segment
+     */
+    void appendTo(Path2D path) {
+        if (!isArc) {
+            path.lineTo(endX, endY);
+            return;
+        }
+
+        // Approximate the arc with cubic bezier curves of at most a quarter of a circle
+        int pieces = Math.max(1, (int) Math.ceil(Math.abs(sweep) / MAX_ARC_SWEEP - 1e-9));
+        double pieceSweep = sweep / pieces;
+        double k = 4d / 3d * Math.tan(pieceSweep / 4) * radius;
+        for (int i = 0; i < pieces; i++) {
+            double angle1 = startAngle + pieceSweep * i;
+            double angle2 = angle1 + pieceSweep;
+            double cos1 = Math.cos(angle1);
+            double sin1 = Math.sin(angle1);
+            double cos2 = Math.cos(angle2);
+            double sin2 = Math.sin(angle2);
+
+            // Use the exact end point for the last piece to avoid gaps to the next segment
+            double x2 = i == pieces - 1 ? endX : centerX + radius * cos2;
+            double y2 = i == pieces - 1 ? endY : centerY + radius * sin2;
+            path.curveTo(
+                    centerX + radius * cos1 - k * sin1, centerY + radius * sin1 + k * cos1,
+                    x2 + k * sin2, y2 - k * cos2,
+                    x2, y2);
+        }
+    }
+}
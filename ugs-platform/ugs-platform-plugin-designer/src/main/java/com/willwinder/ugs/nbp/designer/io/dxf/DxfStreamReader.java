@@ -0,0 +1,288 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.dxf;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Ellipse;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Group;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+import com.willwinder.ugs.nbp.designer.io.DesignReader;
+import com.willwinder.ugs.nbp.designer.model.Design;
+import com.willwinder.ugs.nbp.designer.model.Size;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.willwinder.ugs.nbp.designer.io.dxf.DxfReader.MILLIMETERS_PER_INCH;
+
+/**
+ * A DXF reader that converts the entities while the group codes are read instead of
+ * building a document model of the whole file first. Lines and arcs are joined to paths
+ * as they are read and entities that aren't supported are skipped without being stored.
+ * <p>
+ * Supports LINE, ARC and CIRCLE entities in the ENTITIES section and creates the same
+ * group structure as the {@link DxfReader}.
+ *
+ * @author Joacim Breiler
+ */
+public class DxfStreamReader implements DesignReader {
+    private static final String DEFAULT_LAYER = "0";
+
+    @Override
+    public Optional<Design> read(File file) {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return read(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read file", e);
+        }
+    }
+
+    @Override
+    public Optional<Design> read(InputStream resourceAsStream) {
+        Map<String, Layer> layers = new LinkedHashMap<>();
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(resourceAsStream, StandardCharsets.UTF_8));
+            GroupCode groupCode = new GroupCode();
+            EntityData entity = new EntityData();
+            boolean isEntitiesSection = false;
+            boolean isSectionStart = false;
+
+            while (groupCode.read(reader)) {
+                if (groupCode.code == 0) {
+                    if (entity.type != null) {
+                        addEntity(layers, entity);
+                    }
+                    entity.reset();
+
+                    if (groupCode.value.equals("EOF")) {
+                        break;
+                    } else if (groupCode.value.equals("SECTION")) {
+                        isSectionStart = true;
+                    } else if (groupCode.value.equals("ENDSEC")) {
+                        isEntitiesSection = false;
+                    } else if (isEntitiesSection && isSupportedEntity(groupCode.value)) {
+                        entity.type = groupCode.value;
+                    }
+                } else if (isSectionStart && groupCode.code == 2) {
+                    isEntitiesSection = groupCode.value.equals("ENTITIES");
+                    isSectionStart = false;
+                } else if (entity.type != null) {
+                    entity.set(groupCode.code, groupCode.value);
+                }
+            }
+
+            if (entity.type != null) {
+                addEntity(layers, entity);
+            }
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Could not parse file", e);
+        }
+
+        Group group = new Group();
+        layers.values().stream()
+                .map(Layer::createGroup)
+                .filter(layerGroup -> !layerGroup.getChildren().isEmpty())
+                .forEach(group::addChild);
+        group.setPosition(new Point2D.Double(0, 0));
+
+        Design design = new Design();
+        List<Entity> entities = new ArrayList<>();
+        if (!group.getChildren().isEmpty()) {
+            entities.add(group);
+        }
+        design.setEntities(entities);
+        return Optional.of(design);
+    }
+
+    private static boolean isSupportedEntity(String type) {
+        return type.equals("LINE") || type.equals("ARC") || type.equals("CIRCLE");
+    }
+
+    private static void addEntity(Map<String, Layer> layers, EntityData entity) {
+        Layer layer = layers.computeIfAbsent(entity.layer, Layer::new);
+
+        // Arcs and circles are defined in the object coordinate system which is mirrored if the extrusion is negative
+        boolean isMirrored = entity.extrusionZ < 0;
+        double centerX = (isMirrored ? -entity.x : entity.x) * MILLIMETERS_PER_INCH;
+        double centerY = entity.y * MILLIMETERS_PER_INCH;
+        double radius = entity.radius * MILLIMETERS_PER_INCH;
+
+        switch (entity.type) {
+            case "LINE":
+                layer.joiner.add(DxfSegment.line(
+                        entity.x * MILLIMETERS_PER_INCH, entity.y * MILLIMETERS_PER_INCH,
+                        entity.x2 * MILLIMETERS_PER_INCH, entity.y2 * MILLIMETERS_PER_INCH));
+                break;
+            case "ARC":
+                double startAngle = isMirrored ? 180 - entity.endAngle : entity.startAngle;
+                double endAngle = isMirrored ? 180 - entity.startAngle : entity.endAngle;
+                double sweep = endAngle - startAngle;
+                while (sweep <= 0) {
+                    sweep += 360;
+                }
+                layer.joiner.add(DxfSegment.arc(centerX, centerY, radius, Math.toRadians(startAngle), Math.toRadians(sweep)));
+                break;
+            case "CIRCLE":
+                Ellipse ellipse = new Ellipse(centerX - radius, centerY - radius);
+                ellipse.setSize(new Size(radius * 2, radius * 2));
+                layer.circles.addChild(ellipse);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * A group code and value pair, the group code is on the first line followed by the value on the next
+     */
+    private static class GroupCode {
+        private int code;
+        private String value;
+
+        private boolean read(BufferedReader reader) throws IOException {
+            String codeLine = reader.readLine();
+            while (codeLine != null && codeLine.trim().isEmpty()) {
+                codeLine = reader.readLine();
+            }
+
+            String valueLine = codeLine == null ? null : reader.readLine();
+            if (valueLine == null) {
+                return false;
+            }
+
+            code = Integer.parseInt(codeLine.trim());
+            value = valueLine.trim();
+            return true;
+        }
+    }
+
+    /**
+     * The values of the entity currently being read, only the group codes used by the supported entities are kept
+     */
+    private static class EntityData {
+        private String type;
+        private String layer;
+        private double x;
+        private double y;
+        private double x2;
+        private double y2;
+        private double radius;
+        private double startAngle;
+        private double endAngle;
+        private double extrusionZ;
+
+        private EntityData() {
+            reset();
+        }
+
+        private void reset() {
+            type = null;
+            layer = DEFAULT_LAYER;
+            x = 0;
+            y = 0;
+            x2 = 0;
+            y2 = 0;
+            radius = 0;
+            startAngle = 0;
+            endAngle = 0;
+            extrusionZ = 1;
+        }
+
+        private void set(int code, String value) {
+            switch (code) {
+                case 8:
+                    layer = value;
+                    break;
+                case 10:
+                    x = Double.parseDouble(value);
+                    break;
+                case 20:
+                    y = Double.parseDouble(value);
+                    break;
+                case 11:
+                    x2 = Double.parseDouble(value);
+                    break;
+                case 21:
+                    y2 = Double.parseDouble(value);
+                    break;
+                case 40:
+                    radius = Double.parseDouble(value);
+                    break;
+                case 50:
+                    startAngle = Double.parseDouble(value);
+                    break;
+                case 51:
+                    endAngle = Double.parseDouble(value);
+                    break;
+                case 230:
+                    extrusionZ = Double.parseDouble(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * The circles and joined paths of a layer
+     */
+    private static class Layer {
+        private final String name;
+        private final Group circles = new Group();
+        private final DxfPathJoiner joiner = new DxfPathJoiner();
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        private Group createGroup() {
+            Group layerGroup = new Group();
+            layerGroup.setName(name);
+
+            circles.setName("Circles");
+            if (!circles.getChildren().isEmpty()) {
+                layerGroup.addChild(circles);
+            }
+
+            Group linesGroup = new Group();
+            linesGroup.setName("Lines");
+            for (Path2D shape : joiner.getPaths()) {
+                Path path = new Path();
+                path.append(shape);
+                linesGroup.addChild(path);
+            }
+            if (!linesGroup.getChildren().isEmpty()) {
+                layerGroup.addChild(linesGroup);
+            }
+            return layerGroup;
+        }
+    }
+}
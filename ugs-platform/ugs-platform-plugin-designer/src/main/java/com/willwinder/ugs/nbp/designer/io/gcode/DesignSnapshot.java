@@ -0,0 +1,108 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.logic.Controller;
+import com.willwinder.ugs.nbp.designer.model.Settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of the cuttables and settings of a design which allows the gcode to be
+ * generated on another thread while the design is being edited. The snapshot
+ * needs to be created on the thread editing the design.
+ *
+ * @author Joacim Breiler
+ */
+public class DesignSnapshot {
+    private final List<Cuttable> cuttables;
+    private final Map<Cuttable, Entity> sources;
+    private final Settings settings;
+    private final ToolPathCache toolPathCache;
+
+    private DesignSnapshot(List<Cuttable> cuttables, Map<Cuttable, Entity> sources, Settings settings, ToolPathCache toolPathCache) {
+        this.cuttables = Collections.unmodifiableList(cuttables);
+        this.sources = sources;
+        this.settings = settings;
+        this.toolPathCache = toolPathCache;
+    }
+
+    /**
+     * Copies the cuttables and settings of the design
+     *
+     * @param controller the controller of the design
+     * @return a snapshot of the design
+     */
+    public static DesignSnapshot of(Controller controller) {
+        return of(controller.getDrawing().getEntities(), controller.getSettings(), controller.getToolPathCache());
+    }
+
+    /**
+     * Copies the cuttables among the entities together with the settings
+     *
+     * @param entities      the entities to copy
+     * @param settings      the settings to copy
+     * @param toolPathCache the cache to reuse tool paths of the copied entities from
+     * @return a snapshot of the entities
+     */
+    public static DesignSnapshot of(List<Entity> entities, Settings settings, ToolPathCache toolPathCache) {
+        List<Cuttable> cuttables = new ArrayList<>();
+        Map<Cuttable, Entity> sources = new IdentityHashMap<>();
+        for (Entity entity : entities) {
+            if (entity instanceof Cuttable) {
+                Cuttable copy = (Cuttable) entity.copy();
+                copy.setName(entity.getName());
+                cuttables.add(copy);
+                sources.put(copy, entity);
+            }
+        }
+        return new DesignSnapshot(cuttables, sources, new Settings(settings), toolPathCache);
+    }
+
+    /**
+     * @return the copied cuttables in the same order as in the design
+     */
+    public List<Cuttable> getCuttables() {
+        return cuttables;
+    }
+
+    /**
+     * Returns the entity in the design that the cuttable was copied from
+     *
+     * @param cuttable a copied cuttable
+     * @return the entity it was copied from
+     */
+    public Entity getSource(Cuttable cuttable) {
+        return sources.getOrDefault(cuttable, cuttable);
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    public ToolPathCache getToolPathCache() {
+        return toolPathCache;
+    }
+}
@@ -20,12 +20,15 @@ package com.willwinder.ugs.nbp.designer.io.gcode;
 
 import com.willwinder.ugs.nbp.designer.io.DesignWriter;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
-import org.apache.commons.io.IOUtils;
+import com.willwinder.ugs.nbp.designer.model.Settings;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -35,6 +38,22 @@ import java.nio.charset.StandardCharsets;
  */
 public class GcodeDesignWriter implements DesignWriter {
 
+    private final ToolPathProgressListener progressListener;
+
+    public GcodeDesignWriter() {
+        this((completed, total) -> {
+        });
+    }
+
+    /**
+     * Creates a writer reporting the progress of the tool path generation to the given listener
+     *
+     * @param progressListener a listener for following or cancelling the generation
+     */
+    public GcodeDesignWriter(ToolPathProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
     @Override
     public void write(File file, Controller controller) {
         try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
@@ -46,19 +65,50 @@ public class GcodeDesignWriter implements DesignWriter {
 
     @Override
     public void write(OutputStream outputStream, Controller controller) {
+        write(outputStream, DesignSnapshot.of(controller));
+    }
+
+    /**
+     * Writes the gcode for a snapshot of the design to a file, this may be done on
+     * another thread than the one editing the design.
+     *
+     * @param file     the file to write to
+     * @param snapshot the snapshot of the design
+     */
+    public void write(File file, DesignSnapshot snapshot) {
+        try (FileOutputStream fileOutputStream = new FileOutputStream(file)) {
+            write(fileOutputStream, snapshot);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write gcode to file: " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Writes the gcode for a snapshot of the design to a stream, this may be done on
+     * another thread than the one editing the design.
+     *
+     * @param outputStream the stream to write to
+     * @param snapshot     the snapshot of the design
+     */
+    public void write(OutputStream outputStream, DesignSnapshot snapshot) {
         try {
+            Settings settings = snapshot.getSettings();
             SimpleGcodeRouter gcodeRouter = new SimpleGcodeRouter();
-            gcodeRouter.setSafeHeight(controller.getSettings().getSafeHeight());
-            gcodeRouter.setDepthPerPass(controller.getSettings().getDepthPerPass());
-            gcodeRouter.setToolDiameter(controller.getSettings().getToolDiameter());
-            gcodeRouter.setToolStepOver(controller.getSettings().getToolStepOver());
-            gcodeRouter.setPlungeSpeed(controller.getSettings().getPlungeSpeed());
-            gcodeRouter.setSafeHeight(controller.getSettings().getSafeHeight());
-            gcodeRouter.setFeedSpeed(controller.getSettings().getFeedSpeed());
-            gcodeRouter.setSpindleSpeed(controller.getSettings().getSpindleSpeed());
+            gcodeRouter.setProgressListener(progressListener);
+            gcodeRouter.setToolPathCache(snapshot.getToolPathCache());
+            gcodeRouter.setSafeHeight(settings.getSafeHeight());
+            gcodeRouter.setDepthPerPass(settings.getDepthPerPass());
+            gcodeRouter.setToolDiameter(settings.getToolDiameter());
+            gcodeRouter.setToolStepOver(settings.getToolStepOver());
+            gcodeRouter.setPocketStrategy(settings.getPocketStrategy());
+            gcodeRouter.setLinkPocketPasses(settings.isLinkPocketPasses());
+            gcodeRouter.setPlungeSpeed(settings.getPlungeSpeed());
+            gcodeRouter.setFeedSpeed(settings.getFeedSpeed());
+            gcodeRouter.setSpindleSpeed(settings.getSpindleSpeed());
 
-            String gcode = gcodeRouter.toGcode(controller.getDrawing().getEntities());
-            IOUtils.write(gcode, outputStream, StandardCharsets.UTF_8);
+            // The gcode is streamed to the output, the writer is flushed but not closed to keep the stream open
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            gcodeRouter.toGcode(writer, snapshot);
         } catch (IOException e) {
             throw new RuntimeException("Could not write gcode to stream", e);
         }
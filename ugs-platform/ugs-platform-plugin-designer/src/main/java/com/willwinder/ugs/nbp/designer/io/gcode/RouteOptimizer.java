@@ -0,0 +1,499 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Orders the tool paths of the cuttables to minimize the rapid movements between them.
+ * <p>
+ * An initial route is created by always going to the closest cuttable, the route is then
+ * improved by moving single cuttables to better positions (Or-opt) and by reversing parts
+ * of the route (2-opt) until no more improvements are found or the maximum number of evaluated
+ * moves is reached. The work is bounded by a count instead of a time so that the same input
+ * always gives the same route.
+ * <p>
+ * Cuttables inside the bounds of a profile cut are always cut before the profile as the
+ * material may come loose when the profile has been cut. For closed contours the start
+ * point is moved to the vertex closest to the previous and next cuttable, the cut direction
+ * is kept to not change between climb and conventional milling. Open paths cut on the path
+ * may also be reversed.
+ *
+ * @author Joacim Breiler
+ */
+public class RouteOptimizer {
+    private final long maxEvaluations;
+    private long remainingEvaluations;
+    private double initialRapidDistance;
+    private double rapidDistance;
+
+    /**
+     * Creates an optimizer which improves the route until no more improvements are found
+     */
+    public RouteOptimizer() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxEvaluations the maximum number of moves and route legs to evaluate when improving the route
+     */
+    public RouteOptimizer(long maxEvaluations) {
+        this.maxEvaluations = maxEvaluations;
+    }
+
+    /**
+     * Finds an order of the tool paths which minimizes the rapid movements between them.
+     *
+     * @param cuttables  the cuttables in their initial order
+     * @param gcodePaths the tool path for each cuttable
+     * @return the tool paths in the optimized order, the tool paths may have been changed to start at another point
+     */
+    public List<ToolPath> optimize(List<Cuttable> cuttables, List<GcodePath> gcodePaths) {
+        remainingEvaluations = maxEvaluations;
+
+        List<ToolPath> toolPaths = new ArrayList<>();
+        List<ToolPath> emptyToolPaths = new ArrayList<>();
+        for (int i = 0; i < cuttables.size(); i++) {
+            ToolPath toolPath = new ToolPath(cuttables.get(i), gcodePaths.get(i));
+            if (toolPath.entry == null) {
+                emptyToolPaths.add(toolPath);
+            } else {
+                toolPaths.add(toolPath);
+            }
+        }
+        addContainmentConstraints(toolPaths);
+
+        initialRapidDistance = getRapidDistance(toolPaths);
+        List<ToolPath> route = createNearestNeighbourRoute(toolPaths);
+
+        boolean improved = true;
+        while (improved && remainingEvaluations > 0) {
+            improved = chooseStartPoints(route);
+            improved |= relocate(route);
+            improved |= reverseSections(route);
+        }
+        rapidDistance = getRapidDistance(route);
+
+        // Tool paths without any movements can be placed anywhere
+        route.addAll(emptyToolPaths);
+        return route;
+    }
+
+    /**
+     * @return the estimated rapid distance in millimeters saved compared to the initial order
+     */
+    public double getRapidDistanceSaved() {
+        return initialRapidDistance - rapidDistance;
+    }
+
+    /**
+     * @return the estimated rapid distance in millimeters between the tool paths in the optimized order
+     */
+    public double getRapidDistance() {
+        return rapidDistance;
+    }
+
+    private static void addContainmentConstraints(List<ToolPath> toolPaths) {
+        for (ToolPath outer : toolPaths) {
+            CutType cutType = outer.cuttable.getCutType();
+            if (cutType != CutType.OUTSIDE_PATH && cutType != CutType.INSIDE_PATH && cutType != CutType.ON_PATH) {
+                continue;
+            }
+
+            // Only strictly smaller cuttables are constrained to prevent circular constraints
+            double outerArea = outer.bounds.getWidth() * outer.bounds.getHeight();
+            for (ToolPath inner : toolPaths) {
+                if (inner != outer && outer.bounds.contains(inner.bounds) && inner.bounds.getWidth() * inner.bounds.getHeight() < outerArea) {
+                    outer.predecessors.add(inner);
+                }
+            }
+        }
+    }
+
+    private static List<ToolPath> createNearestNeighbourRoute(List<ToolPath> toolPaths) {
+        List<ToolPath> remaining = new ArrayList<>(toolPaths);
+        List<ToolPath> route = new ArrayList<>(toolPaths.size());
+        Set<ToolPath> routed = new HashSet<>();
+        Point2D position = new Point2D.Double();
+        while (!remaining.isEmpty()) {
+            ToolPath closest = null;
+            double closestDistance = Double.MAX_VALUE;
+            for (ToolPath toolPath : remaining) {
+                double distance = toolPath.getDistanceFrom(position);
+                if (distance < closestDistance && routed.containsAll(toolPath.predecessors)) {
+                    closest = toolPath;
+                    closestDistance = distance;
+                }
+            }
+
+            remaining.remove(closest);
+            route.add(closest);
+            routed.add(closest);
+            closest.chooseStart(position, null);
+            position = closest.exit;
+        }
+        return route;
+    }
+
+    /**
+     * Chooses the start point of each tool path that minimizes the distance from the
+     * previous and to the next tool path.
+     */
+    private static boolean chooseStartPoints(List<ToolPath> route) {
+        double distance = getRapidDistance(route);
+        for (int i = 0; i < route.size(); i++) {
+            Point2D previousExit = i == 0 ? new Point2D.Double() : route.get(i - 1).exit;
+            Point2D nextEntry = i == route.size() - 1 ? null : route.get(i + 1).entry;
+            route.get(i).chooseStart(previousExit, nextEntry);
+        }
+        return getRapidDistance(route) < distance - 1e-9;
+    }
+
+    /**
+     * Moves single tool paths to the position in the route where they add the least distance
+     */
+    private boolean relocate(List<ToolPath> route) {
+        boolean improved = false;
+        for (int i = 0; i < route.size() && remainingEvaluations > 0; i++) {
+            ToolPath toolPath = route.get(i);
+            double removeGain = getLegDistance(route, i - 1, i) + getLegDistance(route, i, i + 1) - getLegDistance(route, i - 1, i + 1);
+
+            route.remove(i);
+            int first = getLastPredecessorIndex(route, toolPath) + 1;
+            int last = getFirstSuccessorIndex(route, toolPath);
+
+            remainingEvaluations -= last - first + 1;
+            int bestIndex = i;
+            double bestCost = removeGain - 1e-9;
+            for (int j = first; j <= last; j++) {
+                double cost = getDistance(j == 0 ? new Point2D.Double() : route.get(j - 1).exit, toolPath.entry)
+                        + (j < route.size() ? getDistance(toolPath.exit, route.get(j).entry) - getLegDistance(route, j - 1, j) : 0);
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestIndex = j;
+                }
+            }
+
+            route.add(bestIndex, toolPath);
+            improved |= bestIndex != i;
+        }
+        return improved;
+    }
+
+    /**
+     * Reverses sections of the route if it shortens the distance
+     */
+    private boolean reverseSections(List<ToolPath> route) {
+        boolean improved = false;
+        for (int i = 0; i < route.size() - 1 && remainingEvaluations > 0; i++) {
+            for (int j = i + 1; j < route.size(); j++) {
+                if (!canReverse(route, i, j)) {
+                    // Any longer section will also contain the constrained tool paths
+                    break;
+                }
+
+                remainingEvaluations -= j - i + 1;
+                double currentDistance = getLegDistance(route, i - 1, i) + getLegDistance(route, j, j + 1);
+                double reversedDistance = getDistance(i == 0 ? new Point2D.Double() : route.get(i - 1).exit, route.get(j).entry)
+                        + (j + 1 < route.size() ? getDistance(route.get(i).exit, route.get(j + 1).entry) : 0);
+                for (int k = i; k < j; k++) {
+                    currentDistance += getLegDistance(route, k, k + 1);
+                    reversedDistance += getDistance(route.get(k + 1).exit, route.get(k).entry);
+                }
+
+                if (reversedDistance < currentDistance - 1e-9) {
+                    Collections.reverse(route.subList(i, j + 1));
+                    improved = true;
+                }
+            }
+        }
+        return improved;
+    }
+
+    private static boolean canReverse(List<ToolPath> route, int first, int last) {
+        ToolPath toolPath = route.get(last);
+        for (int k = first; k < last; k++) {
+            if (toolPath.predecessors.contains(route.get(k)) || route.get(k).predecessors.contains(toolPath)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int getLastPredecessorIndex(List<ToolPath> route, ToolPath toolPath) {
+        int result = -1;
+        for (ToolPath predecessor : toolPath.predecessors) {
+            result = Math.max(result, route.indexOf(predecessor));
+        }
+        return result;
+    }
+
+    private static int getFirstSuccessorIndex(List<ToolPath> route, ToolPath toolPath) {
+        for (int i = 0; i < route.size(); i++) {
+            if (route.get(i).predecessors.contains(toolPath)) {
+                return i;
+            }
+        }
+        return route.size();
+    }
+
+    /**
+     * Returns the rapid distance between the tool path at the first index to the tool path at the second
+     * index. The index -1 is the starting position of the machine and an index after the last tool path
+     * is the end of the route.
+     */
+    private static double getLegDistance(List<ToolPath> route, int from, int to) {
+        if (to >= route.size() || to < 0) {
+            return 0;
+        }
+        return getDistance(from < 0 ? new Point2D.Double() : route.get(from).exit, route.get(to).entry);
+    }
+
+    private static double getRapidDistance(List<ToolPath> route) {
+        double result = 0;
+        for (int i = 0; i < route.size(); i++) {
+            result += getLegDistance(route, i - 1, i);
+        }
+        return result;
+    }
+
+    private static double getDistance(Point2D from, Point2D to) {
+        return from.distance(to);
+    }
+
+    /**
+     * The tool path for a cuttable with the points where it will be entered and exited
+     */
+    public static class ToolPath {
+        private final Cuttable cuttable;
+        private final GcodePath gcodePath;
+        private final Rectangle2D bounds;
+        private final List<ToolPath> predecessors = new ArrayList<>();
+        private final List<Pass> passes = new ArrayList<>();
+
+        // The vertices of a closed contour cut in all passes, or null if the tool path isn't a single contour
+        private List<Point2D> contour;
+
+        // If this is an open path which can be cut in the reverse direction
+        private boolean reversible;
+
+        private Point2D entry;
+        private Point2D exit;
+        private int start;
+        private boolean reversed;
+
+        private ToolPath(Cuttable cuttable, GcodePath gcodePath) {
+            this.cuttable = cuttable;
+            this.gcodePath = gcodePath;
+            this.bounds = cuttable.getBounds();
+            parse();
+        }
+
+        public Cuttable getCuttable() {
+            return cuttable;
+        }
+
+        /**
+         * @return the tool path starting at the chosen start point
+         */
+        public GcodePath getGcodePath() {
+            if (start == 0 && !reversed) {
+                return gcodePath;
+            }
+
+            List<Segment> segments = new ArrayList<>(gcodePath.getSegments());
+            for (Pass pass : passes) {
+                List<PartialPosition> points = reorder(pass.points);
+                PartialPosition first = points.get(0);
+                segments.set(pass.moveIndex, new Segment(SegmentType.MOVE, new PartialPosition(first.getX(), first.getY(), UnitUtils.Units.MM), segments.get(pass.moveIndex).label));
+                segments.set(pass.pointIndex, new Segment(SegmentType.POINT, first, segments.get(pass.pointIndex).label));
+                for (int i = 0; i < points.size(); i++) {
+                    int index = pass.pointIndex + 1 + i;
+                    segments.set(index, new Segment(SegmentType.LINE, points.get(i), segments.get(index).label));
+                }
+            }
+
+            GcodePath result = new GcodePath();
+            segments.forEach(result::addSegment);
+            return result;
+        }
+
+        private List<PartialPosition> reorder(List<PartialPosition> points) {
+            List<PartialPosition> result;
+            if (contour != null) {
+                // Rotate the closed contour, the last point is the same as the first one
+                result = new ArrayList<>(points.subList(start, points.size() - 1));
+                result.addAll(points.subList(0, start));
+                result.add(result.get(0));
+            } else {
+                result = new ArrayList<>(points);
+            }
+
+            if (reversed) {
+                Collections.reverse(result);
+            }
+            return result;
+        }
+
+        private double getDistanceFrom(Point2D position) {
+            if (contour != null) {
+                return contour.stream().mapToDouble(position::distance).min().orElse(0);
+            } else if (reversible) {
+                return Math.min(position.distance(getFirstPoint()), position.distance(getLastPoint()));
+            }
+            return position.distance(entry);
+        }
+
+        /**
+         * Chooses the start point to minimize the distance from the previous and to the next position
+         */
+        private void chooseStart(Point2D previous, Point2D next) {
+            if (contour != null) {
+                double bestDistance = Double.MAX_VALUE;
+                for (int i = 0; i < contour.size(); i++) {
+                    Point2D point = contour.get(i);
+                    double distance = previous.distance(point) + (next != null ? point.distance(next) : 0);
+                    if (distance < bestDistance) {
+                        bestDistance = distance;
+                        start = i;
+                    }
+                }
+                entry = contour.get(start);
+                exit = entry;
+            } else if (reversible) {
+                Point2D first = getFirstPoint();
+                Point2D last = getLastPoint();
+                double forward = previous.distance(first) + (next != null ? last.distance(next) : 0);
+                double backward = previous.distance(last) + (next != null ? first.distance(next) : 0);
+                reversed = backward < forward;
+                entry = reversed ? last : first;
+                exit = reversed ? first : last;
+            }
+        }
+
+        private Point2D getFirstPoint() {
+            return toPoint(passes.get(0).points.get(0));
+        }
+
+        private Point2D getLastPoint() {
+            List<PartialPosition> points = passes.get(0).points;
+            return toPoint(points.get(points.size() - 1));
+        }
+
+        /**
+         * Finds the entry and exit points of the tool path and if the passes of the tool path
+         * can be started at another point.
+         */
+        private void parse() {
+            List<Segment> segments = gcodePath.getSegments();
+            Pass pass = null;
+            boolean isValid = true;
+            for (int i = 0; i < segments.size(); i++) {
+                Segment segment = segments.get(i);
+                PartialPosition point = segment.point;
+                boolean hasXY = point != null && point.hasX() && point.hasY();
+                if (hasXY) {
+                    if (entry == null) {
+                        entry = toPoint(point);
+                    }
+                    exit = toPoint(point);
+                }
+
+                if (segment.type == SegmentType.MOVE && hasXY) {
+                    pass = new Pass(i);
+                    passes.add(pass);
+                } else if (segment.type == SegmentType.MOVE && pass != null && !pass.points.isEmpty()) {
+                    pass = null;
+                } else if (segment.type == SegmentType.POINT && pass != null && pass.pointIndex < 0 && hasXY) {
+                    pass.pointIndex = i;
+                } else if (segment.type == SegmentType.LINE && pass != null && pass.pointIndex + pass.points.size() + 1 == i && hasXY) {
+                    pass.points.add(point);
+                } else if (segment.type != SegmentType.MOVE && segment.type != SegmentType.SEAM) {
+                    isValid = false;
+                }
+            }
+
+            if (!isValid || passes.isEmpty() || !passes.stream().allMatch(p -> p.isSamePath(passes.get(0)))) {
+                passes.clear();
+                return;
+            }
+
+            if (passes.get(0).isClosed()) {
+                contour = new ArrayList<>();
+                List<PartialPosition> points = passes.get(0).points;
+                for (int i = 0; i < points.size() - 1; i++) {
+                    contour.add(toPoint(points.get(i)));
+                }
+            } else {
+                reversible = cuttable.getCutType() == CutType.ON_PATH;
+            }
+        }
+
+        private static Point2D toPoint(PartialPosition position) {
+            return new Point2D.Double(position.getX(), position.getY());
+        }
+    }
+
+    /**
+     * A pass along a path at a single depth: a rapid move to the start of the path, a plunge
+     * and line segments along the path starting with the plunge point.
+     */
+    private static class Pass {
+        private final int moveIndex;
+        private final List<PartialPosition> points = new ArrayList<>();
+        private int pointIndex = -1;
+
+        private Pass(int moveIndex) {
+            this.moveIndex = moveIndex;
+        }
+
+        private boolean isSamePath(Pass other) {
+            if (pointIndex < 0 || points.size() < 2 || points.size() != other.points.size()) {
+                return false;
+            }
+
+            for (int i = 0; i < points.size(); i++) {
+                if (!points.get(i).getX().equals(other.points.get(i).getX()) || !points.get(i).getY().equals(other.points.get(i).getY())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isClosed() {
+            PartialPosition first = points.get(0);
+            PartialPosition last = points.get(points.size() - 1);
+            return points.size() > 3 && first.getX().equals(last.getX()) && first.getY().equals(last.getY());
+        }
+    }
+}
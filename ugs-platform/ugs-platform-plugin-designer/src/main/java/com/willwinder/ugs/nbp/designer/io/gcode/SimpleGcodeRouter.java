@@ -23,15 +23,27 @@ import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
 import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
 import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.DrillCenterToolPath;
 import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.OutlineToolPath;
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.PocketStrategy;
 import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.PocketToolPath;
 import com.willwinder.universalgcodesender.gcode.util.Code;
+import com.willwinder.universalgcodesender.gcode.util.DecimalFormatter;
 import com.willwinder.universalgcodesender.utils.Version;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
@@ -39,8 +51,16 @@ import java.util.stream.Collectors;
  * @author Joacim Breiler
  */
 public class SimpleGcodeRouter {
+    private static final Logger LOGGER = Logger.getLogger(SimpleGcodeRouter.class.getSimpleName());
+    private static final DecimalFormatter FORMATTER = new DecimalFormatter(3);
     private static final String HEADER = "; This file was generated with \"Universal Gcode Sender " + Version.getVersionString() + "\"\n;\n";
 
+    /**
+     * The maximum number of moves to evaluate when optimizing the order of the tool paths, this
+     * takes less than a second for large designs and keeps the generated gcode the same each time
+     */
+    private static final long ROUTE_OPTIMIZATION_EVALUATIONS = 20_000_000;
+
     /**
      * The feed rate to move tool in material as mm/min
      */
@@ -63,6 +83,16 @@ public class SimpleGcodeRouter {
      */
     private double toolStepOver = 0.3;
 
+    /**
+     * The strategy to use when clearing pockets
+     */
+    private PocketStrategy pocketStrategy = PocketStrategy.OFFSET;
+
+    /**
+     * If the passes of a pocket should be linked without retracting the tool when possible
+     */
+    private boolean linkPocketPasses = false;
+
     /**
      * The depth to plunge into the material for each pass in millimeters
      */
@@ -78,6 +108,17 @@ public class SimpleGcodeRouter {
      */
     private double spindleSpeed = 1000;
 
+    /**
+     * A listener for following the progress of the tool path generation and for cancelling it
+     */
+    private ToolPathProgressListener progressListener = (completed, total) -> {
+    };
+
+    /**
+     * A cache with previously generated tool paths which are reused for unchanged cuttables
+     */
+    private ToolPathCache toolPathCache = new ToolPathCache();
+
     public int getFeedSpeed() {
         return feedSpeed;
     }
@@ -118,6 +159,22 @@ public class SimpleGcodeRouter {
         this.toolStepOver = toolStepOver;
     }
 
+    public PocketStrategy getPocketStrategy() {
+        return pocketStrategy;
+    }
+
+    public void setPocketStrategy(PocketStrategy pocketStrategy) {
+        this.pocketStrategy = pocketStrategy;
+    }
+
+    public boolean isLinkPocketPasses() {
+        return linkPocketPasses;
+    }
+
+    public void setLinkPocketPasses(boolean linkPocketPasses) {
+        this.linkPocketPasses = linkPocketPasses;
+    }
+
     public double getDepthPerPass() {
         return depthPerPass;
     }
@@ -127,6 +184,14 @@ public class SimpleGcodeRouter {
     }
 
 
+    public void setProgressListener(ToolPathProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    public void setToolPathCache(ToolPathCache toolPathCache) {
+        this.toolPathCache = toolPathCache;
+    }
+
     public void setSpindleSpeed(double spindleSpeed) {
         this.spindleSpeed = spindleSpeed;
     }
@@ -142,19 +207,58 @@ public class SimpleGcodeRouter {
         return stringWriter.toString();
     }
 
+    /**
+     * Generates gcode for the cuttable entities, the tool paths for the entities are
+     * generated concurrently and ordered to minimize the rapid movements between them.
+     *
+     * @param entities the entities to generate gcode for
+     * @return the generated gcode
+     * @throws CancellationException if the generation was cancelled using the progress listener
+     */
     public String toGcode(List<Entity> entities) {
-        // Try to figure out the size of the drawing
-        double width = entities.stream().map(e -> e.getBounds().getMaxX()).max(Double::compareTo).orElse((double) 0);
-        double height = entities.stream().map(e -> e.getBounds().getMaxX()).max(Double::compareTo).orElse((double) 0);
-
+        StringWriter stringWriter = new StringWriter();
+        try {
+            toGcode(stringWriter, entities);
+        } catch (IOException e) {
+            throw new RuntimeException("An error occured while trying to generate gcode", e);
+        }
+        return stringWriter.toString();
+    }
 
+    /**
+     * Generates gcode for the cuttable entities and writes it to the writer. The gcode
+     * for each tool path is written directly to the writer without building the whole
+     * program in memory.
+     *
+     * @param writer   the writer to write the gcode to
+     * @param entities the entities to generate gcode for
+     * @throws IOException           if the gcode couldn't be written
+     * @throws CancellationException if the generation was cancelled using the progress listener
+     */
+    public void toGcode(Writer writer, List<Entity> entities) throws IOException {
         List<Cuttable> cuttables = entities.stream()
                 .filter(Cuttable.class::isInstance)
                 .map(Cuttable.class::cast)
-                .sorted(new EntityComparator(width, height))
                 .collect(Collectors.toList());
+        toGcode(writer, cuttables, cuttable -> cuttable);
+    }
 
-        StringBuilder result = new StringBuilder(HEADER +
+    /**
+     * Generates gcode for a snapshot of the design and writes it to the writer. The tool
+     * paths are cached for the entities in the design the snapshot was taken of.
+     *
+     * @param writer   the writer to write the gcode to
+     * @param snapshot the snapshot of the design to generate gcode for
+     * @throws IOException           if the gcode couldn't be written
+     * @throws CancellationException if the generation was cancelled using the progress listener
+     */
+    public void toGcode(Writer writer, DesignSnapshot snapshot) throws IOException {
+        toGcode(writer, snapshot.getCuttables(), snapshot::getSource);
+    }
+
+    private void toGcode(Writer writer, List<Cuttable> cuttables, Function<Cuttable, Entity> sources) throws IOException {
+        // The cuttables are ordered by the route optimizer
+        writer.write(HEADER +
                 generateToolHeader() + "\n" +
                 Code.G21.name() + " ; millimeters\n" +
                 Code.G90.name() + " ; absolute coordinate\n" +
@@ -162,78 +266,103 @@ public class SimpleGcodeRouter {
                 Code.G94.name() + " ; units per minute feed rate mode\n" +
                 Code.M3.name() + " S" + Math.round(getSpindleSpeed()) + " ; Turning on spindle\n\n"
         );
+        writer.flush();
 
-        try {
-            result.append(toGcode(getGcodePathFromCuttables(cuttables)));
-        } catch (IOException e) {
-            throw new RuntimeException("An error occured while trying to generate gcode", e);
+        List<RouteOptimizer.ToolPath> route = getRouteFromCuttables(cuttables, sources);
+        for (int i = 0; i < route.size(); i++) {
+            Cuttable cuttable = route.get(i).getCuttable();
+            Segment label = new Segment(" " + cuttable.getName() + " - " + cuttable.getCutType().getName()  + " (" + (i + 1) + "/" + route.size() + ")");
+            runPath(writer, Collections.singletonList(label));
+
+            // Every tool path starts with a rapid move which resets the feed rate
+            runPath(writer, route.get(i).getGcodePath().getSegments());
         }
 
-        result.append("\n" + "; Turning off spindle\n")
-                .append(Code.M5.name()).append("\n");
-        return result.toString();
+        writer.write("\n" + "; Turning off spindle\n" + Code.M5.name() + "\n");
+        writer.flush();
     }
 
-    private GcodePath getGcodePathFromCuttables(List<Cuttable> cuttables) {
-        GcodePath gcodePath = new GcodePath();
-        int index = 0;
-        for (Cuttable cuttable : cuttables) {
-            index++;
-            gcodePath.addSegment(new Segment(" " + cuttable.getName() + " - " + cuttable.getCutType().getName()  + " (" + index + "/" + cuttables.size() + ")"));
-            switch (cuttable.getCutType()) {
-                case POCKET:
-                    PocketToolPath simplePocket = new PocketToolPath(cuttable);
-                    simplePocket.setStartDepth(cuttable.getStartDepth());
-                    simplePocket.setTargetDepth(cuttable.getTargetDepth());
-                    simplePocket.setToolDiameter(toolDiameter);
-                    simplePocket.setDepthPerPass(depthPerPass);
-                    simplePocket.setSafeHeight(safeHeight);
-                    simplePocket.setStepOver(toolStepOver);
-
-                    gcodePath.appendGcodePath(simplePocket.toGcodePath());
-                    break;
-                case OUTSIDE_PATH:
-                    OutlineToolPath simpleOutsidePath = new OutlineToolPath(cuttable);
-                    simpleOutsidePath.setOffset(toolDiameter / 2d);
-                    simpleOutsidePath.setStartDepth(cuttable.getStartDepth());
-                    simpleOutsidePath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleOutsidePath.setToolDiameter(toolDiameter);
-                    simpleOutsidePath.setDepthPerPass(depthPerPass);
-                    simpleOutsidePath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleOutsidePath.toGcodePath());
-                    break;
-                case INSIDE_PATH:
-                    OutlineToolPath simpleInsidePath = new OutlineToolPath(cuttable);
-                    simpleInsidePath.setOffset(-toolDiameter / 2d);
-                    simpleInsidePath.setStartDepth(cuttable.getStartDepth());
-                    simpleInsidePath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleInsidePath.setToolDiameter(toolDiameter);
-                    simpleInsidePath.setDepthPerPass(depthPerPass);
-                    simpleInsidePath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleInsidePath.toGcodePath());
-                    break;
-                case ON_PATH:
-                    OutlineToolPath simpleOnPath = new OutlineToolPath(cuttable);
-                    simpleOnPath.setStartDepth(cuttable.getStartDepth());
-                    simpleOnPath.setTargetDepth(cuttable.getTargetDepth());
-                    simpleOnPath.setToolDiameter(toolDiameter);
-                    simpleOnPath.setDepthPerPass(depthPerPass);
-                    simpleOnPath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(simpleOnPath.toGcodePath());
-                    break;
-                case CENTER_DRILL:
-                    DrillCenterToolPath drillToolPath = new DrillCenterToolPath(cuttable);
-                    drillToolPath.setStartDepth(cuttable.getStartDepth());
-                    drillToolPath.setTargetDepth(cuttable.getTargetDepth());
-                    drillToolPath.setToolDiameter(toolDiameter);
-                    drillToolPath.setDepthPerPass(depthPerPass);
-                    drillToolPath.setSafeHeight(safeHeight);
-                    gcodePath.appendGcodePath(drillToolPath.toGcodePath());
-                    break;
-                default:
-            }
+    private List<RouteOptimizer.ToolPath> getRouteFromCuttables(List<Cuttable> cuttables, Function<Cuttable, Entity> sources) {
+        // The tool paths are generated concurrently and then ordered to minimize the rapid movements
+        AtomicInteger completed = new AtomicInteger();
+        List<Object> toolPathSettings = Arrays.asList(toolDiameter, depthPerPass, safeHeight, toolStepOver, pocketStrategy, linkPocketPasses);
+        List<ForkJoinTask<GcodePath>> tasks = cuttables.stream()
+                .map(cuttable -> ForkJoinPool.commonPool().submit(() -> {
+                    if (progressListener.isCancelled()) {
+                        throw new CancellationException("The gcode generation was cancelled");
+                    }
+
+                    GcodePath toolPath = toolPathCache.getGcodePath(sources.apply(cuttable), cuttable, toolPathSettings, this::getGcodePathFromCuttable);
+                    progressListener.onProgress(completed.incrementAndGet(), cuttables.size());
+                    return toolPath;
+                }))
+                .collect(Collectors.toList());
+
+        try {
+            List<GcodePath> toolPaths = new ArrayList<>(tasks.size());
+            tasks.forEach(task -> toolPaths.add(task.join()));
+
+            RouteOptimizer routeOptimizer = new RouteOptimizer(ROUTE_OPTIMIZATION_EVALUATIONS);
+            List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(cuttables, toolPaths);
+            LOGGER.log(Level.INFO, String.format("Optimized the route with an estimated rapid distance of %.1fmm, saving %.1fmm", routeOptimizer.getRapidDistance(), routeOptimizer.getRapidDistanceSaved()));
+            return route;
+        } finally {
+            // Abort any remaining tasks if one of them failed or was cancelled
+            tasks.forEach(task -> task.cancel(false));
+        }
+    }
+
+    private GcodePath getGcodePathFromCuttable(Cuttable cuttable) {
+        switch (cuttable.getCutType()) {
+            case POCKET:
+                PocketToolPath simplePocket = new PocketToolPath(cuttable);
+                simplePocket.setStartDepth(cuttable.getStartDepth());
+                simplePocket.setTargetDepth(cuttable.getTargetDepth());
+                simplePocket.setToolDiameter(toolDiameter);
+                simplePocket.setDepthPerPass(depthPerPass);
+                simplePocket.setSafeHeight(safeHeight);
+                simplePocket.setStepOver(toolStepOver);
+                simplePocket.setStrategy(pocketStrategy);
+                simplePocket.setLinkPasses(linkPocketPasses);
+
+                return simplePocket.toGcodePath();
+            case OUTSIDE_PATH:
+                OutlineToolPath simpleOutsidePath = new OutlineToolPath(cuttable);
+                simpleOutsidePath.setOffset(toolDiameter / 2d);
+                simpleOutsidePath.setStartDepth(cuttable.getStartDepth());
+                simpleOutsidePath.setTargetDepth(cuttable.getTargetDepth());
+                simpleOutsidePath.setToolDiameter(toolDiameter);
+                simpleOutsidePath.setDepthPerPass(depthPerPass);
+                simpleOutsidePath.setSafeHeight(safeHeight);
+                return simpleOutsidePath.toGcodePath();
+            case INSIDE_PATH:
+                OutlineToolPath simpleInsidePath = new OutlineToolPath(cuttable);
+                simpleInsidePath.setOffset(-toolDiameter / 2d);
+                simpleInsidePath.setStartDepth(cuttable.getStartDepth());
+                simpleInsidePath.setTargetDepth(cuttable.getTargetDepth());
+                simpleInsidePath.setToolDiameter(toolDiameter);
+                simpleInsidePath.setDepthPerPass(depthPerPass);
+                simpleInsidePath.setSafeHeight(safeHeight);
+                return simpleInsidePath.toGcodePath();
+            case ON_PATH:
+                OutlineToolPath simpleOnPath = new OutlineToolPath(cuttable);
+                simpleOnPath.setStartDepth(cuttable.getStartDepth());
+                simpleOnPath.setTargetDepth(cuttable.getTargetDepth());
+                simpleOnPath.setToolDiameter(toolDiameter);
+                simpleOnPath.setDepthPerPass(depthPerPass);
+                simpleOnPath.setSafeHeight(safeHeight);
+                return simpleOnPath.toGcodePath();
+            case CENTER_DRILL:
+                DrillCenterToolPath drillToolPath = new DrillCenterToolPath(cuttable);
+                drillToolPath.setStartDepth(cuttable.getStartDepth());
+                drillToolPath.setTargetDepth(cuttable.getTargetDepth());
+                drillToolPath.setToolDiameter(toolDiameter);
+                drillToolPath.setDepthPerPass(depthPerPass);
+                drillToolPath.setSafeHeight(safeHeight);
+                return drillToolPath.toGcodePath();
+            default:
+                return new GcodePath();
         }
-        return gcodePath;
     }
 
     private String generateToolHeader() {
@@ -254,16 +383,23 @@ public class SimpleGcodeRouter {
 
     protected void runPath(Writer writer, List<Segment> segments) throws IOException {
         boolean hasFeedRateSet = false;
+
+        // Each line is built in the same buffer before it is written
+        StringBuilder line = new StringBuilder();
+
         // Convert path segments to G codes
         for (Segment s : segments) {
+            line.setLength(0);
+
             // Write any label
             if (StringUtils.isNotEmpty(s.getLabel())) {
-                writer.write(";" + s.getLabel() + "\n");
+                line.append(';').append(s.getLabel()).append('\n');
             }
 
             switch (s.type) {
                 // Seam are just markers.
                 case SEAM:
+                    writer.append(line);
                     continue;
 
                     // Rapid move
@@ -271,43 +407,36 @@ public class SimpleGcodeRouter {
                 case MOVE:
                     // The rapid over target point is skipped when we do multiple passes
                     // and the end point is the same as the starting point.
-                    writer.write(SegmentType.MOVE.gcode);
-                    writer.write(" ");
-                    writer.write(s.point.getFormattedGCode());
-                    writer.write("\n");
+                    line.append(SegmentType.MOVE.gcode).append(' ');
+                    s.point.appendFormattedGCode(line, FORMATTER).append('\n');
                     hasFeedRateSet = false;
 
                     break;
 
                 // Drill down using the plunge speed
                 case POINT:
-                    writer.write(SegmentType.POINT.gcode);
-                    writer.write(" ");
-                    writer.write("F" + plungeSpeed + " ");
-                    writer.write(s.point.getFormattedGCode());
-                    writer.write("\n");
+                    line.append(SegmentType.POINT.gcode).append(' ');
+                    line.append('F').append(plungeSpeed).append(' ');
+                    s.point.appendFormattedGCode(line, FORMATTER).append('\n');
                     break;
 
                 // Motion at feed rate
                 case LINE:
                 case CWARC:
                 case CCWARC:
-                    writer.write(s.type.gcode);
-                    writer.write(' ');
+                    line.append(s.type.gcode).append(' ');
 
                     if (!hasFeedRateSet) {
-                        writer.write("F");
-                        writer.write(String.valueOf(feedSpeed));
-                        writer.write(' ');
+                        line.append('F').append(feedSpeed).append(' ');
                         hasFeedRateSet = true;
                     }
 
-                    writer.write(s.point.getFormattedGCode());
-                    writer.write("\n");
+                    s.point.appendFormattedGCode(line, FORMATTER).append('\n');
                     break;
                 default:
                     throw new RuntimeException("BUG! Unhandled segment type " + s.type);
             }
+            writer.append(line);
         }
     }
 }
@@ -0,0 +1,208 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A cache with the generated tool paths for each cuttable. A cached tool path is reused as long
+ * as the geometry and cut settings of the cuttable are unchanged. If the cuttable only has been
+ * moved the cached tool path is translated instead of being generated again.
+ * <p>
+ * Not all changes of an entity are notified as events, the geometry of the cuttable is therefore
+ * compared with the cached geometry for each lookup. This is still a lot cheaper than generating
+ * the tool path.
+ *
+ * @author Joacim Breiler
+ */
+public class ToolPathCache {
+    private final Map<Entity, CacheEntry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the tool path for the cuttable, the tool path is only generated if the
+     * cuttable has been changed since it was last generated.
+     *
+     * @param cuttable the cuttable to get the tool path for
+     * @param settings the settings used when generating tool path, needs to implement equals
+     * @param toolPathGenerator a function for generating the tool path for the cuttable
+     * @return the tool path
+     */
+    public GcodePath getGcodePath(Cuttable cuttable, Object settings, Function<Cuttable, GcodePath> toolPathGenerator) {
+        return getGcodePath(cuttable, cuttable, settings, toolPathGenerator);
+    }
+
+    /**
+     * Returns the tool path for a copy of an entity, the tool path is cached for the entity
+     * it was copied from.
+     *
+     * @param source   the entity the cuttable was copied from
+     * @param cuttable the cuttable to get the tool path for
+     * @param settings the settings used when generating tool path, needs to implement equals
+     * @param toolPathGenerator a function for generating the tool path for the cuttable
+     * @return the tool path
+     */
+    public GcodePath getGcodePath(Entity source, Cuttable cuttable, Object settings, Function<Cuttable, GcodePath> toolPathGenerator) {
+        CacheKey key = new CacheKey(cuttable, settings);
+        AffineTransform transform = cuttable.getTransform();
+        double translateX = transform.getTranslateX();
+        double translateY = transform.getTranslateY();
+
+        CacheEntry entry = entries.get(source);
+        if (entry != null && entry.key.equals(key)) {
+            if (entry.translateX == translateX && entry.translateY == translateY) {
+                return entry.gcodePath;
+            }
+            return translate(entry.gcodePath, translateX - entry.translateX, translateY - entry.translateY);
+        }
+
+        GcodePath gcodePath = toolPathGenerator.apply(cuttable);
+        entries.put(source, new CacheEntry(key, translateX, translateY, gcodePath));
+        return gcodePath;
+    }
+
+    /**
+     * Removes the cached tool paths for any entity not in the given list
+     *
+     * @param entities the entities to keep the tool paths for
+     */
+    public void retainAll(Collection<Entity> entities) {
+        entries.keySet().retainAll(new HashSet<>(entities));
+    }
+
+    /**
+     * Removes all cached tool paths
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private static GcodePath translate(GcodePath gcodePath, double deltaX, double deltaY) {
+        GcodePath result = new GcodePath();
+        for (Segment segment : gcodePath.getSegments()) {
+            PartialPosition point = segment.point;
+            if (point == null || (!point.hasX() && !point.hasY())) {
+                result.addSegment(segment);
+                continue;
+            }
+
+            PartialPosition.Builder builder = PartialPosition.builder().copy(point);
+            if (point.hasX()) {
+                builder.setX(point.getX() + deltaX);
+            }
+            if (point.hasY()) {
+                builder.setY(point.getY() + deltaY);
+            }
+            result.addSegment(new Segment(segment.type, builder.build(), segment.label));
+        }
+        return result;
+    }
+
+    private static class CacheEntry {
+        private final CacheKey key;
+        private final double translateX;
+        private final double translateY;
+        private final GcodePath gcodePath;
+
+        private CacheEntry(CacheKey key, double translateX, double translateY, GcodePath gcodePath) {
+            this.key = key;
+            this.translateX = translateX;
+            this.translateY = translateY;
+            this.gcodePath = gcodePath;
+        }
+    }
+
+    /**
+     * Identifies a tool path by everything except the translation of the cuttable
+     */
+    private static class CacheKey {
+        private final double[] geometry;
+        private final int geometryHash;
+        private final CutType cutType;
+        private final double startDepth;
+        private final double targetDepth;
+        private final Object settings;
+
+        private CacheKey(Cuttable cuttable, Object settings) {
+            this.geometry = getGeometry(cuttable);
+            this.geometryHash = Arrays.hashCode(geometry);
+            this.cutType = cuttable.getCutType();
+            this.startDepth = cuttable.getStartDepth();
+            this.targetDepth = cuttable.getTargetDepth();
+            this.settings = settings;
+        }
+
+        /**
+         * Returns the segments of the untransformed shape followed by the rotation,
+         * scale and shear of the transform.
+         */
+        private static double[] getGeometry(Cuttable cuttable) {
+            AffineTransform transform = cuttable.getTransform();
+            double[] result = new double[]{transform.getScaleX(), transform.getShearY(), transform.getShearX(), transform.getScaleY()};
+            int size = result.length;
+
+            double[] coords = new double[6];
+            PathIterator pathIterator = cuttable.getRelativeShape().getPathIterator(null);
+            while (!pathIterator.isDone()) {
+                if (size + coords.length + 1 > result.length) {
+                    result = Arrays.copyOf(result, result.length * 2 + coords.length + 1);
+                }
+
+                int type = pathIterator.currentSegment(coords);
+                result[size++] = type;
+                System.arraycopy(coords, 0, result, size, coords.length);
+                size += coords.length;
+                pathIterator.next();
+            }
+            return Arrays.copyOf(result, size);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey cacheKey = (CacheKey) o;
+            return geometryHash == cacheKey.geometryHash &&
+                    Double.compare(cacheKey.startDepth, startDepth) == 0 &&
+                    Double.compare(cacheKey.targetDepth, targetDepth) == 0 &&
+                    cutType == cacheKey.cutType &&
+                    Objects.equals(settings, cacheKey.settings) &&
+                    Arrays.equals(geometry, cacheKey.geometry);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(geometryHash, cutType, startDepth, targetDepth, settings);
+        }
+    }
+}
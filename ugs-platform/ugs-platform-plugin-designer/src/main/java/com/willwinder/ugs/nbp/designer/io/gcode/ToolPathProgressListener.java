@@ -0,0 +1,45 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+/**
+ * A listener for following the generation of tool paths and for cancelling it.
+ *
+ * @author Joacim Breiler
+ */
+public interface ToolPathProgressListener {
+
+    /**
+     * Called when the tool paths for a cuttable have been generated. The
+     * method may be called from any thread.
+     *
+     * @param completed the number of cuttables with generated tool paths
+     * @param total     the total number of cuttables
+     */
+    void onProgress(int completed, int total);
+
+    /**
+     * Returns if the generation should be aborted
+     *
+     * @return true if the generation should be cancelled
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
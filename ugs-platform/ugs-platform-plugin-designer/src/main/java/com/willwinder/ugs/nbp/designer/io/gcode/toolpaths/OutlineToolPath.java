@@ -44,11 +44,11 @@ public class OutlineToolPath extends AbstractToolPath {
     public GcodePath toGcodePath() {
         List<Geometry> geometries;
         if (ToolPathUtils.isClosedGeometry(source.getShape())) {
-            Geometry geometry = ToolPathUtils.convertAreaToGeometry(new Area(source.getShape()), getGeometryFactory());
+            Geometry geometry = ToolPathUtils.convertAreaToGeometry(new Area(source.getFlattenedShape()), getGeometryFactory());
             Geometry bufferedGeometry = geometry.buffer(offset);
             geometries = ToolPathUtils.toGeometryList(bufferedGeometry);
         } else {
-            geometries = ToolPathUtils.convertShapeToGeometry(source.getShape(), getGeometryFactory());
+            geometries = ToolPathUtils.convertShapeToGeometry(source.getFlattenedShape(), getGeometryFactory());
         }
 
 
@@ -0,0 +1,52 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.gcode.toolpaths;
+
+/**
+ * The strategies for clearing the material of a pocket
+ *
+ * @author Joacim Breiler
+ */
+public enum PocketStrategy {
+    /**
+     * Cuts rings parallel to the walls of the pocket starting from the center
+     */
+    OFFSET("Offset"),
+
+    /**
+     * Cuts back and forth along lines parallel to the X-axis followed by a pass along the walls
+     */
+    ZIG_ZAG("Zig-zag"),
+
+    /**
+     * Cuts rings parallel to the walls where each ring starts closest to the end of the
+     * previous ring, the rings are linked without retracting the tool when possible
+     */
+    SPIRAL("Spiral");
+
+    private final String name;
+
+    PocketStrategy(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -21,12 +21,23 @@ package com.willwinder.ugs.nbp.designer.io.gcode.toolpaths;
 import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
 import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
 import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 
 import java.awt.geom.Area;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils.*;
 
@@ -34,6 +45,11 @@ import static com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.ToolPathUtils.*
  * @author Joacim Breiler
  */
 public class PocketToolPath extends AbstractToolPath {
+    /**
+     * The tolerance in millimeters used when simplifying the offset geometries
+     */
+    private static final double SIMPLIFY_TOLERANCE = 0.01;
+
     private final Cuttable source;
 
     /**
@@ -42,6 +58,16 @@ public class PocketToolPath extends AbstractToolPath {
      */
     private double stepOver = 0.3;
 
+    /**
+     * The strategy to use for clearing the pocket
+     */
+    private PocketStrategy strategy = PocketStrategy.OFFSET;
+
+    /**
+     * If the paths should be linked without retracting the tool when the link is within the pocket
+     */
+    private boolean linkPasses = false;
+
     public PocketToolPath(Cuttable source) {
         this.source = source;
     }
@@ -50,9 +76,16 @@ public class PocketToolPath extends AbstractToolPath {
     public GcodePath toGcodePath() {
         List<List<PartialPosition>> coordinateList = new ArrayList<>();
 
-        Geometry geometryCollection = convertAreaToGeometry(new Area(source.getShape()), getGeometryFactory());
-        for (int i = 0; i < geometryCollection.getNumGeometries(); i++) {
-            List<Geometry> geometries = bufferAndCollectGeometries(geometryCollection.getGeometryN(i));
+        Geometry geometryCollection = convertAreaToGeometry(new Area(source.getFlattenedShape()), getGeometryFactory());
+
+        // The geometries are independent of each other and their paths are created concurrently, the
+        // results are collected in the same order as the geometries to get a deterministic path
+        List<List<List<Coordinate>>> geometriesPaths = IntStream.range(0, geometryCollection.getNumGeometries())
+                .parallel()
+                .mapToObj(i -> createPaths(geometryCollection.getGeometryN(i)))
+                .collect(Collectors.toList());
+
+        for (List<List<Coordinate>> paths : geometriesPaths) {
             double currentDepth = getStartDepth() - getDepthPerPass();
             while (currentDepth < getTargetDepth()) {
                 currentDepth += getDepthPerPass();
@@ -60,31 +93,166 @@ public class PocketToolPath extends AbstractToolPath {
                     currentDepth = getTargetDepth();
                 }
 
-                List<List<PartialPosition>> geometriesCoordinates = geometriesToCoordinates(geometries, currentDepth);
-                coordinateList.addAll(geometriesCoordinates);
+                coordinateList.addAll(pathsToCoordinates(paths, currentDepth));
             }
         }
 
         return toGcodePath(coordinateList);
     }
 
-    private List<Geometry> bufferAndCollectGeometries(Geometry geometry) {
-        List<Geometry> geometries = new ArrayList<>();
-        double buffer = getToolDiameter() / 2d;
-        while (true) {
-            Geometry bufferedGeometry = geometry.buffer(-buffer);
-            List<Geometry> bufferedGeometries = toGeometryList(bufferedGeometry);
-            if(bufferedGeometries.isEmpty()) {
-                geometries.sort(Comparator.comparingDouble(o -> o.getEnvelope().getArea()));
-                return geometries;
+    /**
+     * Creates the paths for clearing a pocket of the geometry at a single depth
+     */
+    private List<List<Coordinate>> createPaths(Geometry geometry) {
+        // The area where the center of the tool can move without cutting the walls
+        Geometry area = geometry.buffer(-getToolDiameter() / 2d);
+        if (area.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<List<Coordinate>> paths = strategy == PocketStrategy.ZIG_ZAG ? createZigZagPaths(area) : createOffsetPaths(area);
+        if (linkPasses || strategy == PocketStrategy.SPIRAL) {
+            return linkPaths(area, paths);
+        }
+        return paths;
+    }
+
+    private List<List<Coordinate>> createOffsetPaths(Geometry area) {
+        List<Geometry> rings = new ArrayList<>();
+        double stepDistance = getToolDiameter() * stepOver;
+        Geometry geometry = area;
+        for (int pass = 1; !geometry.isEmpty(); pass++) {
+            // Only the rings are simplified, each offset is created from the original area so
+            // that the simplification errors don't accumulate between the passes
+            rings.addAll(toGeometryList(TopologyPreservingSimplifier.simplify(geometry, SIMPLIFY_TOLERANCE)));
+            geometry = area.buffer(-stepDistance * pass);
+        }
+        rings.sort(Comparator.comparingDouble(o -> o.getEnvelope().getArea()));
+
+        List<List<Coordinate>> paths = new ArrayList<>();
+        for (Geometry ring : rings) {
+            List<Coordinate> coordinates = new ArrayList<>(Arrays.asList(ring.getCoordinates()));
+            if (strategy == PocketStrategy.SPIRAL && !paths.isEmpty()) {
+                List<Coordinate> previousPath = paths.get(paths.size() - 1);
+                coordinates = startClosestTo(coordinates, previousPath.get(previousPath.size() - 1));
             }
+            paths.add(coordinates);
+        }
+        return paths;
+    }
 
-            geometries.addAll(bufferedGeometries);
-            buffer = buffer + (getToolDiameter() * stepOver);
+    /**
+     * Rotates a closed ring to start at the coordinate closest to the given coordinate
+     */
+    private static List<Coordinate> startClosestTo(List<Coordinate> ring, Coordinate coordinate) {
+        if (ring.size() < 3 || !ring.get(0).equals2D(ring.get(ring.size() - 1))) {
+            return ring;
         }
+
+        int start = 0;
+        for (int i = 1; i < ring.size() - 1; i++) {
+            if (ring.get(i).distance(coordinate) < ring.get(start).distance(coordinate)) {
+                start = i;
+            }
+        }
+
+        List<Coordinate> result = new ArrayList<>(ring.subList(start, ring.size() - 1));
+        result.addAll(ring.subList(0, start + 1));
+        return result;
+    }
+
+    private List<List<Coordinate>> createZigZagPaths(Geometry area) {
+        PreparedGeometry preparedArea = PreparedGeometryFactory.prepare(area);
+        Envelope envelope = area.getEnvelopeInternal();
+        double stepDistance = getToolDiameter() * stepOver;
+
+        List<List<Coordinate>> paths = new ArrayList<>();
+        boolean reverse = false;
+        for (double y = envelope.getMinY() + stepDistance / 2d; y < envelope.getMaxY(); y += stepDistance) {
+            LineString line = getGeometryFactory().createLineString(new Coordinate[]{
+                    new Coordinate(envelope.getMinX() - 1, y),
+                    new Coordinate(envelope.getMaxX() + 1, y)});
+            if (!preparedArea.intersects(line)) {
+                continue;
+            }
+
+            List<List<Coordinate>> rowPaths = toGeometryList(area.intersection(line)).stream()
+                    .filter(LineString.class::isInstance)
+                    .map(lineString -> {
+                        List<Coordinate> coordinates = new ArrayList<>(Arrays.asList(lineString.getCoordinates()));
+                        if (coordinates.get(0).x > coordinates.get(coordinates.size() - 1).x) {
+                            Collections.reverse(coordinates);
+                        }
+                        return coordinates;
+                    })
+                    .sorted(Comparator.comparingDouble(coordinates -> coordinates.get(0).x))
+                    .collect(Collectors.toList());
+
+            // Every other row is cut in the opposite direction
+            if (reverse) {
+                Collections.reverse(rowPaths);
+                rowPaths.forEach(Collections::reverse);
+            }
+            paths.addAll(rowPaths);
+            reverse = !reverse;
+        }
+
+        // Finish with a pass along the walls to remove the scallops left by the rows
+        toGeometryList(area).forEach(ring -> paths.add(new ArrayList<>(Arrays.asList(ring.getCoordinates()))));
+        return paths;
+    }
+
+    /**
+     * Joins paths where the tool can move from the end of one path to the start of the next
+     * without retracting. This is done if the move is within the area of the pocket and isn't
+     * longer than the tool diameter.
+     */
+    private List<List<Coordinate>> linkPaths(Geometry area, List<List<Coordinate>> paths) {
+        PreparedGeometry preparedArea = PreparedGeometryFactory.prepare(area);
+        List<List<Coordinate>> result = new ArrayList<>();
+        List<Coordinate> currentPath = null;
+        for (List<Coordinate> path : paths) {
+            if (path.isEmpty()) {
+                continue;
+            }
+
+            if (currentPath != null && canLink(preparedArea, currentPath.get(currentPath.size() - 1), path.get(0))) {
+                currentPath.addAll(path);
+            } else {
+                currentPath = new ArrayList<>(path);
+                result.add(currentPath);
+            }
+        }
+        return result;
+    }
+
+    private boolean canLink(PreparedGeometry preparedArea, Coordinate from, Coordinate to) {
+        if (from.equals2D(to)) {
+            return true;
+        }
+
+        return from.distance(to) <= getToolDiameter() &&
+                preparedArea.covers(getGeometryFactory().createLineString(new Coordinate[]{from, to}));
+    }
+
+    private static List<List<PartialPosition>> pathsToCoordinates(List<List<Coordinate>> paths, double depth) {
+        return paths.stream()
+                .filter(path -> path.size() > 1)
+                .map(path -> path.stream()
+                        .map(c -> new PartialPosition(c.getX(), c.getY(), -depth, UnitUtils.Units.MM))
+                        .collect(Collectors.toList()))
+                .collect(Collectors.toList());
     }
 
     public void setStepOver(double stepOver) {
         this.stepOver = Math.min(Math.max(0.01, Math.abs(stepOver)), 1.0);
     }
+
+    public void setStrategy(PocketStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public void setLinkPasses(boolean linkPasses) {
+        this.linkPasses = linkPasses;
+    }
 }
@@ -23,12 +23,14 @@ import com.google.gson.GsonBuilder;
 import com.willwinder.ugs.nbp.designer.entities.Entity;
 import com.willwinder.ugs.nbp.designer.io.DesignReader;
 import com.willwinder.ugs.nbp.designer.io.RuntimeTypeAdapterFactory;
+import com.willwinder.ugs.nbp.designer.io.ugsd.binary.BinaryDesignReader;
 import com.willwinder.ugs.nbp.designer.io.ugsd.common.UgsDesign;
 import com.willwinder.ugs.nbp.designer.io.ugsd.v1.*;
 import com.willwinder.ugs.nbp.designer.model.Design;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
@@ -41,6 +43,8 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
+ * Reads designs in both the binary design format and the JSON design format.
+ *
  * @author Joacim Breiler
  */
 public class UgsDesignReader implements DesignReader {
@@ -58,7 +62,12 @@ public class UgsDesignReader implements DesignReader {
     @Override
     public Optional<Design> read(InputStream resourceAsStream) {
         try {
-            String designFileContent = IOUtils.toString(resourceAsStream, StandardCharsets.UTF_8);
+            BufferedInputStream inputStream = new BufferedInputStream(resourceAsStream);
+            if (BinaryDesignReader.isBinaryDesign(inputStream)) {
+                return new BinaryDesignReader().read(inputStream);
+            }
+
+            String designFileContent = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
             if (StringUtils.isEmpty(designFileContent)) {
                 return Optional.empty();
             }
@@ -16,8 +16,8 @@ import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -33,9 +33,9 @@ import java.util.stream.Collectors;
 public class UgsDesignWriter implements DesignWriter {
     @Override
     public void write(File file, Controller controller) {
-        try {
-            write(new FileOutputStream(file), controller);
-        } catch (FileNotFoundException e) {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            write(outputStream, controller);
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -135,17 +135,7 @@ public class UgsDesignWriter implements DesignWriter {
     }
 
     private SettingsV1 convertSettings(Controller controller) {
-        SettingsV1 settings = new SettingsV1();
-        settings.setFeedSpeed(controller.getSettings().getFeedSpeed());
-        settings.setDepthPerPass(controller.getSettings().getDepthPerPass());
-        settings.setStockThickness(controller.getSettings().getStockThickness());
-        settings.setPlungeSpeed(controller.getSettings().getPlungeSpeed());
-        settings.setPreferredUnits(controller.getSettings().getPreferredUnits());
-        settings.setSafeHeight(controller.getSettings().getSafeHeight());
-        settings.setToolDiameter(controller.getSettings().getToolDiameter());
-        settings.setToolStepOver(controller.getSettings().getToolStepOver());
-        settings.setSpindleSpeed(controller.getSettings().getSpindleSpeed());
-        return settings;
+        return SettingsV1.fromInternal(controller.getSettings());
     }
 
     private EntityPathSegmentV1 convertCoordinatesToPathSegment(int segmentType, double[] coordinates) {
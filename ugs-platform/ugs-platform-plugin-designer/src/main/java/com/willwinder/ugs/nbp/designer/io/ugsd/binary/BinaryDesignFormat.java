@@ -0,0 +1,92 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.ugsd.binary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Constants describing the binary design format. A design file is laid out as:
+ * <pre>
+ * int     MAGIC
+ * byte    VERSION
+ * byte    flags, see FLAG_COMPRESSED
+ * int     length of the settings
+ * byte[]  the settings as UTF-8 encoded JSON
+ * int     number of entities
+ * records one entity record for each entity
+ * </pre>
+ * <p>
+ * Each entity record is made up of a header with the common attributes of the
+ * entity and a body with the geometry or the child records of a group:
+ * <pre>
+ * int     length of the header
+ * byte[]  header: type, name, cut settings and transform
+ * int     length of the body
+ * byte[]  body, deflated for top level entities if FLAG_COMPRESSED is set
+ * </pre>
+ * Strings are written as an int length followed by the UTF-8 encoded bytes.
+ * Since both parts of a record are length prefixed each body can be decoded
+ * on its own. The records are not loaded lazily, all entities are decoded
+ * when a design is opened since the drawing has no placeholder entities.
+ *
+ * @author Joacim Breiler
+ */
+final class BinaryDesignFormat {
+    /**
+     * The bytes "UGSD"
+     */
+    static final int MAGIC = 0x55475344;
+    static final byte VERSION = 1;
+    static final byte FLAG_COMPRESSED = 1;
+
+    static final byte TYPE_GROUP = 1;
+    static final byte TYPE_PATH = 2;
+    static final byte TYPE_RECTANGLE = 3;
+    static final byte TYPE_ELLIPSE = 4;
+    static final byte TYPE_TEXT = 5;
+
+    private BinaryDesignFormat() {
+    }
+
+    /**
+     * Checks if the stream starts with the binary design format header. The
+     * stream needs to support mark and will be reset to where it started.
+     *
+     * @param inputStream the stream to check
+     * @return true if the stream contains a binary design
+     * @throws IOException if the stream couldn't be read
+     */
+    static boolean isBinaryDesign(InputStream inputStream) throws IOException {
+        inputStream.mark(4);
+        try {
+            int magic = 0;
+            for (int i = 0; i < 4; i++) {
+                int value = inputStream.read();
+                if (value < 0) {
+                    return false;
+                }
+                magic = (magic << 8) | value;
+            }
+            return magic == MAGIC;
+        } finally {
+            inputStream.reset();
+        }
+    }
+}
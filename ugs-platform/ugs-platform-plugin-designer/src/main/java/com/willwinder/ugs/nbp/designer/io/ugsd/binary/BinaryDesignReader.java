@@ -0,0 +1,297 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.ugsd.binary;
+
+import com.google.gson.Gson;
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Ellipse;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Text;
+import com.willwinder.ugs.nbp.designer.io.DesignReader;
+import com.willwinder.ugs.nbp.designer.io.ugsd.v1.CutTypeV1;
+import com.willwinder.ugs.nbp.designer.io.ugsd.v1.SettingsV1;
+import com.willwinder.ugs.nbp.designer.model.Design;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads designs in the binary design format, see {@link BinaryDesignFormat} for
+ * a description of the format.
+ * <p>
+ * The entity records are first read from the stream and then decoded in parallel.
+ *
+ * @author Joacim Breiler
+ */
+public class BinaryDesignReader implements DesignReader {
+
+    private static class FileHeader {
+        private boolean compressed;
+        private SettingsV1 settings;
+        private int entityCount;
+    }
+
+    /**
+     * Checks if the stream contains a design in the binary format. The stream
+     * needs to support mark and will be reset to where it started.
+     *
+     * @param inputStream the stream to check
+     * @return true if the stream contains a binary design
+     * @throws IOException if the stream couldn't be read
+     */
+    public static boolean isBinaryDesign(InputStream inputStream) throws IOException {
+        return BinaryDesignFormat.isBinaryDesign(inputStream);
+    }
+
+    /**
+     * Checks if the file contains a design in the binary format
+     *
+     * @param file the file to check
+     * @return true if the file contains a binary design
+     */
+    public static boolean isBinaryDesign(File file) {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
+            return isBinaryDesign(inputStream);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public Optional<Design> read(File file) {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            return read(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't load file " + file, e);
+        }
+    }
+
+    @Override
+    public Optional<Design> read(InputStream inputStream) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+            FileHeader fileHeader = readFileHeader(in);
+
+            List<EntityHeader> headers = new ArrayList<>(fileHeader.entityCount);
+            List<byte[]> bodies = new ArrayList<>(fileHeader.entityCount);
+            for (int i = 0; i < fileHeader.entityCount; i++) {
+                EntityHeader header = readHeader(in);
+                headers.add(header);
+                bodies.add(readBytes(in, header.getBodyLength()));
+            }
+
+            List<Entity> entities = IntStream.range(0, headers.size())
+                    .parallel()
+                    .mapToObj(i -> createEntity(headers.get(i), bodies.get(i), fileHeader.compressed))
+                    .collect(Collectors.toList());
+
+            Design design = new Design();
+            design.setSettings(fileHeader.settings.toInternal());
+            design.setEntities(entities);
+            return Optional.of(design);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read design from stream", e);
+        }
+    }
+
+    private static FileHeader readFileHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != BinaryDesignFormat.MAGIC) {
+            throw new IOException("Not a binary design file");
+        }
+
+        byte version = in.readByte();
+        if (version != BinaryDesignFormat.VERSION) {
+            throw new IOException("Unknown version " + version);
+        }
+
+        FileHeader fileHeader = new FileHeader();
+        fileHeader.compressed = (in.readByte() & BinaryDesignFormat.FLAG_COMPRESSED) != 0;
+        byte[] settings = readBytes(in);
+        fileHeader.settings = new Gson().fromJson(new String(settings, StandardCharsets.UTF_8), SettingsV1.class);
+        if (fileHeader.settings == null) {
+            fileHeader.settings = new SettingsV1();
+        }
+        fileHeader.entityCount = in.readInt();
+        return fileHeader;
+    }
+
+    /**
+     * Reads the header of an entity record and the length of its body, leaving the stream at the start of the body
+     *
+     * @param in the stream positioned at the start of the record
+     */
+    private static EntityHeader readHeader(DataInputStream in) throws IOException {
+        byte[] header = readBytes(in);
+        int bodyLength = in.readInt();
+
+        DataInputStream headerIn = new DataInputStream(new ByteArrayInputStream(header));
+        byte type = headerIn.readByte();
+        String name = readString(headerIn);
+
+        if (type == BinaryDesignFormat.TYPE_GROUP) {
+            int childCount = headerIn.readInt();
+            return new EntityHeader(type, name, 0, 0, null, new AffineTransform(), childCount, bodyLength);
+        }
+
+        double startDepth = headerIn.readDouble();
+        double targetDepth = headerIn.readDouble();
+        CutTypeV1 cutType = CutTypeV1.valueOf(readString(headerIn));
+
+        double[] matrix = new double[6];
+        for (int i = 0; i < matrix.length; i++) {
+            matrix[i] = headerIn.readDouble();
+        }
+        return new EntityHeader(type, name, startDepth, targetDepth, CutTypeV1.toCutType(cutType), new AffineTransform(matrix), 0, bodyLength);
+    }
+
+    private static Entity createEntity(EntityHeader header, byte[] body, boolean compressed) {
+        try {
+            byte[] data = compressed ? inflate(body) : body;
+            Entity entity;
+            switch (header.getTypeId()) {
+                case BinaryDesignFormat.TYPE_GROUP:
+                    entity = createGroup(header, data);
+                    break;
+                case BinaryDesignFormat.TYPE_PATH:
+                    Path path = new Path();
+                    path.setShape(readShape(ByteBuffer.wrap(data)));
+                    entity = path;
+                    break;
+                case BinaryDesignFormat.TYPE_RECTANGLE:
+                    entity = new Rectangle();
+                    break;
+                case BinaryDesignFormat.TYPE_ELLIPSE:
+                    entity = new Ellipse();
+                    break;
+                case BinaryDesignFormat.TYPE_TEXT:
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+                    Text text = new Text();
+                    text.setText(readString(in));
+                    text.setFontFamily(readString(in));
+                    entity = text;
+                    break;
+                default:
+                    throw new IOException("Unknown entity type " + header.getTypeId());
+            }
+
+            applyCommonAttributes(header, entity);
+            return entity;
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't read entity " + header.getName(), e);
+        }
+    }
+
+    private static Entity createGroup(EntityHeader header, byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        EntityGroup group = new EntityGroup();
+        for (int i = 0; i < header.getChildCount(); i++) {
+            EntityHeader childHeader = readHeader(in);
+            group.addChild(createEntity(childHeader, readBytes(in, childHeader.getBodyLength()), false));
+        }
+        return group;
+    }
+
+    private static void applyCommonAttributes(EntityHeader header, Entity entity) {
+        if (StringUtils.isNotEmpty(header.getName())) {
+            entity.setName(header.getName());
+        }
+
+        if (entity instanceof Cuttable) {
+            entity.setTransform(header.getTransform());
+            ((Cuttable) entity).setStartDepth(header.getStartDepth());
+            ((Cuttable) entity).setTargetDepth(header.getTargetDepth());
+            ((Cuttable) entity).setCutType(header.getCutType());
+        }
+    }
+
+    private static Path2D readShape(ByteBuffer buffer) {
+        int windingRule = buffer.get();
+        int segmentCount = buffer.getInt();
+        byte[] types = new byte[segmentCount];
+        buffer.get(types);
+
+        Path2D.Double shape = new Path2D.Double(windingRule, segmentCount);
+        float[] coordinates = new float[6];
+        for (byte type : types) {
+            int coordinateCount = BinaryDesignWriter.getCoordinateCount(type);
+            for (int i = 0; i < coordinateCount; i++) {
+                coordinates[i] = buffer.getFloat();
+            }
+
+            switch (type) {
+                case PathIterator.SEG_MOVETO:
+                    shape.moveTo(coordinates[0], coordinates[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    shape.lineTo(coordinates[0], coordinates[1]);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    shape.quadTo(coordinates[0], coordinates[1], coordinates[2], coordinates[3]);
+                    break;
+                case PathIterator.SEG_CUBICTO:
+                    shape.curveTo(coordinates[0], coordinates[1], coordinates[2], coordinates[3], coordinates[4], coordinates[5]);
+                    break;
+                default:
+                    shape.closePath();
+            }
+        }
+        return shape;
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(data))) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        return readBytes(in, in.readInt());
+    }
+
+    private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.ugsd.binary;
+
+import com.google.gson.Gson;
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Ellipse;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Text;
+import com.willwinder.ugs.nbp.designer.io.DesignWriter;
+import com.willwinder.ugs.nbp.designer.io.ugsd.v1.CutTypeV1;
+import com.willwinder.ugs.nbp.designer.io.ugsd.v1.SettingsV1;
+import com.willwinder.ugs.nbp.designer.logic.Controller;
+import com.willwinder.ugs.nbp.designer.model.Design;
+import com.willwinder.ugs.nbp.designer.model.Settings;
+import org.apache.commons.lang3.StringUtils;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.PathIterator;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the design to a stream or file in the binary design format, see
+ * {@link BinaryDesignFormat} for a description of the format.
+ *
+ * @author Joacim Breiler
+ */
+public class BinaryDesignWriter implements DesignWriter {
+    private final boolean compress;
+
+    public BinaryDesignWriter() {
+        this(true);
+    }
+
+    /**
+     * Creates a writer for the binary design format
+     *
+     * @param compress if the geometry of the entities should be compressed
+     */
+    public BinaryDesignWriter(boolean compress) {
+        this.compress = compress;
+    }
+
+    @Override
+    public void write(File file, Controller controller) {
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            write(outputStream, controller);
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't write design to file " + file, e);
+        }
+    }
+
+    @Override
+    public void write(OutputStream outputStream, Controller controller) {
+        Design design = new Design();
+        design.setSettings(controller.getSettings());
+        design.setEntities(((EntityGroup) controller.getDrawing().getRootEntity()).getChildren());
+        write(outputStream, design);
+    }
+
+    /**
+     * Writes the settings and entities of the design to the stream
+     *
+     * @param outputStream the stream to write to
+     * @param design       the design to write
+     */
+    public void write(OutputStream outputStream, Design design) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+            out.writeInt(BinaryDesignFormat.MAGIC);
+            out.writeByte(BinaryDesignFormat.VERSION);
+            out.writeByte(compress ? BinaryDesignFormat.FLAG_COMPRESSED : 0);
+            writeBytes(out, serializeSettings(design.getSettings()));
+
+            List<Entity> entities = getSupportedEntities(design.getEntities());
+            out.writeInt(entities.size());
+            for (Entity entity : entities) {
+                writeEntity(out, entity, compress);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't write design to stream", e);
+        }
+    }
+
+    private static byte[] serializeSettings(Settings settings) {
+        return new Gson().toJson(SettingsV1.fromInternal(settings)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeEntity(DataOutputStream out, Entity entity, boolean compress) throws IOException {
+        writeBytes(out, serializeHeader(entity));
+
+        byte[] body = serializeBody(entity);
+        writeBytes(out, compress ? deflate(body) : body);
+    }
+
+    private static byte[] serializeHeader(Entity entity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(getType(entity));
+        writeString(out, entity.getName());
+
+        if (entity instanceof EntityGroup) {
+            out.writeInt(getSupportedEntities(((EntityGroup) entity).getChildren()).size());
+        } else {
+            Cuttable cuttable = (Cuttable) entity;
+            out.writeDouble(cuttable.getStartDepth());
+            out.writeDouble(cuttable.getTargetDepth());
+            writeString(out, CutTypeV1.fromCutType(cuttable.getCutType()).name());
+
+            double[] matrix = new double[6];
+            entity.getTransform().getMatrix(matrix);
+            for (double value : matrix) {
+                out.writeDouble(value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] serializeBody(Entity entity) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (entity instanceof EntityGroup) {
+            // Only the bodies of the top level entities are compressed
+            for (Entity child : getSupportedEntities(((EntityGroup) entity).getChildren())) {
+                writeEntity(out, child, false);
+            }
+        } else if (entity instanceof Path) {
+            writeShape(out, entity.getRelativeShape());
+        } else if (entity instanceof Text) {
+            writeString(out, ((Text) entity).getText());
+            writeString(out, ((Text) entity).getFontFamily());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the segments of the shape as an array of segment types followed
+     * by all coordinates packed as floats.
+     */
+    private static void writeShape(DataOutputStream out, Shape shape) throws IOException {
+        byte[] types = new byte[64];
+        float[] coordinates = new float[256];
+        int segmentCount = 0;
+        int coordinateCount = 0;
+
+        PathIterator iterator = shape.getPathIterator(new AffineTransform());
+        float[] segment = new float[6];
+        for (; !iterator.isDone(); iterator.next()) {
+            int type = iterator.currentSegment(segment);
+            int count = getCoordinateCount(type);
+            if (segmentCount == types.length) {
+                types = Arrays.copyOf(types, types.length * 2);
+            }
+            if (coordinateCount + count > coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+            }
+
+            types[segmentCount++] = (byte) type;
+            System.arraycopy(segment, 0, coordinates, coordinateCount, count);
+            coordinateCount += count;
+        }
+
+        out.writeByte(iterator.getWindingRule());
+        out.writeInt(segmentCount);
+        out.write(types, 0, segmentCount);
+        for (int i = 0; i < coordinateCount; i++) {
+            out.writeFloat(coordinates[i]);
+        }
+    }
+
+    static int getCoordinateCount(int segmentType) {
+        switch (segmentType) {
+            case PathIterator.SEG_MOVETO:
+            case PathIterator.SEG_LINETO:
+                return 2;
+            case PathIterator.SEG_QUADTO:
+                return 4;
+            case PathIterator.SEG_CUBICTO:
+                return 6;
+            default:
+                return 0;
+        }
+    }
+
+    private static byte getType(Entity entity) {
+        if (entity instanceof EntityGroup) {
+            return BinaryDesignFormat.TYPE_GROUP;
+        } else if (entity instanceof Rectangle) {
+            return BinaryDesignFormat.TYPE_RECTANGLE;
+        } else if (entity instanceof Ellipse) {
+            return BinaryDesignFormat.TYPE_ELLIPSE;
+        } else if (entity instanceof Path) {
+            return BinaryDesignFormat.TYPE_PATH;
+        } else if (entity instanceof Text) {
+            return BinaryDesignFormat.TYPE_TEXT;
+        }
+        return 0;
+    }
+
+    private static List<Entity> getSupportedEntities(List<Entity> entities) {
+        return entities.stream()
+                .filter(entity -> getType(entity) != 0)
+                .collect(Collectors.toList());
+    }
+
+    private static byte[] deflate(byte[] data) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 16);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+                out.write(data);
+            }
+            return bytes.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes the string as length prefixed UTF-8 bytes, unlike writeUTF this isn't limited to 64 KB
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, StringUtils.defaultString(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+    Copyright 2022 Will Winder
+
+    This file is part of Universal Gcode Sender (UGS).
+
+    UGS is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    UGS is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with UGS.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.willwinder.ugs.nbp.designer.io.ugsd.binary;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+
+import java.awt.geom.AffineTransform;
+
+/**
+ * The header of an entity record in a binary design file, containing the common
+ * attributes of the entity without its geometry.
+ *
+ * @author Joacim Breiler
+ */
+class EntityHeader {
+    private final byte type;
+    private final String name;
+    private final double startDepth;
+    private final double targetDepth;
+    private final CutType cutType;
+    private final AffineTransform transform;
+    private final int childCount;
+    private final int bodyLength;
+
+    EntityHeader(byte type, String name, double startDepth, double targetDepth, CutType cutType, AffineTransform transform, int childCount, int bodyLength) {
+        this.type = type;
+        this.name = name;
+        this.startDepth = startDepth;
+        this.targetDepth = targetDepth;
+        this.cutType = cutType;
+        this.transform = transform;
+        this.childCount = childCount;
+        this.bodyLength = bodyLength;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getStartDepth() {
+        return startDepth;
+    }
+
+    public double getTargetDepth() {
+        return targetDepth;
+    }
+
+    public CutType getCutType() {
+        return cutType;
+    }
+
+    /**
+     * Returns the number of children if the entity is a group
+     *
+     * @return the number of children
+     */
+    public int getChildCount() {
+        return childCount;
+    }
+
+    byte getTypeId() {
+        return type;
+    }
+
+    AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    int getBodyLength() {
+        return bodyLength;
+    }
+}
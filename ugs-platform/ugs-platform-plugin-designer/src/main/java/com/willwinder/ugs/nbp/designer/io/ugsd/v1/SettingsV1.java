@@ -1,5 +1,6 @@
 package com.willwinder.ugs.nbp.designer.io.ugsd.v1;
 
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.PocketStrategy;
 import com.willwinder.ugs.nbp.designer.model.Settings;
 import com.willwinder.universalgcodesender.model.UnitUtils;
 
@@ -13,6 +14,9 @@ public class SettingsV1 {
     private double toolStepOver = 0.3;
     private double depthPerPass = 1;
     private double spindleSpeed = 0;
+    private PocketStrategy pocketStrategy = PocketStrategy.OFFSET;
+    private boolean linkPocketPasses = false;
+    private double importSimplifyTolerance = 0;
 
     public int getPlungeSpeed() {
         return plungeSpeed;
@@ -86,6 +90,47 @@ public class SettingsV1 {
         this.spindleSpeed = spindleSpeed;
     }
 
+    public PocketStrategy getPocketStrategy() {
+        return pocketStrategy;
+    }
+
+    public void setPocketStrategy(PocketStrategy pocketStrategy) {
+        this.pocketStrategy = pocketStrategy;
+    }
+
+    public boolean isLinkPocketPasses() {
+        return linkPocketPasses;
+    }
+
+    public void setLinkPocketPasses(boolean linkPocketPasses) {
+        this.linkPocketPasses = linkPocketPasses;
+    }
+
+    public double getImportSimplifyTolerance() {
+        return importSimplifyTolerance;
+    }
+
+    public void setImportSimplifyTolerance(double importSimplifyTolerance) {
+        this.importSimplifyTolerance = importSimplifyTolerance;
+    }
+
+    public static SettingsV1 fromInternal(Settings settings) {
+        SettingsV1 result = new SettingsV1();
+        result.setFeedSpeed(settings.getFeedSpeed());
+        result.setDepthPerPass(settings.getDepthPerPass());
+        result.setStockThickness(settings.getStockThickness());
+        result.setPlungeSpeed(settings.getPlungeSpeed());
+        result.setPreferredUnits(settings.getPreferredUnits());
+        result.setSafeHeight(settings.getSafeHeight());
+        result.setToolDiameter(settings.getToolDiameter());
+        result.setToolStepOver(settings.getToolStepOver());
+        result.setSpindleSpeed(settings.getSpindleSpeed());
+        result.setPocketStrategy(settings.getPocketStrategy());
+        result.setLinkPocketPasses(settings.isLinkPocketPasses());
+        result.setImportSimplifyTolerance(settings.getImportSimplifyTolerance());
+        return result;
+    }
+
     public Settings toInternal() {
         Settings settings = new Settings();
         settings.setSafeHeight(safeHeight);
@@ -97,6 +142,9 @@ public class SettingsV1 {
         settings.setDepthPerPass(depthPerPass);
         settings.setFeedSpeed(feedSpeed);
         settings.setSpindleSpeed(spindleSpeed);
+        settings.setPocketStrategy(pocketStrategy != null ? pocketStrategy : PocketStrategy.OFFSET);
+        settings.setLinkPocketPasses(linkPocketPasses);
+        settings.setImportSimplifyTolerance(importSimplifyTolerance);
         return settings;
     }
 }
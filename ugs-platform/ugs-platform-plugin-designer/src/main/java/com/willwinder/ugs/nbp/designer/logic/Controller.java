@@ -37,6 +37,8 @@ import com.willwinder.ugs.nbp.designer.actions.UnionAction;
 import com.willwinder.ugs.nbp.designer.entities.Entity;
 import com.willwinder.ugs.nbp.designer.entities.selection.SelectionManager;
 import com.willwinder.ugs.nbp.designer.gui.Drawing;
+import com.willwinder.ugs.nbp.designer.gui.DrawingEvent;
+import com.willwinder.ugs.nbp.designer.io.gcode.ToolPathCache;
 import com.willwinder.ugs.nbp.designer.model.Design;
 import com.willwinder.ugs.nbp.designer.model.Settings;
 
@@ -58,6 +60,7 @@ public class Controller {
     private final UndoManager undoManager;
     private final Map<Class<? extends Action>, Action> actionMap = new HashMap<>();
     private final Drawing drawing;
+    private final ToolPathCache toolPathCache = new ToolPathCache();
     private Tool tool;
 
     public Controller(SelectionManager selectionManager, UndoManager undoManager) {
@@ -65,6 +68,11 @@ public class Controller {
         this.selectionManager = selectionManager;
         this.drawing = new Drawing(this);
         this.undoManager.addListener(this.drawing::repaint);
+        this.drawing.addListener(event -> {
+            if (event == DrawingEvent.ENTITY_REMOVED) {
+                toolPathCache.retainAll(drawing.getEntities());
+            }
+        });
 
         registerActions();
         setTool(Tool.SELECT);
@@ -117,6 +125,7 @@ public class Controller {
 
     public void newDrawing() {
         drawing.clear();
+        toolPathCache.clear();
         notifyListeners(ControllerEventType.NEW_DRAWING);
     }
 
@@ -124,6 +133,15 @@ public class Controller {
         listeners.forEach(l -> l.onControllerEvent(event));
     }
 
+    /**
+     * Returns the cache with the generated tool paths of the entities in the drawing
+     *
+     * @return the tool path cache
+     */
+    public ToolPathCache getToolPathCache() {
+        return toolPathCache;
+    }
+
     public Settings getSettings() {
         return settings;
     }
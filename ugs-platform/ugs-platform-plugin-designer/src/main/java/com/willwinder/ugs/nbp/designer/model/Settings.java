@@ -19,6 +19,7 @@
 package com.willwinder.ugs.nbp.designer.model;
 
 import com.google.common.collect.Sets;
+import com.willwinder.ugs.nbp.designer.io.gcode.toolpaths.PocketStrategy;
 import com.willwinder.ugs.nbp.designer.logic.SettingsListener;
 import com.willwinder.universalgcodesender.Utils;
 import com.willwinder.universalgcodesender.model.UnitUtils;
@@ -36,6 +37,9 @@ public class Settings {
     private double toolStepOver = 0.3;
     private double depthPerPass = 1;
     private double spindleSpeed;
+    private PocketStrategy pocketStrategy = PocketStrategy.OFFSET;
+    private boolean linkPocketPasses = false;
+    private double importSimplifyTolerance = 0;
 
     public Settings() {
     }
@@ -165,6 +169,49 @@ public class Settings {
         this.spindleSpeed = spindleSpeed;
     }
 
+    /**
+     * Returns the strategy to use when clearing pockets
+     *
+     * @return the pocket strategy
+     */
+    public PocketStrategy getPocketStrategy() {
+        return pocketStrategy;
+    }
+
+    public void setPocketStrategy(PocketStrategy pocketStrategy) {
+        this.pocketStrategy = pocketStrategy;
+        notifyListeners();
+    }
+
+    /**
+     * Returns if the passes of a pocket should be linked without retracting the tool
+     *
+     * @return true if the passes should be linked
+     */
+    public boolean isLinkPocketPasses() {
+        return linkPocketPasses;
+    }
+
+    public void setLinkPocketPasses(boolean linkPocketPasses) {
+        this.linkPocketPasses = linkPocketPasses;
+        notifyListeners();
+    }
+
+    /**
+     * Returns the tolerance in millimeters for how much imported paths may deviate from the original
+     * when they are simplified. If zero the imported paths will not be simplified.
+     *
+     * @return the tolerance in millimeters
+     */
+    public double getImportSimplifyTolerance() {
+        return importSimplifyTolerance;
+    }
+
+    public void setImportSimplifyTolerance(double importSimplifyTolerance) {
+        this.importSimplifyTolerance = Math.max(0, importSimplifyTolerance);
+        notifyListeners();
+    }
+
     public void applySettings(Settings settings) {
         if (settings != null) {
             setDepthPerPass(settings.getDepthPerPass());
@@ -176,6 +223,9 @@ public class Settings {
             setPreferredUnits(settings.getPreferredUnits());
             setSafeHeight(settings.getSafeHeight());
             setSpindleSpeed(settings.getSpindleSpeed());
+            setPocketStrategy(settings.getPocketStrategy());
+            setLinkPocketPasses(settings.isLinkPocketPasses());
+            setImportSimplifyTolerance(settings.getImportSimplifyTolerance());
         }
     }
 }
@@ -174,7 +174,7 @@ public class DesignerTopComponent extends TopComponent implements UndoManagerLis
         try {
             File file = new File(Files.createTempDir(), dataObject.getName() + ".gcode");
             designWriter.write(file, controller);
-            backend.setGcodeFile(file);
+            backend.loadGcodeFile(file);
         } catch (Exception e) {
             throw new RuntimeException("Could not generate gcode");
         }
@@ -18,7 +18,10 @@
  */
 package com.willwinder.ugs.nbp.designer.platform;
 
+import com.willwinder.ugs.nbp.designer.io.DesignWriter;
 import com.willwinder.ugs.nbp.designer.io.ugsd.UgsDesignWriter;
+import com.willwinder.ugs.nbp.designer.io.ugsd.binary.BinaryDesignReader;
+import com.willwinder.ugs.nbp.designer.io.ugsd.binary.BinaryDesignWriter;
 import com.willwinder.ugs.nbp.designer.logic.Controller;
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
 import org.apache.commons.lang3.builder.EqualsBuilder;
@@ -56,11 +59,17 @@ public class UgsSaveCookie implements Icon, SaveCookie {
             e.printStackTrace();
         }
 
-        UgsDesignWriter writer = new UgsDesignWriter();
-        writer.write(new File(dataObject.getPrimaryFile().getPath()), controller);
+        // Keep the format of the file, new files are saved in the binary format
+        File file = new File(dataObject.getPrimaryFile().getPath());
+        DesignWriter writer = isJsonDesign(file) ? new UgsDesignWriter() : new BinaryDesignWriter();
+        writer.write(file, controller);
         dataObject.setModified(false);
     }
 
+    private static boolean isJsonDesign(File file) {
+        return file.length() > 0 && !BinaryDesignReader.isBinaryDesign(file);
+    }
+
     @Override
     public boolean equals(Object obj) {
         return EqualsBuilder.reflectionEquals(this, obj, false);
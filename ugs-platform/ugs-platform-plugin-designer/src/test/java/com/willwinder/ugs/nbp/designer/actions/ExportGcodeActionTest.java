@@ -0,0 +1,76 @@
+package com.willwinder.ugs.nbp.designer.actions;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.io.gcode.DesignSnapshot;
+import com.willwinder.ugs.nbp.designer.io.gcode.ToolPathCache;
+import com.willwinder.ugs.nbp.designer.io.gcode.ToolPathProgressListener;
+import com.willwinder.ugs.nbp.designer.model.Settings;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExportGcodeActionTest {
+
+    @Test
+    public void cancelledExportShouldRemoveTheIncompleteFile() throws IOException {
+        File file = Files.createTempFile("export", ".gcode").toFile();
+        DesignSnapshot snapshot = DesignSnapshot.of(createEntities(), new Settings(), new ToolPathCache());
+        ToolPathProgressListener progressListener = new ToolPathProgressListener() {
+            @Override
+            public void onProgress(int completed, int total) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        try {
+            ExportGcodeAction.export(file, snapshot, progressListener);
+            fail("The export should have been cancelled");
+        } catch (CancellationException e) {
+            assertFalse(file.exists());
+        }
+    }
+
+    @Test
+    public void exportShouldNotBeAffectedByChangesAfterTheSnapshot() throws IOException {
+        File file = Files.createTempFile("export", ".gcode").toFile();
+        List<Entity> entities = createEntities();
+        DesignSnapshot snapshot = DesignSnapshot.of(entities, new Settings(), new ToolPathCache());
+        ((Rectangle) entities.get(0)).setCutType(CutType.NONE);
+
+        ExportGcodeAction.export(file, snapshot, (completed, total) -> {
+        });
+
+        String gcode = FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        assertTrue(gcode.contains("Square - Pocket"));
+        assertEquals(1, snapshot.getCuttables().size());
+        assertTrue(file.delete());
+    }
+
+    private static List<Entity> createEntities() {
+        Rectangle rectangle = new Rectangle(10, 10);
+        rectangle.setName("Square");
+        rectangle.setSize(new Size(10, 10));
+        rectangle.setCutType(CutType.POCKET);
+        rectangle.setTargetDepth(1);
+        return Collections.singletonList(rectangle);
+    }
+}
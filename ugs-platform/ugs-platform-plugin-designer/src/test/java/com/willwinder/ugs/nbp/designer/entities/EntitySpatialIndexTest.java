@@ -0,0 +1,103 @@
+package com.willwinder.ugs.nbp.designer.entities;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EntitySpatialIndexTest {
+    private EntitySpatialIndex index;
+
+    @Before
+    public void setUp() {
+        index = new EntitySpatialIndex();
+    }
+
+    @Test
+    public void getEntitiesAtShouldReturnEntitiesAtPoint() {
+        Rectangle rectangle1 = createRectangle(0, 0);
+        Rectangle rectangle2 = createRectangle(100, 100);
+        index.add(rectangle1);
+        index.add(rectangle2);
+
+        assertEquals(Collections.singletonList(rectangle1), index.getEntitiesAt(new Point2D.Double(5, 5)));
+        assertEquals(Collections.singletonList(rectangle2), index.getEntitiesAt(new Point2D.Double(105, 105)));
+        assertTrue(index.getEntitiesAt(new Point2D.Double(50, 50)).isEmpty());
+    }
+
+    @Test
+    public void getEntitiesIntersectingShouldReturnEntitiesWithinShape() {
+        Rectangle rectangle1 = createRectangle(0, 0);
+        Rectangle rectangle2 = createRectangle(100, 100);
+        Rectangle rectangle3 = createRectangle(200, 200);
+        index.add(rectangle1);
+        index.add(rectangle2);
+        index.add(rectangle3);
+
+        List<Entity> result = index.getEntitiesIntersecting(new Rectangle2D.Double(-5, -5, 120, 120));
+        assertEquals(2, result.size());
+        assertTrue(result.containsAll(Arrays.asList(rectangle1, rectangle2)));
+    }
+
+    @Test
+    public void updateShouldMoveTheEntityInTheIndex() {
+        Rectangle rectangle = createRectangle(0, 0);
+        index.add(rectangle);
+
+        rectangle.move(new Point2D.Double(100, 100));
+        index.update(rectangle);
+
+        assertTrue(index.getEntitiesAt(new Point2D.Double(5, 5)).isEmpty());
+        assertEquals(Collections.singletonList(rectangle), index.getEntitiesAt(new Point2D.Double(105, 105)));
+    }
+
+    @Test
+    public void updateShouldReturnTheRegionBeforeAndAfterTheChange() {
+        Rectangle rectangle = createRectangle(0, 0);
+        index.add(rectangle);
+
+        rectangle.move(new Point2D.Double(100, 0));
+        Rectangle2D region = index.update(rectangle).orElseThrow(IllegalStateException::new);
+
+        assertEquals(new Rectangle2D.Double(0, 0, 110, 10), region);
+        assertFalse(index.update(createRectangle(0, 0)).isPresent());
+    }
+
+    @Test
+    public void groupsShouldIndexTheirChildren() {
+        Rectangle rectangle1 = createRectangle(0, 0);
+        Rectangle rectangle2 = createRectangle(100, 100);
+        EntityGroup group = new EntityGroup();
+        group.addChild(rectangle1);
+        group.addChild(rectangle2);
+
+        index.add(group);
+        assertEquals(2, index.size());
+        assertEquals(Collections.singletonList(rectangle1), index.getEntitiesAt(new Point2D.Double(5, 5)));
+
+        group.move(new Point2D.Double(10, 0));
+        index.update(group);
+        assertEquals(Collections.singletonList(rectangle1), index.getEntitiesAt(new Point2D.Double(15, 5)));
+        assertEquals(Collections.singletonList(rectangle2), index.getEntitiesAt(new Point2D.Double(115, 105)));
+
+        index.remove(group);
+        assertEquals(0, index.size());
+        assertTrue(index.getEntitiesAt(new Point2D.Double(15, 5)).isEmpty());
+    }
+
+    private static Rectangle createRectangle(double x, double y) {
+        Rectangle rectangle = new Rectangle(x, y);
+        rectangle.setSize(new Size(10, 10));
+        return rectangle;
+    }
+}
@@ -0,0 +1,204 @@
+package com.willwinder.ugs.nbp.designer.gui.imagetracer;
+
+import jankovicsandras.imagetracer.ImageTracer;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.PathIterator;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Verifies that the {@link ImageTraceEngine} traces the same paths as the {@link ImageTracer} it was ported from
+ */
+public class ImageTraceEngineTest {
+
+    @Test
+    public void traceShouldCreateTheSamePathsAsImageTracerForShapes() throws Exception {
+        assertSamePaths(createShapesImage(), createSettings(4, 0, 20));
+    }
+
+    @Test
+    public void traceShouldCreateTheSamePathsAsImageTracerWithBlur() throws Exception {
+        assertSamePaths(createShapesImage(), createSettings(4, 2, 20));
+    }
+
+    @Test
+    public void traceShouldCreateTheSamePathsAsImageTracerForNoise() throws Exception {
+        assertSamePaths(createNoiseImage(), createSettings(6, 0, 20));
+    }
+
+    @Test
+    public void traceShouldCreateTheSamePathsAsImageTracerForGradients() throws Exception {
+        assertSamePaths(createGradientImage(), createSettings(8, 1, 64));
+    }
+
+    private static void assertSamePaths(BufferedImage image, TraceSettings settings) throws Exception {
+        byte[][] palette = TraceUtils.generatePalette(settings.getNumberOfColors(), settings.getStartColor(), settings.getEndColor());
+        TraceResult result = new ImageTraceEngine(settings).trace(image, copy(palette));
+        ImageTracer.IndexedImage expected = new ImageTracer().imageToTracedata(image, createOptions(settings), copy(palette));
+
+        assertEquals(expected.layers.size(), result.getLayerCount());
+        for (int layer = 0; layer < expected.layers.size(); layer++) {
+            assertEquals(new Color(expected.palette[layer][0] + 128, expected.palette[layer][1] + 128, expected.palette[layer][2] + 128, expected.palette[layer][3] + 128), result.getLayerColor(layer));
+
+            List<String> expectedPaths = new ArrayList<>();
+            for (List<Double[]> segments : expected.layers.get(layer)) {
+                expectedPaths.add(toString(segments));
+            }
+
+            List<String> resultPaths = new ArrayList<>();
+            for (TraceResult.TracedPath path : result.getPaths()) {
+                if (path.getLayer() == layer) {
+                    resultPaths.add(toString(path.getShape().getPathIterator(null)));
+                }
+            }
+
+            Collections.sort(expectedPaths);
+            Collections.sort(resultPaths);
+            assertEquals("Paths in layer " + layer, expectedPaths, resultPaths);
+        }
+        assertFalse("The image should create at least one path", result.getPaths().isEmpty());
+    }
+
+    private static String toString(List<Double[]> segments) {
+        StringBuilder result = new StringBuilder();
+        append(result, "M", segments.get(0)[1], segments.get(0)[2]);
+        for (Double[] segment : segments) {
+            if (segment[0] == 1.0) {
+                append(result, "L", segment[3], segment[4]);
+            } else {
+                append(result, "Q", segment[3], segment[4], segment[5], segment[6]);
+            }
+        }
+        result.append("Z");
+        return result.toString();
+    }
+
+    private static String toString(PathIterator iterator) {
+        StringBuilder result = new StringBuilder();
+        double[] coords = new double[6];
+        for (; !iterator.isDone(); iterator.next()) {
+            switch (iterator.currentSegment(coords)) {
+                case PathIterator.SEG_MOVETO:
+                    append(result, "M", coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_LINETO:
+                    append(result, "L", coords[0], coords[1]);
+                    break;
+                case PathIterator.SEG_QUADTO:
+                    append(result, "Q", coords[0], coords[1], coords[2], coords[3]);
+                    break;
+                case PathIterator.SEG_CLOSE:
+                    result.append("Z");
+                    break;
+                default:
+                    result.append("?");
+                    break;
+            }
+        }
+        return result.toString();
+    }
+
+    private static void append(StringBuilder result, String command, double... coords) {
+        result.append(command);
+        for (double coord : coords) {
+            result.append(String.format(Locale.ROOT, " %.6f", coord));
+        }
+        result.append(' ');
+    }
+
+    private static byte[][] copy(byte[][] palette) {
+        byte[][] result = new byte[palette.length][];
+        for (int i = 0; i < palette.length; i++) {
+            result[i] = palette[i].clone();
+        }
+        return result;
+    }
+
+    private static TraceSettings createSettings(int numberOfColors, int blurRadius, int blurDelta) {
+        TraceSettings settings = new TraceSettings();
+        settings.setLineThreshold(1f);
+        settings.setQuadThreshold(1f);
+        settings.setPathOmit(8);
+        settings.setNumberOfColors(numberOfColors);
+        settings.setColorQuantize(3);
+        settings.setBlurRadius(blurRadius);
+        settings.setBlurDelta(blurDelta);
+        settings.setStartColor(255);
+        settings.setEndColor(0);
+        return settings;
+    }
+
+    /**
+     * The options the dialog used when the images were traced with the {@link ImageTracer}
+     */
+    private static HashMap<String, Float> createOptions(TraceSettings settings) {
+        HashMap<String, Float> options = new HashMap<>();
+        options.put("ltres", settings.getLineThreshold());
+        options.put("qtres", settings.getQuadThreshold());
+        options.put("pathomit", (float) settings.getPathOmit());
+        options.put("colorsampling", 0f);
+        options.put("numberofcolors", (float) settings.getNumberOfColors());
+        options.put("mincolorratio", 0f);
+        options.put("colorquantcycles", (float) settings.getColorQuantize());
+        options.put("blurradius", (float) settings.getBlurRadius());
+        options.put("blurdelta", (float) settings.getBlurDelta());
+        return options;
+    }
+
+    private static BufferedImage createShapesImage() {
+        BufferedImage image = new BufferedImage(120, 90, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, 120, 90);
+        g.setColor(Color.BLACK);
+        g.fillRect(10, 10, 40, 30);
+        g.setColor(Color.GRAY);
+        g.fill(new Ellipse2D.Double(60, 20, 50, 50));
+        g.setColor(Color.WHITE);
+        g.fill(new Ellipse2D.Double(75, 35, 20, 20));
+        g.setColor(Color.DARK_GRAY);
+        g.fillPolygon(new int[]{10, 50, 30}, new int[]{80, 80, 50}, 3);
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage createNoiseImage() {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < image.getHeight(); y += 4) {
+            for (int x = 0; x < image.getWidth(); x += 4) {
+                int value = random.nextInt(256);
+                Graphics2D g = image.createGraphics();
+                g.setColor(new Color(value, value, value));
+                g.fillRect(x, y, 4 + random.nextInt(4), 4 + random.nextInt(4));
+                g.dispose();
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage createGradientImage() {
+        BufferedImage image = new BufferedImage(100, 80, BufferedImage.TYPE_BYTE_GRAY);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int value = (int) (127.5 + 127.5 * Math.sin(x / 9.0) * Math.cos(y / 7.0));
+                image.setRGB(x, y, new Color(value, value, value).getRGB());
+            }
+        }
+        return image;
+    }
+}
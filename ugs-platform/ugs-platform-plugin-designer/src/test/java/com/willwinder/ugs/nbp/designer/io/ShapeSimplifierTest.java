@@ -0,0 +1,132 @@
+package com.willwinder.ugs.nbp.designer.io;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+import org.junit.Test;
+
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShapeSimplifierTest {
+
+    @Test
+    public void simplifyShouldRemovePointsWithinTolerance() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        for (int i = 1; i <= 100; i++) {
+            path.lineTo(i, i % 2 == 0 ? 0 : 0.01);
+        }
+
+        Shape result = ShapeSimplifier.simplify(path, 0.1);
+
+        assertEquals(2, countPoints(result));
+        assertEquals(new Rectangle2D.Double(0, 0, 100, 0), result.getBounds2D());
+    }
+
+    @Test
+    public void simplifyShouldKeepPointsOutsideTolerance() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        path.lineTo(5, 2.51);
+        path.lineTo(10, 5);
+        path.lineTo(15, 2.49);
+        path.lineTo(20, 0);
+
+        Shape result = ShapeSimplifier.simplify(path, 0.1);
+
+        assertEquals(3, countPoints(result));
+        assertEquals(new Rectangle2D.Double(0, 0, 20, 5), result.getBounds2D());
+    }
+
+    @Test
+    public void simplifyShouldKeepClosedPathsClosed() {
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 0);
+        for (int i = 1; i <= 10; i++) {
+            path.lineTo(i, 0);
+        }
+        path.lineTo(10, 10);
+        path.lineTo(0, 10);
+        path.closePath();
+
+        Shape result = ShapeSimplifier.simplify(path, 0.1);
+
+        assertEquals(4, countPoints(result));
+        assertEquals(1, countSegments(result, PathIterator.SEG_CLOSE));
+        assertEquals(new Rectangle2D.Double(0, 0, 10, 10), result.getBounds2D());
+    }
+
+    @Test
+    public void simplifyShouldConvertCurvesToLinesWithinTolerance() {
+        Ellipse2D circle = new Ellipse2D.Double(0, 0, 100, 100);
+
+        Shape result = ShapeSimplifier.simplify(circle, 0.5);
+
+        assertEquals(0, countSegments(result, PathIterator.SEG_CUBICTO));
+        assertTrue(countPoints(result) < countPoints(new Path2D.Double(circle).getPathIterator(null, 0.1)));
+        assertEquals(100, result.getBounds2D().getWidth(), 1);
+        assertEquals(100, result.getBounds2D().getHeight(), 1);
+    }
+
+    @Test
+    public void simplifyShouldUpdatePathsInGroups() {
+        Path path = new Path();
+        path.moveTo(0, 0);
+        path.lineTo(5, 0.01);
+        path.lineTo(10, 0);
+        EntityGroup group = new EntityGroup();
+        group.addChild(path);
+
+        ShapeSimplifier.simplify(Collections.<Entity>singletonList(group), 0.1);
+
+        assertEquals(2, countPoints(path.getShape()));
+        assertEquals(new Rectangle2D.Double(0, 0, 10, 0), path.getShape().getBounds2D());
+    }
+
+    @Test
+    public void simplifyWithoutToleranceShouldNotChangeThePaths() {
+        Path path = new Path();
+        path.moveTo(0, 0);
+        path.lineTo(5, 0.01);
+        path.lineTo(10, 0);
+
+        ShapeSimplifier.simplify(Collections.<Entity>singletonList(path), 0);
+
+        assertEquals(3, countPoints(path.getShape()));
+    }
+
+    private static int countPoints(Shape shape) {
+        return countPoints(shape.getPathIterator(null));
+    }
+
+    private static int countPoints(PathIterator iterator) {
+        int result = 0;
+        double[] coords = new double[6];
+        for (; !iterator.isDone(); iterator.next()) {
+            int type = iterator.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO || type == PathIterator.SEG_LINETO) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    private static int countSegments(Shape shape, int segmentType) {
+        int result = 0;
+        double[] coords = new double[6];
+        for (PathIterator iterator = shape.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+            if (iterator.currentSegment(coords) == segmentType) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package com.willwinder.ugs.nbp.designer.io.dxf;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DxfPathJoinerTest {
+
+    private DxfPathJoiner joiner;
+
+    @Before
+    public void setUp() {
+        joiner = new DxfPathJoiner();
+    }
+
+    @Test
+    public void addShouldJoinSegmentsInAnyOrderAndDirection() {
+        joiner.add(DxfSegment.line(0, 0, 1, 0));
+        joiner.add(DxfSegment.line(3, 0, 2, 0));
+        joiner.add(DxfSegment.line(2, 0, 1, 0));
+
+        List<Path2D> paths = joiner.getPaths();
+        assertEquals(1, paths.size());
+        assertEquals(new Rectangle2D.Double(0, 0, 3, 0), paths.get(0).getBounds2D());
+        assertEquals(1, countSegments(paths.get(0), PathIterator.SEG_MOVETO));
+        assertEquals(3, countSegments(paths.get(0), PathIterator.SEG_LINETO));
+        assertFalse(isClosed(paths.get(0)));
+    }
+
+    @Test
+    public void addShouldCloseConnectedPaths() {
+        joiner.add(DxfSegment.line(0, 0, 10, 0));
+        joiner.add(DxfSegment.line(10, 10, 0, 10));
+        joiner.add(DxfSegment.line(10, 0, 10, 10));
+        joiner.add(DxfSegment.line(0, 0, 0, 10));
+
+        List<Path2D> paths = joiner.getPaths();
+        assertEquals(1, paths.size());
+        assertTrue(isClosed(paths.get(0)));
+        assertEquals(new Rectangle2D.Double(0, 0, 10, 10), paths.get(0).getBounds2D());
+    }
+
+    @Test
+    public void addShouldJoinArcsWithLines() {
+        joiner.add(DxfSegment.line(0, 0, 10, 0));
+        joiner.add(DxfSegment.arc(5, 0, 5, 0, Math.PI));
+
+        List<Path2D> paths = joiner.getPaths();
+        assertEquals(1, paths.size());
+        assertTrue(isClosed(paths.get(0)));
+        assertEquals(2, countSegments(paths.get(0), PathIterator.SEG_CUBICTO));
+
+        Rectangle2D bounds = paths.get(0).getBounds2D();
+        assertEquals(5, bounds.getMaxY(), 0.01);
+    }
+
+    @Test
+    public void addShouldKeepSeparatePaths() {
+        joiner.add(DxfSegment.line(0, 0, 1, 0));
+        joiner.add(DxfSegment.line(5, 5, 6, 5));
+
+        assertEquals(2, joiner.getPaths().size());
+    }
+
+    @Test
+    public void addShouldJoinEndPointsInNeighbouringBuckets() {
+        joiner.add(DxfSegment.line(0, 0, 1, 0.49e-6));
+        joiner.add(DxfSegment.line(1, 0.51e-6, 2, 0));
+        joiner.add(DxfSegment.line(2.0000006, 0, 3, 0));
+
+        List<Path2D> paths = joiner.getPaths();
+        assertEquals(1, paths.size());
+        assertEquals(3, countSegments(paths.get(0), PathIterator.SEG_LINETO));
+    }
+
+    private static int countSegments(Path2D path, int type) {
+        int count = 0;
+        double[] coords = new double[6];
+        for (PathIterator iterator = path.getPathIterator(null); !iterator.isDone(); iterator.next()) {
+            if (iterator.currentSegment(coords) == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isClosed(Path2D path) {
+        return countSegments(path, PathIterator.SEG_CLOSE) > 0;
+    }
+}
@@ -0,0 +1,91 @@
+package com.willwinder.ugs.nbp.designer.io.dxf;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Group;
+import com.willwinder.ugs.nbp.designer.io.DesignReader;
+import com.willwinder.ugs.nbp.designer.model.Design;
+import org.junit.Test;
+
+import java.awt.geom.Rectangle2D;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class DxfStreamReaderTest {
+    private static final String SHAPES_FILE = "shapes.dxf";
+
+    @Test
+    public void readShouldCreateTheSameLayersAsTheDxfReader() {
+        Design expected = read(new DxfReader());
+        Design result = read(new DxfStreamReader());
+
+        assertEquals(1, expected.getEntities().size());
+        assertEquals(1, result.getEntities().size());
+        assertBoundsEquals(expected.getEntities().get(0).getBounds(), result.getEntities().get(0).getBounds());
+
+        Map<String, Group> expectedLayers = getLayers(expected);
+        Map<String, Group> resultLayers = getLayers(result);
+        assertEquals(3, expectedLayers.size());
+        assertEquals(expectedLayers.keySet(), resultLayers.keySet());
+
+        for (Map.Entry<String, Group> expectedLayer : expectedLayers.entrySet()) {
+            assertGroupEquals(expectedLayer.getValue(), resultLayers.get(expectedLayer.getKey()));
+        }
+    }
+
+    @Test
+    public void readShouldSkipUnsupportedEntities() {
+        Group holes = getLayers(read(new DxfStreamReader())).get("Holes");
+
+        assertEquals(1, holes.getChildren().size());
+        assertEquals("Circles", holes.getChildren().get(0).getName());
+        assertEquals(2, ((Group) holes.getChildren().get(0)).getChildren().size());
+    }
+
+    private static void assertGroupEquals(Group expected, Group result) {
+        assertNotNull(result);
+        assertEquals(expected.getName(), result.getName());
+        assertBoundsEquals(expected.getBounds(), result.getBounds());
+
+        List<Entity> expectedChildren = expected.getChildren();
+        List<Entity> resultChildren = result.getChildren();
+        assertEquals("Number of children in " + expected.getName(), expectedChildren.size(), resultChildren.size());
+        for (int i = 0; i < expectedChildren.size(); i++) {
+            Entity expectedChild = expectedChildren.get(i);
+            Entity resultChild = resultChildren.get(i);
+            if (expectedChild instanceof Group) {
+                assertTrue(resultChild instanceof Group);
+                assertGroupEquals((Group) expectedChild, (Group) resultChild);
+            } else {
+                assertEquals(expectedChild.getClass(), resultChild.getClass());
+                assertBoundsEquals(expectedChild.getBounds(), resultChild.getBounds());
+            }
+        }
+    }
+
+    private static void assertBoundsEquals(Rectangle2D expected, Rectangle2D result) {
+        assertEquals(expected.getX(), result.getX(), 0.001);
+        assertEquals(expected.getY(), result.getY(), 0.001);
+        assertEquals(expected.getWidth(), result.getWidth(), 0.001);
+        assertEquals(expected.getHeight(), result.getHeight(), 0.001);
+    }
+
+    private static Map<String, Group> getLayers(Design design) {
+        Group group = (Group) design.getEntities().get(0);
+        return group.getChildren().stream()
+                .map(Group.class::cast)
+                .collect(Collectors.toMap(Entity::getName, Function.identity()));
+    }
+
+    private static Design read(DesignReader reader) {
+        InputStream inputStream = DxfStreamReaderTest.class.getResourceAsStream(SHAPES_FILE);
+        assertNotNull(inputStream);
+        return reader.read(inputStream).orElseThrow(IllegalStateException::new);
+    }
+}
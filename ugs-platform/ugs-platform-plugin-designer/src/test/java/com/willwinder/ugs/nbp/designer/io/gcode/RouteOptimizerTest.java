@@ -0,0 +1,152 @@
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import com.willwinder.universalgcodesender.model.Axis;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RouteOptimizerTest {
+
+    @Test
+    public void optimizeShouldShortenTheRapidDistance() {
+        Random random = new Random(1);
+        List<Cuttable> cuttables = new ArrayList<>();
+        List<GcodePath> gcodePaths = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Rectangle rectangle = createRectangle(CutType.INSIDE_PATH, random.nextDouble() * 500, random.nextDouble() * 500, 2);
+            cuttables.add(rectangle);
+            gcodePaths.add(createSquarePath(rectangle.getPosition().getX(), rectangle.getPosition().getY(), 2, 1));
+        }
+
+        RouteOptimizer routeOptimizer = new RouteOptimizer();
+        List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(cuttables, gcodePaths);
+
+        assertEquals(cuttables.size(), route.size());
+        assertTrue("Expected the rapid distance " + routeOptimizer.getRapidDistance() + " to be five times shorter than " + (routeOptimizer.getRapidDistance() + routeOptimizer.getRapidDistanceSaved()),
+                routeOptimizer.getRapidDistanceSaved() > routeOptimizer.getRapidDistance() * 4);
+    }
+
+    @Test
+    public void optimizeWithLimitedEvaluationsShouldAlwaysGiveTheSameRoute() {
+        Random random = new Random(1);
+        List<Cuttable> cuttables = new ArrayList<>();
+        List<GcodePath> gcodePaths = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Rectangle rectangle = createRectangle(CutType.INSIDE_PATH, random.nextDouble() * 500, random.nextDouble() * 500, 2);
+            cuttables.add(rectangle);
+            gcodePaths.add(createSquarePath(rectangle.getPosition().getX(), rectangle.getPosition().getY(), 2, 1));
+        }
+
+        RouteOptimizer routeOptimizer = new RouteOptimizer(50000);
+        List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(cuttables, gcodePaths);
+        double rapidDistance = routeOptimizer.getRapidDistance();
+
+        for (int i = 0; i < 3; i++) {
+            List<RouteOptimizer.ToolPath> otherRoute = routeOptimizer.optimize(cuttables, gcodePaths);
+            assertEquals(rapidDistance, routeOptimizer.getRapidDistance(), 0);
+            for (int j = 0; j < route.size(); j++) {
+                assertSame(route.get(j).getCuttable(), otherRoute.get(j).getCuttable());
+            }
+        }
+
+        RouteOptimizer unlimitedOptimizer = new RouteOptimizer();
+        unlimitedOptimizer.optimize(cuttables, gcodePaths);
+        assertTrue(rapidDistance > unlimitedOptimizer.getRapidDistance());
+    }
+
+    @Test
+    public void optimizeShouldCutCuttablesInTheOrderOfTheShortestRoute() {
+        List<Cuttable> cuttables = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cuttables.add(createRectangle(CutType.INSIDE_PATH, i * 10, 0, 2));
+        }
+        List<Cuttable> shuffled = new ArrayList<>(cuttables);
+        Collections.shuffle(shuffled, new Random(1));
+
+        List<GcodePath> gcodePaths = new ArrayList<>();
+        for (Cuttable cuttable : shuffled) {
+            gcodePaths.add(createSquarePath(cuttable.getPosition().getX(), cuttable.getPosition().getY(), 2, 1));
+        }
+
+        RouteOptimizer routeOptimizer = new RouteOptimizer();
+        List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(shuffled, gcodePaths);
+
+        for (int i = 0; i < cuttables.size(); i++) {
+            assertEquals(cuttables.get(i), route.get(i).getCuttable());
+        }
+
+        // The contours are entered and exited at the same corner, so the shortest route is to the last contour
+        assertEquals(90, routeOptimizer.getRapidDistance(), 0.001);
+    }
+
+    @Test
+    public void optimizeShouldCutInnerCuttablesBeforeOuterProfiles() {
+        Rectangle outer = createRectangle(CutType.OUTSIDE_PATH, 0, 0, 20);
+        Rectangle inner = createRectangle(CutType.POCKET, 15, 15, 2);
+
+        RouteOptimizer routeOptimizer = new RouteOptimizer();
+        List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(Arrays.asList(outer, inner),
+                Arrays.asList(createSquarePath(0, 0, 20, 1), createSquarePath(15, 15, 2, 1)));
+
+        assertEquals(inner, route.get(0).getCuttable());
+        assertEquals(outer, route.get(1).getCuttable());
+    }
+
+    @Test
+    public void optimizeShouldStartClosedContoursAtTheClosestPoint() {
+        Rectangle rectangle = createRectangle(CutType.INSIDE_PATH, -20, -20, 10);
+
+        RouteOptimizer routeOptimizer = new RouteOptimizer();
+        List<RouteOptimizer.ToolPath> route = routeOptimizer.optimize(Arrays.asList(rectangle), Arrays.asList(createSquarePath(-20, -20, 10, 2)));
+
+        List<Segment> segments = route.get(0).getGcodePath().getSegments();
+        assertEquals(new PartialPosition(-10d, -10d, UnitUtils.Units.MM), segments.get(1).getPoint());
+        assertEquals(new PartialPosition(-10d, -10d, -1d, UnitUtils.Units.MM), segments.get(3).getPoint());
+
+        // The direction of the contour should be kept
+        assertEquals(new PartialPosition(-20d, -10d, -1d, UnitUtils.Units.MM), segments.get(5).getPoint());
+        assertEquals(new PartialPosition(-10d, -10d, -1d, UnitUtils.Units.MM), segments.get(8).getPoint());
+        assertEquals(Math.sqrt(200), routeOptimizer.getRapidDistance(), 0.001);
+    }
+
+    private static Rectangle createRectangle(CutType cutType, double x, double y, double size) {
+        Rectangle rectangle = new Rectangle(x, y);
+        rectangle.setSize(new Size(size, size));
+        rectangle.setCutType(cutType);
+        return rectangle;
+    }
+
+    private static GcodePath createSquarePath(double x, double y, double size, int passes) {
+        double[][] points = {{x, y}, {x + size, y}, {x + size, y + size}, {x, y + size}, {x, y}};
+
+        GcodePath gcodePath = new GcodePath();
+        for (int pass = 1; pass <= passes; pass++) {
+            gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 1d, UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.MOVE, new PartialPosition(x, y, UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 0d, UnitUtils.Units.MM));
+            gcodePath.addSegment(SegmentType.POINT, new PartialPosition(x, y, (double) -pass, UnitUtils.Units.MM));
+            for (double[] point : points) {
+                gcodePath.addSegment(SegmentType.LINE, new PartialPosition(point[0], point[1], (double) -pass, UnitUtils.Units.MM));
+            }
+        }
+        gcodePath.addSegment(SegmentType.MOVE, PartialPosition.from(Axis.Z, 1d, UnitUtils.Units.MM));
+        return gcodePath;
+    }
+}
@@ -0,0 +1,107 @@
+package com.willwinder.ugs.nbp.designer.io.gcode;
+
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.GcodePath;
+import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
+import com.willwinder.ugs.nbp.designer.model.Settings;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import com.willwinder.universalgcodesender.model.PartialPosition;
+import com.willwinder.universalgcodesender.model.UnitUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.geom.Point2D;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ToolPathCacheTest {
+    private ToolPathCache cache;
+    private AtomicInteger generatedCount;
+    private Function<Cuttable, GcodePath> generator;
+
+    @Before
+    public void setUp() {
+        cache = new ToolPathCache();
+        generatedCount = new AtomicInteger();
+        generator = cuttable -> {
+            generatedCount.incrementAndGet();
+            GcodePath gcodePath = new GcodePath();
+            gcodePath.addSegment(SegmentType.LINE, new PartialPosition(cuttable.getPosition().getX(), cuttable.getPosition().getY(), -1d, UnitUtils.Units.MM));
+            return gcodePath;
+        };
+    }
+
+    @Test
+    public void unchangedCuttableShouldReuseToolPath() {
+        Rectangle rectangle = createRectangle();
+
+        GcodePath gcodePath = cache.getGcodePath(rectangle, 1, generator);
+        assertSame(gcodePath, cache.getGcodePath(rectangle, 1, generator));
+        assertEquals(1, generatedCount.get());
+    }
+
+    @Test
+    public void movedCuttableShouldTranslateToolPath() {
+        Rectangle rectangle = createRectangle();
+        cache.getGcodePath(rectangle, 1, generator);
+
+        rectangle.move(new Point2D.Double(5, -2));
+        PartialPosition point = cache.getGcodePath(rectangle, 1, generator).getSegments().get(0).getPoint();
+
+        assertEquals(1, generatedCount.get());
+        assertEquals(15, point.getX(), 0.0001);
+        assertEquals(8, point.getY(), 0.0001);
+        assertEquals(-1, point.getZ(), 0.0001);
+    }
+
+    @Test
+    public void changedCuttableShouldRegenerateToolPath() {
+        Rectangle rectangle = createRectangle();
+        cache.getGcodePath(rectangle, 1, generator);
+
+        rectangle.setSize(new Size(20, 20));
+        cache.getGcodePath(rectangle, 1, generator);
+        assertEquals(2, generatedCount.get());
+
+        rectangle.setTargetDepth(2);
+        cache.getGcodePath(rectangle, 1, generator);
+        assertEquals(3, generatedCount.get());
+
+        cache.getGcodePath(rectangle, 2, generator);
+        assertEquals(4, generatedCount.get());
+    }
+
+    @Test
+    public void retainAllShouldRemoveToolPathsOfOtherEntities() {
+        Rectangle rectangle = createRectangle();
+        cache.getGcodePath(rectangle, 1, generator);
+
+        cache.retainAll(Collections.emptyList());
+        cache.getGcodePath(rectangle, 1, generator);
+        assertEquals(2, generatedCount.get());
+    }
+
+    @Test
+    public void copiesShouldReuseToolPathOfTheSourceEntity() {
+        Rectangle rectangle = createRectangle();
+        cache.getGcodePath(rectangle, 1, generator);
+
+        DesignSnapshot snapshot = DesignSnapshot.of(Collections.singletonList(rectangle), new Settings(), cache);
+        Cuttable copy = snapshot.getCuttables().get(0);
+        cache.getGcodePath(snapshot.getSource(copy), copy, 1, generator);
+        assertEquals(1, generatedCount.get());
+    }
+
+    private static Rectangle createRectangle() {
+        Rectangle rectangle = new Rectangle(10, 10);
+        rectangle.setSize(new Size(10, 10));
+        rectangle.setCutType(CutType.POCKET);
+        return rectangle;
+    }
+}
@@ -1,5 +1,6 @@
 package com.willwinder.ugs.nbp.designer.io.gcode.toolpaths;
 
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Ellipse;
 import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
 import com.willwinder.ugs.nbp.designer.io.gcode.path.Segment;
 import com.willwinder.ugs.nbp.designer.io.gcode.path.SegmentType;
@@ -65,4 +66,104 @@ public class PocketToolPathTest {
         PartialPosition point = drillOperations.get(drillOperations.size() - 1).getPoint();
         assertEquals("Last operation should reach the target depth", targetDepth, point.getAxis(Axis.Z), 0.1);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void zigZagPocketShouldNotExceedTheGeometry() {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setSize(new Size(20, 20));
+
+        PocketToolPath simplePocket = new PocketToolPath(rectangle);
+        simplePocket.setTargetDepth(1);
+        simplePocket.setDepthPerPass(1);
+        simplePocket.setToolDiameter(4);
+        simplePocket.setStepOver(0.5);
+        simplePocket.setStrategy(PocketStrategy.ZIG_ZAG);
+
+        List<Segment> segmentList = simplePocket.toGcodePath().getSegments();
+        List<Segment> lines = segmentList.stream()
+                .filter(segment -> segment.type == SegmentType.LINE)
+                .collect(Collectors.toList());
+
+        assertFalse(lines.isEmpty());
+        lines.forEach(segment -> {
+            assertTrue("Point was outside boundary of 20x20 shape: X=" + segment.getPoint().getX(), segment.getPoint().getX() >= 2 - 0.001 && segment.getPoint().getX() <= 18 + 0.001);
+            assertTrue("Point was outside boundary of 20x20 shape: Y=" + segment.getPoint().getY(), segment.getPoint().getY() >= 2 - 0.001 && segment.getPoint().getY() <= 18 + 0.001);
+        });
+    }
+
+    @Test
+    public void spiralPocketShouldNotExceedTheGeometryAndOnlyPlungeOnce() {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setSize(new Size(20, 20));
+
+        PocketToolPath simplePocket = new PocketToolPath(rectangle);
+        simplePocket.setTargetDepth(1);
+        simplePocket.setDepthPerPass(1);
+        simplePocket.setToolDiameter(4);
+        simplePocket.setStepOver(0.5);
+        simplePocket.setStrategy(PocketStrategy.SPIRAL);
+
+        List<Segment> segmentList = simplePocket.toGcodePath().getSegments();
+        List<Segment> lines = segmentList.stream()
+                .filter(segment -> segment.type == SegmentType.LINE)
+                .collect(Collectors.toList());
+
+        assertFalse(lines.isEmpty());
+        lines.forEach(segment -> {
+            assertTrue("Point was outside boundary of 20x20 shape: X=" + segment.getPoint().getX(), segment.getPoint().getX() >= 2 - 0.001 && segment.getPoint().getX() <= 18 + 0.001);
+            assertTrue("Point was outside boundary of 20x20 shape: Y=" + segment.getPoint().getY(), segment.getPoint().getY() >= 2 - 0.001 && segment.getPoint().getY() <= 18 + 0.001);
+        });
+
+        long plunges = segmentList.stream()
+                .filter(segment -> segment.type == SegmentType.POINT)
+                .count();
+        // The pocket is cut at the depths 0 and 1
+        assertEquals("All passes at each depth should be linked into one spiral", 2, plunges);
+    }
+
+    @Test
+    public void offsetPocketShouldNotDriftFromTheGeometry() {
+        Ellipse ellipse = new Ellipse(0, 0);
+        ellipse.setSize(new Size(60, 60));
+
+        PocketToolPath simplePocket = new PocketToolPath(ellipse);
+        simplePocket.setTargetDepth(1);
+        simplePocket.setDepthPerPass(1);
+        simplePocket.setToolDiameter(2);
+        simplePocket.setStepOver(0.05);
+
+        // Each ring should be a multiple of the step distance of 0.1 mm from the edge of the circle
+        double maxDeviation = simplePocket.toGcodePath().getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.LINE)
+                .mapToDouble(segment -> {
+                    double radius = Math.hypot(segment.getPoint().getX() - 30, segment.getPoint().getY() - 30);
+                    return Math.abs(radius * 10 - Math.round(radius * 10)) / 10;
+                })
+                .max()
+                .orElse(Double.NaN);
+        assertEquals(0, maxDeviation, 0.045);
+    }
+
+    @Test
+    public void linkedPassesShouldReduceTheNumberOfRetracts() {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setSize(new Size(20, 20));
+
+        PocketToolPath simplePocket = new PocketToolPath(rectangle);
+        simplePocket.setTargetDepth(1);
+        simplePocket.setDepthPerPass(1);
+        simplePocket.setToolDiameter(4);
+        simplePocket.setStepOver(0.5);
+        simplePocket.setStrategy(PocketStrategy.ZIG_ZAG);
+        long unlinkedPlunges = simplePocket.toGcodePath().getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.POINT)
+                .count();
+
+        simplePocket.setLinkPasses(true);
+        long linkedPlunges = simplePocket.toGcodePath().getSegments().stream()
+                .filter(segment -> segment.type == SegmentType.POINT)
+                .count();
+
+        assertTrue("Expected fewer plunges when linking passes, got " + linkedPlunges + " and " + unlinkedPlunges, linkedPlunges < unlinkedPlunges);
+    }
+}
@@ -0,0 +1,176 @@
+package com.willwinder.ugs.nbp.designer.io.ugsd.binary;
+
+import com.willwinder.ugs.nbp.designer.entities.Entity;
+import com.willwinder.ugs.nbp.designer.entities.EntityGroup;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.CutType;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Cuttable;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Path;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Rectangle;
+import com.willwinder.ugs.nbp.designer.entities.cuttable.Text;
+import com.willwinder.ugs.nbp.designer.io.ugsd.UgsDesignReader;
+import com.willwinder.ugs.nbp.designer.model.Design;
+import com.willwinder.ugs.nbp.designer.model.Settings;
+import com.willwinder.ugs.nbp.designer.model.Size;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryDesignReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readShouldReturnTheWrittenDesign() {
+        Settings settings = new Settings();
+        settings.setToolDiameter(6);
+        settings.setFeedSpeed(1234);
+        Design design = createDesign(settings, createRectangle(), createPath());
+
+        Design readDesign = new BinaryDesignReader().read(new ByteArrayInputStream(write(design, true))).get();
+
+        assertEquals(6, readDesign.getSettings().getToolDiameter(), 0.001);
+        assertEquals(1234, readDesign.getSettings().getFeedSpeed());
+        assertEquals(2, readDesign.getEntities().size());
+        assertEntityEquals(design.getEntities().get(0), readDesign.getEntities().get(0));
+        assertEntityEquals(design.getEntities().get(1), readDesign.getEntities().get(1));
+        assertTrue(readDesign.getEntities().get(0) instanceof Rectangle);
+        assertTrue(readDesign.getEntities().get(1) instanceof Path);
+    }
+
+    @Test
+    public void readShouldReturnGroupsWithChildren() {
+        EntityGroup group = new EntityGroup();
+        group.setName("group");
+        group.addChild(createRectangle());
+        group.addChild(createPath());
+        Design design = createDesign(new Settings(), group);
+
+        Design readDesign = new BinaryDesignReader().read(new ByteArrayInputStream(write(design, true))).get();
+
+        EntityGroup readGroup = (EntityGroup) readDesign.getEntities().get(0);
+        assertEquals("group", readGroup.getName());
+        assertEquals(2, readGroup.getChildren().size());
+        assertEntityEquals(group.getChildren().get(0), readGroup.getChildren().get(0));
+        assertEntityEquals(group.getChildren().get(1), readGroup.getChildren().get(1));
+    }
+
+    @Test
+    public void readUncompressedDesignShouldReturnTheWrittenDesign() {
+        Design design = createDesign(new Settings(), createPath());
+
+        Design readDesign = new BinaryDesignReader().read(new ByteArrayInputStream(write(design, false))).get();
+
+        assertEntityEquals(design.getEntities().get(0), readDesign.getEntities().get(0));
+    }
+
+    @Test
+    public void readShouldReturnStringsLongerThan64KB() {
+        Rectangle rectangle = createRectangle();
+        rectangle.setName(StringUtils.repeat("rectangle ", 10000));
+        Text text = new Text();
+        text.setText("\u00c5\u00e4\u00f6 \u20ac " + StringUtils.repeat("text ", 14000));
+        Design design = createDesign(new Settings(), rectangle, text);
+
+        Design readDesign = new BinaryDesignReader().read(new ByteArrayInputStream(write(design, true))).get();
+
+        assertEquals(rectangle.getName(), readDesign.getEntities().get(0).getName());
+        assertEquals(text.getText(), ((Text) readDesign.getEntities().get(1)).getText());
+        assertEquals(text.getFontFamily(), ((Text) readDesign.getEntities().get(1)).getFontFamily());
+    }
+
+    @Test
+    public void isBinaryDesignShouldDetectTheFormatOfTheFile() throws IOException {
+        File file = writeFile(createDesign(new Settings(), createPath()));
+        assertTrue(BinaryDesignReader.isBinaryDesign(file));
+
+        Files.write(file.toPath(), "{\"version\":\"1\"}".getBytes(StandardCharsets.UTF_8));
+        assertFalse(BinaryDesignReader.isBinaryDesign(file));
+    }
+
+    @Test
+    public void ugsDesignReaderShouldReadBinaryDesigns() throws IOException {
+        File file = writeFile(createDesign(new Settings(), createPath()));
+
+        Design design = new UgsDesignReader().read(file).get();
+
+        assertEquals(1, design.getEntities().size());
+        assertTrue(design.getEntities().get(0) instanceof Path);
+    }
+
+    private static Rectangle createRectangle() {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setSize(new Size(10, 20));
+        rectangle.setPosition(new Point2D.Double(5, 6));
+        rectangle.setRotation(30);
+        rectangle.setName("rectangle");
+        rectangle.setTargetDepth(2);
+        rectangle.setCutType(CutType.OUTSIDE_PATH);
+        return rectangle;
+    }
+
+    private static Path createPath() {
+        Path path = new Path();
+        path.moveTo(0, 0);
+        path.lineTo(10, 0);
+        path.quadTo(15, 5, 10, 10);
+        path.curveTo(5, 15, 0, 15, 0, 10);
+        path.close();
+        path.setPosition(new Point2D.Double(100, 120));
+        path.setName("path");
+        path.setStartDepth(1);
+        path.setTargetDepth(12);
+        path.setCutType(CutType.POCKET);
+        return path;
+    }
+
+    private static Design createDesign(Settings settings, Entity... entities) {
+        Design design = new Design();
+        design.setSettings(settings);
+        design.setEntities(Arrays.asList(entities));
+        return design;
+    }
+
+    private static byte[] write(Design design, boolean compress) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new BinaryDesignWriter(compress).write(outputStream, design);
+        return outputStream.toByteArray();
+    }
+
+    private File writeFile(Design design) throws IOException {
+        File file = temporaryFolder.newFile("design.ugsd");
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            new BinaryDesignWriter().write(outputStream, design);
+        }
+        return file;
+    }
+
+    private static void assertEntityEquals(Entity expected, Entity actual) {
+        assertEquals(expected.getClass(), actual.getClass());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getBounds().getX(), actual.getBounds().getX(), 0.001);
+        assertEquals(expected.getBounds().getY(), actual.getBounds().getY(), 0.001);
+        assertEquals(expected.getBounds().getWidth(), actual.getBounds().getWidth(), 0.001);
+        assertEquals(expected.getBounds().getHeight(), actual.getBounds().getHeight(), 0.001);
+        assertEquals(expected.getTransform(), actual.getTransform());
+        assertEquals(((Cuttable) expected).getCutType(), ((Cuttable) actual).getCutType());
+        assertEquals(((Cuttable) expected).getStartDepth(), ((Cuttable) actual).getStartDepth(), 0.001);
+        assertEquals(((Cuttable) expected).getTargetDepth(), ((Cuttable) actual).getTargetDepth(), 0.001);
+    }
+}
@@ -34,7 +34,6 @@ import org.netbeans.api.settings.ConvertAsProperties;
 import org.openide.awt.ActionID;
 import org.openide.awt.ActionReference;
 import org.openide.modules.OnStart;
-import org.openide.util.Exceptions;
 import org.openide.windows.TopComponent;
 
 import javax.swing.*;
@@ -186,11 +185,7 @@ public final class WorkflowWindowTopComponent extends TopComponent implements UG
         if (selectedRow.length == 1) {
             // Pull the file out of the table and set it in the backend.
             String file = (String) model.getValueAt(selectedRow[0], 0);
-            try {
-                backend.setGcodeFile(new File(file));
-            } catch (Exception ex) {
-                Exceptions.printStackTrace(ex);
-            }
+            backend.loadGcodeFile(new File(file));
         }
 
     }
@@ -25,8 +25,9 @@ import com.willwinder.ugs.nbm.visualizer.shared.RenderableUtils;
 import com.willwinder.ugs.nbp.lib.lookup.CentralLookup;
 import com.willwinder.ugs.nbp.lib.services.LocalizingService;
 import com.willwinder.ugs.nbp.lib.services.TopComponentLocalizer;
-import com.willwinder.universalgcodesender.gcode.GcodeParser;
 import com.willwinder.universalgcodesender.gcode.processors.ArcExpander;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessor;
+import com.willwinder.universalgcodesender.gcode.processors.CommandProcessorList;
 import com.willwinder.universalgcodesender.gcode.processors.CommentProcessor;
 import com.willwinder.universalgcodesender.gcode.processors.LineSplitter;
 import com.willwinder.universalgcodesender.gcode.processors.MeshLeveler;
@@ -36,6 +37,7 @@ import com.willwinder.universalgcodesender.model.BackendAPI;
 import com.willwinder.universalgcodesender.model.Position;
 import com.willwinder.universalgcodesender.model.UGSEvent;
 import com.willwinder.universalgcodesender.model.UnitUtils.Units;
+import com.willwinder.universalgcodesender.model.events.FileState;
 import com.willwinder.universalgcodesender.model.events.FileStateEvent;
 import com.willwinder.universalgcodesender.model.events.ProbeEvent;
 import com.willwinder.universalgcodesender.model.events.SettingChangedEvent;
@@ -55,10 +57,12 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.Supplier;
 
 import static com.willwinder.ugs.nbp.lib.services.LocalizingService.lang;
 
@@ -87,6 +91,8 @@ public final class AutoLevelerTopComponent extends TopComponent implements ItemL
 
     // Used to disable the change listener temporarily.
     private boolean bulkChanges = false;
+    private Supplier<CommandProcessor> levelingProcessor;
+    private File leveledFile;
 
     public final static String AutoLevelerTitle = Localization.getString("platform.window.autoleveler", lang);
     public final static String AutoLevelerTooltip = Localization.getString("platform.window.autoleveler.tooltip", lang);
@@ -185,6 +191,16 @@ public final class AutoLevelerTopComponent extends TopComponent implements ItemL
         }
         
         else if(evt instanceof FileStateEvent){
+            // The height map is only used for the file it was applied to
+            FileStateEvent fileStateEvent = (FileStateEvent) evt;
+            if (fileStateEvent.getFileState() == FileState.OPENING_FILE && leveledFile != null &&
+                    !new File(fileStateEvent.getFile()).equals(leveledFile.getAbsoluteFile())) {
+                try {
+                    removeLeveler();
+                } catch (Exception e) {
+                    Exceptions.printStackTrace(e);
+                }
+            }
             applyToGcode.setEnabled(true);
         }
     }
@@ -599,32 +615,53 @@ public final class AutoLevelerTopComponent extends TopComponent implements ItemL
     }//GEN-LAST:event_dataViewerActionPerformed
 
     private void applyToGcodeActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_applyToGcodeActionPerformed
-        GcodeParser gcp = new GcodeParser();
         Settings.AutoLevelSettings autoLevelSettings = this.settings.getAutoLevelSettings();
+        double arcSliceLength = autoLevelSettings.autoLevelArcSliceLength;
+        double lineLength = getValue(stepResolution) / 10;
+        double surfaceHeight = getValue(this.zSurface);
+        Position[][] grid = scanner.getProbePositionGrid();
+        Units units = scanner.getUnits();
+
+        // The leveling is applied while streaming, a new instance is created for each stream
+        Supplier<CommandProcessor> leveler = () -> {
+            CommandProcessorList processors = new CommandProcessorList();
 
-        // Step 0: Get rid of comments.
-        gcp.addCommandProcessor(new  CommentProcessor());
+            // Step 0: Get rid of comments.
+            processors.add(new CommentProcessor());
 
-        // Step 1: The arc processor and line processors NO LONGER need to be split!
+            // Step 1: The arc processor and line processors NO LONGER need to be split!
 
-        // Step 2: Must convert arcs to line segments.
-        gcp.addCommandProcessor(new ArcExpander(true, autoLevelSettings.autoLevelArcSliceLength));
+            // Step 2: Must convert arcs to line segments.
+            processors.add(new ArcExpander(true, arcSliceLength));
 
-        // Step 3: Line splitter. No line should be longer than some fraction of "resolution"
-        gcp.addCommandProcessor(new LineSplitter(getValue(stepResolution)/10));
+            // Step 3: Line splitter. No line should be longer than some fraction of "resolution"
+            processors.add(new LineSplitter(lineLength));
 
-        // Step 4: Adjust Z heights codes based on mesh offsets.
-        gcp.addCommandProcessor(new MeshLeveler(getValue(this.zSurface), scanner.getProbePositionGrid(), scanner.getUnits()));
+            // Step 4: Adjust Z heights codes based on mesh offsets.
+            processors.add(new MeshLeveler(surfaceHeight, grid, units));
+            return processors;
+        };
 
         try {
-            backend.applyGcodeParser(gcp);
-            applyToGcode.setEnabled(false);
+            // Replaces any previously applied height map, also for a program that is being sent
+            removeLeveler();
+            backend.applyStreamingCommandProcessor(leveler);
+            levelingProcessor = leveler;
+            leveledFile = backend.getGcodeFile();
         } catch (Exception ex) {
             GUIHelpers.displayErrorDialog(ex.getMessage());
             Exceptions.printStackTrace(ex);
         }
     }//GEN-LAST:event_applyToGcodeActionPerformed
 
+    private void removeLeveler() throws Exception {
+        if (levelingProcessor != null) {
+            backend.removeStreamingCommandProcessor(levelingProcessor);
+            levelingProcessor = null;
+            leveledFile = null;
+        }
+    }
+
     private void settingsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_settingsButtonActionPerformed
         OptionsDisplayer.getDefault().open("UGS/autoleveler");
     }//GEN-LAST:event_settingsButtonActionPerformed
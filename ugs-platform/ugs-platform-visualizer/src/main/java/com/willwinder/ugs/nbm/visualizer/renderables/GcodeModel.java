@@ -32,6 +32,7 @@ import com.willwinder.universalgcodesender.utils.GcodeStreamReader;
 import com.willwinder.universalgcodesender.utils.IGcodeStreamReader;
 import com.willwinder.universalgcodesender.visualizer.GcodeViewParse;
 import com.willwinder.universalgcodesender.visualizer.LineSegment;
+import com.willwinder.universalgcodesender.visualizer.LineSegmentIndex;
 import com.willwinder.universalgcodesender.visualizer.VisualizerUtils;
 
 import java.awt.Color;
@@ -72,6 +73,7 @@ public class GcodeModel extends Renderable {
     // TODO: don't save the line list.
     private List<LineSegment> gcodeLineList; //An ArrayList of linesegments composing the model
     private List<LineSegment> pointList; //An ArrayList of linesegments composing the model
+    private volatile LineSegmentIndex lineSegmentIndex = LineSegmentIndex.EMPTY;
     private int currentCommandNumber = 0;
 
     // OpenGL Object Buffer Variables
@@ -137,6 +139,15 @@ public class GcodeModel extends Renderable {
         return this.pointList != null ? this.pointList : Collections.emptyList();
     }
 
+    /**
+     * Returns an index for finding the line segments of a line number
+     *
+     * @return the line segment index for the current model
+     */
+    public LineSegmentIndex getLineSegmentIndex() {
+        return lineSegmentIndex;
+    }
+
     @Override
     public boolean enableLighting() {
         return false;
@@ -252,6 +263,7 @@ public class GcodeModel extends Renderable {
                 this.pointList.add(VisualizerUtils.toCartesian(ls));
             }
             gcodeLineList = pointList;
+            lineSegmentIndex = new LineSegmentIndex(pointList);
 
             this.objectMin = gcvp.getMinimumExtremes();
             this.objectMax = gcvp.getMaximumExtremes();